@@ -22,22 +22,320 @@ Password: password456
 
 
 import java.util.*;
-import java.text.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.time.*;
+import java.util.zip.CRC32;
+import java.net.InetSocketAddress;
+import java.security.SecureRandom;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
 
 /**
  * Interface for classes that need logging capability.
- * Provides a default implementation for logging messages.
+ * Events go to the asynchronous {@link EventLog}, so logging never waits for I/O.
  */
 interface Loggable {
     /**
-     * Logs a message to the console with a "LOG: " prefix.
+     * Logs a message at INFO level, tagged with the logging class.
      * @param message The message to be logged
      */
     default void log(String message) {
-        System.out.println("LOG: " + message);
+        log(EventLog.INFO, "message", "source", getClass().getSimpleName(), "text", message);
+    }
+
+    /**
+     * Logs a structured event. The level is checked before anything else is done.
+     * @param level One of the {@link EventLog} levels
+     * @param event Event name, e.g. {@code tenant.created}
+     * @param keyValues Alternating field names and values
+     */
+    default void log(int level, String event, Object... keyValues) {
+        EventLog.GLOBAL.log(level, event, keyValues);
+    }
+}
+
+/**
+ * Asynchronous structured event log behind {@link Loggable}. An event is a level, a name
+ * and key/value fields. Callers only check the level and copy the event into a
+ * pre-allocated lock-free ring; a background thread formats events as {@code key=value}
+ * lines and writes them in batches to a rolling file. Logging never blocks and never does
+ * I/O on the caller's thread: when the ring is full the event is dropped and counted.
+ * <p>
+ * Nothing is logged until {@link #start} names a file. Field values are formatted later
+ * on the writer thread, so they should be immutable (strings, numbers).
+ */
+final class EventLog implements Closeable {
+    static final int DEBUG = 10;
+    static final int INFO = 20;
+    static final int WARN = 30;
+    static final int ERROR = 40;
+    static final int OFF = Integer.MAX_VALUE;
+
+    static final EventLog GLOBAL = new EventLog(1 << 16);
+
+    private static final int BATCH_BYTES = 64 * 1024;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+    private static final Object[] NO_FIELDS = {};
+
+    private volatile int threshold = OFF;
+
+    // Ring slots; a slot's sequence equals its position while free and position + 1 once published
+    private final int mask;
+    private final AtomicLongArray sequences;
+    private final long[] times;
+    private final int[] levels;
+    private final String[] events;
+    private final Object[][] fields;
+    private final AtomicLong tail = new AtomicLong();
+    private volatile long head;
+    private final LongAdder dropped = new LongAdder();
+
+    private Thread writer;
+    private volatile boolean running;
+    private FileChannel channel;
+    private Path file;
+    private long maxFileBytes;
+    private int keepFiles;
+    private long fileBytes;
+
+    /**
+     * @param capacity Number of events the ring holds; rounded up to a power of two
+     */
+    EventLog(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        mask = size - 1;
+        sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) sequences.set(i, i);
+        times = new long[size];
+        levels = new int[size];
+        events = new String[size];
+        fields = new Object[size][];
+    }
+
+    /**
+     * Starts writing events at or above a level to a file, rolling it over when it grows
+     * past {@code maxFileBytes}: {@code file} becomes {@code file.1}, {@code file.1}
+     * becomes {@code file.2} and so on, keeping {@code keepFiles} old files.
+     * 
+     * @throws IOException if the file cannot be opened
+     * @throws IllegalStateException if the log is already running
+     */
+    public synchronized void start(Path file, int level, long maxFileBytes, int keepFiles) throws IOException {
+        if (running) throw new IllegalStateException("Event log already started");
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) Files.createDirectories(parent);
+        this.file = file;
+        this.maxFileBytes = maxFileBytes;
+        this.keepFiles = keepFiles;
+        openFile();
+        running = true;
+        writer = new Thread(this::writeLoop, "pghive-event-log");
+        writer.setDaemon(true);
+        writer.start();
+        threshold = level;
+    }
+
+    /**
+     * Parses a level name such as {@code INFO}, ignoring case.
+     * @throws IllegalArgumentException for an unknown name
+     */
+    static int parseLevel(String name) {
+        switch (name.trim().toUpperCase(Locale.ROOT)) {
+            case "DEBUG": return DEBUG;
+            case "INFO": return INFO;
+            case "WARN": return WARN;
+            case "ERROR": return ERROR;
+            case "OFF": return OFF;
+            default: throw new IllegalArgumentException("Unknown log level: " + name);
+        }
+    }
+
+    public boolean isEnabled(int level) { return level >= threshold; }
+    public void setLevel(int level) { if (running) threshold = level; }
+    public long getDropped() { return dropped.sum(); }
+
+    /**
+     * Queues an event if its level is enabled. Returns at once; the event is dropped when
+     * the ring is full.
+     * 
+     * @param level One of {@link #DEBUG}, {@link #INFO}, {@link #WARN}, {@link #ERROR}
+     * @param event Event name, e.g. {@code tenant.deleted}
+     * @param keyValues Alternating field names and values
+     */
+    public void log(int level, String event, Object... keyValues) {
+        if (level < threshold) return;
+        long position = tail.get();
+        while (true) {
+            int slot = (int) position & mask;
+            long available = sequences.get(slot) - position;
+            if (available == 0) {
+                if (tail.compareAndSet(position, position + 1)) break;
+                position = tail.get();
+            } else if (available < 0) {
+                dropped.increment(); // full: the writer is a whole ring behind
+                return;
+            } else {
+                position = tail.get();
+            }
+        }
+        int slot = (int) position & mask;
+        times[slot] = System.currentTimeMillis();
+        levels[slot] = level;
+        events[slot] = event;
+        fields[slot] = keyValues == null ? NO_FIELDS : keyValues;
+        sequences.lazySet(slot, position + 1);
+    }
+
+    /**
+     * Waits until every event queued before the call has been written out.
+     */
+    public void flush() {
+        long target = tail.get();
+        while (running && head < target) {
+            LockSupport.unpark(writer);
+            LockSupport.parkNanos(100_000);
+        }
+    }
+
+    /**
+     * Writes out the queued events and stops the writer thread.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (!running) return;
+        threshold = OFF;
+        flush();
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+    }
+
+    private void writeLoop() {
+        StringBuilder text = new StringBuilder(BATCH_BYTES + 1024);
+        ByteBuffer bytes = ByteBuffer.allocate(2 * BATCH_BYTES);
+        java.nio.charset.CharsetEncoder utf8 = java.nio.charset.StandardCharsets.UTF_8.newEncoder();
+        while (running || head < tail.get()) {
+            long position = head;
+            int slot = (int) position & mask;
+            if (sequences.get(slot) != position + 1) {
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+                continue;
+            }
+            // Drain whatever is published, up to one batch, then write it with a single call
+            while (text.length() < BATCH_BYTES && sequences.get(slot) == position + 1) {
+                format(text, times[slot], levels[slot], events[slot], fields[slot]);
+                events[slot] = null;
+                fields[slot] = null;
+                sequences.lazySet(slot, position + mask + 1);
+                position++;
+                slot = (int) position & mask;
+            }
+            try {
+                write(text, bytes, utf8);
+            } catch (IOException e) {
+                System.err.println("Event log write failed: " + e.getMessage());
+            }
+            text.setLength(0);
+            head = position;
+        }
+    }
+
+    private void write(StringBuilder text, ByteBuffer bytes, java.nio.charset.CharsetEncoder utf8) throws IOException {
+        CharBuffer chars = CharBuffer.wrap(text);
+        utf8.reset();
+        boolean more = true;
+        while (more) {
+            bytes.clear();
+            more = utf8.encode(chars, bytes, true).isOverflow(); // only an oversized event spans several writes
+            bytes.flip();
+            if (fileBytes + bytes.remaining() > maxFileBytes && fileBytes > 0) roll();
+            fileBytes += bytes.remaining();
+            while (bytes.hasRemaining()) channel.write(bytes);
+        }
+    }
+
+    private void roll() throws IOException {
+        channel.close();
+        Path absolute = file.toAbsolutePath();
+        for (int i = keepFiles; i >= 1; i--) {
+            Path source = i == 1 ? absolute : absolute.resolveSibling(absolute.getFileName() + "." + (i - 1));
+            if (Files.exists(source)) {
+                Files.move(source, absolute.resolveSibling(absolute.getFileName() + "." + i),
+                           StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        if (keepFiles < 1) Files.deleteIfExists(absolute);
+        openFile();
+    }
+
+    private void openFile() throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        fileBytes = channel.size();
+    }
+
+    // 2026-10-17T05:02:36.123Z INFO tenant.deleted id=T001 name="John Doe"
+    static void format(StringBuilder out, long millis, int level, String event, Object[] keyValues) {
+        long day = Math.floorDiv(millis, 86_400_000L);
+        int msOfDay = (int) Math.floorMod(millis, 86_400_000L);
+        EpochDays.appendTo(out, (int) day).append('T');
+        appendPadded(out, msOfDay / 3_600_000, 2).append(':');
+        appendPadded(out, msOfDay / 60_000 % 60, 2).append(':');
+        appendPadded(out, msOfDay / 1000 % 60, 2).append('.');
+        appendPadded(out, msOfDay % 1000, 3).append("Z ");
+        out.append(level >= ERROR ? "ERROR" : level >= WARN ? "WARN" : level >= INFO ? "INFO" : "DEBUG")
+           .append(' ').append(event);
+        for (int i = 0; i + 1 < keyValues.length; i += 2) {
+            out.append(' ').append(keyValues[i]).append('=');
+            appendValue(out, String.valueOf(keyValues[i + 1]));
+        }
+        out.append('\n');
+    }
+
+    private static StringBuilder appendPadded(StringBuilder out, int value, int width) {
+        for (int limit = width == 3 ? 100 : 10; limit > 1 && value < limit; limit /= 10) out.append('0');
+        return out.append(value);
+    }
+
+    // Quotes values containing spaces, quotes, '=' or line breaks so each event stays on one line
+    private static void appendValue(StringBuilder out, String value) {
+        boolean plain = !value.isEmpty();
+        for (int i = 0; i < value.length() && plain; i++) {
+            char c = value.charAt(i);
+            plain = c > ' ' && c != '"' && c != '=';
+        }
+        if (plain) {
+            out.append(value);
+            return;
+        }
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') out.append('\\').append(c);
+            else if (c == '\n') out.append("\\n");
+            else if (c == '\r') out.append("\\r");
+            else out.append(c);
+        }
+        out.append('"');
     }
 }
 
+
 /**
  * Custom exception class for handling room assignment errors.
  */
@@ -56,12 +354,15 @@ class RoomAssignmentException extends Exception {
  * Provides authentication and authorization functionality.
  */
 abstract class User {
+    static final int MAX_FAILED_ATTEMPTS = 3;
+
     protected String userId;
     protected String name;
     protected String email;
-    protected String password;
+    protected volatile String password; // PBKDF2 hash, see PasswordHasher
     protected boolean loggedIn = false;
-    protected int failedAttempts = 0;
+    protected final AtomicInteger failedAttempts = new AtomicInteger(); // lock-free lockout counter
+    protected PersistenceEngine journal; // null when state is not persisted
 
     /**
      * Authenticates a user with email and password.
@@ -72,21 +373,57 @@ abstract class User {
      * @return true if login successful, false otherwise
      */
     public boolean login(String email, String password) {
-        if (this.failedAttempts >= 3) {
+        if (failedAttempts.get() >= MAX_FAILED_ATTEMPTS) {
             System.out.println("Account locked. Too many failed attempts.");
             return false;
         }
 
-        if (this.email.equals(email) && this.password.equals(password)) {
+        if (authenticate(email, password)) {
             loggedIn = true;
-            failedAttempts = 0;
             System.out.println("Login successful!");
             return true;
         } else {
-            failedAttempts++;
-            System.out.println("Invalid credentials! Attempts left: " + (3 - failedAttempts));
+            System.out.println("Invalid credentials! Attempts left: " + Math.max(0, MAX_FAILED_ATTEMPTS - failedAttempts.get()));
+            return false;
+        }
+    }
+
+    /**
+     * Checks credentials and applies the lockout rules without starting a console session.
+     * Used by the HTTP API, where each client holds its own session token.
+     * 
+     * @param email The email address for authentication
+     * @param password The password for authentication
+     * @return true if the credentials match and the account is not locked
+     */
+    boolean authenticate(String email, String password) {
+        long started = Metrics.GLOBAL.start();
+        boolean valid = checkCredentials(email, password);
+        Metrics.GLOBAL.login.recordSince(started);
+        if (!valid) Metrics.GLOBAL.loginFailures.increment();
+        return valid;
+    }
+
+    private boolean checkCredentials(String email, String password) {
+        // Claim an attempt before the slow hash check, so parallel guesses can't exceed the limit
+        if (failedAttempts.getAndUpdate(n -> n >= MAX_FAILED_ATTEMPTS ? n : n + 1) >= MAX_FAILED_ATTEMPTS) {
             return false;
         }
+        String stored = this.password;
+        if (this.email.equals(email) && PasswordHasher.verify(stored, password)) {
+            failedAttempts.set(0);
+            if (PasswordHasher.needsRehash(stored)) updatePassword(stored, password);
+            return true;
+        }
+        return false;
+    }
+
+    // Replaces the stored hash unless it changed concurrently, and journals the new hash
+    private synchronized void updatePassword(String expected, String newPassword) {
+        if (this.password != expected) return;
+        String hash = PasswordHasher.hash(newPassword);
+        this.password = hash;
+        if (journal != null) journal.logChangePassword(userId, hash);
     }
 
     /**
@@ -105,15 +442,22 @@ abstract class User {
      * @return true if password changed successfully, false otherwise
      */
     public boolean changePassword(String currentPass, String newPass) {
-        if (this.password.equals(currentPass)) {
-            this.password = newPass;
-            System.out.println("Password changed successfully!");
+        String stored = this.password;
+        if (PasswordHasher.verify(stored, currentPass)) {
+            updatePassword(stored, newPass);
+            EventLog.GLOBAL.log(EventLog.INFO, "password.changed", "user", userId);
             return true;
         }
-        System.out.println("Current password incorrect!");
+        EventLog.GLOBAL.log(EventLog.WARN, "password.change_rejected", "user", userId);
         return false;
     }
 
+    // Console feedback for the change-password menus
+    protected void changePasswordUI(String currentPass, String newPass) {
+        System.out.println(changePassword(currentPass, newPass) ? "Password changed successfully!"
+                                                                  : "Current password incorrect!");
+    }
+
     /**
      * Abstract method to display the user-specific menu.
      * Must be implemented by subclasses.
@@ -121,16 +465,364 @@ abstract class User {
     public abstract void showMenu();
 }
 
+/**
+ * Salted PBKDF2-HMAC-SHA256 password hashing. Hashes are stored as
+ * {@code pbkdf2$<iterations>$<salt>$<hash>} (Base64), so the work factor can be raised
+ * later and old hashes are upgraded on the next successful login.
+ * Uses a per-thread {@link javax.crypto.Mac} instead of {@code SecretKeyFactory}, which
+ * costs far more per call at the same iteration count and gives identical output.
+ */
+final class PasswordHasher {
+    private static final String PREFIX = "pbkdf2$";
+    private static final int SALT_BYTES = 16;
+
+    /** Work factor for new hashes unless overridden with -Dpghive.pbkdf2.iterations. */
+    static final int DEFAULT_ITERATIONS = Integer.getInteger("pghive.pbkdf2.iterations", 100_000);
+
+    private static volatile int iterations = DEFAULT_ITERATIONS;
+    private static final SecureRandom SALTS = new SecureRandom();
+    private static final ThreadLocal<javax.crypto.Mac> MACS = ThreadLocal.withInitial(() -> {
+        try {
+            return javax.crypto.Mac.getInstance("HmacSHA256");
+        } catch (java.security.NoSuchAlgorithmException e) {
+            throw new IllegalStateException("HmacSHA256 unavailable", e);
+        }
+    });
+
+    private PasswordHasher() {}
+
+    /**
+     * Sets the work factor for hashes created from now on.
+     * @param count PBKDF2 iteration count, at least 1
+     */
+    static void setIterations(int count) {
+        if (count < 1) throw new IllegalArgumentException("Iterations must be positive");
+        iterations = count;
+    }
+
+    static int getIterations() { return iterations; }
+
+    /**
+     * Hashes a password with a fresh random salt at the current work factor.
+     * @param password Plaintext password
+     * @return Encoded hash
+     */
+    static String hash(String password) {
+        byte[] salt = new byte[SALT_BYTES];
+        SALTS.nextBytes(salt);
+        int count = iterations;
+        Base64.Encoder base64 = Base64.getEncoder().withoutPadding();
+        return PREFIX + count + "$" + base64.encodeToString(salt) + "$"
+               + base64.encodeToString(pbkdf2(password, salt, count));
+    }
+
+    /**
+     * Checks a password against a stored hash in constant time. Stored values without the
+     * hash prefix are plaintext passwords from before hashing was introduced.
+     * 
+     * @param stored Encoded hash (or legacy plaintext)
+     * @param password Candidate password
+     * @return true if the password matches
+     */
+    static boolean verify(String stored, String password) {
+        if (stored == null || password == null) return false;
+        if (!stored.startsWith(PREFIX)) {
+            return java.security.MessageDigest.isEqual(stored.getBytes(java.nio.charset.StandardCharsets.UTF_8),
+                                                       password.getBytes(java.nio.charset.StandardCharsets.UTF_8));
+        }
+        String[] parts = stored.split("\\$");
+        if (parts.length != 4) return false;
+        try {
+            Base64.Decoder base64 = Base64.getDecoder();
+            byte[] expected = base64.decode(parts[3]);
+            byte[] actual = pbkdf2(password, base64.decode(parts[2]), Integer.parseInt(parts[1]));
+            return java.security.MessageDigest.isEqual(expected, actual);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Tells whether a value is an encoded hash produced by {@link #hash(String)}.
+     */
+    static boolean isHash(String stored) {
+        if (stored == null || !stored.startsWith(PREFIX)) return false;
+        String[] parts = stored.split("\\$");
+        if (parts.length != 4) return false;
+        try {
+            Base64.Decoder base64 = Base64.getDecoder();
+            return Integer.parseInt(parts[1]) > 0 && base64.decode(parts[2]).length > 0
+                   && base64.decode(parts[3]).length == 32;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Tells whether a stored value should be replaced by a hash at the current work factor.
+     */
+    static boolean needsRehash(String stored) {
+        if (stored == null || !stored.startsWith(PREFIX)) return true;
+        int end = stored.indexOf('$', PREFIX.length());
+        try {
+            return Integer.parseInt(stored.substring(PREFIX.length(), end)) < iterations;
+        } catch (RuntimeException e) {
+            return true;
+        }
+    }
+
+    // PBKDF2 (RFC 8018) with a single 32-byte output block
+    private static byte[] pbkdf2(String password, byte[] salt, int count) {
+        javax.crypto.Mac mac = MACS.get();
+        try {
+            byte[] key = password.getBytes(java.nio.charset.StandardCharsets.UTF_8);
+            // HMAC keys may not be empty; an all-zero block is equivalent to an empty key
+            mac.init(new javax.crypto.spec.SecretKeySpec(key.length == 0 ? new byte[1] : key, "HmacSHA256"));
+            mac.update(salt);
+            mac.update(new byte[] {0, 0, 0, 1});
+            byte[] u = mac.doFinal();
+            byte[] result = u.clone();
+            for (int i = 1; i < count; i++) {
+                mac.update(u);
+                mac.doFinal(u, 0);
+                for (int j = 0; j < result.length; j++) result[j] ^= u[j];
+            }
+            return result;
+        } catch (java.security.GeneralSecurityException e) {
+            throw new IllegalStateException("PBKDF2 failed", e);
+        }
+    }
+}
+
+/**
+ * Logs owners and tenants in and tracks their sessions. A session token stands in for
+ * the password check, so each request costs one map lookup instead of a PBKDF2 run.
+ * Sessions expire after a period of inactivity, and all of a user's sessions end when
+ * the password changes.
+ */
+class AuthService {
+    private static final int TOKEN_BYTES = 16;
+    private static final long DEFAULT_IDLE_TIMEOUT_MS = TimeUnit.MINUTES.toMillis(30);
+    private static final long PURGE_INTERVAL_MS = TimeUnit.MINUTES.toMillis(1);
+
+    /**
+     * A logged-in user and the password hash the login was verified against.
+     */
+    private static final class Session {
+        final User user;
+        final String passwordHash;
+        volatile long expiresAt;
+
+        Session(User user, String passwordHash, long expiresAt) {
+            this.user = user;
+            this.passwordHash = passwordHash;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final PGOwner owner;
+    private final long idleTimeoutMs;
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    private final SecureRandom random = new SecureRandom();
+    private final AtomicLong lastPurge = new AtomicLong(System.currentTimeMillis());
+
+    public AuthService(PGOwner owner) {
+        this(owner, DEFAULT_IDLE_TIMEOUT_MS);
+    }
+
+    public AuthService(PGOwner owner, long idleTimeoutMs) {
+        this.owner = owner;
+        this.idleTimeoutMs = idleTimeoutMs;
+    }
+
+    /**
+     * Verifies credentials through the owner's email index and opens a session.
+     * 
+     * @param email Email address of the owner or a tenant
+     * @param password Plaintext password
+     * @return A new session token, or null if the credentials are wrong or the account is locked
+     */
+    public String login(String email, String password) {
+        if (email == null || password == null) return null;
+        long now = System.currentTimeMillis();
+        long purged = lastPurge.get();
+        if (now - purged > PURGE_INTERVAL_MS && lastPurge.compareAndSet(purged, now)) {
+            purgeExpired();
+        }
+        User user = email.equals(owner.email) ? owner : owner.findTenantByEmail(email);
+        if (user == null || !user.authenticate(email, password)) return null;
+        byte[] bytes = new byte[TOKEN_BYTES];
+        random.nextBytes(bytes);
+        StringBuilder token = new StringBuilder(TOKEN_BYTES * 2);
+        for (byte b : bytes) token.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        sessions.put(token.toString(), new Session(user, user.password, now + idleTimeoutMs));
+        return token.toString();
+    }
+
+    /**
+     * Resolves a session token and extends the session.
+     * 
+     * @param token Token from {@link #login}
+     * @return The logged-in user, or null if the token is unknown, expired or revoked
+     */
+    public User validate(String token) {
+        if (token == null) return null;
+        Session session = sessions.get(token);
+        if (session == null) return null;
+        long now = System.currentTimeMillis();
+        if (now > session.expiresAt || session.user.password != session.passwordHash) {
+            sessions.remove(token, session);
+            return null;
+        }
+        session.expiresAt = now + idleTimeoutMs;
+        return session.user;
+    }
+
+    public void logout(String token) {
+        if (token != null) sessions.remove(token);
+    }
+
+    public int sessionCount() { return sessions.size(); }
+
+    /**
+     * Drops expired and revoked sessions.
+     */
+    public void purgeExpired() {
+        long now = System.currentTimeMillis();
+        sessions.values().removeIf(session -> now > session.expiresAt || session.user.password != session.passwordHash);
+    }
+}
+
+/**
+ * Indexed store of tenants for a PG owner.
+ * Keeps a primary index on user ID and a unique secondary index on email,
+ * both updated together on add, edit and delete so every lookup is O(1).
+ * Safe for concurrent use; callers serialize add and remove of the same ID.
+ */
+class TenantRegistry {
+    private final ConcurrentHashMap<String, Tenant> byId = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Tenant> byEmail = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListMap<Long, Tenant> byInsertion = new ConcurrentSkipListMap<>();
+    private final AtomicLong insertions = new AtomicLong();
+
+    /**
+     * Registers a tenant under its user ID and email.
+     * 
+     * @param tenant The tenant to register
+     * @throws IllegalArgumentException if the ID or email is already registered
+     */
+    public void add(Tenant tenant) {
+        if (tenant == null || tenant.getUserId() == null) {
+            throw new IllegalArgumentException("Tenant ID cannot be null");
+        }
+        String email = tenant.getEmail();
+        // Claim the email first so two tenants can never race onto the same address
+        if (isIndexedEmail(email) && byEmail.putIfAbsent(email, tenant) != null) {
+            throw new IllegalArgumentException("Email already registered: " + email);
+        }
+        if (byId.putIfAbsent(tenant.getUserId(), tenant) != null) {
+            if (isIndexedEmail(email)) byEmail.remove(email, tenant);
+            throw new IllegalArgumentException("Tenant ID already exists: " + tenant.getUserId());
+        }
+        tenant.registrySeq = insertions.incrementAndGet();
+        byInsertion.put(tenant.registrySeq, tenant);
+    }
+
+    /**
+     * Removes a tenant from both indexes.
+     * 
+     * @param tenantId ID of the tenant to remove
+     * @return The removed tenant, or null if no tenant had that ID
+     */
+    public Tenant remove(String tenantId) {
+        Tenant removed = tenantId == null ? null : byId.remove(tenantId);
+        if (removed != null) {
+            byInsertion.remove(removed.registrySeq, removed);
+            if (isIndexedEmail(removed.getEmail())) {
+                byEmail.remove(removed.getEmail(), removed);
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Moves a registered tenant to a new email, keeping the email index unique.
+     * 
+     * @param tenantId ID of the tenant to update
+     * @param newEmail The new email address
+     * @return true if the email was changed, false if the tenant is unknown or the email is taken
+     */
+    public boolean changeEmail(String tenantId, String newEmail) {
+        Tenant tenant = byId.get(tenantId);
+        if (tenant == null) return false;
+        if (isIndexedEmail(newEmail)) {
+            Tenant holder = byEmail.putIfAbsent(newEmail, tenant);
+            if (holder != null && holder != tenant) return false;
+        }
+        String oldEmail = tenant.getEmail();
+        tenant.setEmail(newEmail);
+        if (isIndexedEmail(oldEmail) && !oldEmail.equals(newEmail)) {
+            byEmail.remove(oldEmail, tenant);
+        }
+        return true;
+    }
+
+    public Tenant findById(String tenantId) { return tenantId == null ? null : byId.get(tenantId); }
+    public Tenant findByEmail(String email) { return email == null ? null : byEmail.get(email); }
+    public int size() { return byId.size(); }
+    public boolean isEmpty() { return byId.isEmpty(); }
+
+    /**
+     * Gets a read-only live view of all tenants in insertion order.
+     * @return Unmodifiable collection of registered tenants
+     */
+    public Collection<Tenant> values() { return Collections.unmodifiableCollection(byInsertion.values()); }
+
+    /**
+     * Gets a read-only live view of the tenants registered after a given one, in insertion order.
+     * @param registrySeq Insertion sequence of the last tenant already seen, 0 for all
+     */
+    public Collection<Tenant> valuesAfter(long registrySeq) {
+        return Collections.unmodifiableCollection(byInsertion.tailMap(registrySeq, false).values());
+    }
+
+    // Placeholder emails from the short Tenant constructors are not unique, so they stay unindexed
+    private static boolean isIndexedEmail(String email) {
+        return email != null && !email.equals(Tenant.NO_EMAIL);
+    }
+}
+
 // PGOwner class with enhanced features
 class PGOwner extends User {
-    private List<Tenant> tenants = new ArrayList<>();
-    private Map<String, Room> rooms = new HashMap<>();
+    private static final int LOCK_STRIPES = 256;
+    static final int CONSOLE_CHUNK_CHARS = 8192; // listings are printed in chunks of about this size
+    static final int EVENT_BUS_CAPACITY = 1 << 16; // events retained for replay and slow subscribers
+    static final int FORECAST_DAYS = 30; // period rent suggestions are priced for
+
+    private TenantRegistry tenants = new TenantRegistry();
+    private Map<String, Room> rooms = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListMap<Long, Room> roomsByInsertion = new ConcurrentSkipListMap<>();
+    private final AtomicLong roomInsertions = new AtomicLong();
+    private final VacancyIndex vacancies = new VacancyIndex();
+    private final BedAllocator bedAllocator = new BedAllocator();
+    // Per-tenant lock stripes: mutations of one tenant are serialized, different tenants proceed in parallel
+    private final Object[] tenantLocks = new Object[LOCK_STRIPES];
+    private ReportAggregates aggregates = new ReportAggregates();
+    private PaymentLedger ledger = new PaymentLedger(1024, aggregates);
+    private final PaymentScheduler scheduler = new PaymentScheduler(ledger);
+    private BulkBillingEngine billing = new BulkBillingEngine();
+    private volatile DocumentStore documentStore; // null when document content is not stored
+    private volatile EventBus events; // created by the first getEventBus call
+    private volatile OccupancyForecast forecast; // rebuilt when the stay version moves on
 
     public PGOwner(String userId, String name, String email, String password) {
         this.userId = userId;
         this.name = name;
         this.email = email;
-        this.password = password;
+        this.password = PasswordHasher.hash(password);
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            tenantLocks[i] = new Object();
+        }
     }
 
     @Override
@@ -149,7 +841,11 @@ class PGOwner extends User {
             System.out.println("9. Generate Bulk Payments");
             System.out.println("10. Change Password");
             System.out.println("11. Optimize Rent Prices");
-            System.out.println("12. Logout");
+            System.out.println("12. View Due & Overdue Payments");
+            System.out.println("13. Import Tenants/Rooms from File");
+            System.out.println("14. Export Data to File");
+            System.out.println("15. Room Reservations");
+            System.out.println("16. Logout");
             System.out.print("Select option: ");
 
             int choice = scanner.nextInt();
@@ -190,6 +886,18 @@ class PGOwner extends User {
                     suggestOptimizedRents();
                     break;
                 case 12:
+                    viewDuePayments();
+                    break;
+                case 13:
+                    importUI(scanner);
+                    break;
+                case 14:
+                    exportUI(scanner);
+                    break;
+                case 15:
+                    reservationsUI(scanner);
+                    break;
+                case 16:
                     logout();
                     break;
                 default:
@@ -211,9 +919,9 @@ class PGOwner extends User {
         System.out.print("Enter Contact: ");
         String contact = scanner.nextLine();
         System.out.print("Enter Move-in Date (yyyy-mm-dd): ");
-        Date moveIn = parseDate(scanner.nextLine());
+        int moveIn = parseDay(scanner.nextLine());
         System.out.print("Enter Move-out Date (yyyy-mm-dd): ");
-        Date moveOut = parseDate(scanner.nextLine());
+        int moveOut = parseDay(scanner.nextLine());
         
         System.out.println("\nSelect Tenant Type:");
         System.out.println("1. Daily");
@@ -253,10 +961,15 @@ class PGOwner extends User {
         }
 
         tenant.setContact(contact);
-        tenant.setMoveInDate(moveIn);
-        tenant.setMoveOutDate(moveOut);
-        addTenant(tenant);
-        System.out.println("Tenant added successfully!");
+        tenant.setMoveInDay(moveIn);
+        tenant.setMoveOutDay(moveOut);
+        try {
+            EpochDays.checkStay(moveIn, moveOut);
+            addTenant(tenant);
+            System.out.println("Tenant added successfully!");
+        } catch (IllegalArgumentException e) {
+            System.out.println("Error: " + e.getMessage());
+        }
     }
 
     private void editTenantUI(Scanner scanner) {
@@ -268,18 +981,26 @@ class PGOwner extends User {
         System.out.print("Enter New Contact: ");
         String newContact = scanner.nextLine();
         System.out.print("Enter New Move-in Date (yyyy-mm-dd): ");
-        Date newMoveIn = parseDate(scanner.nextLine());
+        int newMoveIn = parseDay(scanner.nextLine());
         System.out.print("Enter New Move-out Date (yyyy-mm-dd): ");
-        Date newMoveOut = parseDate(scanner.nextLine());
+        int newMoveOut = parseDay(scanner.nextLine());
+        try {
+            EpochDays.checkStay(newMoveIn, newMoveOut);
+        } catch (IllegalArgumentException e) {
+            System.out.println("Error: " + e.getMessage());
+            return;
+        }
         
-        editTenant(tid, newName, newContact, newMoveIn, newMoveOut);
+        boolean updated = editTenant(tid, newName, newContact, newMoveIn, newMoveOut);
+        System.out.println(updated ? "Tenant details updated." : "Tenant not found.");
     }
 
     private void deleteTenantUI(Scanner scanner) {
         System.out.println("\n--- Delete Tenant ---");
         System.out.print("Enter Tenant ID to delete: ");
         String deleteId = scanner.nextLine();
-        deleteTenant(deleteId);
+        boolean deleted = deleteTenant(deleteId);
+        System.out.println(deleted ? "Tenant deleted successfully." : "Tenant not found.");
     }
 
     private void addRoomUI(Scanner scanner) {
@@ -306,42 +1027,162 @@ class PGOwner extends User {
         }
     }
 
-    private void assignRoomUI(Scanner scanner) {
-        System.out.println("\n--- Assign Room ---");
-        System.out.print("Enter Room ID: ");
-        String rId = scanner.nextLine();
-        System.out.print("Enter Tenant ID: ");
-        String tId = scanner.nextLine();
-        
-        Tenant tenant = findTenant(tId);
-        if (tenant != null) {
-            try {
-                assignRoom(rId, tenant);
-            } catch (RoomAssignmentException e) {
-                System.out.println("Error assigning room: " + e.getMessage());
+    private void importUI(Scanner scanner) {
+        System.out.println("\n--- Import from File ---");
+        System.out.print("Import (1) Tenants or (2) Rooms: ");
+        String kind = scanner.nextLine().trim();
+        System.out.print("Enter CSV or JSON file path: ");
+        Path file = Paths.get(scanner.nextLine().trim());
+        try {
+            BulkImporter importer = new BulkImporter(this);
+            ImportResult result = kind.equals("2") ? importer.importRooms(file) : importer.importTenants(file);
+            System.out.println(result);
+            for (String error : result.getErrors()) {
+                System.out.println("  " + error);
             }
-        } else {
-            System.out.println("Tenant not found!");
+            if (result.getRejected() > result.getErrors().size()) {
+                System.out.println("  ... " + (result.getRejected() - result.getErrors().size()) + " more");
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            System.out.println("Error: " + e.getMessage());
         }
     }
 
-    private void generateBulkPaymentsUI(Scanner scanner) {
-        System.out.println("\n--- Generate Bulk Payments ---");
-        System.out.print("Enter number of months to generate payments: ");
-        int months = scanner.nextInt();
-        scanner.nextLine();
-        System.out.print("Enter Start Date (yyyy-mm-dd): ");
-        Date startDate = parseDate(scanner.nextLine());
-        generateBulkPayments(months, startDate);
+    private void exportUI(Scanner scanner) {
+        System.out.println("\n--- Export to File ---");
+        System.out.print("Export (tenants/rooms/payments/report): ");
+        String kind = scanner.nextLine().trim().toLowerCase();
+        System.out.print("Enter file path (.csv or .jsonl): ");
+        Path file = Paths.get(scanner.nextLine().trim());
+        try {
+            long records = new ReportExporter(this).exportToFile(kind, file);
+            System.out.println("Exported " + records + " records to " + file);
+        } catch (IOException | IllegalArgumentException e) {
+            System.out.println("Error: " + e.getMessage());
+        }
     }
 
-    private void changePasswordUI(Scanner scanner) {
-        System.out.println("\n--- Change Password ---");
+    private void reservationsUI(Scanner scanner) {
+        System.out.println("\n--- Room Reservations ---");
+        System.out.print("Enter Room ID: ");
+        String rId = scanner.nextLine().trim();
+        Room room = getRoom(rId);
+        if (room == null) {
+            System.out.println("Room not found!");
+            return;
+        }
+        List<Reservation> reservations = room.getCalendar().getReservations();
+        System.out.println(room.getSharingType() + " room, " + room.getCalendar().getBedCount() + " bed(s)");
+        if (reservations.isEmpty()) System.out.println("No reservations.");
+        for (Reservation reservation : reservations) System.out.println("- " + reservation);
+        System.out.print("Reserve (r), cancel (c) or back (blank): ");
+        String action = scanner.nextLine().trim().toLowerCase();
+        if (!action.equals("r") && !action.equals("c")) return;
+        System.out.print("Enter Tenant ID: ");
+        String tId = scanner.nextLine().trim();
+        System.out.print("From (yyyy-MM-dd): ");
+        int from = EpochDays.parse(scanner.nextLine().trim());
+        if (from == EpochDays.NONE) {
+            System.out.println("Invalid date format.");
+            return;
+        }
+        if (action.equals("c")) {
+            System.out.println(cancelReservation(rId, tId, from) ? "Reservation cancelled." : "Reservation not found!");
+            return;
+        }
+        System.out.print("To (yyyy-MM-dd, blank for open-ended): ");
+        String to = scanner.nextLine().trim();
+        Tenant tenant = findTenant(tId);
+        if (tenant == null) {
+            System.out.println("Tenant not found!");
+            return;
+        }
+        try {
+            int toDay = to.isEmpty() ? EpochDays.NONE : EpochDays.parse(to);
+            if (!to.isEmpty() && toDay == EpochDays.NONE) {
+                System.out.println("Invalid date format.");
+                return;
+            }
+            Reservation reservation = reserveRoom(rId, tenant, from, toDay);
+            System.out.println("Reserved bed " + (reservation.getBed() + 1) + " of room " + rId);
+        } catch (IllegalArgumentException e) {
+            System.out.println("Error: " + e.getMessage());
+        } catch (RoomAssignmentException e) {
+            System.out.println("Error reserving room: " + e.getMessage());
+        }
+    }
+
+    private void assignRoomUI(Scanner scanner) {
+        System.out.println("\n--- Assign Room ---");
+        System.out.print("Enter Room ID (leave blank to pick the best vacant room): ");
+        String rId = scanner.nextLine().trim();
+        System.out.print("Enter Tenant ID: ");
+        String tId = scanner.nextLine();
+        
+        Tenant tenant = findTenant(tId);
+        if (tenant != null) {
+            try {
+                if (rId.isEmpty()) {
+                    System.out.print("Sharing Type (Single/Double/Triple/Four, blank for any): ");
+                    String sharingType = scanner.nextLine().trim();
+                    System.out.print("Maximum Rent (blank for any): ");
+                    String maxRent = scanner.nextLine().trim();
+                    RoomCriteria criteria = new RoomCriteria();
+                    if (!sharingType.isEmpty()) criteria.sharingType(sharingType);
+                    if (!maxRent.isEmpty()) criteria.rentBetween(0, Double.parseDouble(maxRent));
+                    Room room = assignBestVacantRoom(tenant, criteria);
+                    System.out.println("Assigned room " + room.getRoomId() + " (₹" + room.getRent() + ")");
+                } else {
+                    assignRoom(rId, tenant);
+                }
+            } catch (IllegalArgumentException e) {
+                System.out.println("Error: " + e.getMessage());
+            } catch (RoomAssignmentException e) {
+                System.out.println("Error assigning room: " + e.getMessage());
+            }
+        } else {
+            System.out.println("Tenant not found!");
+        }
+    }
+
+    private void viewDuePayments() {
+        int today = EpochDays.today();
+        System.out.println("\n--- DUE TODAY ---");
+        printPayments(scheduler.dueOn(today));
+        System.out.println("\n--- OVERDUE ---");
+        printPayments(scheduler.overdue(today, 1));
+    }
+
+    private void printPayments(List<Payment> payments) {
+        if (payments.isEmpty()) {
+            System.out.println("None.");
+            return;
+        }
+        for (Payment payment : payments) {
+            System.out.println("Payment ID: " + payment.getPaymentId() +
+                               " | Amount: ₹" + payment.getAmount() +
+                               " | Due: " + EpochDays.format(payment.getDueDay()));
+        }
+    }
+
+    private void generateBulkPaymentsUI(Scanner scanner) {
+        System.out.println("\n--- Generate Bulk Payments ---");
+        System.out.print("Enter number of months to generate payments: ");
+        int months = scanner.nextInt();
+        scanner.nextLine();
+        System.out.print("Enter Start Date (yyyy-mm-dd): ");
+        int startDay = parseDay(scanner.nextLine());
+        generateBulkPayments(months, startDay);
+        System.out.println("Payment records generated for all tenants.");
+    }
+
+    private void changePasswordUI(Scanner scanner) {
+        System.out.println("\n--- Change Password ---");
         System.out.print("Enter current password: ");
         String current = scanner.nextLine();
         System.out.print("Enter new password: ");
         String newPass = scanner.nextLine();
-        changePassword(current, newPass);
+        changePasswordUI(current, newPass);
     }
 
     private void viewAllTenants() {
@@ -351,11 +1192,19 @@ class PGOwner extends User {
             return;
         }
         
-        for (Tenant t : tenants) {
-            System.out.println("ID: " + t.getUserId() + " | Name: " + t.getName() + 
-                             " | Email: " + t.getEmail() + " | Room: " + 
-                             (t.getRoom() != null ? t.getRoom().getRoomId() : "Not assigned"));
+        // Rows are gathered in one reused builder and printed in chunks rather than line by line
+        StringBuilder lines = new StringBuilder(CONSOLE_CHUNK_CHARS + 256);
+        for (Tenant t : tenants.values()) {
+            Room room = t.getRoom();
+            lines.append("ID: ").append(t.getUserId()).append(" | Name: ").append(t.getName())
+                 .append(" | Email: ").append(t.getEmail()).append(" | Room: ")
+                 .append(room != null ? room.getRoomId() : "Not assigned").append('\n');
+            if (lines.length() >= CONSOLE_CHUNK_CHARS) {
+                System.out.print(lines);
+                lines.setLength(0);
+            }
         }
+        System.out.print(lines);
     }
 
     private void viewAllRooms() {
@@ -365,19 +1214,41 @@ class PGOwner extends User {
             return;
         }
         
+        StringBuilder lines = new StringBuilder(CONSOLE_CHUNK_CHARS + 256);
         for (Room r : rooms.values()) {
-            System.out.println("Room ID: " + r.getRoomId() + " | Rent: ₹" + r.getRent() + 
-                              " | Status: " + (r.isOccupied() ? "Occupied" : "Vacant"));
+            lines.append("Room ID: ").append(r.getRoomId()).append(" | Rent: ₹").append(r.getRent())
+                 .append(" | Status: ").append(r.isOccupied() ? "Occupied" : "Vacant")
+                 .append(" (").append(r.getOccupiedBeds()).append('/').append(r.getBedCount()).append(" beds)\n");
+            if (lines.length() >= CONSOLE_CHUNK_CHARS) {
+                System.out.print(lines);
+                lines.setLength(0);
+            }
         }
+        System.out.print(lines);
     }
 
     private Tenant findTenant(String tenantId) {
-        for (Tenant t : tenants) {
-            if (t.getUserId().equals(tenantId)) {
-                return t;
-            }
-        }
-        return null;
+        return tenants.findById(tenantId);
+    }
+
+    /**
+     * Looks up a tenant by user ID through the registry's primary index.
+     * 
+     * @param tenantId User ID of the tenant
+     * @return The matching tenant, or null if none is registered
+     */
+    public Tenant findTenantById(String tenantId) {
+        return tenants.findById(tenantId);
+    }
+
+    /**
+     * Looks up a tenant by email through the registry's email index.
+     * 
+     * @param email Email address of the tenant
+     * @return The matching tenant, or null if none is registered
+     */
+    public Tenant findTenantByEmail(String email) {
+        return tenants.findByEmail(email);
     }
 
     public class RoomValidator {
@@ -386,45 +1257,398 @@ class PGOwner extends User {
         }
     }
     
-    public List<Tenant> getTenants() {return this.tenants;}
-    public void addTenant(Tenant tenant) { tenants.add(tenant); }
+    public List<Tenant> getTenants() {return new ArrayList<>(tenants.values());}
+    PaymentLedger getLedger() { return ledger; }
+    public Collection<Room> getRooms() { return Collections.unmodifiableCollection(rooms.values()); }
+    public Room getRoom(String roomId) { return roomId == null ? null : rooms.get(roomId); }
+    public int getTenantCount() { return tenants.size(); }
+
+    // Live views in insertion order, starting after the record with the given sequence; used for paging
+    Collection<Tenant> tenantsAfter(long registrySeq) { return tenants.valuesAfter(registrySeq); }
+    Collection<Room> roomsAfter(long registrySeq) {
+        return Collections.unmodifiableCollection(roomsByInsertion.tailMap(registrySeq, false).values());
+    }
+    public String getUserId() { return userId; }
+    public String getEmail() { return email; }
+
+    private Object lockFor(String tenantId) {
+        return tenantLocks[(Objects.hashCode(tenantId) & 0x7fffffff) % LOCK_STRIPES];
+    }
+
+    public void addTenant(Tenant tenant) {
+        long started = Metrics.GLOBAL.start();
+        synchronized (lockFor(tenant.getUserId())) {
+            tenants.add(tenant);
+            ledger.adopt(tenant);
+            tenant.journal = journal;
+            tenant.documentStore = documentStore;
+            tenant.events = events;
+            if (journal != null) journal.logAddTenant(tenant);
+            publish(DomainEvent.tenant(DomainEvent.TENANT_ADDED, tenant.getUserId()));
+        }
+        Metrics.GLOBAL.addTenant.recordSince(started);
+    }
+
+    /**
+     * Stores the content of this owner's tenants' documents in a document store.
+     * 
+     * @param store Store for document content
+     */
+    void attachDocumentStore(DocumentStore store) {
+        this.documentStore = store;
+        for (Tenant t : tenants.values()) {
+            t.documentStore = store;
+        }
+    }
+
+    public DocumentStore getDocumentStore() { return documentStore; }
+
+    /**
+     * Gets the stream of changes to this owner's tenants, rooms and payments, creating it
+     * on first use. Changes made before that are not on the stream.
+     * 
+     * @return The owner's event bus
+     */
+    public EventBus getEventBus() {
+        EventBus bus = events;
+        if (bus != null) return bus;
+        synchronized (this) {
+            if (events == null) {
+                bus = new EventBus(EVENT_BUS_CAPACITY);
+                events = bus; // set first, so tenants and rooms added from now on pick it up
+                for (Tenant t : tenants.values()) t.events = bus;
+                for (Room r : rooms.values()) r.events = bus;
+            }
+            return events;
+        }
+    }
+
+    private void publish(DomainEvent event) {
+        EventBus bus = events;
+        if (bus != null) bus.publish(event);
+    }
+
+    /**
+     * Starts journaling every mutation of this owner and its tenants to a persistence engine.
+     * 
+     * @param journal The engine that recovered this owner's state
+     */
+    void attachJournal(PersistenceEngine journal) {
+        this.journal = journal;
+        for (Tenant t : tenants.values()) {
+            t.journal = journal;
+        }
+    }
     private RoomValidator validator= new RoomValidator();
-    public void editTenant(String tenantId, String name, String contact, Date moveIn, Date moveOut) {
-        for (Tenant t : tenants) {
-            if (t.getUserId().equals(tenantId)) {
+    public boolean editTenant(String tenantId, String name, String contact, int moveIn, int moveOut) {
+        synchronized (lockFor(tenantId)) {
+            Tenant t = tenants.findById(tenantId);
+            if (t != null) {
                 t.setName(name);
                 t.setContact(contact);
-                t.setMoveInDate(moveIn);
-                t.setMoveOutDate(moveOut);
-                System.out.println("Tenant details updated.");
-                return;
+                t.setMoveInDay(moveIn);
+                t.setMoveOutDay(moveOut);
+                aggregates.staysChanged();
+                if (journal != null) journal.logEditTenant(tenantId, name, contact, moveIn, moveOut);
+                publish(DomainEvent.tenant(DomainEvent.TENANT_EDITED, tenantId));
+                EventLog.GLOBAL.log(EventLog.INFO, "tenant.edited", "id", tenantId);
+                return true;
             }
         }
-        System.out.println("Tenant not found.");
+        EventLog.GLOBAL.log(EventLog.WARN, "tenant.edit_missing", "id", tenantId);
+        return false;
     }
 
-    public void deleteTenant(String tenantId) {
-        if (tenants.removeIf(t -> t.getUserId().equals(tenantId))) {
-            System.out.println("Tenant deleted successfully.");
-        } else {
-            System.out.println("Tenant not found.");
+    public boolean deleteTenant(String tenantId) {
+        Tenant removed;
+        synchronized (lockFor(tenantId)) {
+            removed = tenants.remove(tenantId);
+            if (removed != null) {
+                removed.journal = null;
+                removed.documentStore = null;
+                ledger.release(removed);
+                Room room = removed.getRoom();
+                if (room != null) {
+                    room.vacate(removed); // frees the room so occupancy stays accurate
+                }
+                removed.setRoom(null);
+                removed.events = null;
+                if (removed.bookedRooms != null) {
+                    for (Room booked : removed.bookedRooms) booked.getCalendar().cancelAll(tenantId);
+                    removed.bookedRooms = null;
+                }
+                if (journal != null) journal.logDeleteTenant(tenantId);
+                publish(DomainEvent.tenant(DomainEvent.TENANT_DELETED, tenantId));
+            }
         }
+        EventLog.GLOBAL.log(removed != null ? EventLog.INFO : EventLog.WARN,
+                            removed != null ? "tenant.deleted" : "tenant.delete_missing", "id", tenantId);
+        return removed != null;
     }
 
     public void assignRoom(String roomId, Tenant tenant) throws RoomAssignmentException {
+        long started = Metrics.GLOBAL.start();
+        try {
+            assignRoomUntimed(roomId, tenant, -1);
+        } finally {
+            Metrics.GLOBAL.assignRoom.recordSince(started);
+        }
+    }
+
+    // Moves a tenant into a given bed if it suits the stay, else the lowest suitable bed (any bed when -1)
+    void assignRoom(String roomId, Tenant tenant, int bed) throws RoomAssignmentException {
+        long started = Metrics.GLOBAL.start();
+        try {
+            assignRoomUntimed(roomId, tenant, bed);
+        } finally {
+            Metrics.GLOBAL.assignRoom.recordSince(started);
+        }
+    }
+
+    private void assignRoomUntimed(String roomId, Tenant tenant, int preferredBed) throws RoomAssignmentException {
         if (roomId == null) {
             throw new RoomAssignmentException("Room ID cannot be null");
         }
         Room room = rooms.get(roomId);
-        if (room != null && !room.isOccupied()) {
-            room.setTenant(tenant);
+        if (room == null) {
+            throw new RoomAssignmentException("Room not found: " + roomId);
+        }
+        synchronized (lockFor(tenant.getUserId())) {
+            if (tenants.findById(tenant.getUserId()) != tenant) {
+                throw new RoomAssignmentException("Tenant is not registered: " + tenant.getUserId());
+            }
+            Room previous = tenant.getRoom();
+            if (previous == room) return;
+            int moveIn = tenant.getMoveInDay(), moveOut = tenant.getMoveOutDay();
+            if (moveIn != EpochDays.NONE && moveOut != EpochDays.NONE && moveOut < moveIn) {
+                throw new RoomAssignmentException("Tenant " + tenant.getUserId() + " moves out before moving in");
+            }
+            RoomCalendar calendar = room.getCalendar();
+            int bed;
+            synchronized (calendar) { // no booking can take the bed between the check and the move-in
+                bed = calendar.bedFor(tenant, preferredBed);
+                // The compare-and-set is the only way into a free bed, so it can never be double-booked
+                if (bed < 0 || !room.assignBed(bed, tenant)) {
+                    Metrics.GLOBAL.assignmentConflicts.increment();
+                    throw new RoomAssignmentException(room.hasFreeBed()
+                        ? "Room " + roomId + " is reserved for other tenants during this stay"
+                        : "Room " + roomId + " has no free bed");
+                }
+            }
             tenant.setRoom(room);
+            // Logged before the old bed is freed, so whoever takes it next is logged after this move
+            if (journal != null) journal.logAssignRoom(roomId, tenant.getUserId(), bed);
+            if (previous != null) previous.vacate(tenant);
+        }
+        EventLog.GLOBAL.log(EventLog.INFO, "room.assigned", "room", roomId, "tenant", tenant.getUserId());
+    }
+
+    /**
+     * Books a bed in a room for the tenant's stay, from the move-in date (today if unset)
+     * until the move-out date (open-ended if unset).
+     * 
+     * @param roomId Room to book
+     * @param tenant A registered tenant
+     * @return The booking
+     * @throws RoomAssignmentException if the room is unknown or fully booked for the stay
+     */
+    public Reservation reserveRoom(String roomId, Tenant tenant) throws RoomAssignmentException {
+        int moveIn = tenant.getMoveInDay();
+        return reserveRoom(roomId, tenant, moveIn != EpochDays.NONE ? moveIn : EpochDays.today(), tenant.getMoveOutDay());
+    }
+
+    /**
+     * Books the highest free bed in a room for a stay. Concurrent bookings of one room are
+     * serialized, so a bed is never given out twice for the same day.
+     * 
+     * @param roomId Room to book
+     * @param tenant A registered tenant
+     * @param fromDay First day of the stay as an epoch day
+     * @param toDay Day the stay ends (exclusive), or {@link EpochDays#NONE} for an open-ended stay
+     * @return The booking
+     * @throws RoomAssignmentException if the room is unknown or fully booked for the stay
+     * @throws IllegalArgumentException if the dates are not a valid stay
+     */
+    public Reservation reserveRoom(String roomId, Tenant tenant, int fromDay, int toDay) throws RoomAssignmentException {
+        if (fromDay == EpochDays.NONE || (toDay != EpochDays.NONE && toDay <= fromDay)) {
+            throw new IllegalArgumentException("A stay must end after it starts");
+        }
+        Room room = roomId == null ? null : rooms.get(roomId);
+        if (room == null) {
+            throw new RoomAssignmentException("Room not found: " + roomId);
+        }
+        Reservation reservation;
+        synchronized (lockFor(tenant.getUserId())) {
+            if (tenants.findById(tenant.getUserId()) != tenant) {
+                throw new RoomAssignmentException("Tenant is not registered: " + tenant.getUserId());
+            }
+            if (room.getCalendar().find(tenant.getUserId(), fromDay) != null) {
+                throw new RoomAssignmentException(tenant.getUserId() + " already has a booking in room " + roomId
+                                                  + " from " + EpochDays.format(fromDay));
+            }
+            reservation = room.getCalendar().reserve(tenant.getUserId(), fromDay, toDay);
+            if (reservation == null) {
+                Metrics.GLOBAL.assignmentConflicts.increment();
+                throw new RoomAssignmentException("Room " + roomId + " has no free bed from " + EpochDays.format(fromDay)
+                                                  + (toDay == EpochDays.NONE ? "" : " to " + EpochDays.format(toDay)));
+            }
+            if (tenant.bookedRooms == null) tenant.bookedRooms = new ArrayList<>(2);
+            if (!tenant.bookedRooms.contains(room)) tenant.bookedRooms.add(room);
+            if (journal != null) journal.logReserveRoom(reservation);
+            publish(DomainEvent.reservation(DomainEvent.ROOM_RESERVED, reservation));
+        }
+        EventLog.GLOBAL.log(EventLog.INFO, "room.reserved", "room", roomId, "tenant", tenant.getUserId(),
+                            "bed", reservation.getBed() + 1, "from", EpochDays.format(fromDay));
+        return reservation;
+    }
+
+    /**
+     * Cancels a tenant's booking of a room.
+     * 
+     * @param roomId The booked room
+     * @param tenantId The tenant the booking is for
+     * @param fromDay First day of the booked stay
+     * @return true if the booking existed
+     */
+    public boolean cancelReservation(String roomId, String tenantId, int fromDay) {
+        Room room = roomId == null ? null : rooms.get(roomId);
+        if (room == null) return false;
+        Reservation cancelled;
+        synchronized (lockFor(tenantId)) {
+            cancelled = room.getCalendar().cancel(tenantId, fromDay);
+            if (cancelled != null) {
+                if (journal != null) journal.logCancelReservation(roomId, tenantId, fromDay);
+                publish(DomainEvent.reservation(DomainEvent.RESERVATION_CANCELLED, cancelled));
+            }
+        }
+        EventLog.GLOBAL.log(cancelled != null ? EventLog.INFO : EventLog.WARN,
+                            cancelled != null ? "reservation.cancelled" : "reservation.cancel_missing",
+                            "room", roomId, "tenant", tenantId, "from", EpochDays.format(fromDay));
+        return cancelled != null;
+    }
+
+    // Puts a booking from a snapshot back on its bed
+    void restoreReservation(Reservation reservation) {
+        Room room = rooms.get(reservation.getRoomId());
+        Tenant tenant = tenants.findById(reservation.getTenantId());
+        if (room == null || tenant == null) return;
+        synchronized (lockFor(tenant.getUserId())) {
+            room.getCalendar().restore(reservation);
+            if (tenant.bookedRooms == null) tenant.bookedRooms = new ArrayList<>(2);
+            if (!tenant.bookedRooms.contains(room)) tenant.bookedRooms.add(room);
+        }
+    }
+
+    /**
+     * Finds a tenant's booking of a room that starts on the given day.
+     * @return The booking, or null if there is none
+     */
+    public Reservation findReservation(String roomId, String tenantId, int fromDay) {
+        Room room = roomId == null ? null : rooms.get(roomId);
+        return room == null ? null : room.getCalendar().find(tenantId, fromDay);
+    }
+
+    /**
+     * Finds the cheapest vacant room that meets the criteria. Sharing type, rent band and
+     * minimum amenity score are matched by seeking in sorted indexes; the minimum size is
+     * checked room by room along the rent band.
+     * 
+     * @param criteria Required sharing type, rent band, size and amenities
+     * @return The best matching vacant room, or null if none is free
+     */
+    public Room findBestVacantRoom(RoomCriteria criteria) {
+        return vacancies.findBest(criteria);
+    }
+
+    /**
+     * Assigns the cheapest vacant room that meets the criteria. If another thread takes
+     * the chosen room first, the next best room is tried.
+     * 
+     * @param tenant Tenant to assign
+     * @param criteria Required sharing type, rent band, size and amenities
+     * @return The assigned room
+     * @throws RoomAssignmentException if no vacant room matches
+     */
+    public Room assignBestVacantRoom(Tenant tenant, RoomCriteria criteria) throws RoomAssignmentException {
+        while (true) {
+            Room room = vacancies.findBest(criteria);
+            if (room == null) throw new RoomAssignmentException("No vacant room matches the criteria");
+            if (tenant.getRoom() == room) return room;
+            try {
+                assignRoom(room.getRoomId(), tenant);
+                return room;
+            } catch (RoomAssignmentException e) {
+                if (room.hasFreeBed() || tenants.findById(tenant.getUserId()) != tenant) throw e;
+                // filled meanwhile; try the next best
+            }
+        }
+    }
+
+    /**
+     * Moves a tenant into any free bed, found through the owner's free-bed bitmap.
+     * 
+     * @param tenant A registered tenant
+     * @return The room the tenant moved into
+     * @throws RoomAssignmentException if no free bed can take the tenant
+     */
+    public Room assignFreeBed(Tenant tenant) throws RoomAssignmentException {
+        long slot = bedAllocator.findFree();
+        while (slot >= 0) {
+            Room room = bedAllocator.roomAt(slot);
+            if (room != null && room == tenant.getRoom()) return room;
+            int bed = (int) (slot % BedAllocator.BEDS_PER_ROOM);
+            if (room != null && room.getTenant(bed) == null) {
+                try {
+                    assignRoom(room.getRoomId(), tenant, bed);
+                    return room;
+                } catch (RoomAssignmentException e) {
+                    if (tenants.findById(tenant.getUserId()) != tenant) throw e;
+                    // filled meanwhile, or reserved during the tenant's stay; move on to the next room
+                }
+            }
+            slot = bedAllocator.findFreeFrom((slot / BedAllocator.BEDS_PER_ROOM + 1) * BedAllocator.BEDS_PER_ROOM);
         }
+        throw new RoomAssignmentException("No free bed");
     }
 
+    VacancyIndex getVacancies() { return vacancies; }
+
+    /**
+     * Gets the bitmap of this owner's free beds.
+     * @return The bed allocator
+     */
+    public BedAllocator getBedAllocator() { return bedAllocator; }
+
+    /**
+     * Gets the due-date index over this owner's unpaid payments.
+     * @return The payment scheduler
+     */
+    public PaymentScheduler getScheduler() { return scheduler; }
+
     public void addRoom(Room room) {
         if (validator.isValid(room)) {
-            rooms.put(room.getRoomId(), room);
+            Room replaced = rooms.put(room.getRoomId(), room);
+            if (replaced != null) {
+                roomsByInsertion.remove(replaced.registrySeq, replaced);
+                aggregates.roomRemoved(replaced);
+                replaced.aggregates = null;
+                replaced.vacancies = null;
+                replaced.events = null;
+                vacancies.roomRemoved(replaced);
+                replaced.allocator = null;
+                bedAllocator.roomRemoved(replaced);
+            }
+            room.aggregates = aggregates;
+            aggregates.roomAdded(room);
+            room.vacancies = vacancies;
+            vacancies.roomAdded(room);
+            room.allocator = bedAllocator;
+            bedAllocator.roomAdded(room);
+            room.events = events;
+            room.registrySeq = roomInsertions.incrementAndGet();
+            roomsByInsertion.put(room.registrySeq, room);
+            if (journal != null) journal.logAddRoom(room);
+            publish(DomainEvent.room(DomainEvent.ROOM_ADDED, room.getRoomId(), null));
         }
     }
     
@@ -434,77 +1658,159 @@ class PGOwner extends User {
     }
 
     public void generateReport() {
+        long started = Metrics.GLOBAL.start();
         System.out.println("\n--- PG STATUS REPORT ---");
         System.out.println("Total Tenants: " + tenants.size());
-        long occupied = rooms.values().stream().filter(Room::isOccupied).count();
+        int total = aggregates.totalRooms();
+        long occupied = aggregates.occupiedRooms();
+        int beds = aggregates.totalBeds();
+        long occupiedBeds = aggregates.occupiedBeds();
         System.out.println("Occupied Rooms: " + occupied);
-        System.out.println("Vacant Rooms: " + (rooms.size() - occupied));
-        System.out.println("Occupancy Rate: " + (rooms.size() > 0 ? 
-                              (occupied * 100 / rooms.size()) + "%" : "N/A"));
+        System.out.println("Vacant Rooms: " + (total - occupied));
+        System.out.println("Occupied Beds: " + occupiedBeds + "/" + beds);
+        System.out.println("Free Beds: " + (beds - occupiedBeds));
+        System.out.println("Occupancy Rate: " + (beds > 0 ? 
+                              (occupiedBeds * 100 / beds) + "%" : "N/A"));
+        System.out.println("Occupancy by Sharing Type:");
+        for (int i = 0; i < Room.SHARING_TYPES.length; i++) {
+            System.out.println("  " + Room.SHARING_TYPES[i] + ": " + aggregates.occupiedBedsOfType(i) +
+                               "/" + aggregates.bedsOfType(i) + " beds, " + aggregates.occupiedOfType(i) +
+                               "/" + aggregates.roomsOfType(i) + " rooms");
+        }
+        System.out.printf("Monthly Rent Due: ₹%.0f%n", aggregates.rentDue());
+        System.out.printf("Pending Payments: %d (₹%.0f)%n", aggregates.pendingPayments(), aggregates.pendingAmount());
+        Metrics.GLOBAL.report.recordSince(started);
     }
-    public void generateBulkPayments(int months, Date startDate) {
-        Calendar cal = Calendar.getInstance();
-        cal.setTime(startDate);
 
-        for (Tenant tenant : tenants) {
-            Room room = tenant.getRoom();
-            if (room != null) {
-                for (int i = 0; i < months; i++) {
-                    String paymentId = tenant.getUserId() + "-M" + (i+1);
-                    Payment payment = new Payment(paymentId, room.getRent(), cal.getTime());
-                    tenant.addPayment(payment);
-                    cal.add(Calendar.MONTH, 1);
-                }
-                cal.setTime(startDate);
-            }
+    /**
+     * Gets the running occupancy and payment totals behind the reports.
+     * @return Live aggregates for this owner
+     */
+    public ReportAggregates getAggregates() { return aggregates; }
+    /**
+     * Bills every tenant with a room over the next {@code months} months, following each
+     * tenant type's payment period. Payments that already exist are not generated again.
+     * 
+     * @param months Length of the billing horizon in months
+     * @param startDay First due date as an epoch day
+     * @return Number of new payment records
+     */
+    public int generateBulkPayments(int months, int startDay) {
+        long started = Metrics.GLOBAL.start();
+        int generated = billing.generate(ledger, tenants.values(), months, startDay, journal);
+        if (generated > 0) publish(DomainEvent.paymentsGenerated(startDay, generated));
+        Metrics.GLOBAL.bulkPayments.recordSince(started);
+        Metrics.GLOBAL.paymentsGenerated.add(generated);
+        if (EventLog.GLOBAL.isEnabled(EventLog.INFO)) {
+            EventLog.GLOBAL.log(EventLog.INFO, "payments.generated", "months", months,
+                                "start", EpochDays.format(startDay), "count", generated);
         }
-        System.out.println("Payment records generated for all tenants.");
+        return generated;
     }
 
-    private Date parseDate(String dateStr) {
-        try {
-            return new SimpleDateFormat("yyyy-MM-dd").parse(dateStr);
-        } catch (ParseException e) {
+    // Replays one tenant's share of a journaled billing run; see BulkBillingEngine.restore
+    void restoreBilledPayments(String tenantId, int months, int startDay, int period, double amount) {
+        Tenant tenant = tenants.findById(tenantId);
+        if (tenant != null) billing.restore(ledger, tenant, months, startDay, period, amount);
+    }
+
+    private int parseDay(String dateStr) {
+        int day = EpochDays.parse(dateStr.trim());
+        if (day == EpochDays.NONE) {
             System.out.println("Invalid date format. Using today's date.");
-            return new Date();
+            return EpochDays.today();
         }
+        return day;
     }
 
     public void suggestOptimizedRents() {
-        double occupancyRate = calculateOccupancyRate();
+        int today = EpochDays.today();
+        OccupancyForecast outlook = getForecast();
+        // Priced for the coming month, so known move-ins and move-outs count
+        double occupancyRate = outlook.occupancyRate(today, today + FORECAST_DAYS);
         
         System.out.println("\n=== RENT OPTIMIZATION REPORT ===");
-        System.out.printf("Current Occupancy: %.1f%%\n", occupancyRate * 100);
-        System.out.println("Sharing Type | Room | Current Rent | Suggested Rent | Change");
-        System.out.println("----------------------------------------------------------");
-        
-        // Define the order of sharing types
-        List<String> sharingOrder = Arrays.asList("Single", "Double", "Triple", "Four");
+        System.out.printf("Current Occupancy: %.1f%%\n", calculateOccupancyRate() * 100);
+        System.out.printf("Forecast Occupancy (next %d days): %.1f%%, expected rent ₹%.0f\n", FORECAST_DAYS,
+                          occupancyRate * 100, outlook.expectedRevenue(today, today + FORECAST_DAYS));
+        // Priced in one batch, already ordered by sharing type; with a challenger both rule sets run in the same pass
+        RentSuggestions suggestions = getOptimizedRents(occupancyRate, null);
+        PricingRules challenger = suggestions.challenger();
+        if (challenger == null) {
+            System.out.println("Sharing Type | Room | Current Rent | Suggested Rent | Change");
+            System.out.println("----------------------------------------------------------");
+        } else {
+            System.out.printf("Comparing rules \"%s\" with \"%s\"\n", suggestions.rules().getName(), challenger.getName());
+            System.out.println("Sharing Type | Room | Current Rent | Suggested Rent | Change | Challenger Rent | Change");
+            System.out.println("----------------------------------------------------------------------------------------");
+        }
         
-        // Sort rooms by sharing type
-        rooms.values().stream()
-            .sorted((r1, r2) -> {
-                int index1 = sharingOrder.indexOf(r1.getSharingType());
-                int index2 = sharingOrder.indexOf(r2.getSharingType());
-                return Integer.compare(index1, index2);
-            })
-            .forEach(room -> {
-                double current = room.getRent();
-                double suggested = RentOptimizer.calculateOptimizedRent(room, occupancyRate);
-                double change = ((suggested - current) / current) * 100;
-                
-                System.out.printf("%-12s | %-4s | ₹%-11.0f | ₹%-13.0f | %+.1f%%\n",
-                    room.getSharingType(),
-                    room.getRoomId(),
-                    current,
-                    suggested,
-                    change);
-            });
+        for (int i = 0; i < suggestions.size(); i++) {
+            System.out.printf("%-12s | %-4s | ₹%-11.0f | ₹%-13.0f | %+.1f%%",
+                suggestions.sharingType(i),
+                suggestions.roomId(i),
+                suggestions.currentRent(i),
+                suggestions.suggestedRent(i),
+                suggestions.changePercent(i));
+            if (challenger != null) {
+                double rent = suggestions.challengerRent(i);
+                System.out.printf(" | ₹%-14.0f | %+.1f%%", rent,
+                                  (rent - suggestions.currentRent(i)) / suggestions.currentRent(i) * 100);
+            }
+            System.out.println();
+        }
+        if (challenger != null) {
+            double suggested = suggestions.totalSuggested(), challenged = suggestions.totalChallenger();
+            System.out.printf("Total suggested rent: ₹%.0f with \"%s\", ₹%.0f with \"%s\" (%+.1f%%)\n", suggested,
+                              suggestions.rules().getName(), challenged, challenger.getName(),
+                              suggested > 0 ? (challenged - suggested) / suggested * 100 : 0);
+        }
+    }
+
+    /**
+     * Prices every room in one batch pass with the active pricing rules, and with the
+     * challenger rules as well when a comparison is configured.
+     * 
+     * @param occupancyRate Occupancy rate the suggestions are based on
+     * @param reuse A table from an earlier call to refill, or null for a new one
+     * @return Suggested rents ordered by sharing type
+     */
+    public RentSuggestions getOptimizedRents(double occupancyRate, RentSuggestions reuse) {
+        long started = Metrics.GLOBAL.start();
+        RentSuggestions suggestions = RentOptimizer.optimizeAll(rooms.values(), occupancyRate, reuse);
+        Metrics.GLOBAL.rentOptimization.recordSince(started);
+        return suggestions;
+    }
+
+    /**
+     * Prices every room in one batch pass from the forecast occupancy over a period.
+     * 
+     * @param fromDay First day of the period, inclusive
+     * @param toDay Last day of the period, exclusive
+     * @param reuse A table from an earlier call to refill, or null for a new one
+     * @return Suggested rents ordered by sharing type
+     */
+    public RentSuggestions getOptimizedRents(int fromDay, int toDay, RentSuggestions reuse) {
+        return getOptimizedRents(getForecast().occupancyRate(fromDay, toDay), reuse);
+    }
+
+    /**
+     * Gets the occupancy and revenue forecast for this owner's current stays. The forecast
+     * is cached and only rebuilt after rooms, occupancy or tenant dates have changed.
+     * @return The current forecast
+     */
+    public OccupancyForecast getForecast() {
+        long version = aggregates.stayVersion();
+        OccupancyForecast current = forecast;
+        if (current != null && current.version == version) return current;
+        // A change during the build bumps the version again, so the next call rebuilds
+        current = new OccupancyForecast(rooms.values(), version);
+        forecast = current;
+        return current;
     }
 
     private double calculateOccupancyRate() {
-        long occupied = rooms.values().stream().filter(Room::isOccupied).count();
-        return rooms.isEmpty() ? 0 : (double) occupied / rooms.size();
+        return aggregates.occupancyRate();
     }    
 
 }
@@ -526,6 +1832,9 @@ class DailyTenant extends Tenant {
         this.paymentPeriodDays = 1;
     }
 
+    @Override
+    public String getTenantType() { return "Daily"; }
+
     @Override
     protected double calculatePaymentAmount(Room room) {
         if (room == null) return 0;
@@ -550,6 +1859,9 @@ class WeeklyTenant extends Tenant {
         this.paymentPeriodDays = 7;
     }
 
+    @Override
+    public String getTenantType() { return "Weekly"; }
+
     @Override
     protected double calculatePaymentAmount(Room room) {
         if (room == null) return 0;
@@ -574,6 +1886,9 @@ class FifteenDayTenant extends Tenant {
         this.paymentPeriodDays = 15;
     }
 
+    @Override
+    public String getTenantType() { return "FifteenDay"; }
+
     @Override
     protected double calculatePaymentAmount(Room room) {
         if (room == null) return 0;
@@ -598,6 +1913,9 @@ class QuarterlyTenant extends Tenant {
         this.paymentPeriodDays = 90;
     }
 
+    @Override
+    public String getTenantType() { return "Quarterly"; }
+
     @Override
     protected double calculatePaymentAmount(Room room) {
         if (room == null) return 0;
@@ -622,6 +1940,9 @@ class BiYearlyTenant extends Tenant {
         this.paymentPeriodDays = 180;
     }
 
+    @Override
+    public String getTenantType() { return "BiYearly"; }
+
     @Override
     protected double calculatePaymentAmount(Room room) {
         if (room == null) return 0;
@@ -646,6 +1967,9 @@ class YearlyTenant extends Tenant {
         this.paymentPeriodDays = 365;
     }
 
+    @Override
+    public String getTenantType() { return "Yearly"; }
+
     @Override
     protected double calculatePaymentAmount(Room room) {
         if (room == null) return 0;
@@ -655,19 +1979,27 @@ class YearlyTenant extends Tenant {
 
 // Base Tenant class modified to be more abstract
 class Tenant extends User implements Loggable {
+    /** Placeholder email used by the short constructors; never indexed for login. */
+    public static final String NO_EMAIL = "no-email";
+
     private String contact;
-    private Room room;
-    protected List<Payment> payments = new ArrayList<>();
-    private Set<String> documents = new HashSet<>();
-    private Date moveInDate, moveOutDate;
+    private volatile Room room;
+    volatile PaymentLedger ledger; // owner's ledger once added, or a private one for payments added before that
+    int ledgerSlot = -1;
+    long registrySeq; // insertion order in the owner's TenantRegistry
+    private Set<String> documents = ConcurrentHashMap.newKeySet();
+    volatile DocumentStore documentStore; // the owner's store once added; holds the content of named documents
+    volatile EventBus events; // the owner's event bus, once created
+    List<Room> bookedRooms; // rooms this tenant has booked; guarded by the owner's lock for the tenant
+    private int moveInDay = EpochDays.NONE, moveOutDay = EpochDays.NONE;
     protected int paymentPeriodDays; // Number of days between payments
 
     public Tenant(String userId, String name, String email, String password) {
         this.userId = userId;
         this.name = name;
         this.email = email;
-        this.password = password;
-        log("New tenant created.");
+        this.password = password == null ? null : PasswordHasher.hash(password); // null when restoring a stored hash
+        log(EventLog.INFO, "tenant.created", "id", userId);
     }
 
     // Overloaded constructors for different scenarios
@@ -676,11 +2008,34 @@ class Tenant extends User implements Loggable {
     }
 
     public Tenant(String userId) {
-        this(userId, "Unknown", "no-email", "default-pass");
+        this(userId, "Unknown", NO_EMAIL, "default-pass");
     }
 
     public Tenant(String userId, String name) {
-        this(userId, name, "no-email", "default-pass");
+        this(userId, name, NO_EMAIL, "default-pass");
+    }
+
+    /**
+     * Factory for tenants by payment-schedule type name, as returned by {@link #getTenantType()}.
+     * Unknown type names fall back to a standard tenant.
+     * 
+     * @param type Tenant type (Daily/Weekly/FifteenDay/Quarterly/BiYearly/Yearly/Standard)
+     * @param userId Unique identifier for the tenant
+     * @param name Name of the tenant
+     * @param email Email address of the tenant
+     * @param password Password for tenant's account
+     * @return A tenant of the requested subclass
+     */
+    public static Tenant ofType(String type, String userId, String name, String email, String password) {
+        switch (type) {
+            case "Daily": return new DailyTenant(userId, name, email, password);
+            case "Weekly": return new WeeklyTenant(userId, name, email, password);
+            case "FifteenDay": return new FifteenDayTenant(userId, name, email, password);
+            case "Quarterly": return new QuarterlyTenant(userId, name, email, password);
+            case "BiYearly": return new BiYearlyTenant(userId, name, email, password);
+            case "Yearly": return new YearlyTenant(userId, name, email, password);
+            default: return new Tenant(userId, name, email, password);
+        }
     }
 
 
@@ -732,14 +2087,25 @@ class Tenant extends User implements Loggable {
         System.out.println("Email: " + email);
         System.out.println("Contact: " + contact);
         System.out.println("Room: " + (room != null ? room.getRoomId() : "Not assigned"));
-        System.out.println("Move-in Date: " + formatDate(moveInDate));
-        System.out.println("Move-out Date: " + formatDate(moveOutDate));
+        System.out.println("Move-in Date: " + EpochDays.format(moveInDay));
+        System.out.println("Move-out Date: " + EpochDays.format(moveOutDay));
     }
 
     private void uploadDocumentUI(Scanner scanner) {
-        System.out.print("\nEnter document name to upload: ");
-        String doc = scanner.nextLine();
+        System.out.print("\nEnter document file path (or just a name) to upload: ");
+        String doc = scanner.nextLine().trim();
+        Path file = Paths.get(doc);
+        if (documentStore != null && Files.isRegularFile(file)) {
+            try {
+                StoredDocument stored = uploadDocument(file.getFileName().toString(), file);
+                System.out.println("Document uploaded: " + stored.getName() + " (" + stored.getSize() + " bytes)");
+            } catch (IOException | IllegalArgumentException e) {
+                System.out.println("Error: " + e.getMessage());
+            }
+            return;
+        }
         uploadDocument(doc);
+        System.out.println("Document uploaded: " + doc);
     }
 
     private void changePasswordUI(Scanner scanner) {
@@ -748,51 +2114,145 @@ class Tenant extends User implements Loggable {
         String current = scanner.nextLine();
         System.out.print("Enter new password: ");
         String newPass = scanner.nextLine();
-        changePassword(current, newPass);
-    }
-
-    private String formatDate(Date date) {
-        if (date == null) return "Not set";
-        return new SimpleDateFormat("yyyy-MM-dd").format(date);
+        changePasswordUI(current, newPass);
     }
 
     // Existing methods
     public String getName() {return this.name;} // name is inherited from User class
     public String getEmail() {return this.email;}  // email is inherited from User class
     public void setName(String name) {this.name = name;}  // Updates the name field inherited from User
+    void setEmail(String email) {this.email = email;}  // Only the owner's registry may change it, to keep the email index consistent
     public String getUserId() { return userId; }
     public void setContact(String contact) { this.contact = contact; }
-    public void setMoveInDate(Date date) { this.moveInDate = date; }
-    public void setMoveOutDate(Date date) { this.moveOutDate = date; }
+    public void setMoveInDay(int epochDay) { this.moveInDay = epochDay; }
+    public void setMoveOutDay(int epochDay) { this.moveOutDay = epochDay; }
+    public String getContact() { return contact; }
+    public int getMoveInDay() { return moveInDay; }
+    public int getMoveOutDay() { return moveOutDay; }
+    public Set<String> getDocuments() { return Collections.unmodifiableSet(documents); }
+    public List<Payment> getPayments() {
+        PaymentLedger source = ledger;
+        return source == null ? Collections.emptyList() : source.paymentsOf(this);
+    }
+    public String getTenantType() { return "Standard"; }
+    public int getPaymentPeriodDays() { return paymentPeriodDays; }
     public void uploadDocument(String doc) {
         documents.add(doc);
-        System.out.println("Document uploaded: " + doc);
+        if (journal != null) journal.logUploadDocument(userId, doc);
+        log(EventLog.INFO, "document.uploaded", "tenant", userId, "document", doc);
     }
-    public void viewDocuments() {
-        System.out.println("\n--- MY DOCUMENTS ---");
-        if (documents.isEmpty()) {
-            System.out.println("No documents uploaded.");
-            return;
-        }
+    /**
+     * Stores a document's content in the owner's document store and records its name.
+     * 
+     * @param name Name to store the document under
+     * @param file Local file holding the content
+     * @return The stored document
+     * @throws IllegalArgumentException if no document store is attached or the name is invalid
+     */
+    public StoredDocument uploadDocument(String name, Path file) throws IOException {
+        try (FileChannel content = FileChannel.open(file, StandardOpenOption.READ)) {
+            return uploadDocument(name, content);
+        }
+    }
+
+    /**
+     * Stores a document read from a channel until end of stream and records its name.
+     */
+    public StoredDocument uploadDocument(String name, ReadableByteChannel content) throws IOException {
+        DocumentStore store = documentStore;
+        if (store == null) throw new IllegalArgumentException("Document storage is not available");
+        StoredDocument stored = store.put(userId, name, content);
+        if (!documents.contains(name)) uploadDocument(name);
+        return stored;
+    }
+
+    void restoreDocument(String doc) { documents.add(doc); }
+    public void viewDocuments() {
+        System.out.println("\n--- MY DOCUMENTS ---");
+        if (documents.isEmpty()) {
+            System.out.println("No documents uploaded.");
+            return;
+        }
+        DocumentStore store = documentStore;
         for (String doc : documents) {
-            System.out.println("- " + doc);
+            StoredDocument stored = null;
+            try {
+                stored = store == null ? null : store.find(userId, doc);
+            } catch (IOException e) {
+                // listed by name only
+            }
+            System.out.println("- " + doc + (stored != null ? " (" + stored.getSize() + " bytes)" : ""));
+        }
+    }
+    public void addPayment(Payment payment) {
+        int sequence = PaymentLedger.generatedSequence(userId, payment.getPaymentId());
+        int row = appendPayment(sequence > 0 ? null : payment.getPaymentId(), sequence, payment.getAmount(),
+                                payment.getDueDay(), payment.isPaid());
+        payment.bind(ledger, row);
+    }
+    // Stores a payment row directly, without a Payment object; see PaymentLedger.append
+    int appendPayment(String explicitId, int sequence, double amount, int dueDay, boolean paid) {
+        while (true) {
+            PaymentLedger target = ledger;
+            if (target == null) {
+                synchronized (this) {
+                    if (ledger == null) new PaymentLedger(16).adopt(this);
+                }
+                continue;
+            }
+            int row = target.append(this, explicitId, sequence, amount, dueDay, paid);
+            if (row < 0) continue; // moved to another ledger meanwhile
+            if (journal != null) journal.logAddPayment(userId, target, row);
+            EventBus bus = events;
+            if (bus != null) {
+                bus.publish(DomainEvent.payment(DomainEvent.PAYMENT_ADDED, userId, target.paymentIdAt(row),
+                                                amount, dueDay));
+            }
+            return row;
+        }
+    }
+    public Payment findPayment(String paymentId) {
+        PaymentLedger source = ledger;
+        int row = source == null ? -1 : source.findRow(this, paymentId);
+        return row < 0 ? null : new Payment(source, row);
+    }
+    void onPaymentPaid(PaymentLedger source, int row) {
+        if (journal != null) journal.logMarkPaid(userId, source.paymentIdAt(row));
+        EventBus bus = events;
+        if (bus != null) {
+            bus.publish(DomainEvent.payment(DomainEvent.PAYMENT_PAID, userId, source.paymentIdAt(row),
+                                            source.amountAt(row), source.dueDayAt(row)));
         }
     }
-    public void addPayment(Payment payment) { payments.add(payment); }
     public void setRoom(Room room) { this.room = room; }
     public Room getRoom() { return room; }
     public void viewRentHistory() {
         System.out.println("\n--- RENT HISTORY ---");
-        if (payments.isEmpty()) {
+        PaymentLedger history = ledger;
+        int count = history == null ? 0 : history.rowCount(this);
+        if (count == 0) {
             System.out.println("No payment records found.");
             return;
         }
-        for (Payment p : payments) {
-            System.out.println("Payment ID: " + p.getPaymentId() + 
-                             " | Amount: ₹" + p.getAmount() + 
-                             " | Due: " + formatDate(p.getDueDate()) + 
-                             " | Status: " + (p.isPaid() ? "Paid" : "Pending"));
+        StringBuilder lines = new StringBuilder(PGOwner.CONSOLE_CHUNK_CHARS + 256);
+        for (int i = 0; i < count; i++) {
+            int row = history.rowAt(this, i);
+            String explicitId = history.explicitIdAt(row);
+            lines.append("Payment ID: ");
+            if (explicitId != null) {
+                lines.append(explicitId);
+            } else {
+                lines.append(userId).append("-M").append(history.sequenceAt(row)); // no ID string per row
+            }
+            lines.append(" | Amount: ₹").append(history.amountAt(row)).append(" | Due: ");
+            EpochDays.appendTo(lines, history.dueDayAt(row))
+                 .append(" | Status: ").append(history.isPaid(row) ? "Paid" : "Pending").append('\n');
+            if (lines.length() >= PGOwner.CONSOLE_CHUNK_CHARS) {
+                System.out.print(lines);
+                lines.setLength(0);
+            }
         }
+        System.out.print(lines);
     }
 
     protected double calculatePaymentAmount(Room room) {
@@ -817,13 +2277,31 @@ class Room {
         "Four", 0.8
     );
 
+    /**
+     * Sharing types in order from most to least private; a room's sharing index points into this array.
+     */
+    static final String[] SHARING_TYPES = {"Single", "Double", "Triple", "Four"};
+
+    /**
+     * Beds in a room of each sharing type, indexed like {@link #SHARING_TYPES}.
+     */
+    static final int[] BEDS = {1, 2, 3, 4};
+
     private String roomId;
-    private boolean occupied;
     private double baseRent;
     private double sizeSqft;
     private int amenityScore;
     private String sharingType;
-    private Tenant tenant;
+    private int sharingIndex;
+    private final AtomicReferenceArray<Tenant> beds; // occupant of each bed, null while the bed is free
+    private final AtomicInteger occupiedBeds = new AtomicInteger();
+    ReportAggregates aggregates; // set when the room is added to an owner
+    VacancyIndex vacancies; // likewise
+    BedAllocator allocator; // likewise
+    int allocatorNumber = -1; // the room's number in the allocator's bitmap
+    volatile EventBus events; // the owner's event bus, once created
+    long registrySeq; // insertion order in the owner's room list
+    private final RoomCalendar calendar;
 
     /**
      * Creates a new Room with specified parameters.
@@ -845,7 +2323,9 @@ class Room {
         this.sizeSqft = sizeSqft;
         this.amenityScore = amenityScore;
         this.sharingType = sharingType;
-        this.occupied = false;
+        this.sharingIndex = Arrays.asList(SHARING_TYPES).indexOf(sharingType);
+        this.beds = new AtomicReferenceArray<>(BEDS[sharingIndex]);
+        this.calendar = new RoomCalendar(this);
     }
 
     // Getters
@@ -855,87 +2335,464 @@ class Room {
     
     public double getRent() { return baseRent; }
     public String getRoomId() { return roomId; }
-    public boolean isOccupied() { return occupied; }
+    /** True if at least one bed is taken. */
+    public boolean isOccupied() { return occupiedBeds.get() > 0; }
+    /** True if at least one bed is free. */
+    public boolean hasFreeBed() { return occupiedBeds.get() < beds.length(); }
+    public int getBedCount() { return beds.length(); }
+    public int getOccupiedBeds() { return occupiedBeds.get(); }
     public double getBaseRent() { return baseRent; }
     public double getSizeSqft() { return sizeSqft; }
     public int getAmenityScore() { return amenityScore; }
     public String getSharingType() { return sharingType; }
-    public Tenant getTenant() { return tenant; }
+    public int getSharingIndex() { return sharingIndex; }
+    public RoomCalendar getCalendar() { return calendar; }
+
+    /**
+     * Gets the occupant of the lowest taken bed.
+     * @return The tenant, or null if every bed is free
+     */
+    public Tenant getTenant() {
+        for (int bed = 0; bed < beds.length(); bed++) {
+            Tenant occupant = beds.get(bed);
+            if (occupant != null) return occupant;
+        }
+        return null;
+    }
+
+    /**
+     * Gets the occupant of one bed.
+     * @param bed Bed number, from 0
+     * @return The tenant, or null if the bed is free
+     */
+    public Tenant getTenant(int bed) { return beds.get(bed); }
+
+    /**
+     * Gets the occupants of the room in bed order.
+     * @return The tenants of the taken beds
+     */
+    public List<Tenant> getTenants() {
+        List<Tenant> occupants = new ArrayList<>(beds.length());
+        for (int bed = 0; bed < beds.length(); bed++) {
+            Tenant occupant = beds.get(bed);
+            if (occupant != null) occupants.add(occupant);
+        }
+        return occupants;
+    }
+
+    /**
+     * Finds the bed a tenant occupies.
+     * @return Bed number, or -1 if the tenant is not in this room
+     */
+    public int bedOf(Tenant tenant) {
+        for (int bed = 0; bed < beds.length(); bed++) {
+            if (beds.get(bed) == tenant) return bed;
+        }
+        return -1;
+    }
 
+    /**
+     * Puts a tenant in bed 0, replacing whoever was there.
+     * @param tenant The new occupant of bed 0, or null to free it
+     */
     public void setTenant(Tenant tenant) {
-        this.tenant = tenant;
-        this.occupied = (tenant != null);
+        Tenant previous = beds.getAndSet(0, tenant);
+        if (previous == tenant) return;
+        if (previous != null) {
+            bedChanged(false);
+            publish(DomainEvent.ROOM_VACATED, previous);
+        }
+        if (tenant != null) {
+            bedChanged(true);
+            publish(DomainEvent.ROOM_OCCUPIED, tenant);
+        }
+    }
+
+    /**
+     * Atomically gives the lowest free bed to a tenant.
+     * 
+     * @param tenant The new occupant
+     * @return true if a bed was free and now belongs to the tenant
+     */
+    public boolean assignIfVacant(Tenant tenant) {
+        for (int bed = 0; bed < beds.length(); bed++) {
+            if (assignBed(bed, tenant)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Atomically gives one bed to a tenant if it is free.
+     * 
+     * @param bed Bed number, from 0
+     * @param tenant The new occupant
+     * @return true if the bed was free and now belongs to the tenant
+     */
+    public boolean assignBed(int bed, Tenant tenant) {
+        if (!beds.compareAndSet(bed, null, tenant)) return false;
+        bedChanged(true);
+        publish(DomainEvent.ROOM_OCCUPIED, tenant);
+        return true;
+    }
+
+    /**
+     * Atomically frees the bed the given tenant occupies, if any.
+     * 
+     * @param tenant The expected occupant
+     * @return true if a bed was freed
+     */
+    public boolean vacate(Tenant tenant) {
+        for (int bed = 0; bed < beds.length(); bed++) {
+            if (beds.get(bed) == tenant && beds.compareAndSet(bed, tenant, null)) {
+                bedChanged(false);
+                publish(DomainEvent.ROOM_VACATED, tenant);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void bedChanged(boolean occupied) {
+        int occupiedNow = occupied ? occupiedBeds.incrementAndGet() : occupiedBeds.decrementAndGet();
+        ReportAggregates target = aggregates;
+        if (target != null) target.bedChanged(this, occupied, occupiedNow);
+        VacancyIndex index = vacancies;
+        if (index != null) index.sync(this);
+        BedAllocator free = allocator;
+        if (free != null) free.sync(this);
+    }
+
+    private void publish(int type, Tenant tenant) {
+        EventBus bus = events;
+        if (bus != null) bus.publish(DomainEvent.room(type, roomId, tenant.getUserId()));
+    }
+}
+
+/**
+ * A booking of one bed of a room by a tenant, from {@code fromDay} until {@code toDay}
+ * (exclusive), as epoch days. An open-ended stay has {@code toDay} {@link EpochDays#NONE}.
+ */
+class Reservation {
+    private final String roomId;
+    private final String tenantId;
+    private final int bed;
+    private final int fromDay;
+    private final int toDay;
+
+    Reservation(String roomId, String tenantId, int bed, int fromDay, int toDay) {
+        this.roomId = roomId;
+        this.tenantId = tenantId;
+        this.bed = bed;
+        this.fromDay = fromDay;
+        this.toDay = toDay;
+    }
+
+    public String getRoomId() { return roomId; }
+    public String getTenantId() { return tenantId; }
+    /** Bed number within the room, from 0. */
+    public int getBed() { return bed; }
+    public int getFromDay() { return fromDay; }
+    public int getToDay() { return toDay; }
+
+    // Exclusive end day, with open-ended stays running forever
+    int endDay() { return toDay == EpochDays.NONE ? Integer.MAX_VALUE : toDay; }
+
+    @Override
+    public String toString() {
+        return roomId + " bed " + (bed + 1) + ": " + tenantId + ", " + EpochDays.format(fromDay) + " to "
+               + (toDay == EpochDays.NONE ? "open" : EpochDays.format(toDay));
+    }
+}
+
+/**
+ * Reservation calendar of one room. Each bed keeps its bookings in a sorted map by start
+ * day, and a bed's bookings never overlap, so checking a bed for a stay is one floor and
+ * one ceiling lookup. A room has one bed per person of its sharing type.
+ * <p>
+ * A bed's current occupant holds it for the span of their stay. Tenants moving in take
+ * the lowest suitable bed and bookings fill the beds from the highest down, so walk-ins
+ * and future stays rarely compete. All changes to a calendar, and the check that lets a
+ * tenant move in, are serialized on the calendar: of two concurrent bookings for the
+ * last free bed, exactly one succeeds.
+ */
+final class RoomCalendar {
+    private final Room room;
+    private final List<TreeMap<Integer, Reservation>> beds; // a bed's map is created on its first booking
+    private int size;
+
+    RoomCalendar(Room room) {
+        this.room = room;
+        this.beds = new ArrayList<>(Collections.nCopies(room.getBedCount(), null));
+    }
+
+    /** Number of beds in the room. */
+    public int getBedCount() { return beds.size(); }
+
+    /**
+     * Books the highest free bed for a stay.
+     * 
+     * @param tenantId Tenant the bed is booked for
+     * @param fromDay First day, inclusive
+     * @param toDay Last day, exclusive, or {@link EpochDays#NONE} for an open-ended stay
+     * @return The booking, or null if every bed is taken on some day of the stay
+     */
+    synchronized Reservation reserve(String tenantId, int fromDay, int toDay) {
+        int end = toDay == EpochDays.NONE ? Integer.MAX_VALUE : toDay;
+        for (int bed = beds.size() - 1; bed >= 0; bed--) {
+            if (isFree(bed, fromDay, end)) {
+                Reservation reservation = new Reservation(room.getRoomId(), tenantId, bed, fromDay, toDay);
+                add(reservation);
+                return reservation;
+            }
+        }
+        return null;
+    }
+
+    // Restores a booking from a snapshot, on the bed it was made for
+    synchronized void restore(Reservation reservation) {
+        if (reservation.getBed() < beds.size() && isFree(reservation.getBed(), reservation.getFromDay(),
+                                                         reservation.endDay())) {
+            add(reservation);
+        }
+    }
+
+    private void add(Reservation reservation) {
+        int bed = reservation.getBed();
+        if (beds.get(bed) == null) beds.set(bed, new TreeMap<>());
+        beds.get(bed).put(reservation.getFromDay(), reservation);
+        size++;
+    }
+
+    /**
+     * Cancels a tenant's booking that starts on the given day.
+     * @return The cancelled booking, or null if there was none
+     */
+    synchronized Reservation cancel(String tenantId, int fromDay) {
+        for (TreeMap<Integer, Reservation> bookings : beds) {
+            Reservation reservation = bookings == null ? null : bookings.get(fromDay);
+            if (reservation != null && reservation.getTenantId().equals(tenantId)) {
+                bookings.remove(fromDay);
+                size--;
+                return reservation;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Cancels every booking of a tenant.
+     * @return Number of bookings cancelled
+     */
+    synchronized int cancelAll(String tenantId) {
+        if (size == 0) return 0;
+        int before = size;
+        size = 0;
+        for (TreeMap<Integer, Reservation> bookings : beds) {
+            if (bookings == null) continue;
+            bookings.values().removeIf(r -> r.getTenantId().equals(tenantId));
+            size += bookings.size();
+        }
+        return before - size;
+    }
+
+    /**
+     * Finds a tenant's booking that starts on the given day.
+     * @return The booking, or null if there is none
+     */
+    synchronized Reservation find(String tenantId, int fromDay) {
+        for (TreeMap<Integer, Reservation> bookings : beds) {
+            Reservation reservation = bookings == null ? null : bookings.get(fromDay);
+            if (reservation != null && reservation.getTenantId().equals(tenantId)) return reservation;
+        }
+        return null;
+    }
+
+    /**
+     * Counts the beds free for every day of a stay.
+     * 
+     * @param fromDay First day, inclusive
+     * @param toDay Last day, exclusive, or {@link EpochDays#NONE} for an open-ended stay
+     * @return Number of free beds
+     */
+    public synchronized int freeBeds(int fromDay, int toDay) {
+        int end = toDay == EpochDays.NONE ? Integer.MAX_VALUE : toDay;
+        int free = 0;
+        for (int bed = 0; bed < beds.size(); bed++) {
+            if (isFree(bed, fromDay, end)) free++;
+        }
+        return free;
+    }
+
+    /**
+     * Gets every booking, ordered by bed and then start day.
+     * @return A copy of the bookings
+     */
+    public synchronized List<Reservation> getReservations() {
+        List<Reservation> all = new ArrayList<>(size);
+        for (TreeMap<Integer, Reservation> bookings : beds) {
+            if (bookings != null) all.addAll(bookings.values());
+        }
+        return all;
+    }
+
+    /** Number of bookings held. */
+    public synchronized int size() { return size; }
+
+    /**
+     * Picks the bed for a tenant moving into the room: a free bed that no one else has
+     * booked during the tenant's stay. Callers hold the calendar's monitor through the move-in.
+     * 
+     * @param tenant The tenant moving in
+     * @param preferred Bed to try first, or -1 for the lowest suitable one
+     * @return Bed number, or -1 if no free bed is clear of other bookings
+     */
+    int bedFor(Tenant tenant, int preferred) {
+        if (preferred >= 0 && preferred < beds.size() && fitsOccupant(preferred, tenant)) return preferred;
+        for (int bed = 0; bed < beds.size(); bed++) {
+            if (fitsOccupant(bed, tenant)) return bed;
+        }
+        return -1;
+    }
+
+    private boolean fitsOccupant(int bed, Tenant tenant) {
+        if (room.getTenant(bed) != null) return false;
+        TreeMap<Integer, Reservation> bookings = beds.get(bed);
+        int from = tenant.getMoveInDay() == EpochDays.NONE ? Integer.MIN_VALUE : tenant.getMoveInDay();
+        int end = tenant.getMoveOutDay() == EpochDays.NONE ? Integer.MAX_VALUE : tenant.getMoveOutDay();
+        if (end < from) return false; // a stay that ends before it starts cannot be checked, so it fits nowhere
+        if (bookings == null || end == from) return true;
+        Map.Entry<Integer, Reservation> before = bookings.floorEntry(from);
+        if (before != null && before.getValue().endDay() > from && !before.getValue().getTenantId().equals(tenant.getUserId())) {
+            return false;
+        }
+        for (Reservation reservation : bookings.subMap(from, false, end, false).values()) {
+            if (!reservation.getTenantId().equals(tenant.getUserId())) return false;
+        }
+        return true;
+    }
+
+    // True if neither a booking of the bed nor its occupant's stay overlaps [from, end)
+    private boolean isFree(int bed, int from, int end) {
+        Tenant occupant = room.getTenant(bed);
+        if (occupant != null) {
+            int stayFrom = occupant.getMoveInDay() == EpochDays.NONE ? Integer.MIN_VALUE : occupant.getMoveInDay();
+            int stayEnd = occupant.getMoveOutDay() == EpochDays.NONE ? Integer.MAX_VALUE : occupant.getMoveOutDay();
+            if (stayEnd < stayFrom || (stayFrom < end && from < stayEnd)) return false; // an inverted stay holds the bed
+        }
+        TreeMap<Integer, Reservation> bookings = beds.get(bed);
+        if (bookings == null) return true;
+        Map.Entry<Integer, Reservation> before = bookings.floorEntry(from);
+        if (before != null && before.getValue().endDay() > from) return false;
+        Integer next = bookings.higherKey(from);
+        return next == null || next >= end;
     }
 }
 
 /**
  * Represents a payment record for a tenant.
  * Tracks payment details including amount, due date, and payment status.
+ * Once added to a tenant, a payment is a view over its row in a {@link PaymentLedger}.
  */
 class Payment {
     private String paymentId;
     private double amount;
-    private Date dueDate;
+    private int dueDay;
     private boolean paid;
+    private PaymentLedger ledger; // set once the payment is stored in a ledger
+    private int row;
 
     /**
      * Creates a new Payment record.
      * 
      * @param paymentId Unique identifier for the payment
      * @param amount Amount to be paid
-     * @param dueDate Date by which payment should be made
+     * @param dueDay Epoch day by which payment should be made, or {@link EpochDays#NONE}
      */
-    public Payment(String paymentId, double amount, Date dueDate) {
+    public Payment(String paymentId, double amount, int dueDay) {
         this.paymentId = paymentId;
         this.amount = amount;
-        this.dueDate = dueDate;
+        this.dueDay = dueDay;
         this.paid = false;
     }
 
+    /**
+     * Creates a view over a stored ledger row.
+     */
+    Payment(PaymentLedger ledger, int row) {
+        bind(ledger, row);
+    }
+
+    void bind(PaymentLedger ledger, int row) {
+        this.ledger = ledger;
+        this.row = row;
+    }
+
     /**
      * Gets the unique identifier of the payment.
      * @return Payment ID string
      */
-    public String getPaymentId() { return paymentId; }
+    public String getPaymentId() { return ledger != null ? ledger.paymentIdAt(row) : paymentId; }
 
     /**
      * Gets the payment amount.
      * @return Amount to be paid
      */
-    public double getAmount() { return amount; }
+    public double getAmount() { return ledger != null ? ledger.amountAt(row) : amount; }
 
     /**
      * Gets the payment due date.
-     * @return Due date of the payment
+     * @return Due date as an epoch day, or {@link EpochDays#NONE}
      */
-    public Date getDueDate() { return dueDate; }
+    public int getDueDay() { return ledger != null ? ledger.dueDayAt(row) : dueDay; }
 
     /**
      * Checks if the payment has been made.
      * @return true if paid, false otherwise
      */
-    public boolean isPaid() { return paid; }
+    public boolean isPaid() { return ledger != null ? ledger.isPaid(row) : paid; }
+
+    /**
+     * Gets the tenant the payment belongs to.
+     * @return The owning tenant, or null for a payment not yet stored in a ledger
+     */
+    public Tenant getTenant() { return ledger != null ? ledger.tenantAt(row) : null; }
 
     /**
      * Marks the payment as paid.
      */
-    public void markAsPaid() { this.paid = true; }
+    public void markAsPaid() {
+        if (ledger == null) {
+            this.paid = true;
+        } else if (ledger.markPaid(row)) {
+            ledger.tenantAt(row).onPaymentPaid(ledger, row);
+        }
+    }
 }
 
 /**
  * Utility class for optimizing room rents based on various factors.
- * Calculates suggested rent prices considering room characteristics and occupancy rates.
+ * Calculates suggested rent prices considering room characteristics and occupancy rates,
+ * following the active {@link PricingConfig}.
  */
 class RentOptimizer {
+    private static final int BLOCK_ROWS = 1024; // rows priced by both rule sets before moving on
+
+    private static volatile PricingConfig config = PricingConfig.DEFAULT;
+
     /**
-     * Multiplier factors for different sharing types to adjust base rent.
+     * Gets the pricing rules in use.
+     * @return The current configuration
      */
-    private static final Map<String, Double> SHARING_TYPE_FACTORS = Map.of(
-        "Single", 1.8,
-        "Double", 1.3,
-        "Triple", 1.0,
-        "Four", 0.8
-    );
+    public static PricingConfig getConfig() { return config; }
+
+    /**
+     * Switches every later calculation to new pricing rules.
+     * @param pricing The rules to use
+     */
+    public static void configure(PricingConfig pricing) {
+        if (pricing == null) throw new IllegalArgumentException("Pricing rules cannot be null");
+        config = pricing;
+    }
 
     /**
      * Calculates the optimized rent for a room based on multiple factors.
@@ -948,88 +2805,5450 @@ class RentOptimizer {
     public static double calculateOptimizedRent(Room room, double occupancyRate) {
         if (room == null) throw new IllegalArgumentException("Room cannot be null");
         
-        double optimizedRent = room.getBaseRent(); // Changed from getRent() to getBaseRent()
-        
-        optimizedRent += room.getSizeSqft() * 8;
-        optimizedRent *= 1 + (0.04 * room.getAmenityScore());
-        optimizedRent *= SHARING_TYPE_FACTORS.get(room.getSharingType()); // Remove getOrDefault()
-        
-        if (occupancyRate > 0.75) optimizedRent *= 1.1;
-        else if (occupancyRate < 0.4) optimizedRent *= 0.9;
-        
-        return Math.round(optimizedRent);
+        return config.current.price(room.getBaseRent(), room.getSizeSqft(), room.getAmenityScore(),
+                                    room.getSharingIndex(), occupancyRate);
     }
-}
-
-/**
- * Main application class for the PG (Paying Guest) Management System.
- * Handles user authentication and provides the main menu interface.
- */
-public class PGHive {
-    private static Scanner scanner = new Scanner(System.in);
-    private static PGOwner owner = new PGOwner("O001", "PG Owner", "owner@pg.com", "admin123");
 
     /**
-     * Entry point of the application.
-     * Initializes sample data and displays the main menu.
+     * Calculates the optimized rent for a room from the occupancy forecast for a period.
      * 
-     * @param args Command line arguments (not used)
+     * @param room The room to calculate optimized rent for
+     * @param forecast Occupancy forecast of the PG
+     * @param fromDay First day of the period, inclusive
+     * @param toDay Last day of the period, exclusive
+     * @return Optimized rent amount
+     * @throws IllegalArgumentException if room is null or the period is empty
      */
-    public static void main(String[] args) {
-        initializeSampleData();
-        showMainMenu();
+    public static double calculateOptimizedRent(Room room, OccupancyForecast forecast, int fromDay, int toDay) {
+        return calculateOptimizedRent(room, forecast.occupancyRate(fromDay, toDay));
     }
 
     /**
-     * Helper method to safely assign a room to a tenant.
-     * Wraps the room assignment process in exception handling.
+     * Prices a whole room inventory in one pass with the current rules, and with the
+     * challenger rules too if an A/B comparison is configured.
      * 
-     * @param owner The PG owner making the assignment
-     * @param roomId ID of the room to be assigned
-     * @param tenant Tenant to whom the room will be assigned
+     * @param rooms Rooms to price
+     * @param occupancyRate Current occupancy rate of the PG
+     * @param reuse A table from an earlier call to refill, or null for a new one
+     * @return Suggested rents ordered by sharing type, rooms of one type in iteration order
      */
-    private static void assignRoomWrapper(PGOwner owner, String roomId, Tenant tenant) {
-        try {
-            owner.assignRoom(roomId, tenant);
-        } catch (RoomAssignmentException e) {
-            System.out.println("Error assigning room: " + e.getMessage());
-        }
+    public static RentSuggestions optimizeAll(Collection<Room> rooms, double occupancyRate, RentSuggestions reuse) {
+        PricingConfig pricing = config;
+        return optimizeAll(rooms, occupancyRate, pricing.current, pricing.challenger, reuse);
     }
-    
+
     /**
-     * Displays and handles the main menu of the application.
-     * Provides options for owner login, tenant login, and exit.
+     * Prices a whole room inventory in one pass. Room attributes are copied into the
+     * table's primitive columns, bucketed by sharing type with a counting sort, and
+     * the rule pipelines then run over the columns without touching Room objects.
+     * With a challenger, both rule sets price each block of rows while it is in cache.
+     * 
+     * @param rooms Rooms to price
+     * @param occupancyRate Current occupancy rate of the PG
+     * @param rules Rules for the suggested rents
+     * @param challenger Rules to compare against, or null for none
+     * @param reuse A table from an earlier call to refill, or null for a new one
+     * @return Suggested rents ordered by sharing type, rooms of one type in iteration order
      */
-    private static void showMainMenu() {
-        while (true) {
-            System.out.println("\n=== PG MANAGEMENT SYSTEM ===");
-            System.out.println("1. Owner Login");
-            System.out.println("2. Tenant Login");
-            System.out.println("3. Exit");
-            System.out.print("Select option: ");
+    public static RentSuggestions optimizeAll(Collection<Room> rooms, double occupancyRate, PricingRules rules,
+                                              PricingRules challenger, RentSuggestions reuse) {
+        Room[] batch = rooms.toArray(new Room[0]);
+        RentSuggestions table = reuse != null ? reuse : new RentSuggestions();
+        table.reset(batch.length, occupancyRate, rules, challenger);
 
-            int choice = scanner.nextInt();
-            scanner.nextLine(); // consume newline
+        int[] starts = new int[Room.SHARING_TYPES.length + 1];
+        for (Room room : batch) starts[room.getSharingIndex() + 1]++;
+        for (int i = 1; i < starts.length; i++) starts[i] += starts[i - 1];
+        for (Room room : batch) {
+            int sharing = room.getSharingIndex();
+            int at = starts[sharing]++;
+            table.roomIds[at] = room.getRoomId();
+            table.sharing[at] = sharing;
+            table.baseRents[at] = room.getBaseRent();
+            table.sizes[at] = room.getSizeSqft();
+            table.amenities[at] = room.getAmenityScore();
+        }
 
-            switch (choice) {
-                case 1:
-                    ownerLogin();
-                    break;
-                case 2:
-                    tenantLogin();
-                    break;
-                case 3:
-                    System.out.println("Exiting system... Goodbye!");
-                    System.exit(0);
-                default:
-                    System.out.println("Invalid choice!");
+        for (int from = 0; from < batch.length; from += BLOCK_ROWS) {
+            int to = Math.min(batch.length, from + BLOCK_ROWS);
+            rules.priceAll(table.baseRents, table.sizes, table.amenities, table.sharing, from, to, occupancyRate,
+                           table.suggested);
+            if (challenger != null) {
+                challenger.priceAll(table.baseRents, table.sizes, table.amenities, table.sharing, from, to,
+                                    occupancyRate, table.challenged);
             }
         }
+        return table;
+    }
+}
+
+/**
+ * One pricing strategy, compiled from its text form into a flat program: an opcode per
+ * rule and a fixed block of operands per rule in one double array. Pricing a room is a
+ * switch over those two arrays with no map lookups or reflection; pricing a batch runs
+ * each rule over a block of rows in a loop of its own, so the inner loops do not branch.
+ * <p>
+ * Rules apply top to bottom, starting from the room's base rent:
+ * <pre>
+ * add 500                   rent += 500
+ * add 8 per sqft            rent += 8 * size
+ * add 100 per amenity       rent += 100 * amenity score
+ * scale 1.05                rent *= 1.05
+ * scale 0.001 per sqft      rent *= 1 + 0.001 * size
+ * scale 0.04 per amenity    rent *= 1 + 0.04 * amenity score
+ * sharing 1.8 1.3 1.0 0.8   rent *= the factor for Single, Double, Triple or Four
+ * occupancy above 0.75 1.1  rent *= 1.1 if the occupancy rate is above 0.75
+ * occupancy below 0.4 0.9   rent *= 0.9 if the occupancy rate is below 0.4
+ * floor 2000                rent = at least 2000
+ * cap 20000                 rent = at most 20000
+ * round                     rent = nearest whole rupee
+ * </pre>
+ */
+final class PricingRules {
+    private static final int ADD = 0, ADD_PER_SQFT = 1, ADD_PER_AMENITY = 2, SCALE = 3, SCALE_PER_SQFT = 4,
+                             SCALE_PER_AMENITY = 5, SHARING = 6, OCCUPANCY_ABOVE = 7, OCCUPANCY_BELOW = 8,
+                             FLOOR = 9, CAP = 10, ROUND = 11;
+    private static final int OPERANDS = Room.SHARING_TYPES.length; // operand slots per rule, enough for "sharing"
+
+    private final String name;
+    private final int[] opcodes;
+    private final double[] operands; // rule i uses operands[i * OPERANDS] onwards
+
+    private PricingRules(String name, int[] opcodes, double[] operands) {
+        this.name = name;
+        this.opcodes = opcodes;
+        this.operands = operands;
     }
 
     /**
-     * Handles the owner login process.
-     * Prompts for email and password, and shows the owner menu upon successful login.
+     * Compiles a rule set.
+     * 
+     * @param name Name of the rule set
+     * @param rules One rule per entry, in the syntax above
+     * @param lineNumbers Line number of each rule, for error messages
+     * @return The compiled rules
+     * @throws IllegalArgumentException naming the line of the first invalid rule
+     */
+    static PricingRules compile(String name, List<String> rules, List<Integer> lineNumbers) {
+        int[] opcodes = new int[rules.size()];
+        double[] operands = new double[rules.size() * OPERANDS];
+        for (int i = 0; i < rules.size(); i++) {
+            String[] words = rules.get(i).trim().split("\\s+");
+            try {
+                opcodes[i] = compileRule(words, operands, i * OPERANDS);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Line " + lineNumbers.get(i) + ": " + e.getMessage());
+            }
+        }
+        return new PricingRules(name, opcodes, operands);
+    }
+
+    private static int compileRule(String[] words, double[] operands, int at) {
+        switch (words[0]) {
+            case "add":
+            case "scale": {
+                boolean add = words[0].equals("add");
+                if (words.length == 2) {
+                    operands[at] = number(words[1]);
+                    return add ? ADD : SCALE;
+                }
+                if (words.length == 4 && words[2].equals("per")) {
+                    operands[at] = number(words[1]);
+                    if (words[3].equals("sqft")) return add ? ADD_PER_SQFT : SCALE_PER_SQFT;
+                    if (words[3].equals("amenity")) return add ? ADD_PER_AMENITY : SCALE_PER_AMENITY;
+                }
+                throw new IllegalArgumentException("Expected \"" + words[0] + " <number> [per sqft|per amenity]\"");
+            }
+            case "sharing":
+                if (words.length != Room.SHARING_TYPES.length + 1) {
+                    throw new IllegalArgumentException("Expected one factor per sharing type: "
+                                                       + String.join(", ", Room.SHARING_TYPES));
+                }
+                for (int i = 0; i < Room.SHARING_TYPES.length; i++) operands[at + i] = number(words[i + 1]);
+                return SHARING;
+            case "occupancy":
+                if (words.length != 4 || !(words[1].equals("above") || words[1].equals("below"))) {
+                    throw new IllegalArgumentException("Expected \"occupancy above|below <rate> <factor>\"");
+                }
+                operands[at] = number(words[2]);
+                operands[at + 1] = number(words[3]);
+                return words[1].equals("above") ? OCCUPANCY_ABOVE : OCCUPANCY_BELOW;
+            case "floor":
+            case "cap":
+                if (words.length != 2) throw new IllegalArgumentException("Expected \"" + words[0] + " <amount>\"");
+                operands[at] = number(words[1]);
+                return words[0].equals("floor") ? FLOOR : CAP;
+            case "round":
+                if (words.length != 1) throw new IllegalArgumentException("\"round\" takes no arguments");
+                return ROUND;
+            default:
+                throw new IllegalArgumentException("Unknown rule: " + words[0]);
+        }
+    }
+
+    private static double number(String word) {
+        try {
+            double value = Double.parseDouble(word);
+            if (Double.isFinite(value)) return value;
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new IllegalArgumentException("Not a number: " + word);
+    }
+
+    public String getName() { return name; }
+    public int getRuleCount() { return opcodes.length; }
+
+    /**
+     * Prices one room.
+     * 
+     * @param sharingIndex Index into {@link Room#SHARING_TYPES}
+     * @param occupancyRate Occupancy rate the price is based on
+     * @return Suggested rent
+     */
+    public double price(double baseRent, double sizeSqft, int amenityScore, int sharingIndex, double occupancyRate) {
+        double rent = baseRent;
+        for (int i = 0, at = 0; i < opcodes.length; i++, at += OPERANDS) {
+            double k = operands[at];
+            switch (opcodes[i]) {
+                case ADD: rent += k; break;
+                case ADD_PER_SQFT: rent += sizeSqft * k; break;
+                case ADD_PER_AMENITY: rent += amenityScore * k; break;
+                case SCALE: rent *= k; break;
+                case SCALE_PER_SQFT: rent *= 1 + k * sizeSqft; break;
+                case SCALE_PER_AMENITY: rent *= 1 + k * amenityScore; break;
+                case SHARING: rent *= operands[at + sharingIndex]; break;
+                case OCCUPANCY_ABOVE: if (occupancyRate > k) rent *= operands[at + 1]; break;
+                case OCCUPANCY_BELOW: if (occupancyRate < k) rent *= operands[at + 1]; break;
+                case FLOOR: rent = Math.max(rent, k); break;
+                case CAP: rent = Math.min(rent, k); break;
+                default: rent = Math.round(rent);
+            }
+        }
+        return rent;
+    }
+
+    /**
+     * Prices rows {@code from} to {@code to} (exclusive) of a batch, one rule at a time.
+     * Gives the same results as {@link #price} row by row.
+     */
+    void priceAll(double[] baseRents, double[] sizes, int[] amenities, int[] sharing, int from, int to,
+                  double occupancyRate, double[] out) {
+        System.arraycopy(baseRents, from, out, from, to - from);
+        for (int r = 0, at = 0; r < opcodes.length; r++, at += OPERANDS) {
+            double k = operands[at];
+            switch (opcodes[r]) {
+                case ADD: for (int i = from; i < to; i++) out[i] += k; break;
+                case ADD_PER_SQFT: for (int i = from; i < to; i++) out[i] += sizes[i] * k; break;
+                case ADD_PER_AMENITY: for (int i = from; i < to; i++) out[i] += amenities[i] * k; break;
+                case SCALE: for (int i = from; i < to; i++) out[i] *= k; break;
+                case SCALE_PER_SQFT: for (int i = from; i < to; i++) out[i] *= 1 + k * sizes[i]; break;
+                case SCALE_PER_AMENITY: for (int i = from; i < to; i++) out[i] *= 1 + k * amenities[i]; break;
+                case SHARING: for (int i = from; i < to; i++) out[i] *= operands[at + sharing[i]]; break;
+                case OCCUPANCY_ABOVE:
+                    if (occupancyRate > k) for (int i = from; i < to; i++) out[i] *= operands[at + 1];
+                    break;
+                case OCCUPANCY_BELOW:
+                    if (occupancyRate < k) for (int i = from; i < to; i++) out[i] *= operands[at + 1];
+                    break;
+                case FLOOR: for (int i = from; i < to; i++) out[i] = Math.max(out[i], k); break;
+                case CAP: for (int i = from; i < to; i++) out[i] = Math.min(out[i], k); break;
+                default: for (int i = from; i < to; i++) out[i] = Math.round(out[i]);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return name + " (" + opcodes.length + (opcodes.length == 1 ? " rule)" : " rules)");
+    }
+}
+
+/**
+ * The pricing rules in force: the current rule set, and optionally a challenger that rent
+ * suggestions are compared against (A/B mode). Immutable, so a reload swaps both at once.
+ * <p>
+ * In text form, a line {@code [name]} starts a rule set, and the first set is the current
+ * one. Rules before any such line form a set named "standard". Text after {@code #} and
+ * blank lines are ignored. See {@link PricingRules} for the rules.
+ */
+final class PricingConfig {
+    /** The rules rents have always been suggested with. */
+    static final String DEFAULT_TEXT = String.join("\n",
+        "# PGHive pricing rules, applied top to bottom to each room's base rent.",
+        "# Add a second [section] to compare its suggestions with the first in the rent report.",
+        "[standard]",
+        "add 8 per sqft",
+        "scale 0.04 per amenity",
+        "sharing 1.8 1.3 1.0 0.8     # Single Double Triple Four",
+        "occupancy above 0.75 1.1",
+        "occupancy below 0.4 0.9",
+        "round",
+        "");
+    static final PricingConfig DEFAULT = parse(Arrays.asList(DEFAULT_TEXT.split("\n")));
+
+    final PricingRules current;
+    final PricingRules challenger; // null unless comparing
+
+    PricingConfig(PricingRules current, PricingRules challenger) {
+        this.current = current;
+        this.challenger = challenger;
+    }
+
+    /**
+     * Compiles pricing rules from their text form.
+     * 
+     * @param lines Lines of the rules file
+     * @return The compiled configuration
+     * @throws IllegalArgumentException if a rule is invalid or there are no rules, or more than two sets
+     */
+    static PricingConfig parse(List<String> lines) {
+        List<PricingRules> sets = new ArrayList<>(2);
+        String name = "standard";
+        int header = 0; // line of the set's "[name]", 0 for rules before any
+        List<String> rules = new ArrayList<>();
+        List<Integer> lineNumbers = new ArrayList<>();
+        for (int i = 0; i <= lines.size(); i++) {
+            String line = i < lines.size() ? stripComment(lines.get(i)) : null;
+            if (line != null && line.isEmpty()) continue;
+            if (line != null && !line.startsWith("[")) {
+                rules.add(line);
+                lineNumbers.add(i + 1);
+                continue;
+            }
+            // A new set, or the end of the file, closes the one before
+            if (!rules.isEmpty()) {
+                if (sets.size() == 2) {
+                    throw new IllegalArgumentException("Line " + lineNumbers.get(0)
+                                                       + ": At most two rule sets, current and challenger");
+                }
+                sets.add(PricingRules.compile(name, rules, lineNumbers));
+            } else if (header > 0) {
+                throw new IllegalArgumentException("Line " + header + ": Rule set " + name + " has no rules");
+            }
+            if (line == null) break;
+            name = line.endsWith("]") ? line.substring(1, line.length() - 1).trim() : "";
+            if (name.isEmpty()) throw new IllegalArgumentException("Line " + (i + 1) + ": Expected \"[name]\"");
+            header = i + 1;
+            rules.clear();
+            lineNumbers.clear();
+        }
+        if (sets.isEmpty()) throw new IllegalArgumentException("No pricing rules");
+        return new PricingConfig(sets.get(0), sets.size() > 1 ? sets.get(1) : null);
+    }
+
+    private static String stripComment(String line) {
+        int comment = line.indexOf('#');
+        return (comment >= 0 ? line.substring(0, comment) : line).trim();
+    }
+
+    /**
+     * Gets the configuration with only the current rule set.
+     * @return This configuration without its challenger
+     */
+    public PricingConfig withoutChallenger() {
+        return challenger == null ? this : new PricingConfig(current, null);
+    }
+
+    public PricingRules getCurrent() { return current; }
+    public PricingRules getChallenger() { return challenger; }
+}
+
+/**
+ * Keeps {@link RentOptimizer} on the rules in a text file. {@link #reload()} reads the file
+ * again when its modification time or size has changed, and {@link #watchEvery} does so
+ * periodically on a background thread, so edits apply without a restart. A file that does
+ * not parse leaves the previous rules in force.
+ */
+class PricingRuleFile {
+    private static ScheduledExecutorService watchScheduler;
+
+    private final Path path;
+    private long loadedModified = Long.MIN_VALUE; // guarded by this
+    private long loadedSize = -1;
+
+    PricingRuleFile(Path path) {
+        this.path = path;
+    }
+
+    public Path getPath() { return path; }
+
+    /**
+     * Writes the default rules to the file if it does not exist yet, as a starting point to edit.
+     * @throws IOException if the file cannot be written
+     */
+    public void createIfMissing() throws IOException {
+        if (Files.exists(path)) return;
+        if (path.getParent() != null) Files.createDirectories(path.getParent());
+        try {
+            Files.write(path, PricingConfig.DEFAULT_TEXT.getBytes(java.nio.charset.StandardCharsets.UTF_8),
+                        StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        } catch (FileAlreadyExistsException e) {
+            // created meanwhile
+        }
+    }
+
+    /**
+     * Puts the file's rules in force if it has changed since it was last read.
+     * 
+     * @return true if new rules are now in force
+     * @throws IOException if the file cannot be read
+     * @throws IllegalArgumentException if a rule is invalid; the file is not read again until it changes
+     */
+    public synchronized boolean reload() throws IOException {
+        java.nio.file.attribute.BasicFileAttributes attributes =
+            Files.readAttributes(path, java.nio.file.attribute.BasicFileAttributes.class);
+        long modified = attributes.lastModifiedTime().toMillis();
+        if (modified == loadedModified && attributes.size() == loadedSize) return false;
+        loadedModified = modified; // before parsing, so a broken file is reported once per edit
+        loadedSize = attributes.size();
+        RentOptimizer.configure(PricingConfig.parse(Files.readAllLines(path, java.nio.charset.StandardCharsets.UTF_8)));
+        return true;
+    }
+
+    /**
+     * Checks the file for changes periodically on a background thread until the returned
+     * future is cancelled. Reloads and rejected files are logged.
+     * 
+     * @param periodSeconds Seconds between checks
+     * @return Handle to stop watching
+     */
+    public ScheduledFuture<?> watchEvery(long periodSeconds) {
+        synchronized (PricingRuleFile.class) {
+            if (watchScheduler == null) {
+                watchScheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+                    Thread thread = new Thread(task, "pghive-pricing-watch");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+        }
+        return watchScheduler.scheduleWithFixedDelay(() -> {
+            try {
+                if (reload()) {
+                    PricingConfig config = RentOptimizer.getConfig();
+                    EventLog.GLOBAL.log(EventLog.INFO, "pricing.reloaded", "rules", config.current.getName(),
+                                        "challenger", config.challenger != null ? config.challenger.getName() : null);
+                }
+            } catch (IOException | IllegalArgumentException e) {
+                EventLog.GLOBAL.log(EventLog.WARN, "pricing.reload_failed", "file", path, "error", e.getMessage());
+            }
+        }, periodSeconds, periodSeconds, TimeUnit.SECONDS);
+    }
+}
+
+/**
+ * Result table of a batch rent optimization: one row per room, held in primitive
+ * columns that are reused when the table is refilled. In A/B mode a second column
+ * holds each room's rent under the challenger rules.
+ */
+class RentSuggestions {
+    String[] roomIds = new String[0];
+    int[] sharing = new int[0];
+    double[] baseRents = new double[0];
+    double[] sizes = new double[0];
+    int[] amenities = new int[0];
+    double[] suggested = new double[0];
+    double[] challenged = new double[0]; // only sized while comparing
+    private int size;
+    private double occupancyRate;
+    private PricingRules rules;
+    private PricingRules challenger;
+
+    void reset(int rows, double occupancyRate, PricingRules rules, PricingRules challenger) {
+        if (roomIds.length < rows) {
+            roomIds = new String[rows];
+            sharing = new int[rows];
+            baseRents = new double[rows];
+            sizes = new double[rows];
+            amenities = new int[rows];
+            suggested = new double[rows];
+        } else if (rows < size) {
+            Arrays.fill(roomIds, rows, size, null); // drop the stale tail of a larger earlier batch
+        }
+        if (challenger != null && challenged.length < roomIds.length) challenged = new double[roomIds.length];
+        this.size = rows;
+        this.occupancyRate = occupancyRate;
+        this.rules = rules;
+        this.challenger = challenger;
+    }
+
+    public int size() { return size; }
+    public double occupancyRate() { return occupancyRate; }
+    public PricingRules rules() { return rules; }
+    /** Rules the suggestions were compared against, or null if there was no comparison. */
+    public PricingRules challenger() { return challenger; }
+    public String roomId(int row) { return roomIds[Objects.checkIndex(row, size)]; }
+    public String sharingType(int row) { return Room.SHARING_TYPES[sharing[Objects.checkIndex(row, size)]]; }
+    public double currentRent(int row) { return baseRents[Objects.checkIndex(row, size)]; }
+    public double suggestedRent(int row) { return suggested[Objects.checkIndex(row, size)]; }
+
+    /**
+     * Gets a room's rent under the challenger rules.
+     * @param row Row number
+     * @return Rent suggested by the challenger
+     * @throws IllegalStateException if there was no comparison
+     */
+    public double challengerRent(int row) {
+        if (challenger == null) throw new IllegalStateException("No challenger rules");
+        return challenged[Objects.checkIndex(row, size)];
+    }
+
+    /**
+     * Gets the suggested change relative to the current rent.
+     * @param row Row number
+     * @return Change in percent, positive for an increase
+     */
+    public double changePercent(int row) {
+        double current = currentRent(row);
+        return ((suggested[row] - current) / current) * 100;
+    }
+
+    /**
+     * Sums the suggested rents.
+     * @return Total suggested monthly rent over all rooms
+     */
+    public double totalSuggested() {
+        double total = 0;
+        for (int i = 0; i < size; i++) total += suggested[i];
+        return total;
+    }
+
+    /**
+     * Sums the rents the challenger rules suggest.
+     * @return Total challenger monthly rent over all rooms
+     * @throws IllegalStateException if there was no comparison
+     */
+    public double totalChallenger() {
+        if (challenger == null) throw new IllegalStateException("No challenger rules");
+        double total = 0;
+        for (int i = 0; i < size; i++) total += challenged[i];
+        return total;
+    }
+}
+
+/**
+ * Occupancy and expected revenue over time, built from each occupied bed's stay: from
+ * the tenant's move-in day (or always, if unset) until the move-out day (or forever).
+ * A sweep over the sorted stay boundaries turns them into step functions of occupied
+ * beds and daily rent, with running integrals at every boundary, so a date-range query
+ * is two binary searches however long the range.
+ * <p>
+ * A forecast is an immutable snapshot; {@link PGOwner#getForecast} rebuilds it after
+ * stays change. Ranges are half-open: {@code fromDay} inclusive, {@code toDay} exclusive.
+ */
+class OccupancyForecast {
+    private final int beds;
+    private final int[] days;               // stay boundaries, ascending
+    private final int[] occupied;           // beds taken from days[i] until days[i + 1]
+    private final double[] dailyRent;       // rent earned per day over the same span
+    private final long[] occupiedDaysBefore; // integral of occupied up to days[i]
+    private final double[] revenueBefore;   // integral of dailyRent up to days[i]
+    private final int openOccupied;         // occupied before the first boundary
+    private final double openDailyRent;
+    final long version; // stay version of the owner when built
+
+    /**
+     * Builds a forecast from the current tenants of the given rooms.
+     * 
+     * @param rooms Rooms of one owner
+     * @param version The owner's stay version read before the rooms
+     */
+    OccupancyForecast(Collection<Room> rooms, long version) {
+        this.version = version;
+        int count = 0, bedCount = 0, stays = 0;
+        int limit = rooms.size(), capacity = limit * Room.BEDS[Room.BEDS.length - 1];
+        int[] starts = new int[capacity], ends = new int[capacity];
+        double[] rents = new double[capacity];
+        for (Room room : rooms) {
+            if (count == limit) break; // rooms added while building join the next forecast
+            count++;
+            bedCount += room.getBedCount();
+            for (int bed = 0; bed < room.getBedCount(); bed++) {
+                Tenant tenant = room.getTenant(bed);
+                if (tenant == null) continue;
+                int start = tenant.getMoveInDay(), end = tenant.getMoveOutDay();
+                if (start != EpochDays.NONE && end != EpochDays.NONE && end <= start) continue; // already ended
+                starts[stays] = start;
+                ends[stays] = end;
+                rents[stays] = room.getRent() / 30; // daily rate, as for daily tenants
+                stays++;
+            }
+        }
+        this.beds = bedCount;
+
+        // Each boundary is (day << 32 | stay << 1 | isEnd), so sorting orders them by day
+        long[] boundaries = new long[stays * 2];
+        int n = 0, open = 0;
+        double openRent = 0;
+        for (int i = 0; i < stays; i++) {
+            if (starts[i] == EpochDays.NONE) {
+                open++;
+                openRent += rents[i];
+            } else {
+                boundaries[n++] = (long) starts[i] << 32 | (long) i << 1;
+            }
+            if (ends[i] != EpochDays.NONE) boundaries[n++] = (long) ends[i] << 32 | (long) i << 1 | 1;
+        }
+        Arrays.sort(boundaries, 0, n);
+        openOccupied = open;
+        openDailyRent = openRent;
+
+        int[] stepDays = new int[n];
+        int[] stepOccupied = new int[n];
+        double[] stepRent = new double[n];
+        int steps = 0, current = open;
+        double rent = openRent;
+        for (int i = 0; i < n; i++) {
+            int day = (int) (boundaries[i] >> 32);
+            int stay = (int) boundaries[i] >>> 1;
+            boolean end = (boundaries[i] & 1) != 0;
+            current += end ? -1 : 1;
+            rent += end ? -rents[stay] : rents[stay];
+            if (steps == 0 || stepDays[steps - 1] != day) steps++;
+            stepDays[steps - 1] = day;
+            stepOccupied[steps - 1] = current;
+            stepRent[steps - 1] = Math.max(0, rent); // clamps rounding drift once every stay has ended
+        }
+        days = Arrays.copyOf(stepDays, steps);
+        occupied = Arrays.copyOf(stepOccupied, steps);
+        dailyRent = Arrays.copyOf(stepRent, steps);
+        occupiedDaysBefore = new long[steps];
+        revenueBefore = new double[steps];
+        for (int i = 1; i < steps; i++) {
+            long span = (long) days[i] - days[i - 1];
+            occupiedDaysBefore[i] = occupiedDaysBefore[i - 1] + occupied[i - 1] * span;
+            revenueBefore[i] = revenueBefore[i - 1] + dailyRent[i - 1] * span;
+        }
+    }
+
+    /** Number of beds the forecast covers. */
+    public int getBedCount() { return beds; }
+
+    /**
+     * Gets how many beds are taken on a day.
+     * @param day Epoch day
+     * @return Occupied beds
+     */
+    public int occupiedBeds(int day) {
+        int step = stepAt(day);
+        return step < 0 ? openOccupied : occupied[step];
+    }
+
+    /**
+     * Gets the average fraction of beds taken over a date range.
+     * 
+     * @param fromDay First day, inclusive
+     * @param toDay Last day, exclusive
+     * @return Occupancy between 0 and 1, or 0 when there are no rooms
+     * @throws IllegalArgumentException if the range is empty
+     */
+    public double occupancyRate(int fromDay, int toDay) {
+        checkRange(fromDay, toDay);
+        if (beds == 0) return 0;
+        return (double) (occupiedDaysUntil(toDay) - occupiedDaysUntil(fromDay)) / ((long) beds * (toDay - fromDay));
+    }
+
+    /**
+     * Gets the rent the current stays earn over a date range, at each room's daily rate.
+     * 
+     * @param fromDay First day, inclusive
+     * @param toDay Last day, exclusive
+     * @return Expected revenue
+     * @throws IllegalArgumentException if the range is empty
+     */
+    public double expectedRevenue(int fromDay, int toDay) {
+        checkRange(fromDay, toDay);
+        return revenueUntil(toDay) - revenueUntil(fromDay);
+    }
+
+    private static void checkRange(int fromDay, int toDay) {
+        if (fromDay == EpochDays.NONE || toDay == EpochDays.NONE || toDay <= fromDay) {
+            throw new IllegalArgumentException("Invalid forecast range: " + EpochDays.format(fromDay)
+                                               + " to " + EpochDays.format(toDay));
+        }
+    }
+
+    // Index of the last boundary at or before the day, or -1 if the day is before all of them
+    private int stepAt(int day) {
+        int at = Arrays.binarySearch(days, day);
+        return at >= 0 ? at : -at - 2;
+    }
+
+    // Occupied room-days from the first boundary until the day; negative before it
+    private long occupiedDaysUntil(int day) {
+        int step = stepAt(day);
+        if (step < 0) return days.length == 0 ? (long) openOccupied * day : (long) openOccupied * (day - days[0]);
+        return occupiedDaysBefore[step] + (long) occupied[step] * (day - days[step]);
+    }
+
+    private double revenueUntil(int day) {
+        int step = stepAt(day);
+        if (step < 0) return days.length == 0 ? openDailyRent * day : openDailyRent * ((long) day - days[0]);
+        return revenueBefore[step] + dailyRent[step] * ((long) day - days[step]);
+    }
+}
+
+/**
+ * Time index over the unpaid rows of a {@link PaymentLedger}: one bucket of row numbers
+ * per due epoch day, with the days kept in order. Queries for a day or a range of days
+ * only visit those buckets. Rows that have since been paid or released are dropped from
+ * a bucket the next time it is visited. Bulk-generated rows are appended to their day's
+ * bucket, so billing never re-sorts the index.
+ * All state is guarded by the ledger's monitor.
+ */
+class PaymentScheduler {
+    /** Reminders go out on the due day and again 1, 7 and 30 days after it. */
+    static final int[] REMINDER_OFFSETS = {0, 1, 7, 30};
+    private static final int REMINDER_BATCH = 500;
+
+    private static final class DayBucket {
+        int[] rows = new int[8];
+        int size;
+    }
+
+    private final PaymentLedger ledger;
+    private final TreeMap<Integer, DayBucket> byDay = new TreeMap<>();
+    private DayBucket lastBucket; // consecutive rows often share a due day
+    private int lastDay;
+
+    /**
+     * Indexes the ledger's current unpaid rows and keeps the index updated as rows are added.
+     * 
+     * @param ledger Ledger to schedule
+     */
+    PaymentScheduler(PaymentLedger ledger) {
+        this.ledger = ledger;
+        synchronized (ledger) {
+            ledger.scheduler = this;
+            rowsAdded(0, ledger.size());
+        }
+    }
+
+    // Caller holds the ledger's monitor
+    void rowAdded(int row) {
+        int day = ledger.dueDayAt(row);
+        if (day == EpochDays.NONE || ledger.isPaid(row)) return;
+        DayBucket bucket = lastBucket;
+        if (bucket == null || lastDay != day) {
+            bucket = byDay.computeIfAbsent(day, d -> new DayBucket());
+            lastBucket = bucket;
+            lastDay = day;
+        }
+        if (bucket.size == bucket.rows.length) bucket.rows = Arrays.copyOf(bucket.rows, bucket.size * 2);
+        bucket.rows[bucket.size++] = row;
+    }
+
+    // Caller holds the ledger's monitor. A block usually spans a few hundred due days, so rows
+    // are counted per day first and each day's bucket is looked up and sized once
+    void rowsAdded(int first, int count) {
+        int minDay = Integer.MAX_VALUE, maxDay = Integer.MIN_VALUE;
+        for (int row = first; row < first + count; row++) {
+            int day = ledger.dueDayLocked(row);
+            if (day == EpochDays.NONE || ledger.isPaidLocked(row)) continue;
+            minDay = Math.min(minDay, day);
+            maxDay = Math.max(maxDay, day);
+        }
+        if (minDay > maxDay) return;
+        if ((long) maxDay - minDay > Math.max(count, 1 << 12)) {
+            for (int row = first; row < first + count; row++) {
+                rowAdded(row);
+            }
+            return;
+        }
+        int[] perDay = new int[maxDay - minDay + 1];
+        for (int row = first; row < first + count; row++) {
+            int day = ledger.dueDayLocked(row);
+            if (day != EpochDays.NONE && !ledger.isPaidLocked(row)) perDay[day - minDay]++;
+        }
+        DayBucket[] buckets = new DayBucket[perDay.length];
+        for (int i = 0; i < perDay.length; i++) {
+            if (perDay[i] == 0) continue;
+            DayBucket bucket = byDay.computeIfAbsent(minDay + i, d -> new DayBucket());
+            if (bucket.rows.length < bucket.size + perDay[i]) bucket.rows = Arrays.copyOf(bucket.rows, bucket.size + perDay[i]);
+            buckets[i] = bucket;
+        }
+        for (int row = first; row < first + count; row++) {
+            int day = ledger.dueDayLocked(row);
+            if (day == EpochDays.NONE || ledger.isPaidLocked(row)) continue;
+            DayBucket bucket = buckets[day - minDay];
+            bucket.rows[bucket.size++] = row;
+        }
+    }
+
+    /**
+     * Gets the unpaid payments due on one day.
+     * @param day Epoch day
+     * @return Payments due that day, in the order they were added
+     */
+    public List<Payment> dueOn(int day) {
+        return collect(day, day);
+    }
+
+    /**
+     * Gets the unpaid payments that are at least {@code minDaysOverdue} days past due.
+     * 
+     * @param today Current epoch day
+     * @param minDaysOverdue Minimum days past the due date, at least 1
+     * @return Overdue payments, oldest due date first
+     */
+    public List<Payment> overdue(int today, int minDaysOverdue) {
+        return collect(Integer.MIN_VALUE + 1, today - Math.max(1, minDaysOverdue));
+    }
+
+    /**
+     * Counts the unpaid payments that are past due, pruning settled rows on the way.
+     * @param today Current epoch day
+     * @return Number of overdue payments
+     */
+    public int overdueCount(int today) {
+        synchronized (ledger) {
+            int count = 0;
+            for (Iterator<DayBucket> it = byDay.headMap(today, false).values().iterator(); it.hasNext(); ) {
+                DayBucket bucket = it.next();
+                count += prune(bucket);
+                if (bucket.size == 0) it.remove();
+            }
+            return count;
+        }
+    }
+
+    private List<Payment> collect(int fromDay, int toDay) {
+        List<Payment> result = new ArrayList<>();
+        if (fromDay > toDay) return result;
+        synchronized (ledger) {
+            for (Iterator<DayBucket> it = byDay.subMap(fromDay, true, toDay, true).values().iterator(); it.hasNext(); ) {
+                DayBucket bucket = it.next();
+                prune(bucket);
+                if (bucket.size == 0) {
+                    it.remove();
+                    continue;
+                }
+                for (int i = 0; i < bucket.size; i++) {
+                    result.add(new Payment(ledger, bucket.rows[i]));
+                }
+            }
+        }
+        return result;
+    }
+
+    // Drops paid and released rows from a bucket; returns the remaining size
+    private int prune(DayBucket bucket) {
+        int kept = 0;
+        for (int i = 0; i < bucket.size; i++) {
+            int row = bucket.rows[i];
+            if (!ledger.isPaid(row) && ledger.isLive(row)) bucket.rows[kept++] = row;
+        }
+        bucket.size = kept;
+        if (bucket == lastBucket && kept == 0) lastBucket = null;
+        return kept;
+    }
+
+    /**
+     * Sends reminders for every unpaid payment whose due date is today or exactly one of
+     * the {@link #REMINDER_OFFSETS} days ago. Reminders are built under the ledger lock
+     * and delivered to the listener in batches after it is released.
+     * 
+     * @param today Current epoch day
+     * @param listener Receives the reminder batches
+     * @return Number of reminders sent
+     */
+    public int sendReminders(int today, ReminderListener listener) {
+        List<PaymentReminder> reminders = new ArrayList<>();
+        synchronized (ledger) {
+            for (int offset : REMINDER_OFFSETS) {
+                DayBucket bucket = byDay.get(today - offset);
+                if (bucket == null || prune(bucket) == 0) continue;
+                for (int i = 0; i < bucket.size; i++) {
+                    int row = bucket.rows[i];
+                    reminders.add(new PaymentReminder(ledger.tenantAt(row), ledger.paymentIdAt(row),
+                                                      ledger.amountAt(row), today - offset, offset));
+                }
+            }
+        }
+        for (int from = 0; from < reminders.size(); from += REMINDER_BATCH) {
+            listener.onReminders(reminders.subList(from, Math.min(reminders.size(), from + REMINDER_BATCH)));
+        }
+        return reminders.size();
+    }
+
+    /**
+     * Runs {@link #sendReminders} shortly after every local midnight.
+     * 
+     * @param executor Executor that runs the daily job
+     * @param listener Receives the reminder batches
+     * @return Handle to cancel the job
+     */
+    public ScheduledFuture<?> scheduleDaily(ScheduledExecutorService executor, ReminderListener listener) {
+        ZonedDateTime now = ZonedDateTime.now();
+        long delay = Duration.between(now, now.toLocalDate().plusDays(1).atStartOfDay(now.getZone())).toMillis();
+        return executor.scheduleAtFixedRate(() -> sendReminders(EpochDays.today(), listener),
+                                            delay, TimeUnit.DAYS.toMillis(1), TimeUnit.MILLISECONDS);
+    }
+}
+
+/**
+ * Receives batches of payment reminders from a {@link PaymentScheduler}.
+ */
+interface ReminderListener {
+    void onReminders(List<PaymentReminder> batch);
+}
+
+/**
+ * A reminder that one payment is due or overdue.
+ */
+class PaymentReminder {
+    private final Tenant tenant;
+    private final String paymentId;
+    private final double amount;
+    private final int dueDay;
+    private final int daysOverdue;
+
+    PaymentReminder(Tenant tenant, String paymentId, double amount, int dueDay, int daysOverdue) {
+        this.tenant = tenant;
+        this.paymentId = paymentId;
+        this.amount = amount;
+        this.dueDay = dueDay;
+        this.daysOverdue = daysOverdue;
+    }
+
+    public Tenant getTenant() { return tenant; }
+    public String getPaymentId() { return paymentId; }
+    public double getAmount() { return amount; }
+    public int getDueDay() { return dueDay; }
+    public int getDaysOverdue() { return daysOverdue; }
+}
+
+/**
+ * A change to tenants, rooms or payments, published on an owner's {@link EventBus}.
+ * Events are immutable; the fields that do not apply to a type are null or 0.
+ */
+class DomainEvent {
+    static final int TENANT_ADDED = 1;
+    static final int TENANT_EDITED = 2;
+    static final int TENANT_DELETED = 3;
+    static final int ROOM_ADDED = 4;
+    static final int ROOM_OCCUPIED = 5;
+    static final int ROOM_VACATED = 6;
+    static final int PAYMENT_ADDED = 7;
+    static final int PAYMENT_PAID = 8;
+    static final int PAYMENTS_GENERATED = 9;
+    static final int ROOM_RESERVED = 10;
+    static final int RESERVATION_CANCELLED = 11;
+
+    private static final String[] TYPE_NAMES = {null, "tenant.added", "tenant.edited", "tenant.deleted", "room.added",
+                                                "room.occupied", "room.vacated", "payment.added", "payment.paid",
+                                                "payments.generated", "room.reserved", "reservation.cancelled"};
+
+    private final int type;
+    private final long timestamp;
+    private final String tenantId;
+    private final String roomId;
+    private final String paymentId;
+    private final double amount;
+    private final int day;
+    private final int count;
+    long offset = -1; // assigned when published
+
+    private DomainEvent(int type, String tenantId, String roomId, String paymentId, double amount, int day, int count) {
+        this.type = type;
+        this.timestamp = System.currentTimeMillis();
+        this.tenantId = tenantId;
+        this.roomId = roomId;
+        this.paymentId = paymentId;
+        this.amount = amount;
+        this.day = day;
+        this.count = count;
+    }
+
+    static DomainEvent tenant(int type, String tenantId) {
+        return new DomainEvent(type, tenantId, null, null, 0, EpochDays.NONE, 0);
+    }
+
+    static DomainEvent room(int type, String roomId, String tenantId) {
+        return new DomainEvent(type, tenantId, roomId, null, 0, EpochDays.NONE, 0);
+    }
+
+    static DomainEvent payment(int type, String tenantId, String paymentId, double amount, int dueDay) {
+        return new DomainEvent(type, tenantId, null, paymentId, amount, dueDay, 0);
+    }
+
+    static DomainEvent reservation(int type, Reservation reservation) {
+        return new DomainEvent(type, reservation.getTenantId(), reservation.getRoomId(), null, 0,
+                               reservation.getFromDay(), 0);
+    }
+
+    static DomainEvent paymentsGenerated(int startDay, int count) {
+        return new DomainEvent(PAYMENTS_GENERATED, null, null, null, 0, startDay, count);
+    }
+
+    public int getType() { return type; }
+    public String getTypeName() { return TYPE_NAMES[type]; }
+    public long getOffset() { return offset; }
+    public long getTimestamp() { return timestamp; }
+    public String getTenantId() { return tenantId; }
+    public String getRoomId() { return roomId; }
+    public String getPaymentId() { return paymentId; }
+    public double getAmount() { return amount; }
+    /** Due day of a payment, first due day of generated payments, or first day of a reservation, as an epoch day. */
+    public int getDay() { return day; }
+    /** Number of payments a bulk generation created. */
+    public int getCount() { return count; }
+
+    @Override
+    public String toString() {
+        return offset + " " + getTypeName() + (tenantId != null ? " tenant=" + tenantId : "")
+               + (roomId != null ? " room=" + roomId : "") + (paymentId != null ? " payment=" + paymentId : "")
+               + (count > 0 ? " count=" + count : "");
+    }
+}
+
+/**
+ * Receives events from an {@link EventBus} subscription in batches.
+ */
+interface DomainEventListener {
+    /**
+     * Handles the next batch, in publication order. The list is only valid during the call.
+     * @param events One or more consecutive events
+     */
+    void onEvents(List<DomainEvent> events);
+}
+
+/**
+ * In-process stream of {@link DomainEvent}s with any number of subscribers.
+ * Publishers claim consecutive offsets from one counter and write into a fixed ring;
+ * every subscription has its own cursor and a thread that delivers events in batches.
+ * The ring doubles as history: a subscription may start at any offset still held in it.
+ * <p>
+ * A publisher never overwrites an event that a subscriber has not received. When the
+ * slowest subscription is a whole ring behind, publishers wait for it (back-pressure).
+ * Events are published while the mutation's locks are held, to keep their order, so a
+ * listener must not call back into the owner's mutators synchronously.
+ */
+class EventBus {
+    /** Start offset for a subscription that only wants events published from now on. */
+    static final long LATEST = -1;
+    /** Start offset for a subscription that replays every event still retained. */
+    static final long EARLIEST = -2;
+
+    private static final long IDLE_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(200);
+    private static final long FULL_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(20);
+
+    private final int mask;
+    private final DomainEvent[] ring;
+    private final AtomicLongArray published; // offset + 1 of the event in each slot, 0 while empty
+    private final AtomicLong nextOffset = new AtomicLong();
+    private volatile Subscription[] subscriptions = new Subscription[0];
+    private volatile long gatingCache; // lowest subscription cursor seen by the last full check
+    private final LongAdder publisherWaits = new LongAdder();
+
+    /**
+     * @param capacity Number of events retained; rounded up to a power of two
+     */
+    public EventBus(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        mask = size - 1;
+        ring = new DomainEvent[size];
+        published = new AtomicLongArray(size);
+    }
+
+    /**
+     * Publishes an event, waiting if the slowest subscription is a ring behind.
+     * @return The event's offset
+     */
+    public long publish(DomainEvent event) {
+        long offset = nextOffset.getAndIncrement();
+        long wrapPoint = offset - ring.length;
+        int slot = (int) offset & mask;
+        if (wrapPoint >= 0) {
+            // The slot's previous event must be written and received by everyone before reuse
+            while (published.get(slot) != wrapPoint + 1 || (wrapPoint >= gatingCache && wrapPoint >= (gatingCache = minCursor(offset)))) {
+                publisherWaits.increment();
+                LockSupport.parkNanos(FULL_PARK_NANOS);
+            }
+        }
+        event.offset = offset;
+        ring[slot] = event;
+        published.lazySet(slot, offset + 1);
+        return offset;
+    }
+
+    /**
+     * Gets the offset the next published event will have.
+     */
+    public long getNextOffset() { return nextOffset.get(); }
+
+    /**
+     * Gets the offset of the oldest event still held for replay.
+     */
+    public long getOldestOffset() { return Math.max(0, nextOffset.get() - ring.length); }
+
+    /** Number of times a publisher had to wait for a slow subscription. */
+    public long getPublisherWaits() { return publisherWaits.sum(); }
+
+    // Lowest cursor of any subscription, or the given offset when there are none
+    private long minCursor(long offset) {
+        long min = offset;
+        for (Subscription subscription : subscriptions) min = Math.min(min, subscription.cursor);
+        return min;
+    }
+
+    /**
+     * Starts delivering events to a listener on a dedicated thread.
+     * 
+     * @param name Name of the subscription, used for its thread
+     * @param fromOffset First offset to deliver, {@link #LATEST} or {@link #EARLIEST}
+     * @param maxBatch Largest number of events passed to one {@link DomainEventListener#onEvents} call
+     * @param listener Receiver of the events
+     * @return The running subscription; close it to stop delivery
+     * @throws IllegalArgumentException if the offset is no longer retained or not yet published
+     */
+    public synchronized Subscription subscribe(String name, long fromOffset, int maxBatch, DomainEventListener listener) {
+        long next = nextOffset.get();
+        long start = fromOffset == LATEST ? next : fromOffset == EARLIEST ? getOldestOffset() : fromOffset;
+        if (start < getOldestOffset() || start > next) {
+            throw new IllegalArgumentException("Offset " + fromOffset + " is outside the retained range "
+                                               + getOldestOffset() + "-" + next);
+        }
+        Subscription subscription = new Subscription(name, start, Math.max(1, maxBatch), listener);
+        Subscription[] current = subscriptions;
+        Subscription[] grown = Arrays.copyOf(current, current.length + 1);
+        grown[current.length] = subscription;
+        subscriptions = grown;
+        gatingCache = Math.min(gatingCache, start);
+        subscription.thread.start();
+        return subscription;
+    }
+
+    private synchronized void unsubscribe(Subscription subscription) {
+        List<Subscription> remaining = new ArrayList<>(Arrays.asList(subscriptions));
+        remaining.remove(subscription);
+        subscriptions = remaining.toArray(new Subscription[0]);
+    }
+
+    /**
+     * One subscriber's position in the stream and the thread delivering to it.
+     */
+    final class Subscription implements Closeable {
+        volatile long cursor; // next offset to deliver
+        private final int maxBatch;
+        private final DomainEventListener listener;
+        private final Thread thread;
+        private volatile boolean running = true;
+        private final LongAdder skipped = new LongAdder();
+
+        private Subscription(String name, long start, int maxBatch, DomainEventListener listener) {
+            this.cursor = start;
+            this.maxBatch = maxBatch;
+            this.listener = listener;
+            this.thread = new Thread(this::deliverLoop, "pghive-events-" + name);
+            this.thread.setDaemon(true);
+        }
+
+        /** Offset of the next event this subscription will receive. */
+        public long getOffset() { return cursor; }
+
+        /** Events overwritten before delivery; only possible while starting a replay under load. */
+        public long getSkipped() { return skipped.sum(); }
+
+        private void deliverLoop() {
+            List<DomainEvent> batch = new ArrayList<>(Math.min(maxBatch, 4096));
+            List<DomainEvent> view = Collections.unmodifiableList(batch);
+            while (running) {
+                long offset = cursor;
+                while (batch.size() < maxBatch) {
+                    int slot = (int) offset & mask;
+                    long stamp = published.get(slot);
+                    if (stamp != offset + 1) {
+                        if (stamp > offset + 1 && batch.isEmpty()) { // overwritten during a late replay start
+                            skipped.add(stamp - 1 - offset);
+                            offset = stamp - 1;
+                            continue;
+                        }
+                        break;
+                    }
+                    batch.add(ring[slot]);
+                    offset++;
+                }
+                if (batch.isEmpty()) {
+                    LockSupport.parkNanos(IDLE_PARK_NANOS);
+                    continue;
+                }
+                try {
+                    listener.onEvents(view);
+                } catch (RuntimeException e) {
+                    EventLog.GLOBAL.log(EventLog.ERROR, "events.listener_failed", "subscription", thread.getName(),
+                                        "error", e.toString());
+                }
+                batch.clear();
+                cursor = offset; // frees the delivered slots for publishers
+            }
+        }
+
+        /**
+         * Stops delivery after the current batch and releases publishers waiting on this subscription.
+         */
+        @Override
+        public void close() {
+            running = false;
+            unsubscribe(this);
+            LockSupport.unpark(thread);
+            if (Thread.currentThread() != thread) {
+                try {
+                    thread.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+}
+
+/**
+ * Stores the bytes of tenant documents on local disk, content-addressed by SHA-256.
+ * Identical files are kept once however many tenants upload them. Uploads are streamed
+ * into a temporary file with {@link FileChannel#transferFrom}, hashed through a memory
+ * map and then renamed into place under {@code blobs/}; downloads go out with
+ * {@link FileChannel#transferTo}, so document bytes never pass through the Java heap.
+ * <p>
+ * Each tenant has a manifest mapping document names to blobs, kept in memory once read
+ * and rewritten atomically under {@code manifests/} on every change. Small documents that
+ * are read again are kept in an LRU cache of direct buffers, bounded by total size.
+ */
+class DocumentStore {
+    static final long MAX_DOCUMENT_BYTES = 25L * 1024 * 1024;
+    private static final long TRANSFER_CHUNK = 8L * 1024 * 1024;
+    private static final long MAP_CHUNK = 1L << 30;
+
+    private final Path blobs;
+    private final Path manifests;
+    private final Path incoming;
+    private final ConcurrentHashMap<String, Map<String, StoredDocument>> manifestsByTenant = new ConcurrentHashMap<>();
+    private final int smallDocumentBytes;
+    private final long cacheCapacityBytes;
+    private long cachedBytes;
+    private final LinkedHashMap<String, ByteBuffer> cache = new LinkedHashMap<>(64, 0.75f, true); // guarded by itself
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder cacheMisses = new LongAdder();
+
+    private DocumentStore(Path root, int smallDocumentBytes, long cacheCapacityBytes) {
+        this.blobs = root.resolve("blobs");
+        this.manifests = root.resolve("manifests");
+        this.incoming = root.resolve("incoming");
+        this.smallDocumentBytes = smallDocumentBytes;
+        this.cacheCapacityBytes = cacheCapacityBytes;
+    }
+
+    /**
+     * Opens a store with a 16 MB cache for documents up to 256 KB.
+     * 
+     * @param root Directory holding the blobs and manifests; created if missing
+     */
+    public static DocumentStore open(Path root) throws IOException {
+        return open(root, 256 * 1024, 16L * 1024 * 1024);
+    }
+
+    /**
+     * @param root Directory holding the blobs and manifests; created if missing
+     * @param smallDocumentBytes Largest document the cache keeps
+     * @param cacheCapacityBytes Total size of cached documents
+     */
+    public static DocumentStore open(Path root, int smallDocumentBytes, long cacheCapacityBytes) throws IOException {
+        DocumentStore store = new DocumentStore(root, smallDocumentBytes, cacheCapacityBytes);
+        Files.createDirectories(store.blobs);
+        Files.createDirectories(store.manifests);
+        Files.createDirectories(store.incoming);
+        try (DirectoryStream<Path> leftovers = Files.newDirectoryStream(store.incoming)) {
+            for (Path leftover : leftovers) Files.deleteIfExists(leftover); // uploads cut off by a crash
+        }
+        return store;
+    }
+
+    /**
+     * Stores a document for a tenant, replacing any earlier document of the same name.
+     * 
+     * @param tenantId Owner of the document
+     * @param name Document name, e.g. {@code id-proof.pdf}
+     * @param source Channel the content is read from until end of stream
+     * @return The stored document
+     * @throws IllegalArgumentException if the name is invalid or the content exceeds {@link #MAX_DOCUMENT_BYTES}
+     */
+    public StoredDocument put(String tenantId, String name, ReadableByteChannel source) throws IOException {
+        validateName(name);
+        Path temp = Files.createTempFile(incoming, "upload", ".tmp");
+        try {
+            long size = 0;
+            try (FileChannel out = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                long copied;
+                while ((copied = out.transferFrom(source, size, TRANSFER_CHUNK)) > 0) {
+                    size += copied;
+                    if (size > MAX_DOCUMENT_BYTES) {
+                        throw new IllegalArgumentException("Document is larger than " + MAX_DOCUMENT_BYTES + " bytes");
+                    }
+                }
+            }
+            String hash = sha256(temp, size);
+            Path blob = blobPath(hash);
+            if (Files.exists(blob)) {
+                Files.delete(temp); // already stored: keep a single copy
+            } else {
+                Files.createDirectories(blob.getParent());
+                Files.move(temp, blob, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            }
+            StoredDocument document = new StoredDocument(name, hash, size);
+            Map<String, StoredDocument> manifest = manifest(tenantId);
+            synchronized (manifest) {
+                manifest.put(name, document);
+                writeManifest(tenantId, manifest);
+            }
+            return document;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Stores a copy of a local file under the given name.
+     */
+    public StoredDocument putFile(String tenantId, String name, Path file) throws IOException {
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            return put(tenantId, name, in);
+        }
+    }
+
+    /**
+     * Gets a tenant's document by name.
+     * @return The document, or null if the tenant has none by that name
+     */
+    public StoredDocument find(String tenantId, String name) throws IOException {
+        Map<String, StoredDocument> manifest = manifest(tenantId);
+        synchronized (manifest) {
+            return manifest.get(name);
+        }
+    }
+
+    /**
+     * Gets a tenant's documents ordered by name.
+     */
+    public List<StoredDocument> list(String tenantId) throws IOException {
+        Map<String, StoredDocument> manifest = manifest(tenantId);
+        synchronized (manifest) {
+            List<StoredDocument> documents = new ArrayList<>(manifest.values());
+            documents.sort(Comparator.comparing(StoredDocument::getName));
+            return documents;
+        }
+    }
+
+    /**
+     * Writes a document's content to a channel, from the cache when it is hot and small,
+     * otherwise straight from its blob file.
+     * 
+     * @return Number of bytes written
+     * @throws NoSuchFileException if the tenant has no document by that name
+     */
+    public long transferTo(String tenantId, String name, WritableByteChannel target) throws IOException {
+        StoredDocument document = find(tenantId, name);
+        if (document == null) throw new NoSuchFileException(name);
+        return transferTo(document, target);
+    }
+
+    public long transferTo(StoredDocument document, WritableByteChannel target) throws IOException {
+        ByteBuffer cached = cached(document);
+        if (cached != null) {
+            while (cached.hasRemaining()) target.write(cached);
+            return document.getSize();
+        }
+        try (FileChannel in = FileChannel.open(blobPath(document.getHash()), StandardOpenOption.READ)) {
+            if (document.getSize() <= smallDocumentBytes) {
+                ByteBuffer content = ByteBuffer.allocateDirect((int) document.getSize());
+                while (content.hasRemaining()) {
+                    if (in.read(content) < 0) throw new EOFException("Blob is shorter than its manifest entry: " + document.getHash());
+                }
+                content.flip();
+                cache(document.getHash(), content);
+                content = content.duplicate();
+                while (content.hasRemaining()) target.write(content);
+                return document.getSize();
+            }
+            long position = 0;
+            while (position < document.getSize()) {
+                position += in.transferTo(position, document.getSize() - position, target);
+            }
+            return position;
+        }
+    }
+
+    public long getCacheHits() { return cacheHits.sum(); }
+    public long getCacheMisses() { return cacheMisses.sum(); }
+
+    // Returns a private view of the cached content, or null on a miss
+    private ByteBuffer cached(StoredDocument document) {
+        if (document.getSize() > smallDocumentBytes) return null;
+        synchronized (cache) {
+            ByteBuffer content = cache.get(document.getHash());
+            if (content == null) {
+                cacheMisses.increment();
+                return null;
+            }
+            cacheHits.increment();
+            return content.duplicate();
+        }
+    }
+
+    private void cache(String hash, ByteBuffer content) {
+        synchronized (cache) {
+            ByteBuffer previous = cache.put(hash, content.asReadOnlyBuffer());
+            cachedBytes += content.capacity() - (previous == null ? 0 : previous.capacity());
+            Iterator<ByteBuffer> eldest = cache.values().iterator();
+            while (cachedBytes > cacheCapacityBytes && eldest.hasNext()) {
+                cachedBytes -= eldest.next().capacity();
+                eldest.remove();
+            }
+        }
+    }
+
+    private Map<String, StoredDocument> manifest(String tenantId) throws IOException {
+        Map<String, StoredDocument> manifest = manifestsByTenant.get(tenantId);
+        if (manifest != null) return manifest;
+        Map<String, StoredDocument> loaded = new HashMap<>();
+        Path file = manifestPath(tenantId);
+        if (Files.exists(file)) {
+            for (String line : Files.readAllLines(file, java.nio.charset.StandardCharsets.UTF_8)) {
+                String[] fields = line.split("\t", 3);
+                if (fields.length == 3) loaded.put(fields[2], new StoredDocument(fields[2], fields[0], Long.parseLong(fields[1])));
+            }
+        }
+        manifest = manifestsByTenant.putIfAbsent(tenantId, loaded);
+        return manifest != null ? manifest : loaded;
+    }
+
+    // One "hash<TAB>size<TAB>name" line per document, replaced atomically
+    private void writeManifest(String tenantId, Map<String, StoredDocument> manifest) throws IOException {
+        StringBuilder text = new StringBuilder();
+        for (StoredDocument document : manifest.values()) {
+            text.append(document.getHash()).append('\t').append(document.getSize()).append('\t')
+                .append(document.getName()).append('\n');
+        }
+        Path file = manifestPath(tenantId);
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.write(temp, text.toString().getBytes(java.nio.charset.StandardCharsets.UTF_8));
+        Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private Path manifestPath(String tenantId) {
+        // Percent-encoded, so any tenant ID becomes a safe file name
+        return manifests.resolve(java.net.URLEncoder.encode(tenantId, java.nio.charset.StandardCharsets.UTF_8)
+                                          .replace("*", "%2A").replace(".", "%2E") + ".tsv");
+    }
+
+    private Path blobPath(String hash) {
+        return blobs.resolve(hash.substring(0, 2)).resolve(hash);
+    }
+
+    private static void validateName(String name) {
+        if (name == null || name.isEmpty() || name.length() > 255 || name.equals(".") || name.equals("..")) {
+            throw new IllegalArgumentException("Invalid document name: " + name);
+        }
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c < ' ' || c == '/' || c == '\\' || c == 0x7f) {
+                throw new IllegalArgumentException("Document names cannot contain '/', '\\' or control characters");
+            }
+        }
+    }
+
+    // Hashes the file through read-only memory maps instead of copying it onto the heap
+    private static String sha256(Path file, long size) throws IOException {
+        java.security.MessageDigest digest;
+        try {
+            digest = java.security.MessageDigest.getInstance("SHA-256");
+        } catch (java.security.NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            for (long position = 0; position < size; position += MAP_CHUNK) {
+                digest.update(in.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAP_CHUNK, size - position)));
+            }
+        }
+        StringBuilder hex = new StringBuilder(64);
+        for (byte b : digest.digest()) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+}
+
+/**
+ * A named document in a tenant's manifest and the blob holding its content.
+ */
+class StoredDocument {
+    private final String name;
+    private final String hash;
+    private final long size;
+
+    StoredDocument(String name, String hash, long size) {
+        this.name = name;
+        this.hash = hash;
+        this.size = size;
+    }
+
+    public String getName() { return name; }
+    public String getHash() { return hash; }
+    public long getSize() { return size; }
+
+    /**
+     * Guesses the content type from the name's extension.
+     * @return The MIME type, or {@code application/octet-stream} when unknown
+     */
+    public String getContentType() {
+        String type = java.net.URLConnection.guessContentTypeFromName(name);
+        if (type == null && name.toLowerCase(Locale.ROOT).endsWith(".pdf")) type = "application/pdf";
+        return type != null ? type : "application/octet-stream";
+    }
+}
+
+/**
+ * Local persistence engine for the owner's state.
+ * Every mutation is appended to a write-ahead log that a background thread
+ * group-commits with one fsync per batch, so callers never wait on the disk.
+ * The log is periodically compacted into a {@link MappedSnapshot}, and on startup the
+ * snapshot plus the log tail are replayed to recover the last durable state.
+ */
+class PersistenceEngine implements Closeable {
+    static final byte OP_ADD_ROOM = 1;
+    static final byte OP_ADD_TENANT = 2;
+    static final byte OP_EDIT_TENANT = 3;
+    static final byte OP_DELETE_TENANT = 4;
+    static final byte OP_ASSIGN_ROOM = 5;
+    static final byte OP_ADD_PAYMENT = 6;
+    static final byte OP_MARK_PAID = 7;
+    static final byte OP_UPLOAD_DOCUMENT = 8;
+    static final byte OP_CHANGE_PASSWORD = 9;
+    static final byte OP_BULK_PAYMENTS = 10;
+    static final byte OP_RESERVE_ROOM = 11;
+    static final byte OP_CANCEL_RESERVATION = 12;
+
+    private static final long GROUP_COMMIT_WINDOW_MS = 2;
+    private static final int FLUSH_THRESHOLD_BYTES = 256 * 1024;
+    private static final long COMPACT_THRESHOLD_BYTES = 64L * 1024 * 1024;
+
+    private final Path walPath;
+    private final Path snapshotPath;
+    private final FileChannel wal;
+    private final Object ioLock = new Object();
+    private final ByteArrayOutputStream recordBytes = new ByteArrayOutputStream(256);
+    private final DataOutputStream record = new DataOutputStream(recordBytes);
+    private final CRC32 crc = new CRC32();
+
+    private PGOwner owner;
+    private ByteBuffer pending = ByteBuffer.allocate(1 << 20);
+    private ByteBuffer flushing = ByteBuffer.allocate(1 << 20);
+    private long appendedSeq;
+    private long durableSeq;
+    private long logBytes;
+    private boolean checkpointing;
+    private volatile boolean closed;
+    private volatile IOException failure;
+    private Thread flusher;
+
+    private PersistenceEngine(Path dir) throws IOException {
+        Files.createDirectories(dir);
+        this.walPath = dir.resolve("pghive.wal");
+        this.snapshotPath = dir.resolve("pghive.snapshot");
+        this.wal = FileChannel.open(walPath, StandardOpenOption.CREATE,
+                                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Opens (or creates) the data directory for a persistence engine.
+     * 
+     * @param dir Directory holding the snapshot and write-ahead log
+     * @return An engine ready for {@link #recover(PGOwner)}
+     * @throws IOException if the directory or log file cannot be opened
+     */
+    public static PersistenceEngine open(Path dir) throws IOException {
+        return new PersistenceEngine(dir);
+    }
+
+    /**
+     * Restores the owner's state from the last snapshot and the log tail, then
+     * attaches this engine so further mutations are journaled.
+     * A torn or corrupt record at the end of the log is discarded. Replaying a record
+     * whose effect the snapshot already holds is a no-op; bulk billing records list the
+     * tenants they billed, so replay never bills a tenant whose room the snapshot gained later.
+     * 
+     * @param owner The owner to load state into; should be empty
+     * @return true if any persisted state was found, false for a fresh data directory
+     * @throws IOException if the snapshot or log cannot be read
+     */
+    public boolean recover(PGOwner owner) throws IOException {
+        this.owner = owner;
+        long snapshotSeq = 0;
+        boolean found = false;
+        if (Files.exists(snapshotPath)) {
+            MappedSnapshot snapshot = MappedSnapshot.open(snapshotPath);
+            snapshot.loadInto(owner);
+            snapshotSeq = snapshot.getSeq();
+            found = true;
+        }
+
+        long validEnd = 0;
+        long lastSeq = snapshotSeq;
+        wal.position(0);
+        DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Channels.newInputStream(wal), 1 << 16));
+        CRC32 check = new CRC32();
+        while (true) {
+            int length, expected;
+            byte[] body;
+            try {
+                length = in.readInt();
+                expected = in.readInt();
+                if (length <= 0 || length > (64 << 20)) break;
+                body = new byte[length];
+                in.readFully(body);
+            } catch (EOFException e) {
+                break;
+            }
+            check.reset();
+            check.update(body, 0, length);
+            if ((int) check.getValue() != expected) break;
+
+            DataInputStream fields = new DataInputStream(new ByteArrayInputStream(body));
+            long seq = fields.readLong();
+            if (seq > snapshotSeq) {
+                apply(fields.readByte(), fields, owner);
+                found = true;
+            }
+            lastSeq = Math.max(lastSeq, seq);
+            validEnd += 8 + length;
+        }
+        wal.truncate(validEnd);
+        wal.position(validEnd);
+        logBytes = validEnd;
+        appendedSeq = durableSeq = lastSeq;
+
+        owner.attachJournal(this);
+        flusher = new Thread(this::flushLoop, "pghive-wal-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+        return found;
+    }
+
+    /**
+     * Journals the creation of a room.
+     * @param room The room that was added
+     */
+    public void logAddRoom(Room room) {
+        synchronized (this) {
+            try {
+                begin(OP_ADD_ROOM);
+                writeRoom(record, room);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            commit();
+        }
+    }
+
+    /**
+     * Journals a new tenant along with any payments and documents it already holds.
+     * @param tenant The tenant that was added
+     */
+    public void logAddTenant(Tenant tenant) {
+        synchronized (this) {
+            try {
+                begin(OP_ADD_TENANT);
+                writeTenant(record, tenant);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            commit();
+        }
+    }
+
+    public void logEditTenant(String tenantId, String name, String contact, int moveIn, int moveOut) {
+        synchronized (this) {
+            try {
+                begin(OP_EDIT_TENANT);
+                record.writeUTF(tenantId);
+                writeNullable(record, name);
+                writeNullable(record, contact);
+                record.writeLong(EpochDays.toMillis(moveIn));
+                record.writeLong(EpochDays.toMillis(moveOut));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            commit();
+        }
+    }
+
+    public void logDeleteTenant(String tenantId) {
+        logKeys(OP_DELETE_TENANT, tenantId, null);
+    }
+
+    /**
+     * Journals a move-in; replay puts the tenant back in the same bed if it still suits the stay.
+     */
+    public void logAssignRoom(String roomId, String tenantId, int bed) {
+        synchronized (this) {
+            try {
+                begin(OP_ASSIGN_ROOM);
+                record.writeUTF(roomId);
+                record.writeUTF(tenantId);
+                record.writeByte(bed);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            commit();
+        }
+    }
+
+    public void logAddPayment(String tenantId, PaymentLedger ledger, int row) {
+        synchronized (this) {
+            try {
+                begin(OP_ADD_PAYMENT);
+                record.writeUTF(tenantId);
+                writePayment(record, ledger, row);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            commit();
+        }
+    }
+
+    /**
+     * Journals a bulk billing run as a single record listing each billed tenant with its
+     * payment period and amount. Replay adds the missing sequences of the same schedules
+     * for those tenants only, whatever rooms they hold by then.
+     * 
+     * @param billed Tenants that got new rows; the first {@code count} entries are used
+     * @param periods Payment period in days of each billed tenant, 0 for calendar months
+     * @param amounts Amount of each billed tenant's payments
+     */
+    public void logBulkPayments(int months, int startDay, Tenant[] billed, int[] periods, double[] amounts, int count) {
+        synchronized (this) {
+            try {
+                begin(OP_BULK_PAYMENTS);
+                record.writeInt(months);
+                record.writeInt(startDay);
+                record.writeInt(count);
+                for (int i = 0; i < count; i++) {
+                    record.writeUTF(billed[i].getUserId());
+                    record.writeInt(periods[i]);
+                    record.writeDouble(amounts[i]);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            commit();
+        }
+    }
+
+    public void logReserveRoom(Reservation reservation) {
+        synchronized (this) {
+            try {
+                begin(OP_RESERVE_ROOM);
+                record.writeUTF(reservation.getRoomId());
+                record.writeUTF(reservation.getTenantId());
+                record.writeInt(reservation.getFromDay());
+                record.writeInt(reservation.getToDay());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            commit();
+        }
+    }
+
+    public void logCancelReservation(String roomId, String tenantId, int fromDay) {
+        synchronized (this) {
+            try {
+                begin(OP_CANCEL_RESERVATION);
+                record.writeUTF(roomId);
+                record.writeUTF(tenantId);
+                record.writeInt(fromDay);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            commit();
+        }
+    }
+
+    public void logMarkPaid(String tenantId, String paymentId) {
+        logKeys(OP_MARK_PAID, tenantId, paymentId);
+    }
+
+    public void logUploadDocument(String tenantId, String document) {
+        logKeys(OP_UPLOAD_DOCUMENT, tenantId, document);
+    }
+
+    public void logChangePassword(String userId, String newPasswordHash) {
+        logKeys(OP_CHANGE_PASSWORD, userId, newPasswordHash);
+    }
+
+    private void logKeys(byte op, String first, String second) {
+        synchronized (this) {
+            try {
+                begin(op);
+                record.writeUTF(first);
+                if (second != null) record.writeUTF(second);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            commit();
+        }
+    }
+
+    /**
+     * Blocks until every mutation journaled so far has been fsynced.
+     * @throws IOException if the background flush failed
+     */
+    public void sync() throws IOException {
+        synchronized (this) {
+            long target = appendedSeq;
+            notifyAll();
+            while (durableSeq < target && failure == null) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for log sync");
+                }
+            }
+        }
+        if (failure != null) throw failure;
+    }
+
+    /**
+     * Writes a compacted snapshot of the owner's state and truncates the log.
+     * Mutations may continue while the snapshot is captured, so it can already contain
+     * the effects of records logged after its sequence number; replay of the log tail
+     * is idempotent and skips rooms, tenants and payments the snapshot already holds.
+     * Bulk billing replays only the tenants its record lists, so assignments the snapshot
+     * picked up after that record do not produce extra payments.
+     * 
+     * @throws IOException if the snapshot cannot be written
+     */
+    public void checkpoint() throws IOException {
+        synchronized (ioLock) {
+            long snapshotSeq;
+            synchronized (this) {
+                snapshotSeq = appendedSeq;
+                swapBuffers();
+            }
+            writeFlushing();
+            wal.force(false);
+
+            Path tmp = snapshotPath.resolveSibling(snapshotPath.getFileName() + ".tmp");
+            MappedSnapshot.write(tmp, owner, snapshotSeq);
+            Files.move(tmp, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            wal.truncate(0);
+            wal.position(0);
+            synchronized (this) {
+                logBytes = pending.position();
+                durableSeq = Math.max(durableSeq, snapshotSeq);
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Flushes outstanding records, writes a final snapshot and closes the log.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        checkpoint();
+        closed = true;
+        synchronized (this) {
+            notifyAll();
+        }
+        try {
+            if (flusher != null) flusher.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        wal.close();
+    }
+
+    // Starts a record body in the scratch buffer; caller holds the monitor
+    private void begin(byte op) throws IOException {
+        if (closed) throw new IllegalStateException("Persistence engine is closed");
+        if (failure != null) throw new UncheckedIOException("Write-ahead log unavailable", failure);
+        recordBytes.reset();
+        record.writeLong(appendedSeq + 1);
+        record.writeByte(op);
+    }
+
+    // Frames the scratch record into the pending batch; caller holds the monitor
+    private void commit() {
+        int length = recordBytes.size();
+        if (pending.remaining() < length + 8) {
+            ByteBuffer grown = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.position() + length + 8));
+            pending.flip();
+            grown.put(pending);
+            pending = grown;
+        }
+        byte[] body = recordBytes.toByteArray();
+        crc.reset();
+        crc.update(body, 0, length);
+        pending.putInt(length);
+        pending.putInt((int) crc.getValue());
+        pending.put(body, 0, length);
+        appendedSeq++;
+        logBytes += length + 8;
+        // Wake the flusher for the first record of a batch, or early once the batch is large
+        if (pending.position() == length + 8 || pending.position() >= FLUSH_THRESHOLD_BYTES) notifyAll();
+    }
+
+    // Compacts the log once it outgrows the threshold; called by the flusher outside the monitor
+    private void compactIfDue() {
+        synchronized (this) {
+            if (logBytes < COMPACT_THRESHOLD_BYTES || checkpointing) return;
+            checkpointing = true;
+        }
+        try {
+            checkpoint();
+        } catch (IOException e) {
+            failure = e;
+        } finally {
+            synchronized (this) {
+                checkpointing = false;
+            }
+        }
+    }
+
+    private void flushLoop() {
+        while (!closed) {
+            synchronized (this) {
+                try {
+                    while (pending.position() == 0 && !closed) wait();
+                    if (pending.position() < FLUSH_THRESHOLD_BYTES && !closed) {
+                        wait(GROUP_COMMIT_WINDOW_MS); // let concurrent mutations join this batch
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+            long batchSeq;
+            synchronized (ioLock) {
+                synchronized (this) {
+                    if (pending.position() == 0) continue;
+                    batchSeq = appendedSeq;
+                    swapBuffers();
+                }
+                try {
+                    writeFlushing();
+                    wal.force(false);
+                } catch (IOException e) {
+                    failure = e;
+                    System.err.println("Write-ahead log flush failed: " + e.getMessage());
+                }
+            }
+            synchronized (this) {
+                durableSeq = Math.max(durableSeq, batchSeq);
+                notifyAll();
+            }
+            compactIfDue();
+        }
+    }
+
+    private void swapBuffers() {
+        ByteBuffer full = pending;
+        pending = flushing;
+        pending.clear();
+        flushing = full;
+        flushing.flip();
+    }
+
+    private void writeFlushing() throws IOException {
+        while (flushing.hasRemaining()) {
+            wal.write(flushing);
+        }
+        flushing.clear();
+    }
+
+    private static void apply(byte op, DataInputStream in, PGOwner owner) throws IOException {
+        switch (op) {
+            case OP_ADD_ROOM: {
+                Room room = readRoom(in);
+                if (!sameRoom(owner.getRoom(room.getRoomId()), room)) owner.addRoom(room);
+                break;
+            }
+            case OP_ADD_TENANT:
+                readTenant(in, owner);
+                break;
+            case OP_EDIT_TENANT:
+                owner.editTenant(in.readUTF(), readNullable(in), readNullable(in),
+                                 EpochDays.fromMillis(in.readLong()), EpochDays.fromMillis(in.readLong()));
+                break;
+            case OP_DELETE_TENANT:
+                owner.deleteTenant(in.readUTF());
+                break;
+            case OP_ASSIGN_ROOM: {
+                String roomId = in.readUTF();
+                Tenant tenant = owner.findTenantById(in.readUTF());
+                int bed = in.available() > 0 ? in.readByte() : -1; // logs from before beds have none
+                if (tenant != null) {
+                    try {
+                        owner.assignRoom(roomId, tenant, bed);
+                    } catch (RoomAssignmentException e) {
+                        // Expected when the snapshot already holds a later assignment of this room
+                        EventLog.GLOBAL.log(EventLog.WARN, "wal.assign_conflict", "room", roomId,
+                                            "tenant", tenant.getUserId(), "error", e.getMessage());
+                    }
+                }
+                break;
+            }
+            case OP_ADD_PAYMENT: {
+                Tenant tenant = owner.findTenantById(in.readUTF());
+                readPayment(in, tenant, true);
+                break;
+            }
+            case OP_MARK_PAID: {
+                Tenant tenant = owner.findTenantById(in.readUTF());
+                Payment payment = tenant != null ? tenant.findPayment(in.readUTF()) : null;
+                if (payment != null) payment.markAsPaid();
+                break;
+            }
+            case OP_UPLOAD_DOCUMENT: {
+                Tenant tenant = owner.findTenantById(in.readUTF());
+                String document = in.readUTF();
+                if (tenant != null) tenant.restoreDocument(document);
+                break;
+            }
+            case OP_BULK_PAYMENTS: {
+                int months = in.readInt();
+                int startDay = in.readInt();
+                if (in.available() == 0) {
+                    // Logs from before billed tenants were recorded; rerun against the current rooms
+                    owner.generateBulkPayments(months, startDay);
+                    break;
+                }
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    owner.restoreBilledPayments(in.readUTF(), months, startDay, in.readInt(), in.readDouble());
+                }
+                break;
+            }
+            case OP_RESERVE_ROOM: {
+                String roomId = in.readUTF();
+                Tenant tenant = owner.findTenantById(in.readUTF());
+                int fromDay = in.readInt();
+                int toDay = in.readInt();
+                // First-fit on the same prior state picks the same bed; the snapshot may already hold it
+                if (tenant != null && owner.findReservation(roomId, tenant.getUserId(), fromDay) == null) {
+                    try {
+                        owner.reserveRoom(roomId, tenant, fromDay, toDay);
+                    } catch (RoomAssignmentException e) {
+                        // The room was replaced or booked by a record the snapshot already holds
+                    }
+                }
+                break;
+            }
+            case OP_CANCEL_RESERVATION:
+                owner.cancelReservation(in.readUTF(), in.readUTF(), in.readInt());
+                break;
+            case OP_CHANGE_PASSWORD: {
+                String userId = in.readUTF();
+                String password = in.readUTF();
+                User user = userId.equals(owner.getUserId()) ? owner : owner.findTenantById(userId);
+                if (user != null) user.password = password;
+                break;
+            }
+            default:
+                throw new IOException("Unknown log record type: " + op);
+        }
+    }
+
+    private static void writeRoom(DataOutput out, Room room) throws IOException {
+        out.writeUTF(room.getRoomId());
+        out.writeDouble(room.getBaseRent());
+        out.writeDouble(room.getSizeSqft());
+        out.writeInt(room.getAmenityScore());
+        out.writeUTF(room.getSharingType());
+    }
+
+    private static Room readRoom(DataInput in) throws IOException {
+        return new Room(in.readUTF(), in.readDouble(), in.readDouble(), in.readInt(), in.readUTF());
+    }
+
+    private static void writeTenant(DataOutput out, Tenant tenant) throws IOException {
+        out.writeUTF(tenant.getTenantType());
+        out.writeUTF(tenant.getUserId());
+        out.writeUTF(tenant.getName());
+        out.writeUTF(tenant.getEmail());
+        out.writeUTF(tenant.password);
+        writeNullable(out, tenant.getContact());
+        out.writeLong(EpochDays.toMillis(tenant.getMoveInDay()));
+        out.writeLong(EpochDays.toMillis(tenant.getMoveOutDay()));
+        writeNullable(out, tenant.getRoom() != null ? tenant.getRoom().getRoomId() : null);
+        Set<String> documents = tenant.getDocuments();
+        out.writeInt(documents.size());
+        for (String document : documents) {
+            out.writeUTF(document);
+        }
+        PaymentLedger ledger = tenant.ledger;
+        int paymentCount = ledger == null ? 0 : ledger.rowCount(tenant);
+        out.writeInt(paymentCount);
+        for (int i = 0; i < paymentCount; i++) {
+            writePayment(out, ledger, ledger.rowAt(tenant, i));
+        }
+    }
+
+    // Recreates a tenant, registers it with the owner and restores its room
+    private static boolean sameRoom(Room a, Room b) {
+        return a != null && a.getBaseRent() == b.getBaseRent() && a.getSizeSqft() == b.getSizeSqft()
+            && a.getAmenityScore() == b.getAmenityScore() && a.getSharingType().equals(b.getSharingType());
+    }
+
+    private static void readTenant(DataInput in, PGOwner owner) throws IOException {
+        Tenant tenant = Tenant.ofType(in.readUTF(), in.readUTF(), in.readUTF(), in.readUTF(), null);
+        tenant.password = in.readUTF(); // stored hash
+        tenant.setContact(readNullable(in));
+        tenant.setMoveInDay(EpochDays.fromMillis(in.readLong()));
+        tenant.setMoveOutDay(EpochDays.fromMillis(in.readLong()));
+        String roomId = readNullable(in);
+        int documentCount = in.readInt();
+        for (int i = 0; i < documentCount; i++) {
+            tenant.restoreDocument(in.readUTF());
+        }
+        int paymentCount = in.readInt();
+        for (int i = 0; i < paymentCount; i++) {
+            readPayment(in, tenant, false);
+        }
+        if (owner.findTenantById(tenant.getUserId()) != null) return; // already in the snapshot
+        owner.addTenant(tenant);
+        if (roomId != null) {
+            try {
+                owner.assignRoom(roomId, tenant);
+            } catch (RoomAssignmentException e) {
+                // The snapshot already holds a later assignment of this room
+            }
+        }
+    }
+
+    private static void writePayment(DataOutput out, PaymentLedger ledger, int row) throws IOException {
+        writeNullable(out, ledger.explicitIdAt(row));
+        out.writeInt(ledger.sequenceAt(row));
+        out.writeDouble(ledger.amountAt(row));
+        out.writeInt(ledger.dueDayAt(row));
+        out.writeBoolean(ledger.isPaid(row));
+    }
+
+    // Reads one payment row and appends it to the tenant; the row is skipped if the tenant is gone
+    private static void readPayment(DataInput in, Tenant tenant, boolean skipExisting) throws IOException {
+        String explicitId = readNullable(in);
+        int sequence = in.readInt();
+        double amount = in.readDouble();
+        int dueDay = in.readInt();
+        boolean paid = in.readBoolean();
+        if (tenant == null) return;
+        if (skipExisting) {
+            String paymentId = explicitId != null ? explicitId : tenant.getUserId() + "-M" + sequence;
+            if (tenant.findPayment(paymentId) != null) return;
+        }
+        tenant.appendPayment(explicitId, sequence, amount, dueDay, paid);
+    }
+
+    private static void writeNullable(DataOutput out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) out.writeUTF(value);
+    }
+
+    private static String readNullable(DataInput in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
+
+/**
+ * Compact binary snapshot of an owner's full state, read back through a memory-mapped file.
+ * Rooms, tenants and payments are stored as fixed-width records that point into a shared,
+ * deduplicated string heap. Payment records mirror the {@link PaymentLedger} columns, so
+ * loading copies them straight into the owner's ledger without creating Payment objects,
+ * and generated payment IDs are never stored as strings. Room reservations follow the
+ * payments; snapshots written before reservations existed have none. Tenant records keep
+ * the occupied bed, so shared rooms come back with the same bed layout.
+ * Offsets are 32-bit, so a snapshot is limited to 2 GB.
+ */
+class MappedSnapshot {
+    private static final int MAGIC = 0x5047484D; // "PGHM"
+    private static final int VERSION = 2;
+    private static final int HEADER_BYTES = 64;
+    private static final int ROOM_BYTES = 28;
+    private static final int TENANT_BYTES = 60;
+    private static final int PAYMENT_BYTES = 24;
+    private static final int RESERVATION_BYTES = 20;
+    private static final int NONE = -1;
+
+    private final ByteBuffer buffer;
+    private final long seq;
+    private final int ownerPasswordRef;
+    private final int roomCount, tenantCount, reservationCount;
+    private final int roomsOffset, tenantsOffset, documentsOffset, paymentsOffset, stringsOffset, reservationsOffset;
+
+    private MappedSnapshot(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("Not a PGHive snapshot");
+        }
+        this.seq = buffer.getLong(8);
+        this.ownerPasswordRef = buffer.getInt(16);
+        this.roomCount = buffer.getInt(20);
+        this.tenantCount = buffer.getInt(24);
+        this.roomsOffset = buffer.getInt(28);
+        this.tenantsOffset = buffer.getInt(32);
+        this.documentsOffset = buffer.getInt(36);
+        this.paymentsOffset = buffer.getInt(40);
+        this.stringsOffset = buffer.getInt(44);
+        this.reservationCount = buffer.getInt(48); // zero in the header padding of older snapshots
+        this.reservationsOffset = buffer.getInt(52);
+    }
+
+    /**
+     * Maps a snapshot file read-only. The mapping stays valid after the file is replaced or deleted.
+     * 
+     * @param path Snapshot file to open
+     * @return The opened snapshot
+     * @throws IOException if the file cannot be mapped or is not a snapshot
+     */
+    public static MappedSnapshot open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) throw new IOException("Snapshot larger than 2 GB");
+            return new MappedSnapshot(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Gets the write-ahead log sequence number this snapshot is consistent with.
+     * @return Sequence number of the last mutation included in the snapshot
+     */
+    public long getSeq() { return seq; }
+
+    /**
+     * Loads rooms, tenants and payment rows into an empty owner, restoring room assignments.
+     * 
+     * @param owner The owner to populate
+     * @throws IOException if the snapshot cannot be read
+     */
+    public void loadInto(PGOwner owner) throws IOException {
+        owner.password = string(ownerPasswordRef);
+        Tenant[] loaded = new Tenant[tenantCount];
+        for (int i = 0; i < roomCount; i++) {
+            int at = roomsOffset + i * ROOM_BYTES;
+            owner.addRoom(new Room(string(buffer.getInt(at)), buffer.getDouble(at + 4),
+                                   buffer.getDouble(at + 12), buffer.getInt(at + 20),
+                                   string(buffer.getInt(at + 24))));
+        }
+        for (int i = 0; i < tenantCount; i++) {
+            int at = tenantsOffset + i * TENANT_BYTES;
+            Tenant tenant = Tenant.ofType(string(buffer.getInt(at)), string(buffer.getInt(at + 4)),
+                                          string(buffer.getInt(at + 8)), string(buffer.getInt(at + 12)), null);
+            tenant.password = string(buffer.getInt(at + 16));
+            tenant.setContact(string(buffer.getInt(at + 20)));
+            tenant.setMoveInDay(EpochDays.fromMillis(buffer.getLong(at + 24)));
+            tenant.setMoveOutDay(EpochDays.fromMillis(buffer.getLong(at + 32)));
+            int documentStart = buffer.getInt(at + 44);
+            int documentCount = buffer.getShort(at + 56) & 0xFFFF;
+            for (int d = 0; d < documentCount; d++) {
+                tenant.restoreDocument(string(buffer.getInt(documentsOffset + (documentStart + d) * 4)));
+            }
+            owner.addTenant(tenant);
+            loaded[i] = tenant;
+            String roomId = string(buffer.getInt(at + 52));
+            if (roomId != null) {
+                try {
+                    owner.assignRoom(roomId, tenant, (buffer.getShort(at + 58) & 0xFFFF) - 1);
+                } catch (RoomAssignmentException e) {
+                    // A room handed over while the snapshot was captured; the log tail settles it
+                }
+            }
+        }
+        for (int i = 0; i < reservationCount; i++) {
+            int at = reservationsOffset + i * RESERVATION_BYTES;
+            owner.restoreReservation(new Reservation(string(buffer.getInt(at)), string(buffer.getInt(at + 4)),
+                                                     buffer.getInt(at + 8), buffer.getInt(at + 12),
+                                                     buffer.getInt(at + 16)));
+        }
+        loadPayments(owner.getLedger(), loaded);
+    }
+
+    // Copies the payment section into the ledger's columns in one reserved block
+    private void loadPayments(PaymentLedger ledger, Tenant[] loaded) {
+        synchronized (ledger) {
+            int total = 0;
+            for (int i = 0; i < tenantCount; i++) {
+                total += buffer.getInt(tenantsOffset + i * TENANT_BYTES + 40);
+            }
+            int base = ledger.reserveRows(total);
+            int row = base;
+            long unpaid = 0;
+            double unpaidAmount = 0;
+            for (int i = 0; i < tenantCount; i++) {
+                int at = tenantsOffset + i * TENANT_BYTES;
+                int paymentAt = paymentsOffset + buffer.getInt(at + 48) * PAYMENT_BYTES;
+                int paymentCount = buffer.getInt(at + 40);
+                ledger.reserveTenantRows(loaded[i], paymentCount);
+                for (int p = 0; p < paymentCount; p++, paymentAt += PAYMENT_BYTES) {
+                    double amount = buffer.getDouble(paymentAt + 8);
+                    boolean paid = buffer.get(paymentAt + 20) != 0;
+                    ledger.writeRestored(loaded[i], row++, string(buffer.getInt(paymentAt)), buffer.getInt(paymentAt + 4),
+                                         amount, buffer.getInt(paymentAt + 16), paid);
+                    if (!paid) {
+                        unpaid++;
+                        unpaidAmount += amount;
+                    }
+                }
+            }
+            ledger.generatedPending(unpaid, unpaidAmount);
+            ledger.generatedRows(base, total);
+        }
+    }
+
+    private String string(int ref) {
+        if (ref == NONE) return null;
+        int at = stringsOffset + ref;
+        int length = buffer.getInt(at);
+        byte[] bytes = new byte[length];
+        buffer.get(at + 4, bytes);
+        return new String(bytes, java.nio.charset.StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes the owner's full state as a snapshot file and fsyncs it.
+     * 
+     * @param path File to write; replaced if it exists
+     * @param owner The owner whose state is saved
+     * @param seq Sequence number of the last mutation included
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(Path path, PGOwner owner, long seq) throws IOException {
+        StringHeap strings = new StringHeap();
+        List<Room> rooms = new ArrayList<>(owner.getRooms());
+        List<Tenant> tenants = owner.getTenants();
+        PaymentLedger ledger = owner.getLedger();
+
+        ByteBuffer roomSection = ByteBuffer.allocate(rooms.size() * ROOM_BYTES);
+        for (Room room : rooms) {
+            roomSection.putInt(strings.ref(room.getRoomId()));
+            roomSection.putDouble(room.getBaseRent());
+            roomSection.putDouble(room.getSizeSqft());
+            roomSection.putInt(room.getAmenityScore());
+            roomSection.putInt(strings.ref(room.getSharingType()));
+        }
+
+        // Copy the concurrently mutable parts first so section sizes and contents agree
+        String[][] documentsOf = new String[tenants.size()][];
+        int documentTotal = 0;
+        for (int i = 0; i < documentsOf.length; i++) {
+            documentsOf[i] = tenants.get(i).getDocuments().toArray(new String[0]);
+            documentTotal += documentsOf[i].length;
+        }
+        ByteBuffer tenantSection = ByteBuffer.allocate(tenants.size() * TENANT_BYTES);
+        ByteBuffer documentSection = ByteBuffer.allocate(documentTotal * 4);
+        ByteBuffer paymentSection;
+        synchronized (ledger) {
+            int paymentTotal = 0;
+            for (Tenant tenant : tenants) {
+                paymentTotal += ledger.rowCount(tenant);
+            }
+            paymentSection = ByteBuffer.allocate(paymentTotal * PAYMENT_BYTES);
+            writeTenants(tenants, documentsOf, ledger, strings, tenantSection, documentSection, paymentSection);
+        }
+        List<Reservation> reservations = new ArrayList<>();
+        for (Room room : rooms) {
+            if (room.getCalendar().size() > 0) reservations.addAll(room.getCalendar().getReservations());
+        }
+        ByteBuffer reservationSection = ByteBuffer.allocate(reservations.size() * RESERVATION_BYTES);
+        for (Reservation reservation : reservations) {
+            reservationSection.putInt(strings.ref(reservation.getRoomId()));
+            reservationSection.putInt(strings.ref(reservation.getTenantId()));
+            reservationSection.putInt(reservation.getBed());
+            reservationSection.putInt(reservation.getFromDay());
+            reservationSection.putInt(reservation.getToDay());
+        }
+        int passwordRef = strings.ref(owner.password);
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        int roomsOffset = HEADER_BYTES;
+        int tenantsOffset = roomsOffset + roomSection.capacity();
+        int documentsOffset = tenantsOffset + tenantSection.capacity();
+        int paymentsOffset = documentsOffset + documentSection.capacity();
+        long reservationsOffset = (long) paymentsOffset + paymentSection.capacity();
+        long stringsOffset = reservationsOffset + reservationSection.capacity();
+        if (stringsOffset + strings.size() > Integer.MAX_VALUE) throw new IOException("Snapshot larger than 2 GB");
+        header.putInt(MAGIC).putInt(VERSION).putLong(seq).putInt(passwordRef)
+              .putInt(rooms.size()).putInt(tenants.size())
+              .putInt(roomsOffset).putInt(tenantsOffset).putInt(documentsOffset)
+              .putInt(paymentsOffset).putInt((int) stringsOffset)
+              .putInt(reservations.size()).putInt((int) reservationsOffset);
+
+        try (FileChannel out = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer[] sections = {header, roomSection, tenantSection, documentSection, paymentSection,
+                                     reservationSection, ByteBuffer.wrap(strings.bytes(), 0, strings.size())};
+            for (ByteBuffer section : sections) {
+                section.rewind();
+                while (section.hasRemaining()) out.write(section);
+            }
+            out.force(true);
+        }
+    }
+
+    // Caller holds the ledger's monitor so each tenant's payment rows are read consistently
+    private static void writeTenants(List<Tenant> tenants, String[][] documentsOf, PaymentLedger ledger,
+                                     StringHeap strings, ByteBuffer tenantSection,
+                                     ByteBuffer documentSection, ByteBuffer paymentSection) throws IOException {
+        int documentIndex = 0;
+        int paymentIndex = 0;
+        for (int i = 0; i < tenants.size(); i++) {
+            Tenant tenant = tenants.get(i);
+            String[] documents = documentsOf[i];
+            if (documents.length > 0xFFFF) throw new IOException("Too many documents for tenant " + tenant.getUserId());
+            int paymentCount = ledger.rowCount(tenant);
+            Room room = tenant.getRoom();
+            tenantSection.putInt(strings.ref(tenant.getTenantType()));
+            tenantSection.putInt(strings.ref(tenant.getUserId()));
+            tenantSection.putInt(strings.ref(tenant.getName()));
+            tenantSection.putInt(strings.ref(tenant.getEmail()));
+            tenantSection.putInt(strings.ref(tenant.password));
+            tenantSection.putInt(strings.ref(tenant.getContact()));
+            tenantSection.putLong(EpochDays.toMillis(tenant.getMoveInDay())); // timestamps, as in earlier snapshots
+            tenantSection.putLong(EpochDays.toMillis(tenant.getMoveOutDay()));
+            tenantSection.putInt(paymentCount);
+            tenantSection.putInt(documentIndex);
+            tenantSection.putInt(paymentIndex);
+            tenantSection.putInt(strings.ref(room != null ? room.getRoomId() : null));
+            tenantSection.putShort((short) documents.length);
+            tenantSection.putShort((short) (room != null ? room.bedOf(tenant) + 1 : 0)); // 0: no bed recorded
+            for (String document : documents) {
+                documentSection.putInt(strings.ref(document));
+            }
+            for (int p = 0; p < paymentCount; p++) {
+                int row = ledger.rowAt(tenant, p);
+                paymentSection.putInt(strings.ref(ledger.explicitIdAt(row)));
+                paymentSection.putInt(ledger.sequenceAt(row));
+                paymentSection.putDouble(ledger.amountAt(row));
+                paymentSection.putInt(ledger.dueDayAt(row));
+                paymentSection.put((byte) (ledger.isPaid(row) ? 1 : 0));
+                paymentSection.put((byte) 0).putShort((short) 0);
+            }
+            documentIndex += documents.length;
+            paymentIndex += paymentCount;
+        }
+    }
+
+    /**
+     * Append-only heap of length-prefixed UTF-8 strings that stores each distinct value once.
+     */
+    private static class StringHeap {
+        private final Map<String, Integer> refs = new HashMap<>();
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(1 << 16);
+        private final DataOutputStream out = new DataOutputStream(bytes);
+
+        int ref(String value) throws IOException {
+            if (value == null) return NONE;
+            Integer ref = refs.get(value);
+            if (ref == null) {
+                ref = bytes.size();
+                byte[] encoded = value.getBytes(java.nio.charset.StandardCharsets.UTF_8);
+                out.writeInt(encoded.length);
+                out.write(encoded);
+                refs.put(value, ref);
+            }
+            return ref;
+        }
+
+        byte[] bytes() { return bytes.toByteArray(); }
+        int size() { return bytes.size(); }
+    }
+}
+
+/**
+ * Running totals behind the owner's reports.
+ * Rooms, tenants' rooms and the payment ledger update these counters as they change,
+ * so occupancy and revenue figures are constant-time reads instead of full scans.
+ * Every counter is atomic, so concurrent mutations never lose an update.
+ */
+class ReportAggregates {
+    private final AtomicIntegerArray roomsByType = new AtomicIntegerArray(Room.SHARING_TYPES.length);
+    private final AtomicIntegerArray occupiedByType = new AtomicIntegerArray(Room.SHARING_TYPES.length); // rooms with a tenant
+    private final AtomicIntegerArray bedsByType = new AtomicIntegerArray(Room.SHARING_TYPES.length);
+    private final AtomicIntegerArray occupiedBedsByType = new AtomicIntegerArray(Room.SHARING_TYPES.length);
+    private final DoubleAdder rentDue = new DoubleAdder();
+    private final LongAdder pendingPayments = new LongAdder();
+    private final DoubleAdder pendingAmount = new DoubleAdder();
+    private final AtomicLong stayVersion = new AtomicLong(); // bumped whenever a room's stay may have changed
+
+    void roomAdded(Room room) {
+        countRoom(room, 1);
+    }
+
+    void roomRemoved(Room room) {
+        countRoom(room, -1);
+    }
+
+    private void countRoom(Room room, int sign) {
+        stayVersion.incrementAndGet();
+        int type = room.getSharingIndex();
+        int occupied = room.getOccupiedBeds();
+        roomsByType.addAndGet(type, sign);
+        bedsByType.addAndGet(type, sign * room.getBedCount());
+        if (occupied > 0) {
+            occupiedByType.addAndGet(type, sign);
+            occupiedBedsByType.addAndGet(type, sign * occupied);
+            rentDue.add(sign * occupied * room.getRent());
+        }
+    }
+
+    // Every tenant pays the room's rent, so rent due follows occupied beds
+    void bedChanged(Room room, boolean occupied, int occupiedNow) {
+        stayVersion.incrementAndGet();
+        int type = room.getSharingIndex();
+        occupiedBedsByType.addAndGet(type, occupied ? 1 : -1);
+        if (occupied ? occupiedNow == 1 : occupiedNow == 0) occupiedByType.addAndGet(type, occupied ? 1 : -1);
+        rentDue.add(occupied ? room.getRent() : -room.getRent());
+    }
+
+    void staysChanged() { stayVersion.incrementAndGet(); }
+
+    /**
+     * Gets a counter that changes whenever rooms, occupancy or stay dates change.
+     * @return Current stay version
+     */
+    public long stayVersion() { return stayVersion.get(); }
+
+    void paymentsAdded(long count, double amount) {
+        pendingPayments.add(count);
+        pendingAmount.add(amount);
+    }
+
+    void paymentsSettled(long count, double amount) {
+        pendingPayments.add(-count);
+        pendingAmount.add(-amount);
+    }
+
+    public int totalRooms() {
+        int total = 0;
+        for (int i = 0; i < roomsByType.length(); i++) total += roomsByType.get(i);
+        return total;
+    }
+
+    /**
+     * Counts the rooms with at least one tenant.
+     * @return Occupied rooms
+     */
+    public int occupiedRooms() {
+        int total = 0;
+        for (int i = 0; i < occupiedByType.length(); i++) total += occupiedByType.get(i);
+        return total;
+    }
+
+    public int totalBeds() {
+        int total = 0;
+        for (int i = 0; i < bedsByType.length(); i++) total += bedsByType.get(i);
+        return total;
+    }
+
+    public int occupiedBeds() {
+        int total = 0;
+        for (int i = 0; i < occupiedBedsByType.length(); i++) total += occupiedBedsByType.get(i);
+        return total;
+    }
+
+    public int roomsOfType(int sharingIndex) { return roomsByType.get(sharingIndex); }
+    public int occupiedOfType(int sharingIndex) { return occupiedByType.get(sharingIndex); }
+    public int bedsOfType(int sharingIndex) { return bedsByType.get(sharingIndex); }
+    public int occupiedBedsOfType(int sharingIndex) { return occupiedBedsByType.get(sharingIndex); }
+
+    /**
+     * Gets the fraction of beds that are taken.
+     * @return Occupancy between 0 and 1, or 0 when there are no rooms
+     */
+    public double occupancyRate() {
+        int total = totalBeds();
+        return total == 0 ? 0 : (double) occupiedBeds() / total;
+    }
+
+    /**
+     * Gets the monthly rent of all taken beds.
+     * @return Sum of the rent every tenant with a room pays
+     */
+    public double rentDue() { return rentDue.sum(); }
+    public long pendingPayments() { return pendingPayments.sum(); }
+    public double pendingAmount() { return pendingAmount.sum(); }
+}
+
+/**
+ * Sorted index of vacant rooms (rooms with at least one free bed), one skip list per
+ * sharing type ordered by rent, so a matching room is found by seeking to the rent band
+ * instead of scanning every room. Each type also has a skip list per amenity score, so a
+ * minimum amenity score is met by seeking in the lists of the qualifying scores only.
+ * Size is not a key: it is checked room by room from the start of the rent band. Rooms
+ * enter and leave the index as their last free bed is taken or freed; updates for one
+ * room are serialized on the room, so the index always ends up agreeing with its latest
+ * state.
+ */
+class VacancyIndex {
+    /**
+     * Sort key of a vacant room: rent, then room ID.
+     */
+    private static final class Key implements Comparable<Key> {
+        final double rent;
+        final String roomId;
+
+        Key(double rent, String roomId) {
+            this.rent = rent;
+            this.roomId = roomId;
+        }
+
+        @Override
+        public int compareTo(Key other) {
+            int byRent = Double.compare(rent, other.rent);
+            return byRent != 0 ? byRent : roomId.compareTo(other.roomId);
+        }
+    }
+
+    private final List<ConcurrentSkipListMap<Key, Room>> byType = new ArrayList<>(Room.SHARING_TYPES.length);
+    // Per sharing type, amenity score -> that score's vacant rooms; score lists are kept once created
+    private final List<ConcurrentSkipListMap<Integer, ConcurrentSkipListMap<Key, Room>>> byAmenity =
+        new ArrayList<>(Room.SHARING_TYPES.length);
+
+    VacancyIndex() {
+        for (int i = 0; i < Room.SHARING_TYPES.length; i++) {
+            byType.add(new ConcurrentSkipListMap<>());
+            byAmenity.add(new ConcurrentSkipListMap<>());
+        }
+    }
+
+    private ConcurrentSkipListMap<Key, Room> amenityList(Room room) {
+        return byAmenity.get(room.getSharingIndex()).computeIfAbsent(room.getAmenityScore(),
+                                                                     score -> new ConcurrentSkipListMap<>());
+    }
+
+    void roomAdded(Room room) {
+        sync(room);
+    }
+
+    void roomRemoved(Room room) {
+        synchronized (room) {
+            Key key = new Key(room.getRent(), room.getRoomId());
+            byType.get(room.getSharingIndex()).remove(key, room);
+            amenityList(room).remove(key, room);
+        }
+    }
+
+    // Brings the room's entry in line with its current occupancy
+    void sync(Room room) {
+        synchronized (room) {
+            Key key = new Key(room.getRent(), room.getRoomId());
+            if (!room.hasFreeBed() || room.vacancies != this) {
+                byType.get(room.getSharingIndex()).remove(key, room);
+                amenityList(room).remove(key, room);
+            } else {
+                byType.get(room.getSharingIndex()).put(key, room);
+                amenityList(room).put(key, room);
+            }
+        }
+    }
+
+    /**
+     * Finds the cheapest vacant room matching the criteria; ties go to the lower room ID.
+     * Seeks to the rent band in O(log n) per sharing type, or per qualifying amenity score
+     * when a minimum amenity score rules some scores out, then skips rooms below the
+     * minimum size. A selective size filter therefore costs a walk along the rent band.
+     * 
+     * @param criteria Required sharing type, rent band, size and amenities
+     * @return The best vacant room, or null if none matches
+     */
+    public Room findBest(RoomCriteria criteria) {
+        Room best = null;
+        int from = criteria.sharingIndex < 0 ? 0 : criteria.sharingIndex;
+        int to = criteria.sharingIndex < 0 ? byType.size() - 1 : criteria.sharingIndex;
+        for (int type = from; type <= to; type++) {
+            ConcurrentSkipListMap<Integer, ConcurrentSkipListMap<Key, Room>> scores = byAmenity.get(type);
+            if (scores.isEmpty() || criteria.minAmenityScore <= scores.firstKey()) {
+                // Every score qualifies, so the type's single list is the shorter walk
+                best = better(firstMatch(byType.get(type), criteria, best != null ? best.getRent() : criteria.maxRent), best);
+                continue;
+            }
+            for (ConcurrentSkipListMap<Key, Room> rooms : scores.tailMap(criteria.minAmenityScore, true).values()) {
+                best = better(firstMatch(rooms, criteria, best != null ? best.getRent() : criteria.maxRent), best);
+            }
+        }
+        return best;
+    }
+
+    private static Room better(Room candidate, Room best) {
+        if (candidate == null) return best;
+        if (best == null || candidate.getRent() < best.getRent()
+                || (candidate.getRent() == best.getRent() && candidate.getRoomId().compareTo(best.getRoomId()) < 0)) {
+            return candidate;
+        }
+        return best;
+    }
+
+    private Room firstMatch(ConcurrentSkipListMap<Key, Room> rooms, RoomCriteria criteria, double maxRent) {
+        for (Map.Entry<Key, Room> entry : rooms.tailMap(new Key(criteria.minRent, ""), true).entrySet()) {
+            if (entry.getKey().rent > maxRent) return null;
+            Room room = entry.getValue();
+            if (!room.hasFreeBed()) continue; // filled a moment ago; its own update removes it
+            if (room.getSizeSqft() >= criteria.minSizeSqft && room.getAmenityScore() >= criteria.minAmenityScore) {
+                return room;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Counts the vacant rooms of one sharing type.
+     * @param sharingIndex Index into {@link Room#SHARING_TYPES}
+     * @return Number of indexed vacant rooms; O(n) in that type's vacancies
+     */
+    public int vacantOfType(int sharingIndex) {
+        return byType.get(sharingIndex).size();
+    }
+}
+
+/**
+ * Bitmap of free beds across an owner's whole inventory. Every room gets a number when
+ * it is added and a 4-bit slot at that number, one bit per bed (the largest sharing type
+ * has four), set while the bed is free. The bitmap is split into pages of 4,096 words;
+ * each page has a summary word per 64 words marking the words that may hold a free bed,
+ * and a count of its free beds, so a search skips full pages and full stretches of 64
+ * words at a time.
+ * <p>
+ * The bitmap is an index, like {@link VacancyIndex}: rooms remain the source of truth
+ * and call {@link #sync} after a bed changes, serialized on the room. A search may
+ * therefore return a bed that was taken a moment ago; callers retry through the room.
+ * Summary bits are set on every update that frees a bed and cleared lazily by searches
+ * that find their word full, so the search cost is amortized over the updates.
+ */
+class BedAllocator {
+    static final int BEDS_PER_ROOM = 4;
+    private static final int ROOMS_PER_WORD = 64 / BEDS_PER_ROOM;
+    private static final int WORDS_PER_PAGE = 4096;
+    private static final int ROOMS_PER_PAGE = WORDS_PER_PAGE * ROOMS_PER_WORD;
+    private static final int MAX_PAGES = 4096;
+
+    private static final class Page {
+        final AtomicLongArray words = new AtomicLongArray(WORDS_PER_PAGE);          // bit set while the bed is free
+        final AtomicLongArray summary = new AtomicLongArray(WORDS_PER_PAGE / 64);   // bit set while the word may have one
+        final AtomicReferenceArray<Room> rooms = new AtomicReferenceArray<>(ROOMS_PER_PAGE);
+        final AtomicInteger freeBeds = new AtomicInteger();
+    }
+
+    private final AtomicReferenceArray<Page> pages = new AtomicReferenceArray<>(MAX_PAGES);
+    private final AtomicInteger nextNumber = new AtomicInteger();
+    private final AtomicInteger pageCount = new AtomicInteger();
+
+    void roomAdded(Room room) {
+        int number = nextNumber.getAndIncrement();
+        if (number >= MAX_PAGES * ROOMS_PER_PAGE) throw new IllegalStateException("Bed allocator is full");
+        Page page = page(number / ROOMS_PER_PAGE);
+        page.rooms.set(number % ROOMS_PER_PAGE, room);
+        synchronized (room) {
+            room.allocatorNumber = number;
+        }
+        sync(room);
+    }
+
+    void roomRemoved(Room room) {
+        synchronized (room) {
+            int number = room.allocatorNumber;
+            if (number < 0) return;
+            Page page = pages.get(number / ROOMS_PER_PAGE);
+            write(page, number % ROOMS_PER_PAGE, 0);
+            page.rooms.set(number % ROOMS_PER_PAGE, null);
+            room.allocatorNumber = -1;
+        }
+    }
+
+    // Brings the room's slot in line with its current beds
+    void sync(Room room) {
+        synchronized (room) {
+            int number = room.allocatorNumber;
+            if (number < 0 || room.allocator != this) return;
+            long free = 0;
+            for (int bed = 0; bed < room.getBedCount(); bed++) {
+                if (room.getTenant(bed) == null) free |= 1L << bed;
+            }
+            write(pages.get(number / ROOMS_PER_PAGE), number % ROOMS_PER_PAGE, free);
+        }
+    }
+
+    private static void write(Page page, int index, long free) {
+        int word = index / ROOMS_PER_WORD;
+        int shift = (index % ROOMS_PER_WORD) * BEDS_PER_ROOM;
+        long mask = 0xFL << shift;
+        while (true) {
+            long current = page.words.get(word);
+            long next = (current & ~mask) | (free << shift);
+            if (page.words.compareAndSet(word, current, next)) {
+                page.freeBeds.addAndGet(Long.bitCount(next & mask) - Long.bitCount(current & mask));
+                break;
+            }
+        }
+        if (free != 0) setSummary(page, word);
+    }
+
+    private static void setSummary(Page page, int word) {
+        long bit = 1L << (word & 63);
+        int at = word >>> 6;
+        long current;
+        while (((current = page.summary.get(at)) & bit) == 0 && !page.summary.compareAndSet(at, current, current | bit)) {
+            // retry until set
+        }
+    }
+
+    private Page page(int index) {
+        Page page = pages.get(index);
+        if (page == null) {
+            pages.compareAndSet(index, null, new Page());
+            page = pages.get(index);
+            pageCount.accumulateAndGet(index + 1, Math::max);
+        }
+        return page;
+    }
+
+    /**
+     * Finds a free bed, starting at the lowest-numbered room.
+     * 
+     * @return The bed's slot ({@code room number * 4 + bed}), or -1 if no bed is free
+     */
+    public long findFree() {
+        return findFreeFrom(0);
+    }
+
+    /**
+     * Finds a free bed at or after a slot, so callers can move past beds they cannot use.
+     * 
+     * @param fromSlot First slot to consider
+     * @return The bed's slot, or -1 if no bed at or after it is free
+     */
+    public long findFreeFrom(long fromSlot) {
+        int pageLimit = pageCount.get();
+        for (int p = (int) (fromSlot / ((long) ROOMS_PER_PAGE * BEDS_PER_ROOM)); p < pageLimit; p++) {
+            Page page = pages.get(p);
+            if (page == null || page.freeBeds.get() == 0) continue;
+            long pageStart = (long) p * ROOMS_PER_PAGE * BEDS_PER_ROOM;
+            int firstBit = (int) Math.max(0, fromSlot - pageStart);
+            int slot = findInPage(page, firstBit);
+            if (slot >= 0) return pageStart + slot;
+        }
+        return -1;
+    }
+
+    // Scans the page's summary from the given bit on; clears summary bits of full words it meets
+    private static int findInPage(Page page, int firstBit) {
+        int firstWord = firstBit / 64;
+        for (int at = firstWord >>> 6; at < page.summary.length(); at++) {
+            long candidates = page.summary.get(at);
+            if (at == firstWord >>> 6) candidates &= -1L << (firstWord & 63);
+            while (candidates != 0) {
+                int word = (at << 6) + Long.numberOfTrailingZeros(candidates);
+                candidates &= candidates - 1;
+                long free = page.words.get(word);
+                if (word == firstWord) free &= -1L << (firstBit & 63);
+                if (free != 0) return word * 64 + Long.numberOfTrailingZeros(free);
+                if (page.words.get(word) == 0) clearSummary(page, word);
+            }
+        }
+        return -1;
+    }
+
+    private static void clearSummary(Page page, int word) {
+        long bit = 1L << (word & 63);
+        int at = word >>> 6;
+        long current;
+        while (((current = page.summary.get(at)) & bit) != 0 && !page.summary.compareAndSet(at, current, current & ~bit)) {
+            // retry until cleared
+        }
+        if (page.words.get(word) != 0) setSummary(page, word); // a bed was freed meanwhile
+    }
+
+    /**
+     * Gets the room a slot belongs to.
+     * @param slot A slot returned by a search
+     * @return The room, or null if it was removed
+     */
+    public Room roomAt(long slot) {
+        long number = slot / BEDS_PER_ROOM;
+        Page page = pages.get((int) (number / ROOMS_PER_PAGE));
+        return page == null ? null : page.rooms.get((int) (number % ROOMS_PER_PAGE));
+    }
+
+    /**
+     * Counts the free beds.
+     * @return Number of free beds in the inventory
+     */
+    public long freeBeds() {
+        long total = 0;
+        for (int p = 0; p < pageCount.get(); p++) {
+            Page page = pages.get(p);
+            if (page != null) total += page.freeBeds.get();
+        }
+        return total;
+    }
+}
+
+/**
+ * Requirements for matching a vacant room. Every filter is optional; an empty criteria
+ * matches any vacant room.
+ */
+class RoomCriteria {
+    int sharingIndex = -1;
+    double minRent = 0;
+    double maxRent = Double.MAX_VALUE;
+    double minSizeSqft = 0;
+    int minAmenityScore = 0;
+
+    /**
+     * Restricts matches to one sharing type.
+     * @param sharingType Single/Double/Triple/Four
+     * @return This criteria
+     * @throws IllegalArgumentException if the sharing type is unknown
+     */
+    public RoomCriteria sharingType(String sharingType) {
+        int index = Arrays.asList(Room.SHARING_TYPES).indexOf(sharingType);
+        if (index < 0) throw new IllegalArgumentException("Invalid sharing type. Must be Single/Double/Triple/Four");
+        this.sharingIndex = index;
+        return this;
+    }
+
+    public RoomCriteria rentBetween(double minRent, double maxRent) {
+        this.minRent = minRent;
+        this.maxRent = maxRent;
+        return this;
+    }
+
+    public RoomCriteria minSizeSqft(double minSizeSqft) {
+        this.minSizeSqft = minSizeSqft;
+        return this;
+    }
+
+    public RoomCriteria minAmenityScore(int minAmenityScore) {
+        this.minAmenityScore = minAmenityScore;
+        return this;
+    }
+}
+
+/**
+ * The date type used throughout PGHive: a primitive epoch-day number (days since
+ * 1970-01-01), with {@link #NONE} for "no date". Parsing and formatting of yyyy-MM-dd
+ * are hand-rolled, thread-safe and allocation-free apart from a returned String.
+ * Conversions to instants use the system time zone.
+ */
+final class EpochDays {
+    /** Marker for "no date". */
+    static final int NONE = Integer.MIN_VALUE;
+
+    private EpochDays() {}
+
+    /**
+     * Gets the current date in the system time zone.
+     */
+    static int today() {
+        return (int) LocalDate.now().toEpochDay();
+    }
+
+    /**
+     * Checks that a stay does not end before it starts.
+     * 
+     * @param moveIn Move-in day, or {@link #NONE}
+     * @param moveOut Move-out day, or {@link #NONE}
+     * @throws IllegalArgumentException if the move-out day is before the move-in day
+     */
+    static void checkStay(int moveIn, int moveOut) {
+        if (moveIn != NONE && moveOut != NONE && moveOut < moveIn) {
+            throw new IllegalArgumentException("moveOut is before moveIn");
+        }
+    }
+
+    /**
+     * Parses a yyyy-MM-dd date; month and day may also have a single digit.
+     * 
+     * @param text Date text, may be null
+     * @return The epoch day, or {@link #NONE} if the text is not a valid date
+     */
+    static int parse(CharSequence text) {
+        if (text == null) return NONE;
+        int length = text.length();
+        int at = 0;
+        int year = 0, month = 0, day = 0;
+        int digits = 0;
+        for (; at < length && text.charAt(at) != '-'; at++, digits++) {
+            char c = text.charAt(at);
+            if (c < '0' || c > '9' || digits == 4) return NONE;
+            year = year * 10 + (c - '0');
+        }
+        if (digits != 4 || at++ == length) return NONE;
+        for (digits = 0; at < length && text.charAt(at) != '-'; at++, digits++) {
+            char c = text.charAt(at);
+            if (c < '0' || c > '9' || digits == 2) return NONE;
+            month = month * 10 + (c - '0');
+        }
+        if (digits == 0 || at++ == length) return NONE;
+        for (digits = 0; at < length; at++, digits++) {
+            char c = text.charAt(at);
+            if (c < '0' || c > '9' || digits == 2) return NONE;
+            day = day * 10 + (c - '0');
+        }
+        if (digits == 0 || month < 1 || month > 12 || day < 1 || day > lengthOfMonth(year, month)) return NONE;
+        return (int) daysFromCivil(year, month, day);
+    }
+
+    /**
+     * Formats an epoch day as yyyy-MM-dd.
+     * @return The formatted date, or "Not set" for {@link #NONE}
+     */
+    static String format(int epochDay) {
+        if (epochDay == NONE) return "Not set";
+        char[] chars = new char[10];
+        return writeTo(epochDay, chars) ? new String(chars) : LocalDate.ofEpochDay(epochDay).toString();
+    }
+
+    /**
+     * Appends an epoch day as yyyy-MM-dd (or "Not set") without allocating.
+     * @return The builder
+     */
+    static StringBuilder appendTo(StringBuilder out, int epochDay) {
+        if (epochDay == NONE) return out.append("Not set");
+        long civil = toCivil(epochDay);
+        long year = civil >> 9;
+        if (year < 0 || year > 9999) return out.append(LocalDate.ofEpochDay(epochDay));
+        int month = (int) (civil >> 5) & 0xF, day = (int) civil & 0x1F;
+        int y = (int) year;
+        return out.append((char) ('0' + y / 1000)).append((char) ('0' + y / 100 % 10))
+                  .append((char) ('0' + y / 10 % 10)).append((char) ('0' + y % 10)).append('-')
+                  .append((char) ('0' + month / 10)).append((char) ('0' + month % 10)).append('-')
+                  .append((char) ('0' + day / 10)).append((char) ('0' + day % 10));
+    }
+
+    // Fills ten chars with yyyy-MM-dd; false for years outside 0-9999
+    private static boolean writeTo(int epochDay, char[] out) {
+        long civil = toCivil(epochDay);
+        long year = civil >> 9;
+        if (year < 0 || year > 9999) return false;
+        int month = (int) (civil >> 5) & 0xF, day = (int) civil & 0x1F;
+        for (int i = 3, y = (int) year; i >= 0; i--, y /= 10) out[i] = (char) ('0' + y % 10);
+        out[4] = '-';
+        out[5] = (char) ('0' + month / 10);
+        out[6] = (char) ('0' + month % 10);
+        out[7] = '-';
+        out[8] = (char) ('0' + day / 10);
+        out[9] = (char) ('0' + day % 10);
+        return true;
+    }
+
+    /**
+     * Converts an epoch day to the instant its day starts, for storage formats that hold
+     * timestamps.
+     * @return Epoch milliseconds, or {@link Long#MIN_VALUE} for {@link #NONE}
+     */
+    static long toMillis(int epochDay) {
+        if (epochDay == NONE) return Long.MIN_VALUE;
+        return LocalDate.ofEpochDay(epochDay).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    /**
+     * Converts a timestamp to the epoch day it falls on.
+     * @return The epoch day, or {@link #NONE} for {@link Long#MIN_VALUE}
+     */
+    static int fromMillis(long millis) {
+        if (millis == Long.MIN_VALUE) return NONE;
+        return (int) Instant.ofEpochMilli(millis).atZone(ZoneId.systemDefault()).toLocalDate().toEpochDay();
+    }
+
+    /**
+     * Adds calendar months to an epoch day, clamping to the end of shorter months
+     * (Jan 31 + 1 month = Feb 28/29), without allocating.
+     */
+    static int plusMonths(int epochDay, int months) {
+        long civil = toCivil(epochDay);
+        long year = civil >> 9;
+        int month = (int) (civil >> 5) & 0xF;
+        int day = (int) civil & 0x1F;
+
+        long totalMonths = year * 12 + (month - 1) + months;
+        year = Math.floorDiv(totalMonths, 12);
+        month = Math.floorMod(totalMonths, 12) + 1;
+        return (int) daysFromCivil(year, month, Math.min(day, lengthOfMonth(year, month)));
+    }
+
+    /**
+     * Converts an epoch day to a calendar date without allocating.
+     * @return The date packed as {@code year << 9 | month << 5 | day}
+     */
+    static long toCivil(int epochDay) {
+        // Civil-from-days conversion on a March-based year (H. Hinnant's algorithm)
+        long z = epochDay + 719468L;
+        long era = Math.floorDiv(z, 146097);
+        long dayOfEra = z - era * 146097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long monthIndex = (5 * dayOfYear + 2) / 153;
+        int day = (int) (dayOfYear - (153 * monthIndex + 2) / 5 + 1);
+        int month = (int) (monthIndex < 10 ? monthIndex + 3 : monthIndex - 9);
+        long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+        return year << 9 | month << 5 | day;
+    }
+
+    static long daysFromCivil(long year, int month, int day) {
+        long y = month <= 2 ? year - 1 : year;
+        long era = Math.floorDiv(y, 400);
+        long yearOfEra = y - era * 400;
+        long dayOfYear = (153L * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    static int lengthOfMonth(long year, int month) {
+        if (month == 2) {
+            boolean leap = (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+            return leap ? 29 : 28;
+        }
+        return (month == 4 || month == 6 || month == 9 || month == 11) ? 30 : 31;
+    }
+}
+
+/**
+ * Columnar store of payment records for all tenants of an owner.
+ * Each payment is a row across parallel primitive arrays (amount, due epoch day,
+ * paid bit, tenant slot, schedule sequence) rather than a Payment object per
+ * payment, and each tenant slot keeps an int list of its row numbers.
+ * IDs of generated payments ("tenantId-M<n>") are never stored, only their sequence n.
+ */
+class PaymentLedger {
+    private static final int[] NO_ROWS = new int[0];
+
+    private double[] amounts;
+    private int[] dueDays;
+    private long[] paidBits;
+    private int[] slots;
+    private int[] sequences;
+    private String[] explicitIds;
+    private int size;
+
+    private Tenant[] tenants = new Tenant[16];
+    private int[][] rowsBySlot = new int[16][];
+    private int[] rowCounts = new int[16];
+    private int slotCount;
+    private final ReportAggregates aggregates; // pending totals, or null when not tracked
+    PaymentScheduler scheduler; // due-date index, or null when not scheduled
+
+    public PaymentLedger() {
+        this(1024);
+    }
+
+    public PaymentLedger(int initialCapacity) {
+        this(initialCapacity, null);
+    }
+
+    public PaymentLedger(int initialCapacity, ReportAggregates aggregates) {
+        this.aggregates = aggregates;
+        int capacity = Math.max(16, initialCapacity);
+        amounts = new double[capacity];
+        dueDays = new int[capacity];
+        paidBits = new long[(capacity + 63) >>> 6];
+        slots = new int[capacity];
+        sequences = new int[capacity];
+        explicitIds = new String[capacity];
+    }
+
+    /**
+     * Moves a tenant into this ledger, copying any rows it holds in another ledger.
+     * 
+     * @param tenant The tenant whose payments should live in this ledger
+     */
+    public synchronized void adopt(Tenant tenant) {
+        if (tenant.ledger == this) return;
+        PaymentLedger previous = tenant.ledger;
+        int previousSlot = tenant.ledgerSlot;
+        int slot = newSlot(tenant);
+        if (previous != null) {
+            // Lock order is always adopting ledger, then previous ledger
+            synchronized (previous) {
+                int count = previous.rowCounts[previousSlot];
+                int[] rows = previous.rowsBySlot[previousSlot];
+                for (int i = 0; i < count; i++) {
+                    int row = rows[i];
+                    appendRow(slot, previous.explicitIds[row], previous.sequences[row],
+                              previous.amounts[row], previous.dueDays[row], previous.isPaid(row));
+                }
+                previous.release(tenant);
+            }
+        }
+        tenant.ledger = this;
+        tenant.ledgerSlot = slot;
+    }
+
+    /**
+     * Detaches a tenant. Its rows become unreachable and are dropped at the next snapshot.
+     * 
+     * @param tenant The tenant to detach
+     */
+    public synchronized void release(Tenant tenant) {
+        if (tenant.ledger != this) return;
+        if (aggregates != null) {
+            long unpaid = 0;
+            double amount = 0;
+            int[] rows = rowsBySlot[tenant.ledgerSlot];
+            for (int i = 0; i < rowCounts[tenant.ledgerSlot]; i++) {
+                if (!isPaid(rows[i])) {
+                    unpaid++;
+                    amount += amounts[rows[i]];
+                }
+            }
+            aggregates.paymentsSettled(unpaid, amount);
+        }
+        rowsBySlot[tenant.ledgerSlot] = null;
+        rowCounts[tenant.ledgerSlot] = 0;
+        tenant.ledger = null;
+        tenant.ledgerSlot = -1;
+    }
+
+    /**
+     * Appends a payment row for a tenant, adopting the tenant first if needed.
+     * 
+     * @param tenant The tenant the payment belongs to
+     * @param explicitId Payment ID, or null for a generated "tenantId-M<sequence>" ID
+     * @param sequence Schedule sequence of a generated payment, 0 for explicit IDs
+     * @param amount Amount to be paid
+     * @param dueDay Due date as an epoch day, or {@link EpochDays#NONE}
+     * @param paid Whether the payment has already been made
+     * @return The new row number, or -1 if the tenant has meanwhile moved to another ledger
+     */
+    public synchronized int append(Tenant tenant, String explicitId, int sequence, double amount, int dueDay, boolean paid) {
+        if (tenant.ledger != null && tenant.ledger != this) return -1;
+        adopt(tenant);
+        return appendRow(tenant.ledgerSlot, explicitId, sequence, amount, dueDay, paid);
+    }
+
+    private int appendRow(int slot, String explicitId, int sequence, double amount, int dueDay, boolean paid) {
+        if (size == amounts.length) grow(size * 2);
+        int row = size++;
+        amounts[row] = amount;
+        dueDays[row] = dueDay;
+        slots[row] = slot;
+        sequences[row] = sequence;
+        explicitIds[row] = explicitId;
+        if (paid) {
+            paidBits[row >>> 6] |= 1L << row;
+        } else if (aggregates != null) {
+            aggregates.paymentsAdded(1, amount);
+        }
+        if (scheduler != null) scheduler.rowAdded(row);
+
+        int count = rowCounts[slot];
+        int[] rows = rowsBySlot[slot];
+        if (count == rows.length) {
+            rows = Arrays.copyOf(rows, Math.max(4, count * 2));
+            rowsBySlot[slot] = rows;
+        }
+        rows[count] = row;
+        rowCounts[slot] = count + 1;
+        return row;
+    }
+
+    private int newSlot(Tenant tenant) {
+        if (slotCount == tenants.length) {
+            int capacity = slotCount * 2;
+            tenants = Arrays.copyOf(tenants, capacity);
+            rowsBySlot = Arrays.copyOf(rowsBySlot, capacity);
+            rowCounts = Arrays.copyOf(rowCounts, capacity);
+        }
+        int slot = slotCount++;
+        tenants[slot] = tenant;
+        rowsBySlot[slot] = NO_ROWS;
+        return slot;
+    }
+
+    private void grow(int capacity) {
+        amounts = Arrays.copyOf(amounts, capacity);
+        dueDays = Arrays.copyOf(dueDays, capacity);
+        paidBits = Arrays.copyOf(paidBits, (capacity + 63) >>> 6);
+        slots = Arrays.copyOf(slots, capacity);
+        sequences = Arrays.copyOf(sequences, capacity);
+        explicitIds = Arrays.copyOf(explicitIds, capacity);
+    }
+
+    /**
+     * Reserves a contiguous block of rows for {@link #writeGenerated} to fill.
+     * 
+     * @param count Number of rows to reserve
+     * @return The first reserved row number
+     */
+    public synchronized int reserveRows(int count) {
+        if (size + count > amounts.length) grow(Math.max(size + count, amounts.length * 2));
+        int first = size;
+        size += count;
+        return first;
+    }
+
+    /**
+     * Fills a reserved row with an unpaid generated payment and links it to its tenant.
+     * Different tenants' rows may be written concurrently; one tenant's rows must not be.
+     * Callers report the new rows' totals through {@link #generatedPending} once per batch.
+     */
+    void writeGenerated(Tenant tenant, int row, int sequence, double amount, int dueDay) {
+        int slot = tenant.ledgerSlot;
+        amounts[row] = amount;
+        dueDays[row] = dueDay;
+        slots[row] = slot;
+        sequences[row] = sequence;
+        explicitIds[row] = null;
+
+        int count = rowCounts[slot];
+        int[] rows = rowsBySlot[slot];
+        if (count == rows.length) {
+            rows = Arrays.copyOf(rows, Math.max(4, count * 2));
+            rowsBySlot[slot] = rows;
+        }
+        rows[count] = row;
+        rowCounts[slot] = count + 1;
+    }
+
+    /**
+     * Sizes a tenant's row list for {@code count} more rows, so filling them does not regrow it;
+     * caller holds the monitor.
+     */
+    void reserveTenantRows(Tenant tenant, int count) {
+        int slot = tenant.ledgerSlot;
+        int needed = rowCounts[slot] + count;
+        if (rowsBySlot[slot].length < needed) rowsBySlot[slot] = Arrays.copyOf(rowsBySlot[slot], needed);
+    }
+
+    /**
+     * Fills a reserved row with a payment read back from a snapshot and links it to its tenant.
+     * Single-threaded, caller holds the monitor; the block is reported through
+     * {@link #generatedPending} and {@link #generatedRows} like a billing run.
+     */
+    void writeRestored(Tenant tenant, int row, String explicitId, int sequence, double amount, int dueDay, boolean paid) {
+        writeGenerated(tenant, row, sequence, amount, dueDay);
+        explicitIds[row] = explicitId;
+        if (paid) paidBits[row >>> 6] |= 1L << row;
+    }
+
+    /**
+     * Adds a batch of rows written with {@link #writeGenerated} to the pending totals.
+     */
+    void generatedPending(long count, double amount) {
+        if (aggregates != null && count > 0) aggregates.paymentsAdded(count, amount);
+    }
+
+    /**
+     * Hands a filled block of reserved rows to the due-date index; caller holds the monitor.
+     */
+    void generatedRows(int first, int count) {
+        if (scheduler != null) scheduler.rowsAdded(first, count);
+    }
+
+    // Column reads for callers that already hold the monitor
+    int dueDayLocked(int row) { return dueDays[row]; }
+    boolean isPaidLocked(int row) { return (paidBits[row >>> 6] & (1L << row)) != 0; }
+
+    // Whether the row still belongs to an adopted tenant; caller holds the monitor
+    boolean isLive(int row) {
+        return rowsBySlot[slots[row]] != null;
+    }
+
+    /**
+     * Sets bit n in {@code bits} for every generated sequence n (1..limit) the tenant already has.
+     * Runs on billing workers while the billing thread holds the ledger's monitor, so it does not lock.
+     * 
+     * @return Number of distinct sequences found
+     */
+    int markSequences(Tenant tenant, long[] bits, int limit) {
+        int found = 0;
+        int count = tenant.ledger == this ? rowCounts[tenant.ledgerSlot] : 0;
+        int[] rows = count == 0 ? NO_ROWS : rowsBySlot[tenant.ledgerSlot];
+        for (int i = 0; i < count; i++) {
+            int row = rows[i];
+            int sequence = sequences[row];
+            if (explicitIds[row] == null && sequence > 0 && sequence <= limit) {
+                long mask = 1L << sequence;
+                if ((bits[sequence >>> 6] & mask) == 0) {
+                    bits[sequence >>> 6] |= mask;
+                    found++;
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Marks a row as paid.
+     * @param row Row number
+     * @return true if the row was previously unpaid
+     */
+    public synchronized boolean markPaid(int row) {
+        long mask = 1L << row;
+        long word = paidBits[row >>> 6];
+        if ((word & mask) != 0) return false;
+        paidBits[row >>> 6] = word | mask;
+        if (aggregates != null && rowsBySlot[slots[row]] != null) aggregates.paymentsSettled(1, amounts[row]);
+        return true;
+    }
+
+    public synchronized int size() { return size; }
+    public synchronized double amountAt(int row) { return amounts[row]; }
+    public synchronized int dueDayAt(int row) { return dueDays[row]; }
+    public synchronized boolean isPaid(int row) { return (paidBits[row >>> 6] & (1L << row)) != 0; }
+    public synchronized int sequenceAt(int row) { return sequences[row]; }
+    public synchronized String explicitIdAt(int row) { return explicitIds[row]; }
+    public synchronized Tenant tenantAt(int row) { return tenants[slots[row]]; }
+
+    public synchronized String paymentIdAt(int row) {
+        String id = explicitIds[row];
+        return id != null ? id : tenants[slots[row]].getUserId() + "-M" + sequences[row];
+    }
+
+    /**
+     * Gets the number of payment rows held for a tenant.
+     * @param tenant A tenant adopted by this ledger
+     * @return Number of rows, 0 if the tenant is not in this ledger
+     */
+    public synchronized int rowCount(Tenant tenant) {
+        return tenant.ledger == this ? rowCounts[tenant.ledgerSlot] : 0;
+    }
+
+    /**
+     * Gets the row number of a tenant's n-th payment, in the order payments were added.
+     */
+    public synchronized int rowAt(Tenant tenant, int index) {
+        Objects.checkIndex(index, rowCount(tenant));
+        return rowsBySlot[tenant.ledgerSlot][index];
+    }
+
+    /**
+     * Finds a tenant's row by payment ID without materializing generated IDs.
+     * @return Row number, or -1 if the tenant has no such payment
+     */
+    public synchronized int findRow(Tenant tenant, String paymentId) {
+        int sequence = generatedSequence(tenant.getUserId(), paymentId);
+        int count = rowCount(tenant);
+        for (int i = 0; i < count; i++) {
+            int row = rowsBySlot[tenant.ledgerSlot][i];
+            if (sequence > 0 ? explicitIds[row] == null && sequences[row] == sequence
+                             : paymentId.equals(explicitIds[row])) {
+                return row;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Gets a read-only list of a tenant's payments, each a view over its ledger row.
+     */
+    public List<Payment> paymentsOf(Tenant tenant) {
+        return new AbstractList<Payment>() {
+            @Override
+            public Payment get(int index) { return new Payment(PaymentLedger.this, rowAt(tenant, index)); }
+            @Override
+            public int size() { return rowCount(tenant); }
+        };
+    }
+
+    /**
+     * Sums the amount of all unpaid rows that still belong to a tenant.
+     * @return Total pending amount
+     */
+    public synchronized double pendingAmount() {
+        double total = 0;
+        for (int row = 0; row < size; row++) {
+            if ((paidBits[row >>> 6] & (1L << row)) == 0 && rowsBySlot[slots[row]] != null) {
+                total += amounts[row];
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Approximates the heap used by the ledger's columns, excluding explicit ID strings.
+     * @return Size in bytes
+     */
+    public synchronized long footprintBytes() {
+        long bytes = (long) amounts.length * (8 + 4 + 4 + 4 + 4) + (long) paidBits.length * 8;
+        for (int slot = 0; slot < slotCount; slot++) {
+            if (rowsBySlot[slot] != null) bytes += 16 + rowsBySlot[slot].length * 4L;
+        }
+        return bytes;
+    }
+
+    /**
+     * Extracts n from an ID of the form "tenantId-M<n>".
+     * @return The sequence, or 0 if the ID does not follow the generated pattern
+     */
+    static int generatedSequence(String tenantId, String paymentId) {
+        int prefix = tenantId.length() + 2;
+        int length = paymentId.length();
+        if (length <= prefix || length > prefix + 9 || !paymentId.startsWith(tenantId)
+                || paymentId.charAt(prefix - 2) != '-' || paymentId.charAt(prefix - 1) != 'M'
+                || paymentId.charAt(prefix) == '0') {
+            return 0;
+        }
+        int sequence = 0;
+        for (int i = prefix; i < length; i++) {
+            char c = paymentId.charAt(i);
+            if (c < '0' || c > '9') return 0;
+            sequence = sequence * 10 + (c - '0');
+        }
+        return sequence;
+    }
+}
+
+/**
+ * Generates payment schedules for many tenants at once.
+ * Tenants are partitioned across a ForkJoin pool and due dates are computed with
+ * epoch-day arithmetic, so rows go straight into pre-reserved ledger space without
+ * creating Payment or String objects. Each tenant type's payment period and
+ * amount are honored, and sequences that already exist are skipped, so running the
+ * same schedule twice never duplicates a "-M<n>" payment.
+ */
+class BulkBillingEngine {
+    private static final int TENANTS_PER_TASK = 2048;
+
+    private final ForkJoinPool pool;
+
+    public BulkBillingEngine() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    public BulkBillingEngine(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Bills every tenant with a room for the given number of months.
+     * Monthly (standard) tenants get one payment of the room rent per calendar month;
+     * other tenant types get one {@code calculatePaymentAmount} payment every
+     * {@code paymentPeriodDays} days within the same horizon.
+     * 
+     * @param ledger Ledger holding the tenants' payments; locked for the whole run
+     * @param tenants Tenants to bill, all adopted by the ledger
+     * @param months Length of the billing horizon in months
+     * @param startDay First due date as an epoch day
+     * @return Number of payment rows created
+     */
+    public int generate(PaymentLedger ledger, Collection<Tenant> tenants, int months, int startDay) {
+        return generate(ledger, tenants, months, startDay, null);
+    }
+
+    /**
+     * Bills every tenant with a room and journals the tenants that were actually billed.
+     * The record is written before the ledger is unlocked, so it precedes any payment
+     * or mark-paid record for the new rows, and replay does not depend on which rooms
+     * the tenants hold by the time it reaches the record.
+     * 
+     * @param journal Log to record the run in, or null
+     * @see #generate(PaymentLedger, Collection, int, int)
+     */
+    public int generate(PaymentLedger ledger, Collection<Tenant> tenants, int months, int startDay,
+                        PersistenceEngine journal) {
+        if (months <= 0) return 0;
+        synchronized (ledger) {
+            return generateLocked(ledger, tenants.toArray(new Tenant[0]), months, startDay, journal);
+        }
+    }
+
+    /**
+     * Replays one tenant's share of a journaled run: adds the sequences of the same schedule
+     * the tenant does not have yet, with the amount the run billed.
+     * 
+     * @param ledger Ledger holding the tenant's payments
+     * @param tenant Tenant that was billed
+     * @param months Length of the billing horizon in months
+     * @param startDay First due date as an epoch day
+     * @param period The tenant's payment period in days, 0 for calendar months
+     * @param amount Amount of each payment
+     * @return Number of payment rows created
+     */
+    public int restore(PaymentLedger ledger, Tenant tenant, int months, int startDay, int period, double amount) {
+        if (months <= 0) return 0;
+        int length = scheduleLength(period, months, startDay, EpochDays.plusMonths(startDay, months));
+        synchronized (ledger) {
+            long[] existing = new long[(length + 64) >>> 6];
+            int added = length - ledger.markSequences(tenant, existing, length);
+            for (int sequence = 1; sequence <= length; sequence++) {
+                if ((existing[sequence >>> 6] & (1L << sequence)) != 0) continue;
+                int dueDay = period <= 0 ? EpochDays.plusMonths(startDay, sequence - 1) : startDay + (sequence - 1) * period;
+                ledger.append(tenant, null, sequence, amount, dueDay, false);
+            }
+            return added;
+        }
+    }
+
+    // Number of payments in a horizon: one per calendar month, or one per period
+    private static int scheduleLength(int period, int months, int startDay, int endDay) {
+        return period <= 0 ? months : (endDay - startDay + period - 1) / period;
+    }
+
+    private int generateLocked(PaymentLedger ledger, Tenant[] batch, int months, int startDay, PersistenceEngine journal) {
+        // Rooms can change while billing runs; both passes must see the same assignment
+        Room[] rooms = new Room[batch.length];
+        for (int i = 0; i < batch.length; i++) {
+            rooms[i] = batch[i].getRoom();
+        }
+        int[] monthlyDueDays = new int[months];
+        for (int i = 0; i < months; i++) {
+            monthlyDueDays[i] = EpochDays.plusMonths(startDay, i);
+        }
+        int endDay = EpochDays.plusMonths(startDay, months);
+
+        // Count new rows per tenant, reserve them in one block, then fill in parallel
+        int[] firstRows = new int[batch.length];
+        pool.invoke(new BillingTask(ledger, batch, rooms, 0, batch.length, monthlyDueDays, startDay, endDay, firstRows, false));
+        long total = 0;
+        for (int i = 0; i < batch.length; i++) {
+            int count = firstRows[i];
+            firstRows[i] = (int) total;
+            total += count;
+            if (total > Integer.MAX_VALUE - ledger.size()) {
+                throw new IllegalStateException("Too many payment rows for one ledger");
+            }
+        }
+        int base = ledger.reserveRows((int) total);
+        for (int i = 0; i < batch.length; i++) {
+            firstRows[i] += base;
+        }
+        pool.invoke(new BillingTask(ledger, batch, rooms, 0, batch.length, monthlyDueDays, startDay, endDay, firstRows, true));
+        ledger.generatedRows(base, (int) total);
+        if (journal != null && total > 0) journalRun(journal, ledger, batch, firstRows, base + (int) total, months, startDay);
+        return (int) total;
+    }
+
+    // Each tenant's new rows are contiguous and in batch order, so a tenant was billed iff its block is not empty
+    private static void journalRun(PersistenceEngine journal, PaymentLedger ledger, Tenant[] batch, int[] firstRows,
+                                   int end, int months, int startDay) {
+        int count = 0;
+        Tenant[] billed = new Tenant[batch.length];
+        int[] periods = new int[batch.length];
+        double[] amounts = new double[batch.length];
+        for (int i = 0; i < batch.length; i++) {
+            int next = i + 1 < batch.length ? firstRows[i + 1] : end;
+            if (next == firstRows[i]) continue;
+            billed[count] = batch[i];
+            periods[count] = batch[i].getPaymentPeriodDays();
+            amounts[count] = ledger.amountAt(firstRows[i]);
+            count++;
+        }
+        journal.logBulkPayments(months, startDay, billed, periods, amounts, count);
+    }
+
+    private static class BillingTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final PaymentLedger ledger;
+        private final Tenant[] tenants;
+        private final Room[] rooms;
+        private final int from, to;
+        private final int[] monthlyDueDays;
+        private final int startDay, endDay;
+        private final int[] firstRows; // new-row counts in the count pass, first row numbers in the fill pass
+        private final boolean fill;
+
+        BillingTask(PaymentLedger ledger, Tenant[] tenants, Room[] rooms, int from, int to, int[] monthlyDueDays,
+                    int startDay, int endDay, int[] firstRows, boolean fill) {
+            this.ledger = ledger;
+            this.tenants = tenants;
+            this.rooms = rooms;
+            this.from = from;
+            this.to = to;
+            this.monthlyDueDays = monthlyDueDays;
+            this.startDay = startDay;
+            this.endDay = endDay;
+            this.firstRows = firstRows;
+            this.fill = fill;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > TENANTS_PER_TASK) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new BillingTask(ledger, tenants, rooms, from, mid, monthlyDueDays, startDay, endDay, firstRows, fill),
+                          new BillingTask(ledger, tenants, rooms, mid, to, monthlyDueDays, startDay, endDay, firstRows, fill));
+                return;
+            }
+            long[] existing = new long[1];
+            long rowsWritten = 0;
+            double amountWritten = 0;
+            for (int i = from; i < to; i++) {
+                Tenant tenant = tenants[i];
+                Room room = rooms[i];
+                if (room == null) {
+                    if (!fill) firstRows[i] = 0;
+                    continue;
+                }
+                int period = tenant.getPaymentPeriodDays();
+                int length = scheduleLength(period, monthlyDueDays.length, startDay, endDay);
+                int words = (length + 64) >>> 6;
+                if (existing.length < words) existing = new long[words];
+                Arrays.fill(existing, 0, words, 0L);
+                int already = ledger.markSequences(tenant, existing, length);
+                if (!fill) {
+                    firstRows[i] = length - already;
+                    continue;
+                }
+                double amount = period <= 0 ? room.getRent() : tenant.calculatePaymentAmount(room);
+                int row = firstRows[i];
+                for (int sequence = 1; sequence <= length; sequence++) {
+                    if ((existing[sequence >>> 6] & (1L << sequence)) != 0) continue;
+                    int dueDay = period <= 0 ? monthlyDueDays[sequence - 1] : startDay + (sequence - 1) * period;
+                    ledger.writeGenerated(tenant, row++, sequence, amount, dueDay);
+                }
+                int added = length - already;
+                rowsWritten += added;
+                amountWritten += added * amount;
+            }
+            if (fill) ledger.generatedPending(rowsWritten, amountWritten);
+        }
+    }
+}
+
+/**
+ * Streams tenants and rooms from CSV or JSON files into an owner.
+ * The file is read through a FileChannel into one reusable buffer, and each record's
+ * fields are unescaped into a shared byte array. Strings are only created for values a
+ * tenant or room keeps; numbers, dates and enumerated values are parsed from the bytes.
+ * Records are built and added in batches through {@link PGOwner#addTenant(Tenant)} and
+ * {@link PGOwner#addRoom(Room)}, so memory stays bounded by the batch size. Invalid
+ * records are skipped and reported instead of aborting the import.
+ * <p>
+ * CSV files start with a header row naming the columns; unknown columns are ignored.
+ * JSON files hold flat objects, one per line (JSON Lines) or inside a top-level array.
+ * Files ending in .json or .jsonl are read as JSON, anything else as CSV.
+ * <p>
+ * Tenant fields: id, type, name, email, password or passwordHash, contact, moveIn, moveOut.
+ * Room fields: roomId, rent, sizeSqft, amenityScore, sharingType. Dates are yyyy-mm-dd.
+ * A plaintext password costs a full PBKDF2 run, so large imports should carry
+ * passwordHash values.
+ */
+class BulkImporter {
+    static final int DEFAULT_BATCH_SIZE = 1024;
+
+    private static final String[] TENANT_FIELDS =
+        {"id", "type", "name", "email", "password", "passwordHash", "contact", "moveIn", "moveOut"};
+    private static final int T_ID = 0, T_TYPE = 1, T_NAME = 2, T_EMAIL = 3, T_PASSWORD = 4,
+                             T_PASSWORD_HASH = 5, T_CONTACT = 6, T_MOVE_IN = 7, T_MOVE_OUT = 8;
+    private static final String[] ROOM_FIELDS = {"roomId", "rent", "sizeSqft", "amenityScore", "sharingType"};
+    private static final int R_ID = 0, R_RENT = 1, R_SIZE = 2, R_AMENITIES = 3, R_SHARING = 4;
+    private static final String[] TENANT_TYPES =
+        {"Standard", "Daily", "Weekly", "FifteenDay", "Quarterly", "BiYearly", "Yearly"};
+
+    private final PGOwner owner;
+    private final int batchSize;
+
+    public BulkImporter(PGOwner owner) {
+        this(owner, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * @param owner The owner receiving the records
+     * @param batchSize Records parsed before each round of inserts
+     */
+    public BulkImporter(PGOwner owner, int batchSize) {
+        if (batchSize < 1) throw new IllegalArgumentException("Batch size must be positive");
+        this.owner = owner;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Imports tenants. Records with a duplicate ID or email are rejected.
+     * 
+     * @param file CSV or JSON file of tenants
+     * @return Counts of imported and rejected records, with the first errors
+     * @throws IOException if the file cannot be read
+     * @throws IllegalArgumentException if the CSV header lacks a required column
+     */
+    public ImportResult importTenants(Path file) throws IOException {
+        return run(file, TENANT_FIELDS, new int[] {T_ID, T_NAME, T_EMAIL}, this::buildTenant, owner::addTenant);
+    }
+
+    /**
+     * Imports rooms. Records for a room ID that already exists are rejected.
+     * 
+     * @param file CSV or JSON file of rooms
+     * @return Counts of imported and rejected records, with the first errors
+     * @throws IOException if the file cannot be read
+     * @throws IllegalArgumentException if the CSV header lacks a required column
+     */
+    public ImportResult importRooms(Path file) throws IOException {
+        return run(file, ROOM_FIELDS, new int[] {R_ID, R_RENT}, this::buildRoom, room -> {
+            if (owner.getRoom(room.getRoomId()) != null) {
+                throw new IllegalArgumentException("Room ID already exists: " + room.getRoomId());
+            }
+            owner.addRoom(room);
+        });
+    }
+
+    private interface Builder<T> {
+        T build(RecordReader record);
+    }
+
+    private interface Inserter<T> {
+        void insert(T item);
+    }
+
+    private <T> ImportResult run(Path file, String[] fields, int[] required,
+                                 Builder<T> builder, Inserter<T> inserter) throws IOException {
+        ImportResult result = new ImportResult();
+        try (RecordReader reader = new RecordReader(file, fields, required)) {
+            Object[] batch = new Object[batchSize];
+            long[] lines = new long[batchSize];
+            int count = 0;
+            while (true) {
+                try {
+                    if (!reader.next()) break;
+                    batch[count] = builder.build(reader);
+                    lines[count++] = reader.line();
+                } catch (IllegalArgumentException e) {
+                    result.reject(reader.line(), e.getMessage());
+                }
+                if (count == batchSize) {
+                    insert(batch, lines, count, inserter, result);
+                    count = 0;
+                }
+            }
+            insert(batch, lines, count, inserter, result);
+        }
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> void insert(Object[] batch, long[] lines, int count, Inserter<T> inserter, ImportResult result) {
+        for (int i = 0; i < count; i++) {
+            try {
+                inserter.insert((T) batch[i]);
+                result.accept();
+            } catch (IllegalArgumentException e) {
+                result.reject(lines[i], e.getMessage());
+            }
+            batch[i] = null;
+        }
+    }
+
+    private Tenant buildTenant(RecordReader record) {
+        String type = record.has(T_TYPE) ? record.choice(T_TYPE, TENANT_TYPES) : "Standard";
+        String hash;
+        if (record.has(T_PASSWORD_HASH)) {
+            hash = record.string(T_PASSWORD_HASH);
+            if (!PasswordHasher.isHash(hash)) throw new IllegalArgumentException("passwordHash is not a PBKDF2 hash");
+        } else if (record.has(T_PASSWORD)) {
+            hash = PasswordHasher.hash(record.string(T_PASSWORD));
+        } else {
+            throw new IllegalArgumentException("Missing password or passwordHash");
+        }
+        int moveIn = record.has(T_MOVE_IN) ? record.epochDay(T_MOVE_IN) : EpochDays.NONE;
+        int moveOut = record.has(T_MOVE_OUT) ? record.epochDay(T_MOVE_OUT) : EpochDays.NONE;
+        EpochDays.checkStay(moveIn, moveOut);
+
+        // A null password skips hashing in the constructor; the hash is set directly
+        Tenant tenant = Tenant.ofType(type, record.string(T_ID), record.string(T_NAME), record.string(T_EMAIL), null);
+        tenant.password = hash;
+        tenant.setContact(record.string(T_CONTACT));
+        tenant.setMoveInDay(moveIn);
+        tenant.setMoveOutDay(moveOut);
+        return tenant;
+    }
+
+    private Room buildRoom(RecordReader record) {
+        double rent = record.number(R_RENT);
+        if (rent < 0) throw new IllegalArgumentException("rent cannot be negative");
+        double size = record.has(R_SIZE) ? record.number(R_SIZE) : 0;
+        if (size < 0) throw new IllegalArgumentException("sizeSqft cannot be negative");
+        double amenities = record.has(R_AMENITIES) ? record.number(R_AMENITIES) : 0;
+        if (amenities < 0 || amenities > 10 || amenities != Math.rint(amenities)) {
+            throw new IllegalArgumentException("amenityScore must be a whole number from 0 to 10");
+        }
+        String sharingType = record.has(R_SHARING) ? record.choice(R_SHARING, Room.SHARING_TYPES) : "Single";
+        return new Room(record.string(R_ID), rent, size, (int) amenities, sharingType);
+    }
+
+    /**
+     * Reads one record at a time from a CSV or JSON file. Field values are unescaped into a
+     * shared byte array that is reused for every record; each field is a range of it.
+     */
+    private static final class RecordReader implements Closeable {
+        private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+        };
+
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+        private final byte[] bytes = buffer.array();
+        private int position, limit;
+        private int pushedBack = -2;
+        private int last;
+
+        private final boolean json;
+        private final String[] fields;
+        private final byte[][] fieldNames;
+        private final int[] required;
+        private int[] csvFieldOf; // CSV column -> field index, or -1 for ignored columns
+        private final int[] start, end;
+        private byte[] values = new byte[512];
+        private int length;
+        private long line = 1, recordLine;
+
+        RecordReader(Path file, String[] fields, int[] required) throws IOException {
+            String name = file.getFileName().toString().toLowerCase();
+            this.json = name.endsWith(".json") || name.endsWith(".jsonl");
+            this.fields = fields;
+            this.required = required;
+            this.fieldNames = new byte[fields.length][];
+            for (int i = 0; i < fields.length; i++) {
+                fieldNames[i] = fields[i].getBytes(java.nio.charset.StandardCharsets.UTF_8);
+            }
+            this.start = new int[fields.length];
+            this.end = new int[fields.length];
+            this.channel = FileChannel.open(file, StandardOpenOption.READ);
+            try {
+                if (!json) readHeader();
+            } catch (IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            }
+        }
+
+        long line() { return recordLine; }
+
+        /**
+         * Advances to the next record.
+         * @return false at the end of the file
+         * @throws IllegalArgumentException if the record is malformed; the reader then
+         *         continues with the next record
+         */
+        boolean next() throws IOException {
+            length = 0;
+            Arrays.fill(start, -1);
+            if (!(json ? nextJson() : nextCsv())) return false;
+            for (int field : required) {
+                if (!has(field)) throw new IllegalArgumentException("Missing " + fields[field]);
+            }
+            return true;
+        }
+
+        boolean has(int field) { return start[field] >= 0 && end[field] > start[field]; }
+
+        String string(int field) {
+            return has(field) ? new String(values, start[field], end[field] - start[field],
+                                           java.nio.charset.StandardCharsets.UTF_8) : null;
+        }
+
+        /** Returns the option whose bytes equal the field, so no String is created for it. */
+        String choice(int field, String[] options) {
+            for (String option : options) {
+                if (option.length() == end[field] - start[field] && matches(option, start[field])) return option;
+            }
+            throw new IllegalArgumentException("Invalid " + fields[field] + ": " + string(field)
+                                               + " (expected one of " + String.join("/", options) + ")");
+        }
+
+        double number(int field) {
+            int at = start[field], stop = end[field];
+            boolean negative = at < stop && values[at] == '-';
+            if (negative) at++;
+            long mantissa = 0;
+            int digits = 0, decimals = -1;
+            for (; at < stop; at++) {
+                byte b = values[at];
+                if (b == '.' && decimals < 0) {
+                    decimals = 0;
+                } else if (b >= '0' && b <= '9' && digits < 15) {
+                    mantissa = mantissa * 10 + (b - '0');
+                    digits++;
+                    if (decimals >= 0) decimals++;
+                } else {
+                    break;
+                }
+            }
+            if (at == stop && digits > 0) {
+                // Exact: both operands are exact doubles, so the quotient is correctly rounded
+                double value = decimals > 0 ? mantissa / POWERS_OF_TEN[decimals] : mantissa;
+                return negative ? -value : value;
+            }
+            try {
+                double value = Double.parseDouble(string(field)); // exponents and long mantissas
+                if (Double.isFinite(value)) return value;
+            } catch (NumberFormatException e) {
+                // reported below
+            }
+            throw new IllegalArgumentException("Invalid " + fields[field] + ": " + string(field));
+        }
+
+        int epochDay(int field) {
+            int at = start[field];
+            if (end[field] - at == 10 && values[at + 4] == '-' && values[at + 7] == '-') {
+                int year = digits(at, 4), month = digits(at + 5, 2), day = digits(at + 8, 2);
+                if (year >= 0 && month >= 1 && month <= 12 && day >= 1
+                        && day <= EpochDays.lengthOfMonth(year, month)) {
+                    return (int) EpochDays.daysFromCivil(year, month, day);
+                }
+            }
+            throw new IllegalArgumentException("Invalid " + fields[field] + " (expected yyyy-mm-dd): " + string(field));
+        }
+
+        private int digits(int at, int count) {
+            int value = 0;
+            for (int i = at; i < at + count; i++) {
+                if (values[i] < '0' || values[i] > '9') return -1;
+                value = value * 10 + (values[i] - '0');
+            }
+            return value;
+        }
+
+        private boolean matches(String name, int at) {
+            for (int i = 0; i < name.length(); i++) {
+                if (values[at + i] != name.charAt(i)) return false;
+            }
+            return true;
+        }
+
+        private void readHeader() throws IOException {
+            List<String> columns = new ArrayList<>();
+            int c = read();
+            if (c < 0) throw new IllegalArgumentException("Empty CSV file");
+            while (true) {
+                int from = length;
+                c = readCsvField(c);
+                columns.add(new String(values, from, length - from, java.nio.charset.StandardCharsets.UTF_8).trim());
+                if (c != ',') break;
+                c = read();
+            }
+            columns.set(0, columns.get(0).replace("\uFEFF", "")); // byte order mark from spreadsheet exports
+            csvFieldOf = new int[columns.size()];
+            for (int i = 0; i < csvFieldOf.length; i++) {
+                csvFieldOf[i] = Arrays.asList(fields).indexOf(columns.get(i));
+            }
+            for (int field : required) {
+                if (!columns.contains(fields[field])) {
+                    throw new IllegalArgumentException("CSV header is missing the " + fields[field] + " column");
+                }
+            }
+            length = 0;
+        }
+
+        private boolean nextCsv() throws IOException {
+            int c = read();
+            while (c == '\n' || c == '\r') c = read(); // blank lines
+            if (c < 0) return false;
+            recordLine = line;
+            int column = 0;
+            while (true) {
+                int from = length;
+                c = readCsvField(c);
+                if (column < csvFieldOf.length && csvFieldOf[column] >= 0) {
+                    start[csvFieldOf[column]] = from;
+                    end[csvFieldOf[column]] = length;
+                }
+                column++;
+                if (c != ',') break;
+                c = read();
+            }
+            if (column != csvFieldOf.length) {
+                throw new IllegalArgumentException("Expected " + csvFieldOf.length + " columns but found " + column);
+            }
+            return true;
+        }
+
+        // Appends one field starting at c and returns the delimiter that ended it (',' or end of line)
+        private int readCsvField(int c) throws IOException {
+            if (c == '"') {
+                while (true) {
+                    c = read();
+                    if (c < 0) throw new IllegalArgumentException("Unterminated quoted field");
+                    if (c == '"') {
+                        c = read();
+                        if (c != '"') break; // a doubled quote is a literal quote
+                    }
+                    append(c);
+                }
+            }
+            while (c >= 0 && c != ',' && c != '\n' && c != '\r') {
+                append(c);
+                c = read();
+            }
+            if (c == '\r') {
+                c = read();
+                if (c != '\n') unread(c);
+                c = '\n';
+            }
+            return c;
+        }
+
+        private boolean nextJson() throws IOException {
+            int c = read();
+            while (c == '[' || c == ']' || c == ',' || isSpace(c)) c = read();
+            if (c < 0) return false;
+            recordLine = line;
+            try {
+                if (c != '{') throw new IllegalArgumentException("Expected a JSON object");
+                c = skipSpace(read());
+                if (c == '}') return true;
+                while (true) {
+                    if (c != '"') throw new IllegalArgumentException("Expected a field name");
+                    int from = length;
+                    readJsonString();
+                    int field = fieldNamed(from, length);
+                    length = from;
+                    if (skipSpace(read()) != ':') throw new IllegalArgumentException("Expected ':'");
+                    c = skipSpace(read());
+                    if (c == '"') {
+                        readJsonString();
+                        c = read();
+                    } else if (c == '{' || c == '[') {
+                        throw new IllegalArgumentException("Nested JSON values are not supported");
+                    } else {
+                        while (c >= 0 && c != ',' && c != '}' && !isSpace(c)) {
+                            append(c);
+                            c = read();
+                        }
+                        if (length == from) throw new IllegalArgumentException("Missing value for a field");
+                        if (length - from == 4 && matches("null", from)) length = from;
+                    }
+                    if (field >= 0) {
+                        start[field] = from;
+                        end[field] = length;
+                    }
+                    c = skipSpace(c);
+                    if (c == '}') return true;
+                    if (c != ',') throw new IllegalArgumentException("Expected ',' or '}'");
+                    c = skipSpace(read());
+                }
+            } catch (IllegalArgumentException e) {
+                // Resume at the next line so one bad record does not cost the rest of the file
+                c = last;
+                while (c >= 0 && c != '\n') c = read();
+                throw e;
+            }
+        }
+
+        private void readJsonString() throws IOException {
+            while (true) {
+                int c = read();
+                if (c < 0) throw new IllegalArgumentException("Unterminated JSON string");
+                if (c == '"') return;
+                if (c != '\\') {
+                    append(c);
+                    continue;
+                }
+                c = read();
+                switch (c) {
+                    case 'n': append('\n'); break;
+                    case 'r': append('\r'); break;
+                    case 't': append('\t'); break;
+                    case 'b': append('\b'); break;
+                    case 'f': append('\f'); break;
+                    case 'u': appendCodePoint(readHex()); break;
+                    case -1: throw new IllegalArgumentException("Unterminated JSON string");
+                    default: append(c);
+                }
+            }
+        }
+
+        private int readHex() throws IOException {
+            int value = 0;
+            for (int i = 0; i < 4; i++) {
+                int digit = Character.digit(read(), 16);
+                if (digit < 0) throw new IllegalArgumentException("Bad \\u escape in JSON");
+                value = value * 16 + digit;
+            }
+            if (Character.isHighSurrogate((char) value)) {
+                if (read() != '\\' || read() != 'u') throw new IllegalArgumentException("Unpaired surrogate in JSON");
+                int low = readHex();
+                value = Character.toCodePoint((char) value, (char) low);
+            }
+            return value;
+        }
+
+        private void appendCodePoint(int codePoint) {
+            if (codePoint < 0x80) {
+                append(codePoint);
+            } else if (codePoint < 0x800) {
+                append(0xC0 | codePoint >> 6);
+                append(0x80 | codePoint & 0x3F);
+            } else if (codePoint < 0x10000) {
+                append(0xE0 | codePoint >> 12);
+                append(0x80 | codePoint >> 6 & 0x3F);
+                append(0x80 | codePoint & 0x3F);
+            } else {
+                append(0xF0 | codePoint >> 18);
+                append(0x80 | codePoint >> 12 & 0x3F);
+                append(0x80 | codePoint >> 6 & 0x3F);
+                append(0x80 | codePoint & 0x3F);
+            }
+        }
+
+        private int fieldNamed(int from, int to) {
+            for (int i = 0; i < fieldNames.length; i++) {
+                byte[] name = fieldNames[i];
+                if (name.length == to - from && Arrays.equals(name, 0, name.length, values, from, to)) return i;
+            }
+            return -1;
+        }
+
+        private static boolean isSpace(int c) {
+            return c == ' ' || c == '\n' || c == '\r' || c == '\t';
+        }
+
+        private int skipSpace(int c) throws IOException {
+            while (isSpace(c)) c = read();
+            return c;
+        }
+
+        private void append(int b) {
+            if (length == values.length) values = Arrays.copyOf(values, length * 2);
+            values[length++] = (byte) b;
+        }
+
+        private int read() throws IOException {
+            int c;
+            if (pushedBack != -2) {
+                c = pushedBack;
+                pushedBack = -2;
+            } else {
+                if (position == limit) {
+                    buffer.clear();
+                    int n;
+                    do {
+                        n = channel.read(buffer);
+                    } while (n == 0);
+                    if (n < 0) return last = -1;
+                    position = 0;
+                    limit = n;
+                }
+                c = bytes[position++] & 0xFF;
+            }
+            if (c == '\n') line++;
+            return last = c;
+        }
+
+        private void unread(int c) {
+            pushedBack = c;
+            if (c == '\n') line--;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
+
+/**
+ * Outcome of a bulk import: how many records were added and why others were rejected.
+ * Only the first {@value #MAX_ERRORS} error messages are kept.
+ */
+class ImportResult {
+    static final int MAX_ERRORS = 100;
+
+    private int imported;
+    private int rejected;
+    private final List<String> errors = new ArrayList<>();
+
+    void accept() { imported++; }
+
+    void reject(long line, String message) {
+        rejected++;
+        if (errors.size() < MAX_ERRORS) errors.add("Line " + line + ": " + message);
+    }
+
+    public int getImported() { return imported; }
+    public int getRejected() { return rejected; }
+    public List<String> getErrors() { return Collections.unmodifiableList(errors); }
+
+    @Override
+    public String toString() {
+        return "Imported " + imported + ", rejected " + rejected;
+    }
+}
+
+/**
+ * Streams tenants, rooms, payments and the status report as CSV or JSON Lines.
+ * Records are encoded straight into one reusable byte buffer, which is written to the
+ * output each time it fills, so no intermediate lists or per-row Strings are built and
+ * memory stays constant however large the ledger is. Payment rows are read in chunks under
+ * the ledger's lock, and the lock is released before each chunk is written out.
+ * <p>
+ * Every export takes a cursor and a limit for pagination: pass 0 to start, then the
+ * returned cursor to continue. {@link #END} means there are no more records. Cursors
+ * follow insertion order, so records added during paging appear on later pages.
+ */
+class ReportExporter {
+    /** Cursor returned once the last record has been exported. */
+    static final long END = -1;
+
+    private static final int FLUSH_THRESHOLD = 64 * 1024;
+    private static final int PAYMENT_CHUNK_ROWS = 4096;
+
+    private static final String[] TENANT_COLUMNS = {"id", "name", "email", "contact", "type", "room", "moveIn", "moveOut"};
+    private static final String[] ROOM_COLUMNS = {"roomId", "rent", "sizeSqft", "amenityScore", "sharingType", "tenant", "beds",
+                                                  "occupiedBeds"};
+    private static final String[] PAYMENT_COLUMNS = {"tenantId", "paymentId", "amount", "dueDate", "paid"};
+    private static final String[] REPORT_COLUMNS = {"metric", "value"};
+
+    private final PGOwner owner;
+
+    public ReportExporter(PGOwner owner) {
+        this.owner = owner;
+    }
+
+    /**
+     * Tells whether a file name asks for JSON Lines rather than CSV.
+     */
+    static boolean isJsonLines(Path file) {
+        String name = file.getFileName().toString().toLowerCase();
+        return name.endsWith(".jsonl") || name.endsWith(".json");
+    }
+
+    /**
+     * Exports one kind of record to a file, choosing the format from its extension.
+     * 
+     * @param kind tenants, rooms, payments or report
+     * @param file Target file; replaced if it exists
+     * @return Number of records written
+     * @throws IOException if the file cannot be written
+     * @throws IllegalArgumentException if the kind is unknown
+     */
+    public long exportToFile(String kind, Path file) throws IOException {
+        try (OutputStream out = Files.newOutputStream(file)) {
+            RecordWriter writer = new RecordWriter(out, isJsonLines(file), columnsOf(kind));
+            export(kind, writer, 0, Integer.MAX_VALUE);
+            writer.finish();
+            return writer.records;
+        }
+    }
+
+    /**
+     * Exports a page of records. A CSV page starts with its header row.
+     * 
+     * @param kind tenants, rooms, payments or report
+     * @param out Stream to write to; flushed but not closed
+     * @param jsonLines true for JSON Lines, false for CSV
+     * @param cursor 0 for the first page, otherwise a cursor returned by an earlier call
+     * @param limit Maximum number of records
+     * @return Cursor for the next page, or {@link #END}
+     * @throws IOException if writing fails
+     * @throws IllegalArgumentException if the kind is unknown
+     */
+    public long export(String kind, OutputStream out, boolean jsonLines, long cursor, int limit) throws IOException {
+        RecordWriter writer = new RecordWriter(out, jsonLines, columnsOf(kind));
+        long next = export(kind, writer, cursor, limit);
+        writer.finish();
+        return next;
+    }
+
+    static String[] columnsOf(String kind) {
+        switch (kind) {
+            case "tenants": return TENANT_COLUMNS;
+            case "rooms": return ROOM_COLUMNS;
+            case "payments": return PAYMENT_COLUMNS;
+            case "report": return REPORT_COLUMNS;
+            default: throw new IllegalArgumentException("Unknown export: " + kind + " (tenants/rooms/payments/report)");
+        }
+    }
+
+    private long export(String kind, RecordWriter writer, long cursor, int limit) throws IOException {
+        if (cursor < 0) throw new IllegalArgumentException("Invalid cursor: " + cursor);
+        if (limit < 1) throw new IllegalArgumentException("Limit must be positive");
+        switch (kind) {
+            case "tenants": return writeTenants(writer, cursor, limit);
+            case "rooms": return writeRooms(writer, cursor, limit);
+            case "payments": return writePayments(writer, cursor, limit);
+            default:
+                writeReport(writer);
+                return END;
+        }
+    }
+
+    private long writeTenants(RecordWriter writer, long cursor, int limit) throws IOException {
+        int written = 0;
+        for (Tenant tenant : owner.tenantsAfter(cursor)) {
+            if (written == limit) return cursor;
+            Room room = tenant.getRoom();
+            writer.text(tenant.getUserId());
+            writer.text(tenant.getName());
+            writer.text(tenant.getEmail());
+            writer.text(tenant.getContact());
+            writer.text(tenant.getTenantType());
+            writer.text(room != null ? room.getRoomId() : null);
+            writer.date(tenant.getMoveInDay());
+            writer.date(tenant.getMoveOutDay());
+            writer.endRecord();
+            cursor = tenant.registrySeq;
+            written++;
+        }
+        return END;
+    }
+
+    private long writeRooms(RecordWriter writer, long cursor, int limit) throws IOException {
+        int written = 0;
+        for (Room room : owner.roomsAfter(cursor)) {
+            if (written == limit) return cursor;
+            Tenant tenant = room.getTenant();
+            writer.text(room.getRoomId());
+            writer.number(room.getRent());
+            writer.number(room.getSizeSqft());
+            writer.number(room.getAmenityScore());
+            writer.text(room.getSharingType());
+            writer.text(tenant != null ? tenant.getUserId() : null); // first occupant; the tenant export has them all
+            writer.number(room.getBedCount());
+            writer.number(room.getOccupiedBeds());
+            writer.endRecord();
+            cursor = room.registrySeq;
+            written++;
+        }
+        return END;
+    }
+
+    // The cursor is the next ledger row; rows of deleted tenants are skipped
+    private long writePayments(RecordWriter writer, long cursor, int limit) throws IOException {
+        PaymentLedger ledger = owner.getLedger();
+        int row = (int) Math.min(cursor, Integer.MAX_VALUE);
+        int written = 0;
+        while (true) {
+            synchronized (ledger) {
+                int end = Math.min(ledger.size(), row + PAYMENT_CHUNK_ROWS);
+                if (row >= end) return END;
+                for (; row < end && !writer.isFull(); row++) {
+                    if (!ledger.isLive(row)) continue;
+                    if (written == limit) return row;
+                    Tenant tenant = ledger.tenantAt(row);
+                    String explicitId = ledger.explicitIdAt(row);
+                    writer.text(tenant.getUserId());
+                    if (explicitId != null) {
+                        writer.text(explicitId);
+                    } else {
+                        writer.generatedId(tenant.getUserId(), ledger.sequenceAt(row));
+                    }
+                    writer.number(ledger.amountAt(row));
+                    writer.date(ledger.dueDayAt(row));
+                    writer.bool(ledger.isPaid(row));
+                    writer.endRecord();
+                    written++;
+                }
+            }
+            writer.flush(); // outside the ledger lock
+        }
+    }
+
+    private void writeReport(RecordWriter writer) throws IOException {
+        ReportAggregates aggregates = owner.getAggregates();
+        metric(writer, "tenants", owner.getTenantCount());
+        metric(writer, "rooms", aggregates.totalRooms());
+        metric(writer, "occupiedRooms", aggregates.occupiedRooms());
+        metric(writer, "beds", aggregates.totalBeds());
+        metric(writer, "occupiedBeds", aggregates.occupiedBeds());
+        metric(writer, "occupancyRate", aggregates.occupancyRate());
+        for (int i = 0; i < Room.SHARING_TYPES.length; i++) {
+            metric(writer, "occupied" + Room.SHARING_TYPES[i], aggregates.occupiedOfType(i));
+            metric(writer, "total" + Room.SHARING_TYPES[i], aggregates.roomsOfType(i));
+            metric(writer, "occupiedBeds" + Room.SHARING_TYPES[i], aggregates.occupiedBedsOfType(i));
+            metric(writer, "beds" + Room.SHARING_TYPES[i], aggregates.bedsOfType(i));
+        }
+        metric(writer, "monthlyRentDue", aggregates.rentDue());
+        metric(writer, "pendingPayments", aggregates.pendingPayments());
+        metric(writer, "pendingAmount", aggregates.pendingAmount());
+    }
+
+    private static void metric(RecordWriter writer, String name, double value) throws IOException {
+        writer.text(name);
+        writer.number(value);
+        writer.endRecord();
+    }
+
+    /**
+     * Encodes records as UTF-8 into a reusable buffer and writes the buffer out whenever it
+     * passes the flush threshold. Values are written column by column in header order.
+     */
+    private static final class RecordWriter {
+        private final OutputStream out;
+        private final boolean json;
+        private final byte[][] jsonNames; // {"name": for the first column, ,"name": for the rest
+        private final StringBuilder digits = new StringBuilder(32);
+        private byte[] buffer = new byte[FLUSH_THRESHOLD + 1024];
+        private int length;
+        private int column;
+        long records;
+
+        RecordWriter(OutputStream out, boolean json, String[] columns) throws IOException {
+            this.out = out;
+            this.json = json;
+            this.jsonNames = new byte[columns.length][];
+            for (int i = 0; i < columns.length; i++) {
+                jsonNames[i] = ((i == 0 ? "{" : ",") + Json.quote(columns[i]) + ":")
+                               .getBytes(java.nio.charset.StandardCharsets.UTF_8);
+            }
+            if (!json) {
+                for (String name : columns) text(name);
+                endRecord();
+                records = 0;
+            }
+        }
+
+        boolean isFull() { return length >= FLUSH_THRESHOLD; }
+
+        void text(String value) throws IOException {
+            startValue(value == null ? 4 : value.length() * 6 + 2);
+            if (value == null) {
+                if (json) putAscii("null");
+                return;
+            }
+            boolean quoted = json || needsCsvQuotes(value);
+            if (quoted) buffer[length++] = '"';
+            putChars(value);
+            if (quoted) buffer[length++] = '"';
+        }
+
+        // Writes "<tenantId>-M<sequence>" without building the ID string
+        void generatedId(String tenantId, int sequence) throws IOException {
+            startValue(tenantId.length() * 6 + 16);
+            boolean quoted = json || needsCsvQuotes(tenantId);
+            if (quoted) buffer[length++] = '"';
+            putChars(tenantId);
+            buffer[length++] = '-';
+            buffer[length++] = 'M';
+            putLong(sequence);
+            if (quoted) buffer[length++] = '"';
+        }
+
+        void number(double value) throws IOException {
+            startValue(32);
+            if (value == (long) value && Math.abs(value) < 1e15) {
+                putLong((long) value);
+            } else {
+                digits.setLength(0);
+                digits.append(value); // formats into the reused builder without a String
+                for (int i = 0; i < digits.length(); i++) buffer[length++] = (byte) digits.charAt(i);
+            }
+        }
+
+        void bool(boolean value) throws IOException {
+            startValue(5);
+            putAscii(value ? "true" : "false");
+        }
+
+        void date(int epochDay) throws IOException {
+            if (epochDay == EpochDays.NONE) {
+                text(null);
+                return;
+            }
+            long civil = EpochDays.toCivil(epochDay);
+            long year = civil >> 9;
+            if (year < 0 || year > 9999) {
+                text(LocalDate.ofEpochDay(epochDay).toString());
+                return;
+            }
+            startValue(16);
+            if (json) buffer[length++] = '"';
+            putDigits((int) year, 4);
+            buffer[length++] = '-';
+            putDigits((int) (civil >> 5) & 0xF, 2);
+            buffer[length++] = '-';
+            putDigits((int) civil & 0x1F, 2);
+            if (json) buffer[length++] = '"';
+        }
+
+        void endRecord() throws IOException {
+            ensure(2);
+            if (json) buffer[length++] = '}';
+            buffer[length++] = '\n';
+            column = 0;
+            records++;
+            if (length >= FLUSH_THRESHOLD) flush();
+        }
+
+        void flush() throws IOException {
+            if (length > 0) out.write(buffer, 0, length);
+            length = 0;
+        }
+
+        void finish() throws IOException {
+            flush();
+            out.flush();
+        }
+
+        private void startValue(int maxBytes) {
+            byte[] name = json ? jsonNames[column] : null;
+            ensure(maxBytes + (json ? name.length : 1));
+            if (json) {
+                System.arraycopy(name, 0, buffer, length, name.length);
+                length += name.length;
+            } else if (column > 0) {
+                buffer[length++] = ',';
+            }
+            column++;
+        }
+
+        private static boolean needsCsvQuotes(String value) {
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c == ',' || c == '"' || c == '\n' || c == '\r') return true;
+            }
+            return false;
+        }
+
+        // Escapes for the current format: JSON string escapes, or doubled quotes in CSV
+        private void putChars(String value) {
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c == '"') {
+                    buffer[length++] = (byte) (json ? '\\' : '"');
+                    buffer[length++] = '"';
+                } else if (json && (c == '\\' || c < 0x20)) {
+                    buffer[length++] = '\\';
+                    switch (c) {
+                        case '\\': buffer[length++] = '\\'; break;
+                        case '\n': buffer[length++] = 'n'; break;
+                        case '\r': buffer[length++] = 'r'; break;
+                        case '\t': buffer[length++] = 't'; break;
+                        default:
+                            putAscii("u00");
+                            buffer[length++] = (byte) Character.forDigit(c >> 4, 16);
+                            buffer[length++] = (byte) Character.forDigit(c & 0xF, 16);
+                    }
+                } else if (c < 0x80) {
+                    buffer[length++] = (byte) c;
+                } else if (c < 0x800) {
+                    buffer[length++] = (byte) (0xC0 | c >> 6);
+                    buffer[length++] = (byte) (0x80 | c & 0x3F);
+                } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                           && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                    buffer[length++] = (byte) (0xF0 | codePoint >> 18);
+                    buffer[length++] = (byte) (0x80 | codePoint >> 12 & 0x3F);
+                    buffer[length++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+                    buffer[length++] = (byte) (0x80 | codePoint & 0x3F);
+                } else {
+                    buffer[length++] = (byte) (0xE0 | c >> 12);
+                    buffer[length++] = (byte) (0x80 | c >> 6 & 0x3F);
+                    buffer[length++] = (byte) (0x80 | c & 0x3F);
+                }
+            }
+        }
+
+        private void putAscii(String text) {
+            for (int i = 0; i < text.length(); i++) buffer[length++] = (byte) text.charAt(i);
+        }
+
+        private void putLong(long value) {
+            if (value < 0) {
+                buffer[length++] = '-';
+                value = -value;
+            }
+            int digitCount = 1;
+            for (long rest = value / 10; rest > 0; rest /= 10) digitCount++;
+            for (int i = length + digitCount - 1; i >= length; i--) {
+                buffer[i] = (byte) ('0' + value % 10);
+                value /= 10;
+            }
+            length += digitCount;
+        }
+
+        private void putDigits(int value, int count) {
+            for (int i = length + count - 1; i >= length; i--) {
+                buffer[i] = (byte) ('0' + value % 10);
+                value /= 10;
+            }
+            length += count;
+        }
+
+        private void ensure(int bytes) {
+            if (length + bytes > buffer.length) buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + bytes));
+        }
+    }
+}
+
+/**
+ * Runs many properties side by side, each managed by its own {@link PGOwner}.
+ * Properties are partitioned by ID across a fixed number of shards, and every shard owns a
+ * single writer thread: work submitted for a property runs on its shard's thread, so the
+ * properties of one shard are never written concurrently while different shards proceed in
+ * parallel. There is no lock shared between shards, so adding tenants and assigning rooms
+ * scales with the number of cores.
+ * <p>
+ * Cross-property queries fan out one task to every shard, each summarising its own
+ * properties between writes, and merge the partial results on the calling thread.
+ * An owner stays thread-safe on its own, so code holding one may still call it directly;
+ * routing the work through {@link #submit} is what keeps it uncontended.
+ */
+class PropertyRegistry implements Closeable {
+    private final Shard[] shards;
+
+    private static final class Shard {
+        final Map<String, PGOwner> properties = new ConcurrentHashMap<>(); // written only by the shard thread
+        final ExecutorService writer;
+        volatile Thread thread;
+
+        Shard(int index) {
+            writer = Executors.newSingleThreadExecutor(task -> {
+                Thread created = new Thread(task, "pghive-shard-" + index);
+                created.setDaemon(true);
+                thread = created;
+                return created;
+            });
+        }
+    }
+
+    /**
+     * Creates a registry with one shard per available processor.
+     */
+    public PropertyRegistry() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param shardCount Number of shards, each served by one writer thread
+     */
+    public PropertyRegistry(int shardCount) {
+        if (shardCount < 1) throw new IllegalArgumentException("At least one shard is required");
+        shards = new Shard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new Shard(i);
+        }
+    }
+
+    public int getShardCount() { return shards.length; }
+
+    private Shard shardFor(String propertyId) {
+        return shards[(Objects.hashCode(propertyId) & 0x7fffffff) % shards.length];
+    }
+
+    /**
+     * Registers a property under its owner's user ID.
+     * 
+     * @param owner Owner managing the property
+     * @throws IllegalArgumentException if a property with that ID is already registered
+     */
+    public void addProperty(PGOwner owner) {
+        Shard shard = shardFor(owner.getUserId());
+        boolean added = CompletableFuture.supplyAsync(
+            () -> shard.properties.putIfAbsent(owner.getUserId(), owner) == null, shard.writer).join();
+        if (!added) throw new IllegalArgumentException("Property already registered: " + owner.getUserId());
+    }
+
+    /**
+     * Gets the owner of a property.
+     * @return The owner, or null if no property has that ID
+     */
+    public PGOwner getProperty(String propertyId) {
+        return propertyId == null ? null : shardFor(propertyId).properties.get(propertyId);
+    }
+
+    /**
+     * Gets the IDs of all registered properties, sorted.
+     */
+    public List<String> getPropertyIds() {
+        List<String> ids = new ArrayList<>();
+        for (Shard shard : shards) ids.addAll(shard.properties.keySet());
+        Collections.sort(ids);
+        return ids;
+    }
+
+    /**
+     * Runs work against one property on its shard's writer thread.
+     * 
+     * @param propertyId Property to work on
+     * @param work Work to run with the property's owner
+     * @return Future completed with the work's result, or exceptionally with what it threw
+     * @throws IllegalArgumentException if no property has that ID
+     */
+    public <T> CompletableFuture<T> submit(String propertyId, Function<PGOwner, T> work) {
+        Shard shard = shardFor(propertyId);
+        PGOwner owner = propertyId == null ? null : shard.properties.get(propertyId);
+        if (owner == null) throw new IllegalArgumentException("Property not found: " + propertyId);
+        return CompletableFuture.supplyAsync(() -> work.apply(owner), shard.writer);
+    }
+
+    public CompletableFuture<Void> addTenant(String propertyId, Tenant tenant) {
+        return submit(propertyId, owner -> {
+            owner.addTenant(tenant);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Void> addRoom(String propertyId, Room room) {
+        return submit(propertyId, owner -> {
+            owner.addRoom(room);
+            return null;
+        });
+    }
+
+    /**
+     * Assigns a room of a property to one of its tenants.
+     * The future fails with a {@link RoomAssignmentException} if the assignment is refused.
+     */
+    public CompletableFuture<Void> assignRoom(String propertyId, String roomId, String tenantId) {
+        return submit(propertyId, owner -> {
+            Tenant tenant = owner.findTenantById(tenantId);
+            try {
+                if (tenant == null) throw new RoomAssignmentException("Tenant not found: " + tenantId);
+                owner.assignRoom(roomId, tenant);
+            } catch (RoomAssignmentException e) {
+                throw new CompletionException(e);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Totals occupancy and payments over every property.
+     */
+    public PortfolioSummary summarize() {
+        PortfolioSummary total = new PortfolioSummary();
+        for (PortfolioSummary part : fanOut(properties -> {
+            PortfolioSummary summary = new PortfolioSummary();
+            for (PGOwner owner : properties) summary.add(owner);
+            return summary;
+        })) {
+            total.add(part);
+        }
+        return total;
+    }
+
+    /**
+     * Gets the occupancy rate over every property's rooms.
+     * @return Occupancy between 0 and 1, or 0 when there are no rooms
+     */
+    public double occupancyRate() {
+        return summarize().occupancyRate();
+    }
+
+    /**
+     * Looks a tenant's email up in every property.
+     * 
+     * @param email Email address of the tenant
+     * @return Matching tenants keyed by property ID; empty if none matched
+     */
+    public SortedMap<String, Tenant> findTenantsByEmail(String email) {
+        SortedMap<String, Tenant> found = new TreeMap<>();
+        for (Map<String, Tenant> part : fanOut(properties -> {
+            Map<String, Tenant> matches = new HashMap<>();
+            for (PGOwner owner : properties) {
+                Tenant tenant = owner.findTenantByEmail(email);
+                if (tenant != null) matches.put(owner.getUserId(), tenant);
+            }
+            return matches;
+        })) {
+            found.putAll(part);
+        }
+        return found;
+    }
+
+    /**
+     * Finds tenants whose name contains a fragment, ignoring case, across every property.
+     * 
+     * @param fragment Text to look for in tenant names
+     * @param limit Maximum number of tenants returned per property
+     * @return Matching tenants in registration order, keyed by property ID
+     */
+    public SortedMap<String, List<Tenant>> searchTenantsByName(String fragment, int limit) {
+        String needle = fragment.toLowerCase(Locale.ROOT);
+        SortedMap<String, List<Tenant>> found = new TreeMap<>();
+        for (Map<String, List<Tenant>> part : fanOut(properties -> {
+            Map<String, List<Tenant>> matches = new HashMap<>();
+            for (PGOwner owner : properties) {
+                List<Tenant> tenants = new ArrayList<>();
+                for (Tenant tenant : owner.tenantsAfter(0)) {
+                    if (tenants.size() >= limit) break;
+                    String name = tenant.getName();
+                    if (name != null && name.toLowerCase(Locale.ROOT).contains(needle)) tenants.add(tenant);
+                }
+                if (!tenants.isEmpty()) matches.put(owner.getUserId(), tenants);
+            }
+            return matches;
+        })) {
+            found.putAll(part);
+        }
+        return found;
+    }
+
+    // Runs a query on every shard's thread in parallel and collects the per-shard results
+    private <T> List<T> fanOut(Function<Collection<PGOwner>, T> query) {
+        for (Shard shard : shards) {
+            if (shard.thread == Thread.currentThread()) {
+                throw new IllegalStateException("Cross-property queries cannot run on a shard thread");
+            }
+        }
+        List<CompletableFuture<T>> parts = new ArrayList<>(shards.length);
+        for (Shard shard : shards) {
+            parts.add(CompletableFuture.supplyAsync(() -> query.apply(shard.properties.values()), shard.writer));
+        }
+        List<T> results = new ArrayList<>(shards.length);
+        for (CompletableFuture<T> part : parts) results.add(part.join());
+        return results;
+    }
+
+    /**
+     * Stops the shard threads once the work already submitted has run.
+     */
+    @Override
+    public void close() {
+        for (Shard shard : shards) shard.writer.shutdown();
+        try {
+            for (Shard shard : shards) shard.writer.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
+
+/**
+ * Occupancy and payment totals over a set of properties.
+ */
+class PortfolioSummary {
+    private int properties;
+    private long tenants;
+    private long totalRooms;
+    private long occupiedRooms;
+    private long totalBeds;
+    private long occupiedBeds;
+    private double rentDue;
+    private long pendingPayments;
+    private double pendingAmount;
+
+    void add(PGOwner owner) {
+        ReportAggregates aggregates = owner.getAggregates();
+        properties++;
+        tenants += owner.getTenantCount();
+        totalRooms += aggregates.totalRooms();
+        occupiedRooms += aggregates.occupiedRooms();
+        totalBeds += aggregates.totalBeds();
+        occupiedBeds += aggregates.occupiedBeds();
+        rentDue += aggregates.rentDue();
+        pendingPayments += aggregates.pendingPayments();
+        pendingAmount += aggregates.pendingAmount();
+    }
+
+    void add(PortfolioSummary other) {
+        properties += other.properties;
+        tenants += other.tenants;
+        totalRooms += other.totalRooms;
+        occupiedRooms += other.occupiedRooms;
+        totalBeds += other.totalBeds;
+        occupiedBeds += other.occupiedBeds;
+        rentDue += other.rentDue;
+        pendingPayments += other.pendingPayments;
+        pendingAmount += other.pendingAmount;
+    }
+
+    public int getProperties() { return properties; }
+    public long getTenants() { return tenants; }
+    public long getTotalRooms() { return totalRooms; }
+    public long getOccupiedRooms() { return occupiedRooms; }
+    public long getTotalBeds() { return totalBeds; }
+    public long getOccupiedBeds() { return occupiedBeds; }
+    public double getRentDue() { return rentDue; }
+    public long getPendingPayments() { return pendingPayments; }
+    public double getPendingAmount() { return pendingAmount; }
+
+    /**
+     * @return Fraction of beds taken, or 0 when there are no rooms
+     */
+    public double occupancyRate() {
+        return totalBeds == 0 ? 0 : (double) occupiedBeds / totalBeds;
+    }
+
+    @Override
+    public String toString() {
+        return properties + " properties, " + tenants + " tenants, " + occupiedRooms + "/" + totalRooms
+               + " rooms occupied, " + occupiedBeds + "/" + totalBeds + " beds taken";
+    }
+}
+
+/**
+ * Process-wide latency recorders and counters for the core operations, exposed in the
+ * Prometheus text format. Instrumented code brackets an operation with {@link #start()}
+ * and {@link LatencyRecorder#recordSince(long)}; recording is a clock read and two atomic
+ * adds, and when metrics are disabled (with {@code -Dpghive.metrics=false} or
+ * {@link #setEnabled}) it is a single volatile read.
+ */
+final class Metrics {
+    /** Start time handed out while metrics are disabled; recorders ignore it. */
+    static final long OFF = Long.MIN_VALUE;
+    static final Metrics GLOBAL = new Metrics();
+
+    private volatile boolean enabled = !"false".equalsIgnoreCase(System.getProperty("pghive.metrics"));
+    private final List<LatencyRecorder> recorders = new ArrayList<>();
+    private final List<MetricCounter> counters = new ArrayList<>();
+
+    final LatencyRecorder login = recorder("login");
+    final LatencyRecorder addTenant = recorder("add_tenant");
+    final LatencyRecorder assignRoom = recorder("assign_room");
+    final LatencyRecorder bulkPayments = recorder("generate_bulk_payments");
+    final LatencyRecorder rentOptimization = recorder("optimize_rents");
+    final LatencyRecorder report = recorder("report");
+
+    final MetricCounter loginFailures = counter("pghive_login_failures_total", "Failed or locked-out login attempts.");
+    final MetricCounter assignmentConflicts = counter("pghive_room_assignment_conflicts_total",
+                                                      "Room assignments refused because the room was occupied.");
+    final MetricCounter paymentsGenerated = counter("pghive_payments_generated_total",
+                                                    "Payment records created by bulk billing.");
+
+    private static ScheduledExecutorService exportScheduler;
+
+    private LatencyRecorder recorder(String operation) {
+        LatencyRecorder recorder = new LatencyRecorder(operation);
+        recorders.add(recorder);
+        return recorder;
+    }
+
+    private MetricCounter counter(String name, String help) {
+        MetricCounter counter = new MetricCounter(this, name, help);
+        counters.add(counter);
+        return counter;
+    }
+
+    public boolean isEnabled() { return enabled; }
+    public void setEnabled(boolean enabled) { this.enabled = enabled; }
+
+    /**
+     * Marks the start of an operation.
+     * @return The current {@link System#nanoTime()}, or {@link #OFF} while metrics are disabled
+     */
+    long start() {
+        return enabled ? System.nanoTime() : OFF;
+    }
+
+    public List<LatencyRecorder> getRecorders() { return Collections.unmodifiableList(recorders); }
+
+    /**
+     * Clears every recorder and counter.
+     */
+    public void reset() {
+        for (LatencyRecorder recorder : recorders) recorder.reset();
+        for (MetricCounter counter : counters) counter.reset();
+    }
+
+    /**
+     * Writes every metric in the Prometheus text exposition format. Latencies are summaries in
+     * seconds with the 0.5, 0.9, 0.99 and 0.999 quantiles.
+     */
+    public void writePrometheus(StringBuilder out) {
+        out.append("# HELP pghive_operation_seconds Latency of core operations.\n")
+           .append("# TYPE pghive_operation_seconds summary\n");
+        double[] quantiles = {0.5, 0.9, 0.99, 0.999};
+        for (LatencyRecorder recorder : recorders) {
+            LatencyRecorder.Snapshot snapshot = recorder.snapshot();
+            String labels = "{operation=\"" + recorder.getOperation() + "\"";
+            for (double quantile : quantiles) {
+                out.append("pghive_operation_seconds").append(labels).append(",quantile=\"").append(quantile)
+                   .append("\"} ");
+                if (snapshot.getCount() == 0) out.append("NaN\n"); // Prometheus convention for an empty summary
+                else out.append(snapshot.percentile(quantile * 100) / 1e9).append('\n');
+            }
+            out.append("pghive_operation_seconds_sum").append(labels).append("} ")
+               .append(snapshot.getTotalNanos() / 1e9).append('\n');
+            out.append("pghive_operation_seconds_count").append(labels).append("} ")
+               .append(snapshot.getCount()).append('\n');
+        }
+        for (MetricCounter counter : counters) {
+            out.append("# HELP ").append(counter.getName()).append(' ').append(counter.getHelp()).append('\n')
+               .append("# TYPE ").append(counter.getName()).append(" counter\n")
+               .append(counter.getName()).append(' ').append(counter.get()).append('\n');
+        }
+    }
+
+    public String toPrometheusText() {
+        StringBuilder out = new StringBuilder(4096);
+        writePrometheus(out);
+        return out.toString();
+    }
+
+    /**
+     * Runs an exporter periodically on a background thread until the returned future is cancelled.
+     * 
+     * @param exporter Where to send the metrics
+     * @param periodSeconds Seconds between exports
+     * @return Handle to cancel the schedule
+     */
+    public ScheduledFuture<?> exportEvery(MetricsExporter exporter, long periodSeconds) {
+        synchronized (Metrics.class) {
+            if (exportScheduler == null) {
+                exportScheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+                    Thread thread = new Thread(task, "pghive-metrics-export");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+        }
+        return exportScheduler.scheduleAtFixedRate(() -> {
+            try {
+                exporter.export(this);
+            } catch (IOException e) {
+                System.err.println("Failed to export metrics: " + e.getMessage());
+            }
+        }, periodSeconds, periodSeconds, TimeUnit.SECONDS);
+    }
+}
+
+/**
+ * Destination for a metrics snapshot, such as a file or a monitoring agent.
+ */
+interface MetricsExporter {
+    void export(Metrics metrics) throws IOException;
+}
+
+/**
+ * Dumps metrics in the Prometheus text format to a file, e.g. for the node exporter's
+ * textfile collector. The file is replaced atomically so readers never see a partial dump.
+ */
+class PrometheusFileExporter implements MetricsExporter {
+    private final Path file;
+
+    public PrometheusFileExporter(Path file) {
+        this.file = file;
+    }
+
+    @Override
+    public void export(Metrics metrics) throws IOException {
+        Path absolute = file.toAbsolutePath();
+        Path temp = absolute.resolveSibling(absolute.getFileName() + ".tmp");
+        Files.write(temp, metrics.toPrometheusText().getBytes(java.nio.charset.StandardCharsets.UTF_8));
+        try {
+            Files.move(temp, absolute, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, absolute, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
+
+/**
+ * Latency histogram in the style of HdrHistogram: exact up to 127ns, then 64 linear
+ * buckets per power of two, so any recorded value is reported within 1.6% of its true
+ * value. Buckets are fixed atomic counters, so recording never allocates or locks and
+ * any number of threads can record at once. Values above about 18 minutes are clamped.
+ */
+class LatencyRecorder {
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final long MAX_TRACKABLE_NANOS = (1L << 40) - 1;
+    private static final int BUCKETS = indexOf(MAX_TRACKABLE_NANOS) + 1;
+
+    private final String operation;
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Long::max, 0);
+
+    LatencyRecorder(String operation) {
+        this.operation = operation;
+    }
+
+    public String getOperation() { return operation; }
+
+    /**
+     * Records the time elapsed since a {@link Metrics#start()}.
+     * @param startNanos Value returned by {@link Metrics#start()}; {@link Metrics#OFF} is ignored
+     */
+    public void recordSince(long startNanos) {
+        if (startNanos != Metrics.OFF) record(System.nanoTime() - startNanos);
+    }
+
+    public void record(long nanos) {
+        long value = Math.max(0, Math.min(nanos, MAX_TRACKABLE_NANOS));
+        counts.incrementAndGet(indexOf(value));
+        totalNanos.add(value);
+        maxNanos.accumulate(value);
+    }
+
+    static int indexOf(long nanos) {
+        if (nanos < 2 * SUB_BUCKETS) return (int) nanos;
+        int shift = 63 - Long.numberOfLeadingZeros(nanos) - SUB_BUCKET_BITS; // nanos >>> shift is in [64, 128)
+        return 2 * SUB_BUCKETS + (shift - 1) * SUB_BUCKETS + (int) (nanos >>> shift) - SUB_BUCKETS;
+    }
+
+    // Largest value that falls into a bucket
+    static long highestValueAt(int index) {
+        if (index < 2 * SUB_BUCKETS) return index;
+        int k = index - 2 * SUB_BUCKETS;
+        int shift = k / SUB_BUCKETS + 1;
+        long subBucket = k % SUB_BUCKETS + SUB_BUCKETS;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    /**
+     * Copies the counts recorded so far. Recording may continue while the copy is taken.
+     */
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts.get(i);
+            count += copy[i];
+        }
+        return new Snapshot(copy, count, totalNanos.sum(), maxNanos.get());
+    }
+
+    void reset() {
+        for (int i = 0; i < BUCKETS; i++) counts.set(i, 0);
+        totalNanos.reset();
+        maxNanos.reset();
+    }
+
+    /**
+     * Point-in-time copy of a recorder's counts.
+     */
+    static final class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long totalNanos;
+        private final long maxNanos;
+
+        Snapshot(long[] counts, long count, long totalNanos, long maxNanos) {
+            this.counts = counts;
+            this.count = count;
+            this.totalNanos = totalNanos;
+            this.maxNanos = maxNanos;
+        }
+
+        public long getCount() { return count; }
+        public long getTotalNanos() { return totalNanos; }
+        public long getMaxNanos() { return maxNanos; }
+        public double getMeanNanos() { return count == 0 ? 0 : (double) totalNanos / count; }
+
+        /**
+         * Gets the latency at or below which the given share of operations completed.
+         * @param percent Percentile between 0 and 100
+         * @return Latency in nanoseconds, or 0 when nothing was recorded
+         */
+        public long percentile(double percent) {
+            if (count == 0) return 0;
+            long rank = Math.max(1, (long) Math.ceil(percent / 100 * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) return Math.min(highestValueAt(i), maxNanos);
+            }
+            return maxNanos;
+        }
+    }
+}
+
+/**
+ * Monotonic counter that only counts while its {@link Metrics} are enabled.
+ */
+class MetricCounter {
+    private final Metrics metrics;
+    private final String name;
+    private final String help;
+    private final LongAdder value = new LongAdder();
+
+    MetricCounter(Metrics metrics, String name, String help) {
+        this.metrics = metrics;
+        this.name = name;
+        this.help = help;
+    }
+
+    public void increment() {
+        if (metrics.isEnabled()) value.increment();
+    }
+
+    public void add(long amount) {
+        if (metrics.isEnabled()) value.add(amount);
+    }
+
+    public String getName() { return name; }
+    public String getHelp() { return help; }
+    public long get() { return value.sum(); }
+    void reset() { value.reset(); }
+}
+
+/**
+ * Main application class for the PG (Paying Guest) Management System.
+ * Handles user authentication and provides the main menu interface.
+ */
+public class PGHive {
+    private static Scanner scanner = new Scanner(System.in);
+    private static PGOwner owner = new PGOwner("O001", "PG Owner", "owner@pg.com", "admin123");
+    private static final PropertyRegistry properties = new PropertyRegistry();
+    private static final String DATA_DIR = "pghive-data";
+    private static final String LOG_FILE = "pghive-logs/pghive.log";
+
+    /**
+     * Entry point of the application.
+     * Initializes sample data and displays the main menu, or serves the HTTP API
+     * when started with {@code --serve[=port]}. With {@code --metrics-file=path} the
+     * metrics are also dumped to that file every 15 seconds and at exit.
+     * 
+     * @param args Command line arguments
+     */
+    public static void main(String[] args) {
+        startEventLog();
+        if (!loadPersistentState()) {
+            initializeSampleData();
+        }
+        openDocumentStore();
+        loadPricingRules();
+        properties.addProperty(owner);
+        for (String arg : args) {
+            if (arg.startsWith("--metrics-file=")) {
+                dumpMetricsTo(Paths.get(arg.substring("--metrics-file=".length())));
+            }
+        }
+        for (String arg : args) {
+            if (arg.equals("--serve") || arg.startsWith("--serve=")) {
+                serve(arg.length() > "--serve=".length() ? Integer.parseInt(arg.substring("--serve=".length())) : 8080);
+                return;
+            }
+        }
+        showMainMenu();
+    }
+
+    /**
+     * Keeps the content of uploaded documents under the data directory.
+     */
+    private static void openDocumentStore() {
+        try {
+            owner.attachDocumentStore(DocumentStore.open(Paths.get(DATA_DIR, "documents")));
+        } catch (IOException e) {
+            System.out.println("Document storage unavailable, documents are recorded by name only: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Prices rents with the rules in {@code pricing.rules} under the data directory, written
+     * with the default rules on first start, and picks up edits to it every 2 seconds.
+     */
+    private static void loadPricingRules() {
+        PricingRuleFile rules = new PricingRuleFile(Paths.get(DATA_DIR, "pricing.rules"));
+        try {
+            rules.createIfMissing();
+            rules.reload();
+        } catch (IOException | IllegalArgumentException e) {
+            System.out.println("Pricing rules not loaded, using the defaults: " + e.getMessage());
+        }
+        rules.watchEvery(2);
+    }
+
+    /**
+     * Sends logged events to rolling files under {@code pghive-logs} (10 MB each, five kept),
+     * at the level given by {@code -Dpghive.log.level} (default INFO).
+     */
+    private static void startEventLog() {
+        try {
+            EventLog.GLOBAL.start(Paths.get(LOG_FILE), EventLog.parseLevel(System.getProperty("pghive.log.level", "INFO")),
+                                  10L * 1024 * 1024, 5);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    EventLog.GLOBAL.close();
+                } catch (IOException e) {
+                    System.err.println("Failed to close the event log: " + e.getMessage());
+                }
+            }));
+        } catch (IOException | IllegalArgumentException e) {
+            System.out.println("Event log unavailable: " + e.getMessage());
+        }
+    }
+
+    private static void dumpMetricsTo(Path file) {
+        MetricsExporter exporter = new PrometheusFileExporter(file);
+        Metrics.GLOBAL.exportEvery(exporter, 15);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                exporter.export(Metrics.GLOBAL);
+            } catch (IOException e) {
+                System.err.println("Failed to export metrics: " + e.getMessage());
+            }
+        }));
+    }
+
+    /**
+     * Serves the HTTP API until the process is stopped.
+     * 
+     * @param port TCP port to listen on
+     */
+    private static void serve(int port) {
+        try {
+            PGHiveServer server = PGHiveServer.start(owner, port);
+            System.out.println("PGHive API listening on http://localhost:" + server.getPort() + "/api/");
+            Thread.currentThread().join();
+        } catch (IOException e) {
+            System.out.println("Could not start the HTTP API: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Recovers the owner's state from the data directory and keeps journaling to it.
+     * Falls back to in-memory operation if the directory cannot be used.
+     * 
+     * @return true if previously saved state was restored
+     */
+    private static boolean loadPersistentState() {
+        try {
+            PersistenceEngine engine = PersistenceEngine.open(Paths.get(DATA_DIR));
+            boolean restored = engine.recover(owner);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    engine.close();
+                } catch (IOException e) {
+                    System.err.println("Failed to save state: " + e.getMessage());
+                }
+            }));
+            return restored;
+        } catch (IOException e) {
+            System.out.println("Persistence unavailable, running in memory: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Helper method to safely assign a room to a tenant.
+     * Wraps the room assignment process in exception handling.
+     * 
+     * @param owner The PG owner making the assignment
+     * @param roomId ID of the room to be assigned
+     * @param tenant Tenant to whom the room will be assigned
+     */
+    private static void assignRoomWrapper(PGOwner owner, String roomId, Tenant tenant) {
+        try {
+            owner.assignRoom(roomId, tenant);
+        } catch (RoomAssignmentException e) {
+            System.out.println("Error assigning room: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Displays and handles the main menu of the application.
+     * Provides options for owner login, tenant login, and exit.
+     */
+    private static void showMainMenu() {
+        while (true) {
+            System.out.println("\n=== PG MANAGEMENT SYSTEM ===");
+            System.out.println("1. Owner Login");
+            System.out.println("2. Tenant Login");
+            System.out.println("3. Portfolio Overview");
+            System.out.println("4. Exit");
+            System.out.print("Select option: ");
+
+            int choice = scanner.nextInt();
+            scanner.nextLine(); // consume newline
+
+            switch (choice) {
+                case 1:
+                    ownerLogin();
+                    break;
+                case 2:
+                    tenantLogin();
+                    break;
+                case 3:
+                    showPortfolio();
+                    break;
+                case 4:
+                    System.out.println("Exiting system... Goodbye!");
+                    System.exit(0);
+                default:
+                    System.out.println("Invalid choice!");
+            }
+        }
+    }
+
+    /**
+     * Handles the owner login process.
+     * Prompts for email and password, and shows the owner menu upon successful login.
      */
     private static void ownerLogin() {
         System.out.println("\n--- OWNER LOGIN ---");
@@ -1038,66 +8257,2413 @@ public class PGHive {
         System.out.print("Password: ");
         String password = scanner.nextLine();
         
-        if (owner.login(email, password)) {
-            owner.showMenu();
+        // Each property has its own owner account
+        PGOwner account = owner;
+        for (String propertyId : properties.getPropertyIds()) {
+            PGOwner candidate = properties.getProperty(propertyId);
+            if (candidate.getEmail().equals(email)) {
+                account = candidate;
+                break;
+            }
+        }
+        if (account.login(email, password)) {
+            account.showMenu();
+        }
+    }
+
+    /**
+     * Prints occupancy and payments per property and across the whole portfolio.
+     */
+    private static void showPortfolio() {
+        System.out.println("\n--- PORTFOLIO OVERVIEW ---");
+        System.out.println("Property | Tenants | Occupied Rooms | Occupancy | Pending Payments");
+        for (String propertyId : properties.getPropertyIds()) {
+            PortfolioSummary summary = new PortfolioSummary();
+            summary.add(properties.getProperty(propertyId));
+            printSummaryRow(propertyId, summary);
+        }
+        printSummaryRow("Total", properties.summarize());
+    }
+
+    private static void printSummaryRow(String label, PortfolioSummary summary) {
+        System.out.printf("%-8s | %-7d | %-14s | %8.1f%% | %d (₹%.0f)%n", label, summary.getTenants(),
+            summary.getOccupiedRooms() + "/" + summary.getTotalRooms(), summary.occupancyRate() * 100,
+            summary.getPendingPayments(), summary.getPendingAmount());
+    }
+
+    /**
+     * Handles the tenant login process.
+     * Searches for the tenant by email and validates their credentials.
+     * Shows the tenant menu upon successful login.
+     */
+    private static void tenantLogin() {
+        System.out.println("\n--- TENANT LOGIN ---");
+        System.out.print("Email: ");
+        String email = scanner.nextLine();
+        System.out.print("Password: ");
+        String password = scanner.nextLine();
+    
+        // Searched in every property's email index; the first property by ID wins
+        SortedMap<String, Tenant> matches = properties.findTenantsByEmail(email);
+        Tenant tenant = matches.isEmpty() ? null : matches.get(matches.firstKey());
+        if (tenant == null) {
+            System.out.println("Tenant not found! Please check your email or contact the owner.");
+            return;
+        }
+        if (tenant.login(email, password)) {
+            tenant.showMenu();
+        } else {
+            System.out.println("Invalid password!");
+        }
+    }
+
+    /**
+     * Initializes the system with sample data for testing purposes.
+     * Creates sample rooms and tenants with default values.
+     */
+    private static void initializeSampleData() {
+        // Add sample rooms
+        owner.addRoom(new Room("R101", 6000, 180, 7, "Single"));
+        owner.addRoom(new Room("R102", 4500, 220, 6, "Double"));
+        owner.addRoom(new Room("R103", 3500, 250, 5, "Triple"));
+        owner.addRoom(new Room("R104", 3000, 300, 4, "Four"));
+        
+        // Add sample tenants
+        Tenant tenant1 = new Tenant("T001", "John Doe", "john@example.com", "password123");
+        tenant1.setContact("9876543210");
+        tenant1.setMoveInDay(EpochDays.today());
+        owner.addTenant(tenant1);
+        try {
+            owner.assignRoom("R101", tenant1);
+        } catch (RoomAssignmentException e) {
+            System.out.println("Error assigning room: " + e.getMessage());
+        }
+
+        Tenant tenant2 = new Tenant("T002", "Jane Smith", "jane@example.com", "password456");
+        tenant2.setContact("8765432109");
+        tenant2.setMoveInDay(EpochDays.today());
+        owner.addTenant(tenant2);
+    }
+}
+/**
+ * Embedded HTTP/JSON API exposing the owner and tenant operations of the console menus,
+ * so any number of users can work at the same time.
+ * Each request runs on its own virtual thread when the JDK provides them, otherwise on a
+ * cached thread pool. Clients log in once and send the returned token as
+ * {@code Authorization: Bearer <token>}.
+ */
+class PGHiveServer implements Closeable {
+    private final PGOwner owner;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final AuthService auth;
+
+    private static final int MAX_EXPORT_PAGE = 10_000;
+
+    private PGHiveServer(PGOwner owner, HttpServer server, ExecutorService executor) {
+        this.owner = owner;
+        this.server = server;
+        this.executor = executor;
+        this.auth = new AuthService(owner);
+    }
+
+    /**
+     * Starts serving the API under {@code /api/}.
+     * 
+     * @param owner The owner whose rooms and tenants are served
+     * @param port TCP port to listen on, or 0 for any free port
+     * @return The running server
+     * @throws IOException if the port cannot be bound
+     */
+    public static PGHiveServer start(PGOwner owner, int port) throws IOException {
+        HttpServer http = HttpServer.create(new InetSocketAddress(port), 1024);
+        ExecutorService executor = requestExecutor();
+        PGHiveServer api = new PGHiveServer(owner, http, executor);
+        http.createContext("/api/", api::handle);
+        http.createContext("/metrics", PGHiveServer::metrics);
+        http.setExecutor(executor);
+        http.start();
+        return api;
+    }
+
+    public int getPort() { return server.getAddress().getPort(); }
+
+    /**
+     * Stops accepting requests and waits up to a second for running ones.
+     */
+    @Override
+    public void close() {
+        server.stop(1);
+        executor.shutdown();
+    }
+
+    // Thread-per-request on virtual threads (JDK 21+), falling back to pooled platform threads
+    private static ExecutorService requestExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(task -> {
+                Thread thread = new Thread(task, "pghive-http");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * Error reported to the client as an HTTP status and a JSON message.
+     */
+    private static class ApiException extends Exception {
+        private static final long serialVersionUID = 1L;
+        final int status;
+
+        ApiException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    // Prometheus scrape endpoint; exposes only counts and latencies, so it needs no session
+    private static void metrics(HttpExchange exchange) throws IOException {
+        byte[] bytes = Metrics.GLOBAL.toPrometheusText().getBytes(java.nio.charset.StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        int status = 200;
+        String body;
+        try {
+            body = route(exchange, exchange.getRequestMethod(),
+                         pathSegments(exchange.getRequestURI().getRawPath().substring("/api/".length())));
+        } catch (ApiException e) {
+            status = e.status;
+            body = Json.error(e.getMessage());
+        } catch (RoomAssignmentException e) {
+            status = 409;
+            body = Json.error(e.getMessage());
+        } catch (IllegalArgumentException e) {
+            status = 400;
+            body = Json.error(e.getMessage());
+        } catch (RuntimeException e) {
+            status = 500;
+            body = Json.error("Internal error: " + e);
+        }
+        if (body == null) return; // the handler streamed its own response
+        byte[] bytes = body.getBytes(java.nio.charset.StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    // Splits before decoding, so an encoded '/' stays inside its segment (e.g. a document name)
+    private static String[] pathSegments(String rawPath) {
+        String[] segments = rawPath.split("/");
+        for (int i = 0; i < segments.length; i++) {
+            String segment = segments[i];
+            if (segment.indexOf('%') < 0) continue;
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(segment.length());
+            for (int j = 0; j < segment.length(); j++) {
+                char c = segment.charAt(j);
+                int high = j + 2 < segment.length() ? Character.digit(segment.charAt(j + 1), 16) : -1;
+                int low = high >= 0 ? Character.digit(segment.charAt(j + 2), 16) : -1;
+                if (c == '%' && low >= 0) {
+                    bytes.write(high << 4 | low);
+                    j += 2;
+                } else {
+                    bytes.write(c); // raw paths are ASCII
+                }
+            }
+            segments[i] = new String(bytes.toByteArray(), java.nio.charset.StandardCharsets.UTF_8);
+        }
+        return segments;
+    }
+
+    private String route(HttpExchange exchange, String method, String[] path)
+            throws IOException, ApiException, RoomAssignmentException {
+        String resource = path[0];
+        String id = path.length > 1 ? path[1] : null;
+        String action = path.length > 2 ? path[2] : null;
+        String item = path.length > 3 ? path[3] : null;
+        if (path.length > 4) throw new ApiException(404, "Not found");
+        if (resource.equals("login") && method.equals("POST")) {
+            return login(Json.parseObject(readBody(exchange)));
+        }
+
+        User user = authenticate(exchange);
+        switch (resource) {
+            case "logout":
+                requireMethod(method, "POST");
+                auth.logout(bearerToken(exchange));
+                return Json.ok();
+            case "me":
+                return me(exchange, method, user, id, action);
+            case "tenants":
+                requireOwner(user);
+                return tenants(exchange, method, id, action, item);
+            case "rooms":
+                requireOwner(user);
+                return rooms(exchange, method, id, action);
+            case "report":
+                requireOwner(user);
+                requireMethod(method, "GET");
+                return report();
+            case "forecast":
+                requireOwner(user);
+                requireMethod(method, "GET");
+                return forecast(exchange);
+            case "export":
+                requireOwner(user);
+                requireMethod(method, "GET");
+                export(exchange, id);
+                return null;
+            case "payments":
+                requireOwner(user);
+                if ("due".equals(id) || "overdue".equals(id)) {
+                    requireMethod(method, "GET");
+                    int today = EpochDays.today();
+                    String days = queryParameter(exchange, "days");
+                    PaymentScheduler scheduler = owner.getScheduler();
+                    try {
+                        return paymentListJson(id.equals("due") ? scheduler.dueOn(today)
+                            : scheduler.overdue(today, days == null ? 1 : Integer.parseInt(days)));
+                    } catch (NumberFormatException e) {
+                        throw new ApiException(400, "days must be an integer");
+                    }
+                }
+                if (!"bulk".equals(id)) throw new ApiException(404, "Not found");
+                requireMethod(method, "POST");
+                Map<String, String> request = Json.parseObject(readBody(exchange));
+                String start = request.get("startDate");
+                int startDay = start != null ? parseDay(start) : EpochDays.today();
+                int generated = owner.generateBulkPayments(intField(request, "months"), startDay);
+                return "{\"generated\":" + generated + "}";
+            default:
+                throw new ApiException(404, "Not found");
+        }
+    }
+
+    private String login(Map<String, String> request) throws ApiException {
+        String email = request.get("email");
+        String password = request.get("password");
+        if (email == null || password == null) throw new ApiException(400, "email and password are required");
+        String token = auth.login(email, password);
+        if (token == null) throw new ApiException(401, "Invalid credentials or account locked");
+        User user = auth.validate(token);
+        if (user == null) throw new ApiException(401, "Session ended");
+        return "{\"token\":" + Json.quote(token) + ",\"role\":"
+               + Json.quote(user == owner ? "owner" : "tenant") + ",\"userId\":" + Json.quote(user.userId) + "}";
+    }
+
+    private String me(HttpExchange exchange, String method, User user, String sub, String item)
+            throws IOException, ApiException {
+        if (sub == null) {
+            requireMethod(method, "GET");
+            return user == owner ? "{\"userId\":" + Json.quote(owner.getUserId()) + ",\"role\":\"owner\"}"
+                                 : tenantJson((Tenant) user);
+        }
+        switch (sub) {
+            case "password": {
+                requireMethod(method, "POST");
+                Map<String, String> request = Json.parseObject(readBody(exchange));
+                if (!user.changePassword(request.get("current"), request.get("new"))) {
+                    throw new ApiException(403, "Current password incorrect");
+                }
+                return Json.ok();
+            }
+            case "payments":
+                requireMethod(method, "GET");
+                return paymentsJson(requireTenant(user));
+            case "documents": {
+                Tenant tenant = requireTenant(user);
+                if (item != null) {
+                    if (method.equals("PUT")) return uploadDocument(exchange, tenant, item);
+                    requireMethod(method, "GET");
+                    sendDocument(exchange, tenant, item);
+                    return null;
+                }
+                if (method.equals("POST")) {
+                    String document = Json.parseObject(readBody(exchange)).get("name");
+                    if (document == null || document.isEmpty()) throw new ApiException(400, "name is required");
+                    tenant.uploadDocument(document);
+                    return Json.ok();
+                }
+                requireMethod(method, "GET");
+                StringBuilder json = new StringBuilder("[");
+                for (String document : tenant.getDocuments()) {
+                    if (json.length() > 1) json.append(',');
+                    json.append(Json.quote(document));
+                }
+                return json.append(']').toString();
+            }
+            default:
+                throw new ApiException(404, "Not found");
+        }
+    }
+
+    private String tenants(HttpExchange exchange, String method, String id, String action, String item)
+            throws IOException, ApiException {
+        if (id == null) {
+            if (method.equals("GET")) {
+                StringBuilder json = new StringBuilder("[");
+                for (Tenant tenant : owner.getTenants()) {
+                    if (json.length() > 1) json.append(',');
+                    json.append(tenantJson(tenant));
+                }
+                return json.append(']').toString();
+            }
+            requireMethod(method, "POST");
+            Map<String, String> request = Json.parseObject(readBody(exchange));
+            Tenant tenant = Tenant.ofType(request.getOrDefault("type", "Standard"), requireField(request, "id"),
+                                          requireField(request, "name"), requireField(request, "email"),
+                                          requireField(request, "password"));
+            tenant.setContact(request.get("contact"));
+            tenant.setMoveInDay(dateField(request, "moveIn"));
+            tenant.setMoveOutDay(dateField(request, "moveOut"));
+            EpochDays.checkStay(tenant.getMoveInDay(), tenant.getMoveOutDay());
+            owner.addTenant(tenant);
+            return tenantJson(tenant);
+        }
+
+        Tenant tenant = owner.findTenantById(id);
+        if (tenant == null) throw new ApiException(404, "Tenant not found: " + id);
+        if ("payments".equals(action)) {
+            requireMethod(method, "GET");
+            return paymentsJson(tenant);
+        }
+        if ("documents".equals(action)) {
+            requireMethod(method, "GET");
+            if (item != null) {
+                sendDocument(exchange, tenant, item);
+                return null;
+            }
+            StringBuilder json = new StringBuilder("[");
+            for (StoredDocument document : requireDocumentStore().list(tenant.getUserId())) {
+                if (json.length() > 1) json.append(',');
+                json.append(documentJson(document));
+            }
+            return json.append(']').toString();
+        }
+        if (action != null) throw new ApiException(404, "Not found");
+        switch (method) {
+            case "GET":
+                return tenantJson(tenant);
+            case "PUT": {
+                Map<String, String> request = Json.parseObject(readBody(exchange));
+                int moveIn = request.containsKey("moveIn") ? dateField(request, "moveIn") : tenant.getMoveInDay();
+                int moveOut = request.containsKey("moveOut") ? dateField(request, "moveOut") : tenant.getMoveOutDay();
+                EpochDays.checkStay(moveIn, moveOut);
+                if (!owner.editTenant(id, request.getOrDefault("name", tenant.getName()),
+                                      request.getOrDefault("contact", tenant.getContact()), moveIn, moveOut)) {
+                    throw new ApiException(404, "Tenant not found: " + id);
+                }
+                return tenantJson(tenant);
+            }
+            case "DELETE":
+                if (!owner.deleteTenant(id)) throw new ApiException(404, "Tenant not found: " + id);
+                return Json.ok();
+            default:
+                throw new ApiException(405, "Method not allowed");
+        }
+    }
+
+    private String rooms(HttpExchange exchange, String method, String id, String action)
+            throws IOException, ApiException, RoomAssignmentException {
+        if (id == null) {
+            if (method.equals("GET")) {
+                StringBuilder json = new StringBuilder("[");
+                for (Room room : owner.getRooms()) {
+                    if (json.length() > 1) json.append(',');
+                    json.append(roomJson(room));
+                }
+                return json.append(']').toString();
+            }
+            requireMethod(method, "POST");
+            Map<String, String> request = Json.parseObject(readBody(exchange));
+            Room room = new Room(requireField(request, "roomId"), doubleField(request, "rent"),
+                                 doubleField(request, "sizeSqft"), intField(request, "amenityScore"),
+                                 request.getOrDefault("sharingType", "Single"));
+            owner.addRoom(room);
+            return roomJson(room);
+        }
+        if (id.equals("auto-assign") && action == null) {
+            requireMethod(method, "POST");
+            Map<String, String> request = Json.parseObject(readBody(exchange));
+            RoomCriteria criteria = new RoomCriteria();
+            if (request.containsKey("sharingType")) criteria.sharingType(request.get("sharingType"));
+            criteria.rentBetween(request.containsKey("minRent") ? doubleField(request, "minRent") : 0,
+                                 request.containsKey("maxRent") ? doubleField(request, "maxRent") : Double.MAX_VALUE);
+            if (request.containsKey("minSizeSqft")) criteria.minSizeSqft(doubleField(request, "minSizeSqft"));
+            if (request.containsKey("minAmenityScore")) criteria.minAmenityScore(intField(request, "minAmenityScore"));
+            return roomJson(owner.assignBestVacantRoom(tenantField(request), criteria));
+        }
+        if ("reservations".equals(action)) return reservations(exchange, method, id);
+        if (!"assign".equals(action)) throw new ApiException(404, "Not found");
+        requireMethod(method, "POST");
+        owner.assignRoom(id, tenantField(Json.parseObject(readBody(exchange))));
+        return roomJson(owner.getRoom(id));
+    }
+
+    private String reservations(HttpExchange exchange, String method, String roomId)
+            throws IOException, ApiException, RoomAssignmentException {
+        Room room = owner.getRoom(roomId);
+        if (room == null) throw new ApiException(404, "Room not found: " + roomId);
+        if (method.equals("GET")) {
+            StringBuilder json = new StringBuilder("[");
+            for (Reservation reservation : room.getCalendar().getReservations()) {
+                if (json.length() > 1) json.append(',');
+                json.append(reservationJson(reservation));
+            }
+            return json.append(']').toString();
+        }
+        if (method.equals("DELETE")) {
+            String tenantId = queryParameter(exchange, "tenantId");
+            String from = queryParameter(exchange, "from");
+            if (tenantId == null || from == null) throw new ApiException(400, "tenantId and from are required");
+            if (!owner.cancelReservation(roomId, tenantId, parseDay(from))) {
+                throw new ApiException(404, "Reservation not found");
+            }
+            return Json.ok();
+        }
+        requireMethod(method, "POST");
+        Map<String, String> request = Json.parseObject(readBody(exchange));
+        Tenant tenant = tenantField(request);
+        Reservation reservation = request.containsKey("from")
+            ? owner.reserveRoom(roomId, tenant, dateField(request, "from"), dateField(request, "to"))
+            : owner.reserveRoom(roomId, tenant);
+        return reservationJson(reservation);
+    }
+
+    private static String reservationJson(Reservation reservation) {
+        return "{\"roomId\":" + Json.quote(reservation.getRoomId()) + ",\"tenantId\":" + Json.quote(reservation.getTenantId())
+               + ",\"bed\":" + (reservation.getBed() + 1) + ",\"from\":" + Json.quote(formatDay(reservation.getFromDay()))
+               + ",\"to\":" + Json.quote(formatDay(reservation.getToDay())) + "}";
+    }
+
+    /**
+     * Streams an export as CSV or JSON Lines. With a {@code limit} the page is buffered
+     * (at most {@value #MAX_EXPORT_PAGE} records) so the next cursor can be returned in the
+     * X-Next-Cursor header; without one the whole export is streamed in chunks.
+     */
+    private void export(HttpExchange exchange, String kind) throws IOException, ApiException {
+        if (kind == null) throw new ApiException(404, "Not found");
+        String format = queryParameter(exchange, "format");
+        boolean jsonLines = "jsonl".equals(format);
+        if (format != null && !jsonLines && !format.equals("csv")) {
+            throw new ApiException(400, "format must be csv or jsonl");
+        }
+        long cursor;
+        int limit;
+        try {
+            String cursorParameter = queryParameter(exchange, "cursor");
+            String limitParameter = queryParameter(exchange, "limit");
+            cursor = cursorParameter == null ? 0 : Long.parseLong(cursorParameter);
+            limit = limitParameter == null ? 0 : Math.min(Integer.parseInt(limitParameter), MAX_EXPORT_PAGE);
+        } catch (NumberFormatException e) {
+            throw new ApiException(400, "cursor and limit must be integers");
+        }
+        if (cursor < 0 || limit < 0) throw new ApiException(400, "cursor and limit cannot be negative");
+        ReportExporter.columnsOf(kind); // rejects unknown kinds before the headers go out
+        ReportExporter exporter = new ReportExporter(owner);
+        exchange.getResponseHeaders().set("Content-Type",
+            (jsonLines ? "application/x-ndjson" : "text/csv") + "; charset=utf-8");
+        if (limit == 0) {
+            exchange.sendResponseHeaders(200, 0); // chunked
+            try (OutputStream out = exchange.getResponseBody()) {
+                exporter.export(kind, out, jsonLines, cursor, Integer.MAX_VALUE);
+            }
+            return;
+        }
+        ByteArrayOutputStream page = new ByteArrayOutputStream();
+        long next = exporter.export(kind, page, jsonLines, cursor, limit);
+        if (next != ReportExporter.END) exchange.getResponseHeaders().set("X-Next-Cursor", Long.toString(next));
+        exchange.sendResponseHeaders(200, page.size());
+        try (OutputStream out = exchange.getResponseBody()) {
+            page.writeTo(out);
+        }
+    }
+
+    private String forecast(HttpExchange exchange) throws ApiException {
+        String from = queryParameter(exchange, "from");
+        String to = queryParameter(exchange, "to");
+        int fromDay = from != null ? parseDay(from) : EpochDays.today();
+        int toDay = to != null ? parseDay(to) : fromDay + PGOwner.FORECAST_DAYS;
+        if (toDay <= fromDay) throw new ApiException(400, "to must be after from");
+        OccupancyForecast forecast = owner.getForecast();
+        return "{\"from\":" + Json.quote(EpochDays.format(fromDay)) + ",\"to\":" + Json.quote(EpochDays.format(toDay))
+               + ",\"beds\":" + forecast.getBedCount()
+               + ",\"occupiedBeds\":" + forecast.occupiedBeds(fromDay)
+               + ",\"occupancyRate\":" + forecast.occupancyRate(fromDay, toDay)
+               + ",\"expectedRevenue\":" + forecast.expectedRevenue(fromDay, toDay) + "}";
+    }
+
+    private Tenant tenantField(Map<String, String> request) throws ApiException {
+        String tenantId = requireField(request, "tenantId");
+        Tenant tenant = owner.findTenantById(tenantId);
+        if (tenant == null) throw new ApiException(404, "Tenant not found: " + tenantId);
+        return tenant;
+    }
+
+    private String report() {
+        long started = Metrics.GLOBAL.start();
+        ReportAggregates aggregates = owner.getAggregates();
+        StringBuilder json = new StringBuilder();
+        json.append("{\"tenants\":").append(owner.getTenantCount())
+            .append(",\"rooms\":").append(aggregates.totalRooms())
+            .append(",\"occupiedRooms\":").append(aggregates.occupiedRooms())
+            .append(",\"beds\":").append(aggregates.totalBeds())
+            .append(",\"occupiedBeds\":").append(aggregates.occupiedBeds())
+            .append(",\"occupancyRate\":").append(aggregates.occupancyRate())
+            .append(",\"occupancyBySharingType\":{");
+        for (int i = 0; i < Room.SHARING_TYPES.length; i++) {
+            if (i > 0) json.append(',');
+            json.append(Json.quote(Room.SHARING_TYPES[i])).append(":{\"occupied\":").append(aggregates.occupiedOfType(i))
+                .append(",\"total\":").append(aggregates.roomsOfType(i))
+                .append(",\"occupiedBeds\":").append(aggregates.occupiedBedsOfType(i))
+                .append(",\"beds\":").append(aggregates.bedsOfType(i)).append('}');
+        }
+        json.append("},\"monthlyRentDue\":").append(aggregates.rentDue())
+            .append(",\"pendingPayments\":").append(aggregates.pendingPayments())
+            .append(",\"pendingAmount\":").append(aggregates.pendingAmount()).append('}');
+        Metrics.GLOBAL.report.recordSince(started);
+        return json.toString();
+    }
+
+    private static String tenantJson(Tenant tenant) {
+        Room room = tenant.getRoom();
+        return "{\"id\":" + Json.quote(tenant.getUserId()) + ",\"name\":" + Json.quote(tenant.getName())
+               + ",\"email\":" + Json.quote(tenant.getEmail()) + ",\"contact\":" + Json.quote(tenant.getContact())
+               + ",\"type\":" + Json.quote(tenant.getTenantType())
+               + ",\"room\":" + Json.quote(room != null ? room.getRoomId() : null)
+               + ",\"moveIn\":" + Json.quote(formatDay(tenant.getMoveInDay()))
+               + ",\"moveOut\":" + Json.quote(formatDay(tenant.getMoveOutDay())) + "}";
+    }
+
+    private static String roomJson(Room room) {
+        StringBuilder tenants = new StringBuilder("[");
+        Tenant first = null;
+        for (int bed = 0; bed < room.getBedCount(); bed++) {
+            Tenant tenant = room.getTenant(bed);
+            if (tenant == null) continue;
+            if (first == null) first = tenant;
+            else tenants.append(',');
+            tenants.append("{\"bed\":").append(bed).append(",\"tenantId\":").append(Json.quote(tenant.getUserId())).append('}');
+        }
+        tenants.append(']');
+        return "{\"roomId\":" + Json.quote(room.getRoomId()) + ",\"rent\":" + room.getRent()
+               + ",\"sizeSqft\":" + room.getSizeSqft() + ",\"amenityScore\":" + room.getAmenityScore()
+               + ",\"sharingType\":" + Json.quote(room.getSharingType())
+               + ",\"beds\":" + room.getBedCount()
+               + ",\"tenant\":" + Json.quote(first != null ? first.getUserId() : null)
+               + ",\"tenants\":" + tenants + "}";
+    }
+
+    private static String paymentsJson(Tenant tenant) {
+        StringBuilder json = new StringBuilder("[");
+        PaymentLedger ledger = tenant.ledger;
+        if (ledger != null) {
+            synchronized (ledger) {
+                int count = ledger.rowCount(tenant);
+                for (int i = 0; i < count; i++) {
+                    int row = ledger.rowAt(tenant, i);
+                    if (i > 0) json.append(',');
+                    json.append("{\"paymentId\":").append(Json.quote(ledger.paymentIdAt(row)))
+                        .append(",\"amount\":").append(ledger.amountAt(row))
+                        .append(",\"dueDate\":").append(Json.quote(formatDay(ledger.dueDayAt(row))))
+                        .append(",\"paid\":").append(ledger.isPaid(row)).append('}');
+                }
+            }
+        }
+        return json.append(']').toString();
+    }
+
+    private static String paymentListJson(List<Payment> payments) {
+        StringBuilder json = new StringBuilder("[");
+        for (Payment payment : payments) {
+            if (json.length() > 1) json.append(',');
+            Tenant tenant = payment.getTenant();
+            json.append("{\"tenantId\":").append(Json.quote(tenant != null ? tenant.getUserId() : null))
+                .append(",\"paymentId\":").append(Json.quote(payment.getPaymentId()))
+                .append(",\"amount\":").append(payment.getAmount())
+                .append(",\"dueDate\":").append(Json.quote(formatDay(payment.getDueDay())))
+                .append(",\"paid\":").append(payment.isPaid()).append('}');
+        }
+        return json.append(']').toString();
+    }
+
+    private static String queryParameter(HttpExchange exchange, String name) {
+        String query = exchange.getRequestURI().getQuery();
+        if (query == null) return null;
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0 && pair.substring(0, eq).equals(name)) return pair.substring(eq + 1);
+        }
+        return null;
+    }
+
+    private User authenticate(HttpExchange exchange) throws ApiException {
+        User user = auth.validate(bearerToken(exchange));
+        if (user == null) throw new ApiException(401, "Login required");
+        return user;
+    }
+
+    private static String bearerToken(HttpExchange exchange) {
+        String header = exchange.getRequestHeaders().getFirst("Authorization");
+        return header != null && header.startsWith("Bearer ") ? header.substring(7) : null;
+    }
+
+    private void requireOwner(User user) throws ApiException {
+        if (user != owner) throw new ApiException(403, "Owner access required");
+    }
+
+    private DocumentStore requireDocumentStore() throws ApiException {
+        DocumentStore store = owner.getDocumentStore();
+        if (store == null) throw new ApiException(503, "Document storage is not available");
+        return store;
+    }
+
+    // Streams the request body straight into the store
+    private String uploadDocument(HttpExchange exchange, Tenant tenant, String name) throws IOException, ApiException {
+        requireDocumentStore();
+        String length = exchange.getRequestHeaders().getFirst("Content-Length");
+        if (length != null && Long.parseLong(length.trim()) > DocumentStore.MAX_DOCUMENT_BYTES) {
+            throw new ApiException(413, "Document is larger than " + DocumentStore.MAX_DOCUMENT_BYTES + " bytes");
+        }
+        try (InputStream body = exchange.getRequestBody()) {
+            return documentJson(tenant.uploadDocument(name, Channels.newChannel(body)));
+        }
+    }
+
+    // Sends a stored document without reading it onto the heap; the content hash doubles as ETag
+    private void sendDocument(HttpExchange exchange, Tenant tenant, String name) throws IOException, ApiException {
+        DocumentStore store = requireDocumentStore();
+        StoredDocument document = store.find(tenant.getUserId(), name);
+        if (document == null) throw new ApiException(404, "Document not found: " + name);
+        String etag = "\"" + document.getHash() + "\"";
+        exchange.getResponseHeaders().set("ETag", etag);
+        if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+            exchange.sendResponseHeaders(304, -1);
+            exchange.close();
+            return;
+        }
+        exchange.getResponseHeaders().set("Content-Type", document.getContentType());
+        exchange.sendResponseHeaders(200, document.getSize() == 0 ? -1 : document.getSize());
+        try (OutputStream out = exchange.getResponseBody()) {
+            store.transferTo(document, Channels.newChannel(out));
+        }
+    }
+
+    private static String documentJson(StoredDocument document) {
+        return "{\"name\":" + Json.quote(document.getName()) + ",\"size\":" + document.getSize()
+               + ",\"sha256\":" + Json.quote(document.getHash()) + "}";
+    }
+
+    private static Tenant requireTenant(User user) throws ApiException {
+        if (!(user instanceof Tenant)) throw new ApiException(403, "Tenant access required");
+        return (Tenant) user;
+    }
+
+    private static void requireMethod(String method, String expected) throws ApiException {
+        if (!method.equals(expected)) throw new ApiException(405, "Method not allowed");
+    }
+
+    private static String readBody(HttpExchange exchange) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            return new String(in.readAllBytes(), java.nio.charset.StandardCharsets.UTF_8);
+        }
+    }
+
+    private static String requireField(Map<String, String> request, String field) throws ApiException {
+        String value = request.get(field);
+        if (value == null || value.isEmpty()) throw new ApiException(400, field + " is required");
+        return value;
+    }
+
+    private static int intField(Map<String, String> request, String field) throws ApiException {
+        try {
+            return Integer.parseInt(requireField(request, field));
+        } catch (NumberFormatException e) {
+            throw new ApiException(400, field + " must be an integer");
+        }
+    }
+
+    private static double doubleField(Map<String, String> request, String field) throws ApiException {
+        try {
+            return Double.parseDouble(requireField(request, field));
+        } catch (NumberFormatException e) {
+            throw new ApiException(400, field + " must be a number");
+        }
+    }
+
+    private static int dateField(Map<String, String> request, String field) throws ApiException {
+        String value = request.get(field);
+        return value == null || value.isEmpty() ? EpochDays.NONE : parseDay(value);
+    }
+
+    private static int parseDay(String value) throws ApiException {
+        int day = EpochDays.parse(value);
+        if (day == EpochDays.NONE) throw new ApiException(400, "Invalid date (expected yyyy-MM-dd): " + value);
+        return day;
+    }
+
+    private static String formatDay(int epochDay) {
+        return epochDay == EpochDays.NONE ? null : EpochDays.format(epochDay);
+    }
+}
+
+/**
+ * Minimal JSON support for the HTTP API: flat request objects in, hand-built responses out.
+ */
+final class Json {
+    private Json() {}
+
+    static String ok() { return "{\"ok\":true}"; }
+
+    static String error(String message) { return "{\"error\":" + quote(message) + "}"; }
+
+    /**
+     * Quotes and escapes a string value.
+     * @return The JSON string, or {@code null} for a null value
+     */
+    static String quote(String value) {
+        if (value == null) return "null";
+        StringBuilder json = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"': json.append("\\\""); break;
+                case '\\': json.append("\\\\"); break;
+                case '\n': json.append("\\n"); break;
+                case '\r': json.append("\\r"); break;
+                case '\t': json.append("\\t"); break;
+                default:
+                    if (c < 0x20) json.append(String.format("\\u%04x", (int) c));
+                    else json.append(c);
+            }
+        }
+        return json.append('"').toString();
+    }
+
+    /**
+     * Parses a flat JSON object. Strings, numbers and booleans are returned in their text
+     * form; {@code null} values are left out.
+     * 
+     * @param text JSON text, may be empty
+     * @return Field values by name
+     * @throws IllegalArgumentException if the text is not a flat JSON object
+     */
+    static Map<String, String> parseObject(String text) {
+        Map<String, String> fields = new HashMap<>();
+        int[] at = {skipSpace(text, 0)};
+        if (at[0] == text.length()) return fields;
+        expect(text, at, '{');
+        if (peek(text, at) == '}') {
+            at[0]++;
+            return fields;
+        }
+        while (true) {
+            String name = readString(text, at);
+            expect(text, at, ':');
+            String value = peek(text, at) == '"' ? readString(text, at) : readLiteral(text, at);
+            if (value != null) fields.put(name, value);
+            char next = peek(text, at);
+            at[0]++;
+            if (next == '}') break;
+            if (next != ',') throw new IllegalArgumentException("Malformed JSON at offset " + (at[0] - 1));
+        }
+        if (skipSpace(text, at[0]) != text.length()) throw new IllegalArgumentException("Trailing data after JSON object");
+        return fields;
+    }
+
+    private static int skipSpace(String text, int at) {
+        while (at < text.length() && Character.isWhitespace(text.charAt(at))) at++;
+        return at;
+    }
+
+    private static char peek(String text, int[] at) {
+        at[0] = skipSpace(text, at[0]);
+        if (at[0] >= text.length()) throw new IllegalArgumentException("Unexpected end of JSON");
+        return text.charAt(at[0]);
+    }
+
+    private static void expect(String text, int[] at, char c) {
+        if (peek(text, at) != c) throw new IllegalArgumentException("Expected '" + c + "' at offset " + at[0]);
+        at[0]++;
+    }
+
+    private static String readString(String text, int[] at) {
+        expect(text, at, '"');
+        StringBuilder value = new StringBuilder();
+        int i = at[0];
+        while (i < text.length()) {
+            char c = text.charAt(i++);
+            if (c == '"') {
+                at[0] = i;
+                return value.toString();
+            }
+            if (c != '\\') {
+                value.append(c);
+                continue;
+            }
+            if (i >= text.length()) break;
+            char escaped = text.charAt(i++);
+            switch (escaped) {
+                case 'n': value.append('\n'); break;
+                case 'r': value.append('\r'); break;
+                case 't': value.append('\t'); break;
+                case 'b': value.append('\b'); break;
+                case 'f': value.append('\f'); break;
+                case 'u':
+                    if (i + 4 > text.length()) throw new IllegalArgumentException("Bad \\u escape in JSON");
+                    value.append((char) Integer.parseInt(text.substring(i, i + 4), 16));
+                    i += 4;
+                    break;
+                default: value.append(escaped);
+            }
+        }
+        throw new IllegalArgumentException("Unterminated JSON string");
+    }
+
+    private static String readLiteral(String text, int[] at) {
+        int start = at[0];
+        int i = start;
+        while (i < text.length() && ",}".indexOf(text.charAt(i)) < 0 && !Character.isWhitespace(text.charAt(i))) i++;
+        if (i == start) throw new IllegalArgumentException("Missing JSON value at offset " + start);
+        at[0] = i;
+        String literal = text.substring(start, i);
+        if (literal.equals("null")) return null;
+        if (literal.startsWith("{") || literal.startsWith("[")) {
+            throw new IllegalArgumentException("Nested JSON values are not supported");
+        }
+        return literal;
+    }
+}
+
+/**
+ * Deterministic generator of synthetic rooms, tenants and payment schedules for benchmarks.
+ * The same size always yields the same data, so runs are comparable across code changes.
+ */
+class SyntheticData {
+    private static final String[] SHARING_TYPES = {"Single", "Double", "Triple", "Four"};
+    private static final String[] TENANT_TYPES = {"Standard", "Standard", "Weekly", "FifteenDay", "Quarterly", "Yearly"};
+
+    private SyntheticData() {}
+
+    static Room room(int i) {
+        return new Room(roomId(i), 2500 + (i * 37) % 6000, 120 + (i * 13) % 250,
+                        1 + i % 10, SHARING_TYPES[i % SHARING_TYPES.length]);
+    }
+
+    static Tenant tenant(int i) {
+        Tenant tenant = Tenant.ofType(TENANT_TYPES[i % TENANT_TYPES.length], tenantId(i),
+                                      "Tenant " + i, email(i), password(i));
+        tenant.setContact(String.valueOf(9_000_000_000L + i));
+        return tenant;
+    }
+
+    static String roomId(int i) { return "R" + i; }
+    static String tenantId(int i) { return "T" + i; }
+    static String email(int i) { return "tenant" + i + "@example.com"; }
+    static String password(int i) { return "pass" + i; }
+
+    /**
+     * Builds an owner with {@code rooms} rooms and {@code tenants} tenants.
+     * 
+     * @param rooms Number of rooms
+     * @param tenants Number of tenants
+     * @param occupancy Fraction of rooms assigned to a tenant (0-1)
+     * @param months Months of bulk payments to generate, 0 for none
+     * @return The populated owner
+     */
+    static PGOwner owner(int rooms, int tenants, double occupancy, int months) {
+        PGOwner owner = new PGOwner("O001", "PG Owner", "owner@pg.com", "admin123");
+        PGHiveBenchmark.silently(() -> {
+            for (int i = 0; i < rooms; i++) {
+                owner.addRoom(room(i));
+            }
+            int assigned = (int) Math.min(tenants, rooms * occupancy);
+            for (int i = 0; i < tenants; i++) {
+                Tenant tenant = tenant(i);
+                owner.addTenant(tenant);
+                if (i < assigned) {
+                    try {
+                        owner.assignRoom(roomId(i), tenant);
+                    } catch (RoomAssignmentException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+            }
+            if (months > 0) {
+                owner.generateBulkPayments(months, EpochDays.today());
+            }
+        });
+        return owner;
+    }
+}
+
+/**
+ * Command-line micro-benchmarks for the PGHive hot paths.
+ * Run with: java PGHiveBenchmark [scenario...] [--sizes=1000,10000,...]
+ * Scenarios: hotpaths (default), registry, snapshot, ledger, billing, assign-stress, http, auth, import, export, dates, shards, metrics, logging, documents, events, forecast, reservations, beds, pricing.
+ */
+class PGHiveBenchmark {
+    private static final int[] TENANT_COUNTS = {10_000, 100_000, 1_000_000};
+    private static final int WARMUP_ITERATIONS = 3;
+    private static final int MEASURED_ITERATIONS = 5;
+
+    private static int[] sizes = {1_000, 10_000, 100_000};
+    private static int hashIterations = 1;
+
+    public static void main(String[] args) {
+        List<String> scenarios = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.startsWith("--sizes=")) {
+                sizes = Arrays.stream(arg.substring("--sizes=".length()).split(","))
+                              .mapToInt(Integer::parseInt).toArray();
+            } else if (arg.startsWith("--iterations=")) {
+                hashIterations = Integer.parseInt(arg.substring("--iterations=".length()));
+            } else {
+                scenarios.add(arg);
+            }
+        }
+        if (scenarios.isEmpty()) scenarios.add("hotpaths");
+        // Synthetic accounts are hashed cheaply so millions can be built; "auth" measures the real work factor
+        PasswordHasher.setIterations(hashIterations);
+        for (String scenario : scenarios) {
+            switch (scenario) {
+                case "hotpaths":
+                    benchmarkHotPaths();
+                    break;
+                case "registry":
+                    benchmarkTenantRegistry();
+                    break;
+                case "snapshot":
+                    benchmarkSnapshotStartup();
+                    break;
+                case "ledger":
+                    benchmarkPaymentLedger();
+                    break;
+                case "billing":
+                    benchmarkBulkBilling();
+                    break;
+                case "assign-stress":
+                    benchmarkConcurrentAssignments();
+                    break;
+                case "http":
+                    benchmarkHttpApi();
+                    break;
+                case "auth":
+                    benchmarkAuthentication();
+                    break;
+                case "import":
+                    benchmarkBulkImport();
+                    break;
+                case "export":
+                    benchmarkExport();
+                    break;
+                case "dates":
+                    benchmarkDates();
+                    break;
+                case "shards":
+                    benchmarkPropertyShards();
+                    break;
+                case "metrics":
+                    benchmarkMetrics();
+                    break;
+                case "logging":
+                    benchmarkEventLog();
+                    break;
+                case "documents":
+                    benchmarkDocumentStore();
+                    break;
+                case "events":
+                    benchmarkEventBus();
+                    break;
+                case "forecast":
+                    benchmarkForecast();
+                    break;
+                case "reservations":
+                    benchmarkReservations();
+                    break;
+                case "beds":
+                    benchmarkBeds();
+                    break;
+                case "pricing":
+                    benchmarkPricing();
+                    break;
+                default:
+                    System.out.println("Unknown scenario: " + scenario);
+            }
+        }
+    }
+
+    /**
+     * Operation under measurement; returns a value so the JIT cannot discard the work.
+     */
+    interface Operation {
+        long run(int iteration) throws Exception;
+    }
+
+    /**
+     * Operation measured against state built by a {@link Setup}.
+     */
+    interface OperationOn<T> {
+        long run(T state, int iteration) throws Exception;
+    }
+
+    /**
+     * Per-iteration setup whose cost is excluded from the measurement.
+     */
+    interface Setup<T> {
+        T create() throws Exception;
+    }
+
+    /**
+     * Benchmarks the core owner and tenant operations at each configured data size.
+     */
+    private static void benchmarkHotPaths() {
+        System.out.println("\n=== HOT PATHS (" + WARMUP_ITERATIONS + " warmup + " + MEASURED_ITERATIONS + " measured iterations) ===");
+        System.out.println("Benchmark                            | Size      | ns/op (mean) | stddev");
+        for (int size : sizes) {
+            PGOwner owner = SyntheticData.owner(size, size, 0.8, 12);
+            Room[] rooms = owner.getRooms().toArray(new Room[0]);
+            Random random = new Random(7);
+            int lookups = 100_000;
+            int[] keys = new int[lookups];
+            for (int i = 0; i < lookups; i++) keys[i] = random.nextInt(size);
+            double occupancy = (double) (int) (size * 0.8) / size;
+
+            measure("PGOwner.findTenantById", size, lookups, iteration -> {
+                long sink = 0;
+                for (int key : keys) sink += owner.findTenantById(SyntheticData.tenantId(key)).hashCode();
+                return sink;
+            });
+            measure("tenantLogin (email index + login)", size, lookups, iteration -> {
+                long sink = 0;
+                PrintStream console = System.out;
+                System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+                try {
+                    for (int key : keys) {
+                        Tenant tenant = owner.findTenantByEmail(SyntheticData.email(key));
+                        if (tenant.login(SyntheticData.email(key), SyntheticData.password(key))) sink++;
+                        tenant.logout();
+                    }
+                } finally {
+                    System.setOut(console);
+                }
+                return sink;
+            });
+            measureWithSetup("PGOwner.assignRoom", size, size,
+                () -> SyntheticData.owner(size, size, 0, 0),
+                (fresh, iteration) -> {
+                    long sink = 0;
+                    for (int i = 0; i < size; i++) {
+                        Tenant tenant = fresh.findTenantById(SyntheticData.tenantId(i));
+                        fresh.assignRoom(SyntheticData.roomId(i), tenant);
+                        sink += tenant.getRoom() != null ? 1 : 0;
+                    }
+                    return sink;
+                });
+            measureWithSetup("PGOwner.generateBulkPayments (12m)", size, size,
+                () -> SyntheticData.owner(size, size, 1.0, 0),
+                (fresh, iteration) -> fresh.generateBulkPayments(12, EpochDays.today()));
+            measure("PGOwner.generateReport", size, 1, iteration -> {
+                silently(owner::generateReport);
+                return 0;
+            });
+            measure("PGOwner.suggestOptimizedRents", size, size, iteration -> {
+                silently(owner::suggestOptimizedRents);
+                return 0;
+            });
+            measure("RentOptimizer.calculateOptimizedRent", size, rooms.length, iteration -> {
+                double sum = 0;
+                for (Room room : rooms) sum += RentOptimizer.calculateOptimizedRent(room, occupancy);
+                return (long) sum;
+            });
+            RoomCriteria[] criteria = new RoomCriteria[64];
+            for (int i = 0; i < criteria.length; i++) {
+                double low = 3000 + random.nextInt(4000);
+                criteria[i] = new RoomCriteria().sharingType(Room.SHARING_TYPES[i % Room.SHARING_TYPES.length])
+                                                .rentBetween(low, low + 1500).minAmenityScore(i % 5);
+            }
+            measure("PGOwner.findBestVacantRoom", size, lookups, iteration -> {
+                long sink = 0;
+                for (int i = 0; i < lookups; i++) {
+                    Room room = owner.findBestVacantRoom(criteria[i & 63]);
+                    if (room != null) sink += room.getAmenityScore();
+                }
+                return sink;
+            });
+            RentSuggestions table = new RentSuggestions();
+            measure("RentOptimizer.optimizeAll (batch)", size, rooms.length, iteration ->
+                (long) RentOptimizer.optimizeAll(owner.getRooms(), occupancy, table).totalSuggested());
+            Tenant[] sample = new Tenant[Math.min(size, 1_000)];
+            for (int i = 0; i < sample.length; i++) sample[i] = owner.findTenantById(SyntheticData.tenantId(keys[i]));
+            measure("Tenant.viewRentHistory", size, sample.length, iteration -> {
+                silently(() -> {
+                    for (Tenant tenant : sample) tenant.viewRentHistory();
+                });
+                return 0;
+            });
+        }
+    }
+
+    private static void measure(String name, int size, int opsPerIteration, Operation operation) {
+        measureWithSetup(name, size, opsPerIteration, () -> null, (ignored, iteration) -> operation.run(iteration));
+    }
+
+    private static <T> void measureWithSetup(String name, int size, int opsPerIteration, Setup<T> setup,
+                                             OperationOn<T> operation) {
+        double[] nanosPerOp = new double[MEASURED_ITERATIONS];
+        long sink = 0;
+        try {
+            for (int i = 0; i < WARMUP_ITERATIONS + MEASURED_ITERATIONS; i++) {
+                T state = setup.create();
+                long start = System.nanoTime();
+                sink += operation.run(state, i);
+                long elapsed = System.nanoTime() - start;
+                if (i >= WARMUP_ITERATIONS) nanosPerOp[i - WARMUP_ITERATIONS] = elapsed / (double) opsPerIteration;
+            }
+        } catch (Exception e) {
+            System.out.printf("%-36s | %-9d | failed: %s%n", name, size, e);
+            return;
+        }
+        double mean = Arrays.stream(nanosPerOp).average().orElse(0);
+        double variance = Arrays.stream(nanosPerOp).map(v -> (v - mean) * (v - mean)).sum() / nanosPerOp.length;
+        System.out.printf("%-36s | %-9d | %12.1f | %6.1f%n", name, size, mean, Math.sqrt(variance));
+        if (sink == Long.MIN_VALUE) System.out.println();
+    }
+
+    /**
+     * Compares ID and email lookups on the indexed registry against the linear list scan it replaced.
+     */
+    private static void benchmarkTenantRegistry() {
+        System.out.println("\n=== TENANT LOOKUP: List scan vs TenantRegistry ===");
+        System.out.println("Tenants   | List by ID (ns/op) | List by email (ns/op) | Registry by ID (ns/op) | Registry by email (ns/op)");
+        for (int n : TENANT_COUNTS) {
+            List<Tenant> list = new ArrayList<>(n);
+            TenantRegistry registry = new TenantRegistry();
+            silently(() -> {
+                for (int i = 0; i < n; i++) {
+                    Tenant t = new Tenant("T" + i, "Tenant " + i, "tenant" + i + "@example.com", "pass" + i);
+                    list.add(t);
+                    registry.add(t);
+                }
+            });
+
+            Random random = new Random(42);
+            int scanOps = Math.max(20, 2_000_000 / n);
+            int indexOps = 1_000_000;
+            String[] ids = new String[indexOps];
+            String[] emails = new String[indexOps];
+            for (int i = 0; i < indexOps; i++) {
+                int k = random.nextInt(n);
+                ids[i] = "T" + k;
+                emails[i] = "tenant" + k + "@example.com";
+            }
+
+            long sink = 0;
+            long start = System.nanoTime();
+            for (int i = 0; i < scanOps; i++) {
+                for (Tenant t : list) {
+                    if (t.getUserId().equals(ids[i])) { sink += t.hashCode(); break; }
+                }
+            }
+            double listById = (System.nanoTime() - start) / (double) scanOps;
+
+            start = System.nanoTime();
+            for (int i = 0; i < scanOps; i++) {
+                for (Tenant t : list) {
+                    if (t.getEmail().equals(emails[i])) { sink += t.hashCode(); break; }
+                }
+            }
+            double listByEmail = (System.nanoTime() - start) / (double) scanOps;
+
+            start = System.nanoTime();
+            for (int i = 0; i < indexOps; i++) {
+                sink += registry.findById(ids[i]).hashCode();
+            }
+            double registryById = (System.nanoTime() - start) / (double) indexOps;
+
+            start = System.nanoTime();
+            for (int i = 0; i < indexOps; i++) {
+                sink += registry.findByEmail(emails[i]).hashCode();
+            }
+            double registryByEmail = (System.nanoTime() - start) / (double) indexOps;
+
+            System.out.printf("%-9d | %18.0f | %21.0f | %22.1f | %25.1f%n",
+                n, listById, listByEmail, registryById, registryByEmail);
+            if (sink == 42) System.out.println();
+        }
+    }
+
+    /**
+     * Measures startup from a mapped snapshot holding 1M payment records.
+     */
+    private static void benchmarkSnapshotStartup() {
+        System.out.println("\n=== SNAPSHOT STARTUP: 10k tenants x 100 payments ===");
+        int tenantCount = 10_000;
+        int paymentsPerTenant = 100;
+        try {
+            PGOwner source = new PGOwner("O001", "PG Owner", "owner@pg.com", "admin123");
+            silently(() -> {
+                for (int i = 0; i < tenantCount; i++) {
+                    source.addRoom(new Room("R" + i, 3000 + i % 5000, 150 + i % 200, i % 10, "Double"));
+                    Tenant t = new Tenant("T" + i, "Tenant " + i, "tenant" + i + "@example.com", "pass" + i);
+                    source.addTenant(t);
+                    try {
+                        source.assignRoom("R" + i, t);
+                    } catch (RoomAssignmentException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+                source.generateBulkPayments(paymentsPerTenant, EpochDays.today());
+            });
+
+            Path file = Files.createTempFile("pghive", ".snapshot");
+            long start = System.nanoTime();
+            MappedSnapshot.write(file, source, 0);
+            double writeMs = (System.nanoTime() - start) / 1e6;
+
+            // Load a few times so the reported figure is for warmed-up code
+            PGOwner restored = null;
+            double loadMs = 0;
+            for (int run = 0; run < 3; run++) {
+                PGOwner target = new PGOwner("O001", "PG Owner", "owner@pg.com", "admin123");
+                start = System.nanoTime();
+                silently(() -> {
+                    try {
+                        MappedSnapshot.open(file).loadInto(target);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                loadMs = (System.nanoTime() - start) / 1e6;
+                restored = target;
+            }
+
+            start = System.nanoTime();
+            silently(restored::generateReport);
+            double reportMs = (System.nanoTime() - start) / 1e6;
+
+            start = System.nanoTime();
+            double pending = 0;
+            for (Tenant t : restored.getTenants()) {
+                for (Payment p : t.getPayments()) {
+                    if (!p.isPaid()) pending += p.getAmount();
+                }
+            }
+            double fullScanMs = (System.nanoTime() - start) / 1e6;
+
+            System.out.printf("Snapshot size: %.1f MB%n", Files.size(file) / (1024.0 * 1024.0));
+            System.out.printf("Write: %.1f ms | Open + load: %.1f ms | First report: %.1f ms | Decode all payments: %.1f ms%n",
+                writeMs, loadMs, reportMs, fullScanMs);
+            if (pending < 0) System.out.println();
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            System.out.println("Snapshot benchmark failed: " + e.getMessage());
         }
     }
 
     /**
-     * Handles the tenant login process.
-     * Searches for the tenant by email and validates their credentials.
-     * Shows the tenant menu upon successful login.
+     * Compares heap footprint and pending-amount scans of per-tenant Payment lists against the columnar ledger.
      */
-    private static void tenantLogin() {
-        System.out.println("\n--- TENANT LOGIN ---");
-        System.out.print("Email: ");
-        String email = scanner.nextLine();
-        System.out.print("Password: ");
-        String password = scanner.nextLine();
-    
-        // Get all tenants from the owner
-        List<Tenant> allTenants = owner.getTenants();
-        
-        // Search through all registered tenants
-        for (Tenant tenant : allTenants) {
-            if (tenant.getEmail().equals(email)) {
-                if (tenant.login(email, password)) {
-                    tenant.showMenu();
-                    return;
-                } else {
-                    System.out.println("Invalid password!");
-                    return;
+    private static void benchmarkPaymentLedger() {
+        System.out.println("\n=== PAYMENT STORAGE: ArrayList<Payment> vs PaymentLedger (100 payments per tenant) ===");
+        System.out.println("Payments  | Objects heap (MB) | Ledger heap (MB) | Objects scan (ms) | Ledger scan (ms)");
+        int[] paymentCounts = {1_000_000, 4_000_000};
+        for (int total : paymentCounts) {
+            int tenantCount = total / 100;
+            List<Tenant> tenants = new ArrayList<>(tenantCount);
+            silently(() -> {
+                for (int i = 0; i < tenantCount; i++) {
+                    tenants.add(new Tenant("T" + i, "Tenant " + i, "tenant" + i + "@example.com", "pass" + i));
+                }
+            });
+            int startDay = EpochDays.today();
+
+            long before = usedHeap();
+            List<List<Payment>> lists = new ArrayList<>(tenantCount);
+            for (Tenant t : tenants) {
+                List<Payment> payments = new ArrayList<>();
+                for (int m = 0; m < 100; m++) {
+                    Payment payment = new Payment(t.getUserId() + "-M" + (m + 1), 4500 + m, startDay + m * 30);
+                    if (m % 3 == 0) payment.markAsPaid();
+                    payments.add(payment);
+                }
+                lists.add(payments);
+            }
+            double objectsMb = (usedHeap() - before) / (1024.0 * 1024.0);
+
+            long start = System.nanoTime();
+            double pendingObjects = 0;
+            for (List<Payment> payments : lists) {
+                for (Payment payment : payments) {
+                    if (!payment.isPaid()) pendingObjects += payment.getAmount();
                 }
             }
+            double objectsScanMs = (System.nanoTime() - start) / 1e6;
+            lists.clear();
+
+            before = usedHeap();
+            PaymentLedger ledger = new PaymentLedger(total);
+            for (Tenant t : tenants) {
+                for (int m = 0; m < 100; m++) {
+                    ledger.append(t, null, m + 1, 4500 + m, startDay + m * 30, m % 3 == 0);
+                }
+            }
+            double ledgerMb = (usedHeap() - before) / (1024.0 * 1024.0);
+
+            start = System.nanoTime();
+            double pendingLedger = ledger.pendingAmount();
+            double ledgerScanMs = (System.nanoTime() - start) / 1e6;
+
+            System.out.printf("%-9d | %17.1f | %16.1f | %17.1f | %16.1f%n",
+                total, objectsMb, ledgerMb, objectsScanMs, ledgerScanMs);
+            if (pendingObjects != pendingLedger) System.out.println("Pending totals differ!");
         }
-        System.out.println("Tenant not found! Please check your email or contact the owner.");
     }
 
     /**
-     * Initializes the system with sample data for testing purposes.
-     * Creates sample rooms and tenants with default values.
+     * Times bulk billing of 1M monthly tenants x 12 months on one thread and on the common pool.
      */
-    private static void initializeSampleData() {
-        // Add sample rooms
-        owner.addRoom(new Room("R101", 6000, 180, 7, "Single"));
-        owner.addRoom(new Room("R102", 4500, 220, 6, "Double"));
-        owner.addRoom(new Room("R103", 3500, 250, 5, "Triple"));
-        owner.addRoom(new Room("R104", 3000, 300, 4, "Four"));
-        
-        // Add sample tenants
-        Tenant tenant1 = new Tenant("T001", "John Doe", "john@example.com", "password123");
-        tenant1.setContact("9876543210");
-        tenant1.setMoveInDate(new Date());
-        owner.addTenant(tenant1);
+    private static void benchmarkBulkBilling() {
+        int tenantCount = 1_000_000;
+        int months = 12;
+        System.out.println("\n=== BULK BILLING: 1M tenants x 12 months ===");
+        List<Tenant> tenants = new ArrayList<>(tenantCount);
+        silently(() -> {
+            for (int i = 0; i < tenantCount; i++) {
+                Tenant t = new Tenant("T" + i, "Tenant " + i, "tenant" + i + "@example.com", "pass" + i);
+                t.setRoom(new Room("R" + i, 3000 + i % 5000, 150, 5, "Double"));
+                tenants.add(t);
+            }
+        });
+        int startDay = EpochDays.today();
+        ForkJoinPool single = new ForkJoinPool(1);
+        Object[][] runs = {
+            {"1 thread", new BulkBillingEngine(single)},
+            {ForkJoinPool.commonPool().getParallelism() + " threads", new BulkBillingEngine()},
+        };
+        for (Object[] run : runs) {
+            BulkBillingEngine engine = (BulkBillingEngine) run[1];
+            double bestMs = Double.MAX_VALUE;
+            int rows = 0;
+            PaymentLedger ledger = null;
+            for (int round = 0; round < 5; round++) {
+                if (ledger != null) {
+                    for (Tenant t : tenants) ledger.release(t);
+                }
+                ledger = new PaymentLedger(tenantCount * months);
+                for (Tenant t : tenants) ledger.adopt(t);
+                long start = System.nanoTime();
+                rows = engine.generate(ledger, tenants, months, startDay);
+                bestMs = Math.min(bestMs, (System.nanoTime() - start) / 1e6);
+            }
+            long start = System.nanoTime();
+            int rerun = engine.generate(ledger, tenants, months, startDay);
+            double rerunMs = (System.nanoTime() - start) / 1e6;
+            for (Tenant t : tenants) ledger.release(t);
+            System.out.printf("%-10s | %d rows in %.1f ms (best of 5) | re-run added %d rows in %.1f ms%n",
+                run[0], rows, bestMs, rerun, rerunMs);
+        }
+        single.shutdown();
+    }
+
+    /**
+     * Hammers assignRoom from several threads at once, then checks that no room or tenant
+     * ended up double-booked and that the incremental aggregates still match the rooms.
+     * A failed check aborts the run, so the benchmark exits with an error.
+     */
+    private static void benchmarkConcurrentAssignments() {
+        int roomCount = 10_000;
+        int tenantCount = 12_000;
+        int opsPerThread = 200_000;
+        System.out.println("\n=== CONCURRENT ROOM ASSIGNMENT: 10k rooms, 12k tenants, 200k assignments per thread ===");
+        System.out.println("Threads | ops/s        | conflicts | consistent");
+        for (int threads : new int[] {1, 2, 4, 8}) {
+            PGOwner owner = SyntheticData.owner(roomCount, tenantCount, 0.7, 0);
+            Tenant[] tenants = new Tenant[tenantCount];
+            for (int i = 0; i < tenantCount; i++) tenants[i] = owner.findTenantById(SyntheticData.tenantId(i));
+            LongAdder conflicts = new LongAdder();
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            List<Future<?>> workers = new ArrayList<>();
+            long start = System.nanoTime();
+            for (int t = 0; t < threads; t++) {
+                long seed = t;
+                workers.add(pool.submit(() -> {
+                    SplittableRandom random = new SplittableRandom(seed);
+                    for (int i = 0; i < opsPerThread; i++) {
+                        try {
+                            owner.assignRoom(SyntheticData.roomId(random.nextInt(roomCount)),
+                                             tenants[random.nextInt(tenantCount)]);
+                        } catch (RoomAssignmentException e) {
+                            conflicts.increment();
+                        }
+                    }
+                }));
+            }
+            try {
+                for (Future<?> worker : workers) worker.get();
+            } catch (InterruptedException | ExecutionException e) {
+                throw new IllegalStateException(e);
+            } finally {
+                pool.shutdown();
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            boolean consistent = assignmentsConsistent(owner);
+            System.out.printf("%-7d | %12.0f | %9d | %s%n", threads, threads * (double) opsPerThread / seconds,
+                              conflicts.sum(), consistent ? "yes" : "NO");
+            if (!consistent) {
+                throw new IllegalStateException("Double occupancy or stale aggregates after " + threads + " threads");
+            }
+        }
+    }
+
+    /**
+     * Adds and assigns tenants across 256 properties through a {@link PropertyRegistry} with
+     * 1-8 shards, submitting either one task per operation or one batch per property, and
+     * times the cross-property summary that fans out to every shard.
+     */
+    private static void benchmarkPropertyShards() {
+        int propertyCount = 256;
+        System.out.println("\n=== PROPERTY SHARDS: " + propertyCount + " properties, add + assign per tenant ===");
+        System.out.println("Tenants   | Shards | Submission   | ops/s        | summary us | consistent");
+        for (int size : sizes) {
+            int perProperty = Math.max(1, size / propertyCount);
+            for (int shardCount : new int[] {1, 2, 4, 8}) {
+                for (boolean batched : new boolean[] {false, true}) {
+                    try (PropertyRegistry registry = new PropertyRegistry(shardCount)) {
+                        Tenant[][] tenants = new Tenant[propertyCount][perProperty];
+                        silently(() -> {
+                            for (int p = 0; p < propertyCount; p++) {
+                                PGOwner owner = new PGOwner("P" + p, "Owner " + p, "owner" + p + "@pg.com", "admin123");
+                                for (int i = 0; i < perProperty; i++) {
+                                    owner.addRoom(SyntheticData.room(i));
+                                    tenants[p][i] = SyntheticData.tenant(i);
+                                }
+                                registry.addProperty(owner);
+                            }
+                        });
+                        long start = System.nanoTime();
+                        silently(() -> {
+                            List<CompletableFuture<Void>> pending = new ArrayList<>();
+                            if (batched) {
+                                for (int p = 0; p < propertyCount; p++) {
+                                    Tenant[] batch = tenants[p];
+                                    pending.add(registry.submit("P" + p, owner -> {
+                                        for (int i = 0; i < batch.length; i++) {
+                                            owner.addTenant(batch[i]);
+                                            try {
+                                                owner.assignRoom(SyntheticData.roomId(i), batch[i]);
+                                            } catch (RoomAssignmentException e) {
+                                                throw new CompletionException(e);
+                                            }
+                                        }
+                                        return null;
+                                    }));
+                                }
+                            } else {
+                                for (int i = 0; i < perProperty; i++) {
+                                    for (int p = 0; p < propertyCount; p++) {
+                                        registry.addTenant("P" + p, tenants[p][i]);
+                                        pending.add(registry.assignRoom("P" + p, SyntheticData.roomId(i),
+                                                                        tenants[p][i].getUserId()));
+                                    }
+                                }
+                            }
+                            for (CompletableFuture<Void> future : pending) future.join();
+                        });
+                        double seconds = (System.nanoTime() - start) / 1e9;
+                        long ops = 2L * propertyCount * perProperty;
+
+                        int queries = 100;
+                        PortfolioSummary summary = null;
+                        long queryStart = System.nanoTime();
+                        for (int q = 0; q < queries; q++) summary = registry.summarize();
+                        double summaryMicros = (System.nanoTime() - queryStart) / 1e3 / queries;
+                        boolean consistent = summary.getTenants() == (long) propertyCount * perProperty
+                                             && summary.getOccupiedRooms() == summary.getTenants();
+                        System.out.printf("%-9d | %-6d | %-12s | %12.0f | %10.1f | %s%n", propertyCount * perProperty,
+                            shardCount, batched ? "per property" : "per op", ops / seconds, summaryMicros,
+                            consistent ? "yes" : "NO");
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Load-tests the HTTP API: many tenants log in at once, then every session fetches its
+     * rent history repeatedly while up to 256 requests are in flight.
+     */
+    private static void benchmarkHttpApi() {
+        int tenantCount = 10_000;
+        int requestsPerSession = 10;
+        int inFlight = 256;
+        System.out.println("\n=== HTTP API: concurrent tenant sessions, " + requestsPerSession
+                           + " rent-history requests each, " + inFlight + " in flight ===");
+        System.out.println("Sessions | logins/s  | requests/s | p50 ms | p99 ms | errors");
+        PGOwner owner = SyntheticData.owner(tenantCount, tenantCount, 0.8, 12);
+        ExecutorService clientPool = Executors.newFixedThreadPool(4);
+        try (PGHiveServer server = PGHiveServer.start(owner, 0)) {
+            HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1)
+                                          .executor(clientPool).build();
+            String base = "http://localhost:" + server.getPort() + "/api/";
+            for (int sessions : new int[] {100, 1_000, 5_000}) {
+                LongAdder errors = new LongAdder();
+                String[] tokens = new String[sessions];
+                long start = System.nanoTime();
+                runRequests(client, sessions, inFlight, errors, null, i -> HttpRequest.newBuilder(URI.create(base + "login"))
+                        .POST(HttpRequest.BodyPublishers.ofString("{\"email\":" + Json.quote(SyntheticData.email(i))
+                              + ",\"password\":" + Json.quote(SyntheticData.password(i)) + "}")).build(),
+                    (body, i) -> tokens[i] = Json.parseObject(body).get("token"));
+                double loginSeconds = (System.nanoTime() - start) / 1e9;
+
+                int total = sessions * requestsPerSession;
+                long[] latencies = new long[total];
+                start = System.nanoTime();
+                runRequests(client, total, inFlight, errors, latencies, i -> HttpRequest.newBuilder(URI.create(base + "me/payments"))
+                        .header("Authorization", "Bearer " + tokens[i % sessions]).GET().build(), (body, i) -> { });
+                double seconds = (System.nanoTime() - start) / 1e9;
+                Arrays.sort(latencies);
+                System.out.printf("%-8d | %9.0f | %10.0f | %6.2f | %6.2f | %d%n", sessions, sessions / loginSeconds,
+                                  total / seconds, latencies[total / 2] / 1e6, latencies[(int) (total * 0.99)] / 1e6,
+                                  errors.sum());
+            }
+        } catch (IOException | InterruptedException e) {
+            System.out.println("HTTP benchmark failed: " + e);
+        } finally {
+            clientPool.shutdown();
+        }
+    }
+
+    /**
+     * Sends {@code count} requests asynchronously with at most {@code inFlight} outstanding,
+     * recording each latency (if {@code latencies} is given) and passing 200 responses to {@code onOk}.
+     */
+    private static void runRequests(HttpClient client, int count, int inFlight, LongAdder errors, long[] latencies,
+                                    java.util.function.IntFunction<HttpRequest> request,
+                                    java.util.function.ObjIntConsumer<String> onOk) throws InterruptedException {
+        Semaphore permits = new Semaphore(inFlight);
+        CountDownLatch done = new CountDownLatch(count);
+        for (int i = 0; i < count; i++) {
+            int index = i;
+            permits.acquire();
+            long sent = System.nanoTime();
+            client.sendAsync(request.apply(i), HttpResponse.BodyHandlers.ofString())
+                  .whenComplete((response, failure) -> {
+                      if (latencies != null) latencies[index] = System.nanoTime() - sent;
+                      if (failure == null && response.statusCode() == 200) {
+                          onOk.accept(response.body(), index);
+                      } else {
+                          errors.increment();
+                      }
+                      permits.release();
+                      done.countDown();
+                  });
+        }
+        done.await();
+    }
+
+    /**
+     * Measures login throughput and latency over 100k accounts: full PBKDF2 logins at the
+     * production work factor (on a sample, as each costs tens of milliseconds), logins at the
+     * synthetic work factor, and session-token validation.
+     */
+    private static void benchmarkAuthentication() {
+        int accounts = 100_000;
+        int threads = Runtime.getRuntime().availableProcessors();
+        System.out.println("\n=== AUTHENTICATION: 100k accounts, " + threads + " threads ===");
+        System.out.println("Operation                                  | ops/s        | p50 us    | p99 us");
+        PGOwner owner = SyntheticData.owner(1_000, accounts, 0, 0);
+        AuthService auth = new AuthService(owner);
+
+        int sample = Math.max(threads * 8, 64);
+        int[] sampled = new int[sample];
+        PasswordHasher.setIterations(PasswordHasher.DEFAULT_ITERATIONS);
+        for (int i = 0; i < sample; i++) {
+            sampled[i] = (int) ((long) i * accounts / sample);
+            owner.findTenantById(SyntheticData.tenantId(sampled[i])).password =
+                PasswordHasher.hash(SyntheticData.password(sampled[i]));
+        }
+        PasswordHasher.setIterations(hashIterations);
+        runTimed("login, PBKDF2 x" + PasswordHasher.DEFAULT_ITERATIONS, sample, threads, i -> {
+            if (auth.login(SyntheticData.email(sampled[i]), SyntheticData.password(sampled[i])) == null) {
+                throw new IllegalStateException("login failed");
+            }
+        });
+
+        int logins = 200_000;
+        String[] tokens = new String[accounts];
+        runTimed("login, PBKDF2 x" + hashIterations + " (index + lockout + token)", logins, threads, i -> {
+            int account = (int) ((i * 2654435761L) % accounts);
+            String token = auth.login(SyntheticData.email(account), SyntheticData.password(account));
+            if (token == null) throw new IllegalStateException("login failed");
+            tokens[account] = token;
+        });
+
+        int validations = 2_000_000;
+        runTimed("session token validation", validations, threads, i -> {
+            String token = tokens[(int) ((i * 2654435761L) % accounts)];
+            if (token != null && auth.validate(token) == null) throw new IllegalStateException("session lost");
+        });
+    }
+
+    /**
+     * Runs {@code count} operations split across threads and prints throughput and latency percentiles.
+     */
+    private static void runTimed(String name, int count, int threads, java.util.function.IntConsumer operation) {
+        long[] latencies = new long[count];
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<?>> workers = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            int first = t;
+            workers.add(pool.submit(() -> {
+                for (int i = first; i < count; i += threads) {
+                    long began = System.nanoTime();
+                    operation.accept(i);
+                    latencies[i] = System.nanoTime() - began;
+                }
+            }));
+        }
         try {
-            owner.assignRoom("R101", tenant1);
-        } catch (RoomAssignmentException e) {
-            System.out.println("Error assigning room: " + e.getMessage());
+            for (Future<?> worker : workers) worker.get();
+        } catch (InterruptedException | ExecutionException e) {
+            System.out.printf("%-42s | failed: %s%n", name, e);
+            return;
+        } finally {
+            pool.shutdown();
         }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        Arrays.sort(latencies);
+        System.out.printf("%-42s | %12.0f | %9.1f | %9.1f%n", name, count / seconds,
+                          latencies[count / 2] / 1e3, latencies[(int) (count * 0.99)] / 1e3);
+    }
 
-        Tenant tenant2 = new Tenant("T002", "Jane Smith", "jane@example.com", "password456");
-        tenant2.setContact("8765432109");
-        tenant2.setMoveInDate(new Date());
-        owner.addTenant(tenant2);
+    private static boolean assignmentsConsistent(PGOwner owner) {
+        int occupied = 0;
+        Set<Tenant> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Room room : owner.getRooms()) {
+            for (Tenant tenant : room.getTenants()) {
+                occupied++;
+                if (tenant.getRoom() != room || !seen.add(tenant)) return false;
+            }
+        }
+        for (Tenant tenant : owner.getTenants()) {
+            Room room = tenant.getRoom();
+            if (room != null && room.bedOf(tenant) < 0) return false;
+        }
+        return occupied == owner.getAggregates().occupiedBeds();
+    }
+
+    /**
+     * Imports generated CSV and JSON Lines files of rooms and tenants into a fresh owner at each
+     * configured size. Tenants carry password hashes, as a migrated export would.
+     */
+    private static void benchmarkBulkImport() {
+        System.out.println("\n=== BULK IMPORT (second of two runs) ===");
+        System.out.println("File          | Rows      | Time (ms) | Rows/s     | File (MB) | Heap after (MB)");
+        String hash = PasswordHasher.hash("imported");
+        try {
+            for (int size : sizes) {
+                Path rooms = Files.createTempFile("pghive-rooms", ".csv");
+                Path tenantsCsv = Files.createTempFile("pghive-tenants", ".csv");
+                Path tenantsJson = Files.createTempFile("pghive-tenants", ".jsonl");
+                silently(() -> writeImportFiles(size, hash, rooms, tenantsCsv, tenantsJson));
+                timeImport("rooms.csv", size, rooms, true);
+                timeImport("tenants.csv", size, tenantsCsv, false);
+                timeImport("tenants.jsonl", size, tenantsJson, false);
+                Files.deleteIfExists(rooms);
+                Files.deleteIfExists(tenantsCsv);
+                Files.deleteIfExists(tenantsJson);
+            }
+        } catch (IOException e) {
+            System.out.println("Import benchmark failed: " + e.getMessage());
+        }
+    }
+
+    private static void writeImportFiles(int size, String hash, Path rooms, Path tenantsCsv, Path tenantsJson) {
+        try (BufferedWriter roomOut = Files.newBufferedWriter(rooms);
+             BufferedWriter csvOut = Files.newBufferedWriter(tenantsCsv);
+             BufferedWriter jsonOut = Files.newBufferedWriter(tenantsJson)) {
+            roomOut.write("roomId,rent,sizeSqft,amenityScore,sharingType\n");
+            csvOut.write("id,type,name,email,passwordHash,contact,moveIn\n");
+            for (int i = 0; i < size; i++) {
+                Room room = SyntheticData.room(i);
+                roomOut.write(room.getRoomId() + "," + room.getBaseRent() + "," + room.getSizeSqft() + ","
+                              + room.getAmenityScore() + "," + room.getSharingType() + "\n");
+                Tenant tenant = SyntheticData.tenant(i);
+                csvOut.write(tenant.getUserId() + "," + tenant.getTenantType() + ",\"" + tenant.getName() + "\","
+                             + tenant.getEmail() + "," + hash + "," + tenant.getContact() + ",2024-01-15\n");
+                jsonOut.write("{\"id\":" + Json.quote(tenant.getUserId()) + ",\"type\":" + Json.quote(tenant.getTenantType())
+                              + ",\"name\":" + Json.quote(tenant.getName()) + ",\"email\":" + Json.quote(tenant.getEmail())
+                              + ",\"passwordHash\":" + Json.quote(hash) + ",\"contact\":" + Json.quote(tenant.getContact())
+                              + ",\"moveIn\":\"2024-01-15\"}\n");
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void timeImport(String label, int size, Path file, boolean rooms) throws IOException {
+        ImportResult result = null;
+        PGOwner owner = null;
+        long elapsed = 0;
+        for (int run = 0; run < 2; run++) {
+            owner = new PGOwner("O001", "PG Owner", "owner@pg.com", "admin123");
+            BulkImporter importer = new BulkImporter(owner);
+            ImportResult[] outcome = new ImportResult[1];
+            usedHeap();
+            long start = System.nanoTime();
+            silently(() -> {
+                try {
+                    outcome[0] = rooms ? importer.importRooms(file) : importer.importTenants(file);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            elapsed = System.nanoTime() - start;
+            result = outcome[0];
+        }
+        if (result.getImported() != size) System.out.println("  unexpected result: " + result + " " + result.getErrors());
+        System.out.printf("%-13s | %-9d | %9.1f | %10.0f | %9.1f | %15.1f%n", label, size, elapsed / 1e6,
+            size / (elapsed / 1e9), Files.size(file) / (1024.0 * 1024.0), usedHeap() / (1024.0 * 1024.0));
+        if (owner.getTenants().size() < 0) System.out.println();
+    }
+
+    /**
+     * Streams the whole payment ledger (120 months per tenant) as CSV and JSON Lines to a
+     * discarding stream and to a file, reporting throughput and bytes allocated per row.
+     */
+    private static void benchmarkExport() {
+        System.out.println("\n=== PAYMENT EXPORT: 120 months per tenant ===");
+        System.out.println("Tenants   | Rows       | Format | Target | Time (ms) | Rows/s     | Allocated bytes/row");
+        for (int size : sizes) {
+            PGOwner owner = SyntheticData.owner(size, size, 1.0, 120);
+            ReportExporter exporter = new ReportExporter(owner);
+            int rows = owner.getLedger().size();
+            try {
+                Path file = Files.createTempFile("pghive-payments", ".export");
+                for (boolean jsonLines : new boolean[] {false, true}) {
+                    for (boolean toFile : new boolean[] {false, true}) {
+                        exporter.export("payments", OutputStream.nullOutputStream(), jsonLines, 0, Integer.MAX_VALUE); // warmup
+                        long allocatedBefore = allocatedBytes();
+                        long start = System.nanoTime();
+                        try (OutputStream out = toFile ? Files.newOutputStream(file) : OutputStream.nullOutputStream()) {
+                            exporter.export("payments", out, jsonLines, 0, Integer.MAX_VALUE);
+                        }
+                        double seconds = (System.nanoTime() - start) / 1e9;
+                        System.out.printf("%-9d | %-10d | %-6s | %-6s | %9.1f | %10.0f | %.2f%n", size, rows,
+                            jsonLines ? "jsonl" : "csv", toFile ? "file" : "null", seconds * 1000, rows / seconds,
+                            (double) (allocatedBytes() - allocatedBefore) / rows);
+                    }
+                }
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                System.out.println("Export benchmark failed: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Compares the legacy {@code Date}/{@code SimpleDateFormat} paths against the epoch-day codec:
+     * parsing, formatting, rent-history rendering and bulk payment generation, reporting time and
+     * bytes allocated per operation.
+     */
+    private static void benchmarkDates() {
+        System.out.println("\n=== DATES: SimpleDateFormat vs EpochDays ===");
+        System.out.println("Operation                            | Ops       | ns/op        | Allocated bytes/op");
+        int ops = 1_000_000;
+        String[] texts = new String[1024];
+        int[] days = new int[texts.length];
+        for (int i = 0; i < texts.length; i++) {
+            days[i] = EpochDays.today() - 5000 + i * 7;
+            texts[i] = EpochDays.format(days[i]);
+        }
+        measureAllocation("parse (SimpleDateFormat per call)", ops / 10, i -> {
+            java.text.SimpleDateFormat legacy = new java.text.SimpleDateFormat("yyyy-MM-dd");
+            return legacy.parse(texts[i & 1023]).getTime();
+        });
+        measureAllocation("parse (EpochDays)", ops, i -> EpochDays.parse(texts[i & 1023]));
+        measureAllocation("format (SimpleDateFormat per call)", ops / 10, i -> {
+            java.text.SimpleDateFormat legacy = new java.text.SimpleDateFormat("yyyy-MM-dd");
+            return legacy.format(new Date(EpochDays.toMillis(days[i & 1023]))).length();
+        });
+        measureAllocation("format (EpochDays.format)", ops, i -> EpochDays.format(days[i & 1023]).length());
+        StringBuilder reused = new StringBuilder(64);
+        measureAllocation("format (EpochDays.appendTo, reused)", ops, i -> {
+            reused.setLength(0);
+            return EpochDays.appendTo(reused, days[i & 1023]).length();
+        });
+
+        // One history row as the console renders it, before and after the migration
+        java.text.SimpleDateFormat shared = new java.text.SimpleDateFormat("yyyy-MM-dd");
+        measureAllocation("history row (concat + Date)", ops / 10, i -> {
+            String line = "Payment ID: " + "T" + (i & 1023) + "-M" + i + " | Amount: ₹" + 5000.0 + " | Due: "
+                          + shared.format(new Date(EpochDays.toMillis(days[i & 1023]))) + " | Status: Pending\n";
+            return line.length();
+        });
+        StringBuilder row = new StringBuilder(128);
+        measureAllocation("history row (appendTo, reused)", ops, i -> {
+            row.setLength(0);
+            row.append("Payment ID: ").append('T').append(i & 1023).append("-M").append(i)
+               .append(" | Amount: ₹").append(5000.0).append(" | Due: ");
+            EpochDays.appendTo(row, days[i & 1023]).append(" | Status: Pending\n");
+            return row.length();
+        });
+
+        for (int size : sizes) {
+            PGOwner[] owner = new PGOwner[1];
+            silently(() -> owner[0] = SyntheticData.owner(size, size, 1.0, 0));
+            int months = 12;
+            int existing = owner[0].getLedger().size();
+            long allocatedBefore = allocatedBytes();
+            long start = System.nanoTime();
+            silently(() -> owner[0].generateBulkPayments(months, EpochDays.today()));
+            long elapsed = System.nanoTime() - start;
+            int payments = owner[0].getLedger().size() - existing;
+            System.out.printf("%-36s | %-9d | %12.1f | %.1f%n", "bulk generation (per payment)", payments,
+                elapsed / (double) Math.max(1, payments),
+                (double) (allocatedBytes() - allocatedBefore) / Math.max(1, payments));
+        }
+    }
+
+    /**
+     * Measures what instrumentation adds per operation: an empty timed section with metrics
+     * enabled and disabled, recording from several threads, and addTenant both ways.
+     */
+    private static void benchmarkMetrics() {
+        System.out.println("\n=== METRICS: instrumentation overhead ===");
+        System.out.println("Operation                            | Ops       | ns/op        | Allocated bytes/op");
+        Metrics metrics = Metrics.GLOBAL;
+        boolean wasEnabled = metrics.isEnabled();
+        LatencyRecorder recorder = new LatencyRecorder("benchmark");
+        int ops = 10_000_000;
+        measureAllocation("clock read only", ops, i -> System.nanoTime());
+        for (boolean enabled : new boolean[] {false, true}) {
+            metrics.setEnabled(enabled);
+            measureAllocation("timed section, metrics " + (enabled ? "on" : "off"), ops, i -> {
+                long started = metrics.start();
+                recorder.recordSince(started);
+                return started;
+            });
+        }
+        measureAllocation("record(value)", ops, i -> {
+            recorder.record(i & 0xFFFFF);
+            return i;
+        });
+
+        for (int threads : new int[] {2, 4}) {
+            LatencyRecorder shared = new LatencyRecorder("shared");
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            int perThread = ops / threads;
+            List<Future<?>> workers = new ArrayList<>();
+            long start = System.nanoTime();
+            for (int t = 0; t < threads; t++) {
+                workers.add(pool.submit(() -> {
+                    for (int i = 0; i < perThread; i++) shared.recordSince(System.nanoTime());
+                }));
+            }
+            try {
+                for (Future<?> worker : workers) worker.get();
+            } catch (InterruptedException | ExecutionException e) {
+                throw new IllegalStateException(e);
+            } finally {
+                pool.shutdown();
+            }
+            System.out.printf("%-36s | %-9d | %12.1f | -%n", "timed section, " + threads + " threads", ops,
+                              (System.nanoTime() - start) / (double) ops);
+        }
+
+        for (int size : sizes) {
+            for (boolean enabled : new boolean[] {false, true}) {
+                metrics.setEnabled(enabled);
+                measureWithSetup("addTenant, metrics " + (enabled ? "on" : "off"), size, size, () -> {
+                    Tenant[] fresh = new Tenant[size];
+                    for (int i = 0; i < size; i++) fresh[i] = SyntheticData.tenant(i);
+                    return fresh;
+                }, (fresh, iteration) -> {
+                    PGOwner owner = new PGOwner("O001", "PG Owner", "owner@pg.com", "admin123");
+                    for (Tenant tenant : fresh) owner.addTenant(tenant);
+                    return owner.getTenantCount();
+                });
+            }
+        }
+        metrics.setEnabled(wasEnabled);
+        LatencyRecorder.Snapshot snapshot = metrics.addTenant.snapshot();
+        System.out.printf("addTenant latency: count=%d p50=%dns p99=%dns p99.9=%dns max=%dns%n", snapshot.getCount(),
+            snapshot.percentile(50), snapshot.percentile(99), snapshot.percentile(99.9), snapshot.getMaxNanos());
+    }
+
+    /**
+     * Compares the caller-side cost of a log call: the old synchronous println to a file,
+     * an event queued on the asynchronous {@link EventLog}, and an event below the level.
+     */
+    private static void benchmarkEventLog() {
+        System.out.println("\n=== EVENT LOG: caller cost per event ===");
+        System.out.println("Operation                            | Ops       | ns/op        | Allocated bytes/op");
+        int ops = 1_000_000;
+        try {
+            Path dir = Files.createTempDirectory("pghive-log");
+            try (PrintStream console = new PrintStream(new FileOutputStream(dir.resolve("println.log").toFile()), true)) {
+                measureAllocation("println to file (old Loggable)", ops / 10, i -> {
+                    console.println("LOG: Tenant details updated. id=T" + i);
+                    return i;
+                });
+            }
+            EventLog log = new EventLog(1 << 20);
+            log.start(dir.resolve("events.log"), EventLog.INFO, 64L * 1024 * 1024, 1);
+            measureAllocation("EventLog, level disabled", ops, i -> {
+                log.log(EventLog.DEBUG, "tenant.edited", "id", "T1");
+                return i;
+            });
+            measureAllocation("EventLog, queued", ops, i -> {
+                log.log(EventLog.INFO, "tenant.edited", "id", "T1");
+                return i;
+            });
+            long start = System.nanoTime();
+            log.flush();
+            System.out.printf("writer drained the backlog in %.1f ms, %d events dropped%n",
+                              (System.nanoTime() - start) / 1e6, log.getDropped());
+            log.close();
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+                for (Path file : files) Files.delete(file);
+            }
+            Files.delete(dir);
+        } catch (IOException e) {
+            System.out.println("Event log benchmark failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Uploads 200 documents (half of them duplicates) into a {@link DocumentStore}, then
+     * downloads them with transferTo and with the whole file read onto the heap, reporting
+     * throughput and bytes allocated per download.
+     */
+    private static void benchmarkDocumentStore() {
+        System.out.println("\n=== DOCUMENT STORE: 200 documents, half duplicates ===");
+        System.out.println("Doc size  | Operation             | Time (ms) | MB/s      | Allocated bytes/doc | Blobs");
+        int documents = 200;
+        for (int size : new int[] {16 * 1024, 1024 * 1024}) {
+            try {
+                Path dir = Files.createTempDirectory("pghive-docs");
+                Path sources = Files.createDirectories(dir.resolve("sources"));
+                for (int i = 0; i < documents / 2; i++) {
+                    byte[] content = new byte[size];
+                    new SplittableRandom(i).nextBytes(content);
+                    Files.write(sources.resolve("doc" + i), content);
+                }
+                DocumentStore store = DocumentStore.open(dir.resolve("store"));
+                long start = System.nanoTime();
+                for (int i = 0; i < documents; i++) {
+                    store.putFile("T" + i, "doc.pdf", sources.resolve("doc" + (i % (documents / 2))));
+                }
+                long blobs;
+                try (java.util.stream.Stream<Path> files = Files.walk(dir.resolve("store").resolve("blobs"))) {
+                    blobs = files.filter(Files::isRegularFile).count();
+                }
+                printDocumentRow(size, "upload (transferFrom)", documents, System.nanoTime() - start, -1, blobs);
+
+                WritableByteChannel discard = Channels.newChannel(OutputStream.nullOutputStream());
+                for (int pass = 0; pass < 2; pass++) {
+                    boolean measured = pass == 1;
+                    long allocatedBefore = allocatedBytes();
+                    start = System.nanoTime();
+                    for (int i = 0; i < documents; i++) store.transferTo("T" + i, "doc.pdf", discard);
+                    if (measured) {
+                        printDocumentRow(size, "download (store)", documents, System.nanoTime() - start,
+                                         allocatedBytes() - allocatedBefore, blobs);
+                    }
+                    allocatedBefore = allocatedBytes();
+                    start = System.nanoTime();
+                    for (int i = 0; i < documents; i++) {
+                        byte[] content = Files.readAllBytes(sources.resolve("doc" + (i % (documents / 2))));
+                        discard.write(ByteBuffer.wrap(content));
+                    }
+                    if (measured) {
+                        printDocumentRow(size, "download (readAll)", documents, System.nanoTime() - start,
+                                         allocatedBytes() - allocatedBefore, blobs);
+                    }
+                }
+                try (java.util.stream.Stream<Path> files = Files.walk(dir)) {
+                    files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+                }
+            } catch (IOException e) {
+                System.out.println("Document store benchmark failed: " + e.getMessage());
+            }
+        }
+    }
+
+    private static void printDocumentRow(int size, String operation, int documents, long nanos, long allocated, long blobs) {
+        System.out.printf("%-9s | %-21s | %9.1f | %9.1f | %19s | %d%n", size / 1024 + " KB", operation, nanos / 1e6,
+            (double) size * documents / (1024 * 1024) / (nanos / 1e9),
+            allocated < 0 ? "-" : String.format("%.0f", (double) allocated / documents), blobs);
+    }
+
+    /**
+     * Builds the occupancy forecast for owners with staggered move-in and move-out dates,
+     * then measures range queries and pricing every room from a 30-day forecast, against
+     * counting occupied rooms day by day over the same range.
+     */
+    private static void benchmarkForecast() {
+        System.out.println("\n=== OCCUPANCY FORECAST (" + WARMUP_ITERATIONS + " warmup + " + MEASURED_ITERATIONS + " measured iterations) ===");
+        System.out.println("Benchmark                            | Size      | ns/op (mean) | stddev");
+        int today = EpochDays.today();
+        for (int size : sizes) {
+            PGOwner owner = SyntheticData.owner(size, size, 0.8, 0);
+            for (int i = 0; i < size; i++) {
+                owner.editTenant(SyntheticData.tenantId(i), "Tenant " + i, "9000000000",
+                                 today - 180 + (i * 7) % 180, i % 3 == 0 ? EpochDays.NONE : today + (i * 11) % 365);
+            }
+            Room[] rooms = owner.getRooms().toArray(new Room[0]);
+            int queries = 100_000;
+            int[] starts = new int[queries];
+            SplittableRandom random = new SplittableRandom(7);
+            for (int i = 0; i < queries; i++) starts[i] = today + random.nextInt(365);
+
+            measure("OccupancyForecast build", size, 1, iteration ->
+                new OccupancyForecast(owner.getRooms(), iteration).getBedCount());
+            OccupancyForecast forecast = owner.getForecast();
+            measure("occupancyRate (30-day range)", size, queries, iteration -> {
+                double sum = 0;
+                for (int from : starts) sum += forecast.occupancyRate(from, from + 30);
+                return (long) sum;
+            });
+            measure("expectedRevenue (30-day range)", size, queries, iteration -> {
+                double sum = 0;
+                for (int from : starts) sum += forecast.expectedRevenue(from, from + 30);
+                return (long) sum;
+            });
+            measure("day-by-day scan (30-day range)", size, 10, iteration -> {
+                long occupied = 0;
+                for (int q = 0; q < 10; q++) {
+                    for (int day = starts[q]; day < starts[q] + 30; day++) {
+                        for (Room room : rooms) {
+                            for (int bed = 0; bed < room.getBedCount(); bed++) {
+                                Tenant tenant = room.getTenant(bed);
+                                if (tenant == null) continue;
+                                int in = tenant.getMoveInDay(), out = tenant.getMoveOutDay();
+                                if ((in == EpochDays.NONE || day >= in) && (out == EpochDays.NONE || day < out)) occupied++;
+                            }
+                        }
+                    }
+                }
+                return occupied;
+            });
+            measure("calculateOptimizedRent (forecast)", size, rooms.length, iteration -> {
+                double sum = 0;
+                OccupancyForecast current = owner.getForecast();
+                for (Room room : rooms) sum += RentOptimizer.calculateOptimizedRent(room, current, today, today + 30);
+                return (long) sum;
+            });
+        }
+    }
+
+    /**
+     * Fills 5,000 rooms with three years of back-to-back bookings on every bed, then
+     * measures free-bed checks and booking/cancelling a stay in that dense calendar, and
+     * finally many threads racing to book the same beds.
+     */
+    private static void benchmarkReservations() {
+        System.out.println("\n=== RESERVATIONS: 5,000 rooms, 3 years of bookings per bed ===");
+        System.out.println("Operation                            | Ops       | ns/op        | Allocated bytes/op");
+        int roomCount = 5_000;
+        int today = EpochDays.today();
+        PGOwner owner = SyntheticData.owner(roomCount, roomCount, 0, 0);
+        Tenant guest = owner.findTenantById(SyntheticData.tenantId(0));
+        long bookings = 0;
+        for (Room room : owner.getRooms()) {
+            RoomCalendar calendar = room.getCalendar();
+            for (int bed = 0; bed < calendar.getBedCount(); bed++) {
+                // Two-week stays with a one-day gap, staggered per bed
+                for (int day = today + bed; day < today + 3 * 365; day += 15) {
+                    calendar.restore(new Reservation(room.getRoomId(), guest.getUserId(), bed, day, day + 14));
+                    bookings++;
+                }
+            }
+        }
+        System.out.println(bookings + " bookings");
+        Room[] rooms = owner.getRooms().toArray(new Room[0]);
+        int ops = 1_000_000;
+        measureAllocation("freeBeds (7-day stay)", ops, i -> {
+            int from = today + (i * 31) % (3 * 365);
+            return rooms[i % roomCount].getCalendar().freeBeds(from, from + 7);
+        });
+        Tenant booker = owner.findTenantById(SyntheticData.tenantId(1));
+        measureAllocation("reserveRoom + cancel (gap day)", ops / 10, i -> {
+            Room room = rooms[i % roomCount];
+            int gap = today + 14 + 15 * (i % 70); // the free day after bed 0's booking
+            try {
+                owner.reserveRoom(room.getRoomId(), booker, gap, gap + 1);
+            } catch (RoomAssignmentException e) {
+                return 0;
+            }
+            return owner.cancelReservation(room.getRoomId(), booker.getUserId(), gap) ? 1 : 0;
+        });
+        measureAllocation("reserveRoom, fully booked", ops / 10, i -> {
+            Room room = rooms[i % roomCount];
+            int from = today + 100 + i % 300;
+            try {
+                owner.reserveRoom(room.getRoomId(), booker, from, from + 30);
+                return 1;
+            } catch (RoomAssignmentException e) {
+                return 0;
+            }
+        });
+
+        int threads = Math.max(4, Runtime.getRuntime().availableProcessors());
+        PGOwner contested = SyntheticData.owner(1_000, threads * 100, 0, 0);
+        AtomicInteger booked = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        long start = System.nanoTime();
+        List<Future<?>> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int first = t * 100;
+            workers.add(pool.submit(() -> {
+                for (int i = first; i < first + 100; i++) {
+                    Tenant tenant = contested.findTenantById(SyntheticData.tenantId(i));
+                    for (int r = 0; r < 1_000; r++) {
+                        try {
+                            contested.reserveRoom(SyntheticData.roomId(r), tenant, today, today + 30);
+                            booked.incrementAndGet();
+                        } catch (RoomAssignmentException e) {
+                            // bed taken by another thread
+                        }
+                    }
+                }
+                return null;
+            }));
+        }
+        try {
+            for (Future<?> worker : workers) worker.get();
+        } catch (InterruptedException | ExecutionException e) {
+            throw new IllegalStateException(e);
+        }
+        pool.shutdown();
+        long beds = 0;
+        for (Room room : contested.getRooms()) beds += room.getCalendar().getBedCount();
+        System.out.printf("%d threads, %d booking attempts in %.1f ms: %d booked, %d beds%n", threads,
+                          threads * 100 * 1_000, (System.nanoTime() - start) / 1e6, booked.get(), beds);
+    }
+
+    /**
+     * Prices the inventory with the default rules room by room and in a batch, then compares
+     * an A/B batch that runs two rule sets in one pass with two separate batches, and
+     * measures compiling a rules file. Fails first if a reused result table gives wrong rents.
+     */
+    private static void benchmarkPricing() {
+        System.out.println("\n=== PRICING RULES (" + WARMUP_ITERATIONS + " warmup + " + MEASURED_ITERATIONS + " measured iterations) ===");
+        System.out.println("Benchmark                            | Size      | ns/op (mean) | stddev");
+        PricingConfig standard = PricingConfig.DEFAULT;
+        PricingConfig compared = PricingConfig.parse(Arrays.asList((PricingConfig.DEFAULT_TEXT
+            + "[premium]\nadd 10 per sqft\nscale 0.05 per amenity\nsharing 1.9 1.35 1.0 0.75\n"
+            + "occupancy above 0.7 1.15\nfloor 3000\nround\n").split("\n")));
+        List<String> lines = Arrays.asList(PricingConfig.DEFAULT_TEXT.split("\n"));
+        if (!reusedTableConsistent()) throw new IllegalStateException("A reused RentSuggestions table gave wrong rents");
+        for (int size : sizes) {
+            PGOwner owner = SyntheticData.owner(size, 0, 0, 0);
+            Room[] rooms = owner.getRooms().toArray(new Room[0]);
+            RentSuggestions table = new RentSuggestions();
+            measure("calculateOptimizedRent (rules)", size, rooms.length, iteration -> {
+                double sum = 0;
+                for (Room room : rooms) sum += RentOptimizer.calculateOptimizedRent(room, 0.6);
+                return (long) sum;
+            });
+            measure("optimizeAll, one rule set", size, rooms.length, iteration ->
+                (long) RentOptimizer.optimizeAll(owner.getRooms(), 0.6, standard.current, null, table).totalSuggested());
+            measure("optimizeAll, A/B in one pass", size, rooms.length, iteration ->
+                (long) RentOptimizer.optimizeAll(owner.getRooms(), 0.6, compared.current, compared.challenger, table)
+                    .totalChallenger());
+            measure("optimizeAll, A then B", size, rooms.length, iteration ->
+                (long) (RentOptimizer.optimizeAll(owner.getRooms(), 0.6, compared.current, null, table).totalSuggested()
+                        + RentOptimizer.optimizeAll(owner.getRooms(), 0.6, compared.challenger, null, table).totalSuggested()));
+        }
+        measure("PricingConfig.parse (default rules)", 1, 1_000, iteration -> {
+            long rules = 0;
+            for (int i = 0; i < 1_000; i++) rules += PricingConfig.parse(lines).current.getRuleCount();
+            return rules;
+        });
+    }
+
+    // Refills one table over 100, 50 and then 80 rooms, so it shrinks and grows again within its capacity
+    private static boolean reusedTableConsistent() {
+        RentSuggestions reused = new RentSuggestions();
+        for (int count : new int[] {100, 50, 80}) {
+            PGOwner owner = SyntheticData.owner(count, 0, 0, 0);
+            RentSuggestions fresh = RentOptimizer.optimizeAll(owner.getRooms(), 0.6, null);
+            RentOptimizer.optimizeAll(owner.getRooms(), 0.6, reused);
+            if (reused.size() != count || fresh.size() != count) return false;
+            for (int row = 0; row < count; row++) {
+                if (!reused.roomId(row).equals(fresh.roomId(row)) || reused.suggestedRent(row) != fresh.suggestedRent(row)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Fills 100,000 beds in 40,000 shared rooms through the {@link BedAllocator}, frees one
+     * bed in a thousand, then compares finding a free bed in the bitmap with scanning the
+     * rooms for one.
+     */
+    private static void benchmarkBeds() {
+        int roomCount = 40_000;
+        PGOwner owner = SyntheticData.owner(roomCount, 0, 0, 0);
+        Room[] rooms = owner.getRooms().toArray(new Room[0]);
+        int bedCount = owner.getAggregates().totalBeds();
+        System.out.println("\n=== BEDS: " + roomCount + " rooms, " + bedCount + " beds ===");
+        Tenant[] tenants = new Tenant[bedCount];
+        for (int i = 0; i < bedCount; i++) {
+            tenants[i] = SyntheticData.tenant(i);
+            owner.addTenant(tenants[i]);
+        }
+        long start = System.nanoTime();
+        silently(() -> {
+            for (Tenant tenant : tenants) {
+                try {
+                    owner.assignFreeBed(tenant);
+                } catch (RoomAssignmentException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        });
+        long elapsed = System.nanoTime() - start;
+        System.out.printf("assignFreeBed: %d beds filled in %.1f ms (%.0f ns/op), consistent=%b%n", bedCount,
+                          elapsed / 1e6, elapsed / (double) bedCount, assignmentsConsistent(owner));
+        silently(() -> {
+            for (int i = 500; i < bedCount; i += 1_000) owner.deleteTenant(tenants[i].getUserId());
+        });
+        BedAllocator allocator = owner.getBedAllocator();
+        System.out.println(allocator.freeBeds() + " free beds");
+
+        System.out.println("Operation                            | Ops       | ns/op        | Allocated bytes/op");
+        int ops = 1_000_000;
+        measureAllocation("findFree", ops, i -> allocator.findFree());
+        measureAllocation("findFreeFrom (random start)", ops, i -> {
+            long slot = allocator.findFreeFrom((i * 7_919L) % ((long) roomCount * BedAllocator.BEDS_PER_ROOM));
+            return slot >= 0 ? slot : allocator.findFree();
+        });
+        measureAllocation("room scan (random start)", ops / 10, i -> {
+            int first = (int) ((i * 7_919L) % roomCount);
+            for (int r = 0; r < roomCount; r++) {
+                Room room = rooms[(first + r) % roomCount];
+                if (room.hasFreeBed()) return r;
+            }
+            return -1;
+        });
+    }
+
+    /**
+     * Measures what the {@link EventBus} adds to an owner mutation, then raw publish
+     * throughput with 0, 1 and 4 subscribers and the average batch each one received,
+     * and finally how quickly a new subscription replays the retained history.
+     */
+    private static void benchmarkEventBus() {
+        System.out.println("\n=== EVENT BUS: mutation overhead ===");
+        System.out.println("Operation                            | Ops       | ns/op        | Allocated bytes/op");
+        PGOwner quiet = SyntheticData.owner(1_000, 1_000, 0.9, 0);
+        measureAllocation("editTenant, no bus", 1_000_000, i -> {
+            quiet.editTenant(SyntheticData.tenantId(i % 1_000), "Tenant", "9000000000", EpochDays.NONE, EpochDays.NONE);
+            return i;
+        });
+        PGOwner observed = SyntheticData.owner(1_000, 1_000, 0.9, 0);
+        LongAdder received = new LongAdder();
+        EventBus.Subscription counter = observed.getEventBus()
+            .subscribe("benchmark", EventBus.LATEST, 1024, events -> received.add(events.size()));
+        measureAllocation("editTenant, 1 subscriber", 1_000_000, i -> {
+            observed.editTenant(SyntheticData.tenantId(i % 1_000), "Tenant", "9000000000", EpochDays.NONE, EpochDays.NONE);
+            return i;
+        });
+        counter.close();
+
+        System.out.println("\n=== EVENT BUS: publish throughput, " + PGOwner.EVENT_BUS_CAPACITY + "-event ring ===");
+        System.out.println("Subscribers | Events    | Time (ms) | Events/s     | Avg batch | Publisher waits");
+        int events = 2_000_000;
+        for (int subscribers : new int[] {0, 1, 4}) {
+            EventBus bus = new EventBus(PGOwner.EVENT_BUS_CAPACITY);
+            LongAdder delivered = new LongAdder();
+            LongAdder batches = new LongAdder();
+            List<EventBus.Subscription> subscriptions = new ArrayList<>();
+            for (int s = 0; s < subscribers; s++) {
+                subscriptions.add(bus.subscribe("benchmark-" + s, EventBus.LATEST, 1024, batch -> {
+                    delivered.add(batch.size());
+                    batches.increment();
+                }));
+            }
+            long start = System.nanoTime();
+            for (int i = 0; i < events; i++) {
+                bus.publish(DomainEvent.tenant(DomainEvent.TENANT_EDITED, "T1"));
+            }
+            while (delivered.sum() < (long) events * subscribers) LockSupport.parkNanos(100_000);
+            long nanos = System.nanoTime() - start;
+            for (EventBus.Subscription subscription : subscriptions) subscription.close();
+            System.out.printf("%-11d | %-9d | %9.1f | %12.0f | %9s | %d%n", subscribers, events, nanos / 1e6,
+                              events / (nanos / 1e9),
+                              subscribers == 0 ? "-" : String.format("%.1f", (double) delivered.sum() / batches.sum()),
+                              bus.getPublisherWaits());
+
+            if (subscribers == 0) {
+                LongAdder replayed = new LongAdder();
+                start = System.nanoTime();
+                EventBus.Subscription replay = bus.subscribe("replay", EventBus.EARLIEST, 1024,
+                                                             batch -> replayed.add(batch.size()));
+                while (replayed.sum() < PGOwner.EVENT_BUS_CAPACITY) LockSupport.parkNanos(100_000);
+                System.out.printf("replayed %d retained events in %.1f ms%n", replayed.sum(),
+                                  (System.nanoTime() - start) / 1e6);
+                replay.close();
+            }
+        }
+    }
+
+    // Runs the operation once to warm up, then again measuring time and bytes allocated per call
+    private static void measureAllocation(String name, int ops, Operation operation) {
+        long sink = 0;
+        try {
+            for (int i = 0; i < ops; i++) sink += operation.run(i);
+            long allocatedBefore = allocatedBytes();
+            long start = System.nanoTime();
+            for (int i = 0; i < ops; i++) sink += operation.run(i);
+            long elapsed = System.nanoTime() - start;
+            System.out.printf("%-36s | %-9d | %12.1f | %.1f%n", name, ops, elapsed / (double) ops,
+                (double) (allocatedBytes() - allocatedBefore) / ops);
+        } catch (Exception e) {
+            System.out.printf("%-36s | %-9d | failed: %s%n", name, ops, e);
+        }
+        if (sink == Long.MIN_VALUE) System.out.println();
+    }
+
+    // Bytes allocated by the current thread so far, or 0 where the JVM does not track it
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean threads = java.lang.management.ManagementFactory.getThreadMXBean();
+        return threads instanceof com.sun.management.ThreadMXBean
+               ? ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId())
+               : 0;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Runs a setup step with console output discarded, so per-object log lines don't skew timings.
+     */
+    static void silently(Runnable setup) {
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            setup.run();
+        } finally {
+            System.setOut(console);
+        }
     }
-}
\ No newline at end of file
+}